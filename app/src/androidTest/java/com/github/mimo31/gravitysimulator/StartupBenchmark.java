@@ -0,0 +1,35 @@
+package com.github.mimo31.gravitysimulator;
+
+import android.os.SystemClock;
+import android.test.ActivityInstrumentationTestCase2;
+import android.util.Log;
+
+/**
+ * Measures the time from MainActivity.onCreate to its first frame on a device.
+ * <p>
+ * The process is already running, so this measures the startup of the Activity. For a cold start of the process use
+ * adb shell am start -W -S com.github.mimo31.gravitysimulator/.MainActivity, MainActivity reports the first frame by reportFullyDrawn.
+ */
+public class StartupBenchmark extends ActivityInstrumentationTestCase2<MainActivity>
+{
+    // longest time to wait for the first frame
+    private static final long TIMEOUT = 10000;
+
+    public StartupBenchmark()
+    {
+        super(MainActivity.class);
+    }
+
+    public void testTimeToFirstFrame() throws InterruptedException
+    {
+        MainActivity activity = this.getActivity();
+        long deadline = SystemClock.uptimeMillis() + TIMEOUT;
+        while (activity.getStartupTime() == -1 && SystemClock.uptimeMillis() < deadline)
+        {
+            Thread.sleep(10);
+        }
+        long startupTime = activity.getStartupTime();
+        assertTrue("The first frame hasn't been drawn in " + TIMEOUT + " ms.", startupTime != -1);
+        Log.i("StartupBenchmark", "Time to the first frame: " + startupTime + " ms");
+    }
+}
@@ -0,0 +1,238 @@
+package com.github.mimo31.gravitysimulator;
+
+import android.util.Log;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * Periodically saves the state of a GravitySpace to a file, so it can be restored after the process has been killed.
+ * <p>
+ * The state is copied into a SpaceSnapshot on the simulation thread, which only copies a few primitives per object,
+ * and written on a background thread. The file is first written under a temporary name and then renamed,
+ * so there is always either the previous or the new complete save. It ends with a CRC32 of its content,
+ * so a damaged file is rejected when loading. If the previous save is still being written, no new snapshot is taken.
+ */
+class Autosave
+{
+    static final String FILE_NAME = "autosave.bin";
+
+    // "GSAV"
+    private static final int MAGIC = 0x47534156;
+    private static final int VERSION = 2;
+
+    // time between two saves
+    private static final long INTERVAL_NANOS = 30000000000L;
+
+    /**
+     * Receives the result of loading the save. Called on the background thread.
+     */
+    interface LoadListener
+    {
+        /**
+         * @param savedAt the time of the save in milliseconds since the epoch
+         */
+        void onLoaded(GravitySpace space, long savedAt);
+    }
+
+    private final File file;
+    private final File tempFile;
+
+    // writes and loads the files, one at a time in the order they were requested
+    private final ExecutorService worker = Executors.newSingleThreadExecutor();
+
+    // the snapshot is only captured when it isn't being written
+    private final SpaceSnapshot snapshot = new SpaceSnapshot();
+    private final AtomicBoolean writing = new AtomicBoolean();
+
+    // when the last snapshot was captured, used only by the simulation thread
+    private long lastSave = System.nanoTime();
+
+    Autosave(File directory)
+    {
+        this.file = new File(directory, FILE_NAME);
+        this.tempFile = new File(directory, FILE_NAME + ".tmp");
+    }
+
+    /**
+     * Saves the space if the last save was long enough ago. Should be called by the simulation thread between the steps.
+     */
+    void tick(GravitySpace space)
+    {
+        if (System.nanoTime() - this.lastSave >= INTERVAL_NANOS)
+        {
+            this.save(space);
+        }
+    }
+
+    /**
+     * Captures the space and writes it on the background thread unless the previous save is still being written.
+     * Empty spaces aren't saved, so a new simulation doesn't overwrite the save before the user can restore it.
+     * Should be called by the simulation thread between the steps.
+     */
+    void save(GravitySpace space)
+    {
+        if (this.writing.get() || space.getNumberOfObjects() == 0)
+        {
+            return;
+        }
+        this.lastSave = System.nanoTime();
+        Tracing.begin(Tracing.AUTOSAVE_CAPTURE, space.getNumberOfObjects());
+        space.captureSnapshot(this.snapshot);
+        Tracing.end(Tracing.AUTOSAVE_CAPTURE);
+        this.writing.set(true);
+        final long savedAt = System.currentTimeMillis();
+        this.worker.execute(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                Tracing.begin(Tracing.AUTOSAVE_WRITE, Autosave.this.snapshot.count);
+                try
+                {
+                    write(Autosave.this.file, Autosave.this.tempFile, Autosave.this.snapshot, savedAt);
+                }
+                catch (IOException e)
+                {
+                    Log.w("Autosave", "Can't save the simulation.", e);
+                }
+                finally
+                {
+                    Tracing.end(Tracing.AUTOSAVE_WRITE);
+                    Autosave.this.writing.set(false);
+                }
+            }
+        });
+    }
+
+    /**
+     * Loads the save on the background thread and passes it to the listener if it's valid and not empty.
+     */
+    void load(final LoadListener listener)
+    {
+        this.worker.execute(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                if (!Autosave.this.file.isFile())
+                {
+                    return;
+                }
+                try
+                {
+                    long[] savedAt = new long[1];
+                    SpaceSnapshot loaded = read(Autosave.this.file, savedAt);
+                    if (loaded.count != 0)
+                    {
+                        listener.onLoaded(new GravitySpace(loaded), savedAt[0]);
+                    }
+                }
+                catch (IOException e)
+                {
+                    Log.w("Autosave", "Can't load the saved simulation.", e);
+                }
+            }
+        });
+    }
+
+    /**
+     * Deletes the save on the background thread.
+     */
+    void discard()
+    {
+        this.worker.execute(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                Autosave.this.file.delete();
+            }
+        });
+    }
+
+    /**
+     * Stops the background thread after the pending saves are written.
+     */
+    void shutdown()
+    {
+        this.worker.shutdown();
+    }
+
+    /**
+     * Writes the snapshot to the temporary file and renames it to the file.
+     */
+    static void write(File file, File tempFile, SpaceSnapshot snapshot, long savedAt) throws IOException
+    {
+        FileOutputStream fileOutput = new FileOutputStream(tempFile);
+        try
+        {
+            CheckedOutputStream checked = new CheckedOutputStream(new BufferedOutputStream(fileOutput, 1 << 16), new CRC32());
+            DataOutputStream out = new DataOutputStream(checked);
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(savedAt);
+            snapshot.write(out);
+
+            // the checksum of everything written before it
+            out.writeLong(checked.getChecksum().getValue());
+            out.flush();
+            fileOutput.getFD().sync();
+        }
+        finally
+        {
+            fileOutput.close();
+        }
+        if (!tempFile.renameTo(file))
+        {
+            throw new IOException("Can't rename " + tempFile + " to " + file + ".");
+        }
+    }
+
+    /**
+     * @param savedAt receives the time of the save as its only element
+     * @throws IOException if the file can't be read or isn't a complete save
+     */
+    static SpaceSnapshot read(File file, long[] savedAt) throws IOException
+    {
+        FileInputStream fileInput = new FileInputStream(file);
+        try
+        {
+            CheckedInputStream checked = new CheckedInputStream(new BufferedInputStream(fileInput, 1 << 16), new CRC32());
+            DataInputStream in = new DataInputStream(checked);
+            if (in.readInt() != MAGIC)
+            {
+                throw new IOException(file + " isn't a save.");
+            }
+            int version = in.readInt();
+            if (version != VERSION)
+            {
+                throw new IOException("Unsupported version " + version + " of " + file + ".");
+            }
+            savedAt[0] = in.readLong();
+            SpaceSnapshot snapshot = SpaceSnapshot.read(in, file.length() / SpaceSnapshot.OBJECT_BYTES);
+            long checksum = checked.getChecksum().getValue();
+            if (in.readLong() != checksum)
+            {
+                throw new IOException(file + " is damaged.");
+            }
+            return snapshot;
+        }
+        finally
+        {
+            fileInput.close();
+        }
+    }
+}
@@ -0,0 +1,397 @@
+package com.github.mimo31.gravitysimulator;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Groups the objects of a GravitySpace that touch each other into islands and puts the resting islands to sleep.
+ * <p>
+ * The islands are the connected components of the contacts found by a collision pass, a contact is a pair of objects
+ * closer than CONTACT_MARGIN times the sum of their radii, so a pile that keeps bouncing stays one island.
+ * The collisions of a pile keep its objects moving back and forth, so an island rests by their positions rather than their speeds:
+ * it rests while each of its at least MIN_ISLAND_SIZE objects stays within SLEEP_DISTANCE_FRACTION of its radius from where it was
+ * relative to the center of mass of the island when it started resting. After SLEEP_PASSES resting passes in a row it falls asleep
+ * and becomes an Aggregate: a rigid body that keeps the momentum of the island, but drops its internal motion.
+ * <p>
+ * The GravitySpace passes an Aggregate to the ForceSolver as a single body at its center of mass and to the collision detection
+ * as a single circle around all its objects, so a sleeping pile costs about as much as one object.
+ * An Aggregate wakes up when something touches one of its objects or when one of its objects is changed from the outside.
+ */
+class ContactIslands
+{
+    // objects closer than this many times the sum of their radii are in contact
+    static final double CONTACT_MARGIN = 1.05;
+
+    // the smallest island that can fall asleep
+    static final int MIN_ISLAND_SIZE = 3;
+
+    // fraction of its radius an object may move away from its resting place in its island while the island rests
+    static final double SLEEP_DISTANCE_FRACTION = 0.5;
+
+    // number of the collision passes in a row an island has to rest to fall asleep
+    static final int SLEEP_PASSES = 128;
+
+    /**
+     * Objects of a sleeping island moving together as a rigid body.
+     */
+    static class Aggregate
+    {
+        final List<GravitationalObject> members;
+        final double mass;
+
+        // center of mass
+        double x;
+        double y;
+
+        // velocity of all the members
+        Vector2d velocity;
+
+        // distance from the center of mass that all the members are within
+        final double radius;
+
+        // gravitational acceleration of the center of mass in the current step
+        double accelerationX;
+        double accelerationY;
+
+        // change of the positions of the members in the current step
+        Vector2d shift = new Vector2d(0, 0);
+
+        // false after the Aggregate has been woken up
+        boolean asleep = true;
+
+        private Aggregate(List<GravitationalObject> members)
+        {
+            this.members = members;
+            double mass = 0;
+            double momentumX = 0;
+            double momentumY = 0;
+            double weightedX = 0;
+            double weightedY = 0;
+            for (GravitationalObject member : members)
+            {
+                double memberMass = member.getGravitatingMass();
+                mass += memberMass;
+                momentumX += memberMass * member.velocity.x;
+                momentumY += memberMass * member.velocity.y;
+                weightedX += memberMass * member.position.x;
+                weightedY += memberMass * member.position.y;
+            }
+            this.mass = mass;
+            this.x = weightedX / mass;
+            this.y = weightedY / mass;
+            this.velocity = new Vector2d(momentumX / mass, momentumY / mass);
+            double radius = 0;
+            for (GravitationalObject member : members)
+            {
+                radius = Math.max(radius, Math.hypot(member.position.x - this.x, member.position.y - this.y) + member.radius);
+            }
+            this.radius = radius;
+        }
+
+        /**
+         * Creates a copy of the Aggregate moving the copies of its members.
+         */
+        private Aggregate(Aggregate original, List<GravitationalObject> members)
+        {
+            this.members = members;
+            this.mass = original.mass;
+            this.x = original.x;
+            this.y = original.y;
+            this.velocity = original.velocity;
+            this.radius = original.radius;
+            this.accelerationX = original.accelerationX;
+            this.accelerationY = original.accelerationY;
+            this.shift = original.shift;
+            this.asleep = original.asleep;
+            for (GravitationalObject member : members)
+            {
+                member.aggregate = this;
+            }
+        }
+    }
+
+    private final List<Aggregate> aggregates = new ArrayList<>();
+
+    // number of the objects in the Aggregates
+    private int sleepingObjects;
+
+    // number of the Aggregates that have fallen asleep and woken up so far
+    private long fallenAsleep;
+    private long wokenUp;
+
+    // union-find forest of the slots of the objects in the current pass
+    private int[] parent = new int[0];
+
+    // sums over the islands indexed by the root slot
+    private int[] islandSize = new int[0];
+    private double[] islandMass = new double[0];
+    private double[] islandWeightedX = new double[0];
+    private double[] islandWeightedY = new double[0];
+    private boolean[] islandReady = new boolean[0];
+
+    /**
+     * @param space the copy of the space the islands are in, with copies of the objects keeping their ids
+     * @return a copy of the Aggregates and the counters with the copies of the objects as the members, the copy continues exactly like this
+     */
+    ContactIslands copy(GravitySpace space)
+    {
+        ContactIslands copy = new ContactIslands();
+        for (Aggregate aggregate : this.aggregates)
+        {
+            List<GravitationalObject> members = new ArrayList<>(aggregate.members.size());
+            for (GravitationalObject member : aggregate.members)
+            {
+                members.add(space.getObjectById(member.id));
+            }
+            copy.aggregates.add(new Aggregate(aggregate, members));
+        }
+        copy.sleepingObjects = this.sleepingObjects;
+        copy.fallenAsleep = this.fallenAsleep;
+        copy.wokenUp = this.wokenUp;
+        return copy;
+    }
+
+    List<Aggregate> getAggregates()
+    {
+        return this.aggregates;
+    }
+
+    int getNumberOfSleepingObjects()
+    {
+        return this.sleepingObjects;
+    }
+
+    long getNumberOfFallenAsleep()
+    {
+        return this.fallenAsleep;
+    }
+
+    long getNumberOfWokenUp()
+    {
+        return this.wokenUp;
+    }
+
+    /**
+     * Starts collecting the contacts of a collision pass.
+     * @param count the number of the slots of the objects
+     */
+    void beginPass(int count)
+    {
+        if (this.parent.length < count)
+        {
+            int capacity = Math.max(count, this.parent.length * 2);
+            this.parent = new int[capacity];
+            this.islandSize = new int[capacity];
+            this.islandMass = new double[capacity];
+            this.islandWeightedX = new double[capacity];
+            this.islandWeightedY = new double[capacity];
+            this.islandReady = new boolean[capacity];
+        }
+        for (int i = 0; i < count; i++)
+        {
+            this.parent[i] = i;
+        }
+    }
+
+    /**
+     * Records a contact of the objects in the slots found by the current pass.
+     */
+    void addContact(int slot1, int slot2)
+    {
+        int root1 = this.find(slot1);
+        int root2 = this.find(slot2);
+        if (root1 != root2)
+        {
+            // the smaller slot becomes the root, so the islands don't depend on the order of the contacts
+            this.parent[Math.max(root1, root2)] = Math.min(root1, root2);
+        }
+    }
+
+    private int find(int slot)
+    {
+        int root = slot;
+        while (this.parent[root] != root)
+        {
+            root = this.parent[root];
+        }
+        while (this.parent[slot] != root)
+        {
+            int next = this.parent[slot];
+            this.parent[slot] = root;
+            slot = next;
+        }
+        return root;
+    }
+
+    /**
+     * Finds the resting islands among the objects that took part in the pass and puts those that have rested long enough to sleep.
+     * @param slots the slots of the awake objects that took part in the pass
+     */
+    void endPass(List<GravitationalObject> objects, int[] slots, int slotCount)
+    {
+        for (int k = 0; k < slotCount; k++)
+        {
+            int root = this.find(slots[k]);
+            this.islandSize[root] = 0;
+            this.islandMass[root] = 0;
+            this.islandWeightedX[root] = 0;
+            this.islandWeightedY[root] = 0;
+            this.islandReady[root] = true;
+        }
+        for (int k = 0; k < slotCount; k++)
+        {
+            int slot = slots[k];
+            int root = this.parent[slot];
+            GravitationalObject object = objects.get(slot);
+            double mass = object.getGravitatingMass();
+            this.islandSize[root]++;
+            this.islandMass[root] += mass;
+            this.islandWeightedX[root] += mass * object.position.x;
+            this.islandWeightedY[root] += mass * object.position.y;
+        }
+
+        // an object that has moved too far starts resting again from its current place, the island is ready when all its objects have rested long enough
+        int largeIslands = 0;
+        for (int k = 0; k < slotCount; k++)
+        {
+            int slot = slots[k];
+            int root = this.parent[slot];
+            GravitationalObject object = objects.get(slot);
+            // an island of objects with zero density has no center of mass to rest around
+            if (this.islandSize[root] < MIN_ISLAND_SIZE || this.islandMass[root] == 0)
+            {
+                object.restingPasses = 0;
+                this.islandReady[root] = false;
+                continue;
+            }
+            double mass = this.islandMass[root];
+            double offsetX = object.position.x - this.islandWeightedX[root] / mass;
+            double offsetY = object.position.y - this.islandWeightedY[root] / mass;
+            if (object.restingPasses != 0 && Math.hypot(offsetX - object.restingOffsetX, offsetY - object.restingOffsetY) > SLEEP_DISTANCE_FRACTION * object.radius)
+            {
+                object.restingPasses = 0;
+            }
+            if (object.restingPasses == 0)
+            {
+                object.restingOffsetX = offsetX;
+                object.restingOffsetY = offsetY;
+            }
+            object.restingPasses++;
+            if (object.restingPasses < SLEEP_PASSES)
+            {
+                this.islandReady[root] = false;
+            }
+            if (slot == root)
+            {
+                largeIslands++;
+            }
+        }
+        if (largeIslands == 0)
+        {
+            return;
+        }
+        for (int k = 0; k < slotCount; k++)
+        {
+            int root = slots[k];
+            if (this.parent[root] == root && this.islandReady[root] && this.islandSize[root] >= MIN_ISLAND_SIZE)
+            {
+                this.putToSleep(objects, slots, slotCount, root);
+            }
+        }
+    }
+
+    private void putToSleep(List<GravitationalObject> objects, int[] slots, int slotCount, int root)
+    {
+        List<GravitationalObject> members = new ArrayList<>(this.islandSize[root]);
+        for (int k = 0; k < slotCount; k++)
+        {
+            if (this.parent[slots[k]] == root)
+            {
+                members.add(objects.get(slots[k]));
+            }
+        }
+        Aggregate aggregate = new Aggregate(members);
+        for (GravitationalObject member : members)
+        {
+            member.aggregate = aggregate;
+            member.velocity = aggregate.velocity;
+            member.restingPasses = 0;
+        }
+        this.aggregates.add(aggregate);
+        this.sleepingObjects += members.size();
+        this.fallenAsleep++;
+    }
+
+    /**
+     * Accelerates and moves the Aggregates, the members are moved by the GravitySpace by the shift of their Aggregate.
+     */
+    void moveAggregates(double deltaTime)
+    {
+        for (int i = 0, n = this.aggregates.size(); i < n; i++)
+        {
+            Aggregate aggregate = this.aggregates.get(i);
+            aggregate.velocity = aggregate.velocity.add(new Vector2d(aggregate.accelerationX, aggregate.accelerationY).multiply(deltaTime));
+            aggregate.shift = aggregate.velocity.multiply(deltaTime);
+            aggregate.x += aggregate.shift.x;
+            aggregate.y += aggregate.shift.y;
+        }
+    }
+
+    /**
+     * Wakes the Aggregate up, its members then move on their own again with the velocity of the Aggregate.
+     */
+    void wake(Aggregate aggregate)
+    {
+        if (!aggregate.asleep)
+        {
+            return;
+        }
+        aggregate.asleep = false;
+        for (GravitationalObject member : aggregate.members)
+        {
+            member.aggregate = null;
+            member.velocity = aggregate.velocity;
+        }
+        this.aggregates.remove(aggregate);
+        this.sleepingObjects -= aggregate.members.size();
+        this.wokenUp++;
+    }
+
+    void wakeAll()
+    {
+        while (!this.aggregates.isEmpty())
+        {
+            this.wake(this.aggregates.get(this.aggregates.size() - 1));
+        }
+    }
+
+    /**
+     * @return whether any member of the Aggregate touches the object
+     */
+    static boolean touches(Aggregate aggregate, GravitationalObject object)
+    {
+        for (int i = 0, n = aggregate.members.size(); i < n; i++)
+        {
+            if (aggregate.members.get(i).doesCollide(object))
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return whether any member of the first Aggregate touches any member of the second one
+     */
+    static boolean touches(Aggregate aggregate1, Aggregate aggregate2)
+    {
+        for (int i = 0, n = aggregate1.members.size(); i < n; i++)
+        {
+            if (touches(aggregate2, aggregate1.members.get(i)))
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+}
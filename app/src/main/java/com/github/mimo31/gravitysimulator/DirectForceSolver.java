@@ -0,0 +1,74 @@
+package com.github.mimo31.gravitysimulator;
+
+/**
+ * Exact solver that sums the attraction of every pair of bodies, O(n^2).
+ * <p>
+ * The bodies can be split between the threads of a StepExecutor. Every acceleration is summed by one thread in the order of the bodies,
+ * so the results don't depend on the number of the threads.
+ */
+class DirectForceSolver implements ForceSolver
+{
+    // number of the bodies whose accelerations are computed in one chunk
+    private static final int CHUNK_SIZE = 64;
+
+    private final StepExecutor executor;
+
+    DirectForceSolver()
+    {
+        this(null);
+    }
+
+    /**
+     * @param executor executor to run the computation on, null to run it on the calling thread
+     */
+    DirectForceSolver(StepExecutor executor)
+    {
+        this.executor = executor;
+    }
+
+    @Override
+    public void computeAccelerations(final double[] x, final double[] y, final double[] mass, final int count, final double[] ax, final double[] ay)
+    {
+        if (this.executor == null)
+        {
+            computeAccelerations(x, y, mass, count, ax, ay, 0, count);
+            return;
+        }
+        this.executor.forEachChunk(count, CHUNK_SIZE, new StepExecutor.ChunkTask()
+        {
+            @Override
+            public void run(int chunk, int start, int end)
+            {
+                computeAccelerations(x, y, mass, count, ax, ay, start, end);
+            }
+        });
+    }
+
+    /**
+     * Computes the accelerations of the bodies from start (inclusive) to end (exclusive).
+     */
+    private static void computeAccelerations(double[] x, double[] y, double[] mass, int count, double[] ax, double[] ay, int start, int end)
+    {
+        for (int i = start; i < end; i++)
+        {
+            double xi = x[i];
+            double yi = y[i];
+            double axi = 0;
+            double ayi = 0;
+            for (int j = 0; j < count; j++)
+            {
+                if (j != i && mass[j] != 0)
+                {
+                    double dx = x[j] - xi;
+                    double dy = y[j] - yi;
+                    double distanceSquared = dx * dx + dy * dy;
+                    double factor = mass[j] / (distanceSquared * Math.sqrt(distanceSquared));
+                    axi += dx * factor;
+                    ayi += dy * factor;
+                }
+            }
+            ax[i] = axi;
+            ay[i] = ayi;
+        }
+    }
+}
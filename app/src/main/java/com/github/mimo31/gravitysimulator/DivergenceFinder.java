@@ -0,0 +1,97 @@
+package com.github.mimo31.gravitysimulator;
+
+/**
+ * Tools for finding where two runs of a simulation that should be identical stop being identical.
+ */
+class DivergenceFinder
+{
+    /**
+     * The first step after which two runs differ and the first object (in the order of the lists) that differs after it.
+     */
+    static class Divergence
+    {
+        final long step;
+
+        // id of the first differing object, -1 if the objects are the same and only the checksums differ
+        final long objectId;
+
+        Divergence(long step, long objectId)
+        {
+            this.step = step;
+            this.objectId = objectId;
+        }
+
+        @Override
+        public String toString()
+        {
+            return "The runs diverge after step " + this.step + (this.objectId == -1 ? "." : " at the object with id " + this.objectId + ".");
+        }
+    }
+
+    private DivergenceFinder()
+    {
+    }
+
+    /**
+     * Steps both spaces side by side and compares their checksums after every step.
+     * @return the first divergence or null if the spaces stay identical for all the steps
+     */
+    static Divergence runSideBySide(GravitySpace first, GravitySpace second, int steps, double deltaTime)
+    {
+        first.setChecksumsEnabled(true);
+        second.setChecksumsEnabled(true);
+        for (int step = 1; step <= steps; step++)
+        {
+            first.update(deltaTime, false);
+            second.update(deltaTime, false);
+            if (first.getChecksum() != second.getChecksum())
+            {
+                return new Divergence(step, findFirstDifferentObject(first, second));
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Compares the checksums recorded in two runs.
+     * @return the index of the first different checksum or -1 if one of the arrays is the beginning of the other one
+     */
+    static int findFirstDifferentChecksum(long[] first, long[] second)
+    {
+        for (int i = 0, n = Math.min(first.length, second.length); i < n; i++)
+        {
+            if (first[i] != second[i])
+            {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return the id of the first object whose id, position or velocity differs in the two spaces, -1 if there is no such object
+     */
+    static long findFirstDifferentObject(GravitySpace first, GravitySpace second)
+    {
+        int count = Math.min(first.getNumberOfObjects(), second.getNumberOfObjects());
+        for (int i = 0; i < count; i++)
+        {
+            GravitationalObject firstObject = first.getObject(i);
+            GravitationalObject secondObject = second.getObject(i);
+            if (firstObject.id != secondObject.id || !sameBits(firstObject.position, secondObject.position) || !sameBits(firstObject.velocity, secondObject.velocity))
+            {
+                return firstObject.id;
+            }
+        }
+        if (first.getNumberOfObjects() != second.getNumberOfObjects())
+        {
+            return first.getNumberOfObjects() > count ? first.getObject(count).id : second.getObject(count).id;
+        }
+        return -1;
+    }
+
+    private static boolean sameBits(Vector2d first, Vector2d second)
+    {
+        return Double.doubleToLongBits(first.x) == Double.doubleToLongBits(second.x) && Double.doubleToLongBits(first.y) == Double.doubleToLongBits(second.y);
+    }
+}
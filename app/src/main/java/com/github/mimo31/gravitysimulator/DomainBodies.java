@@ -0,0 +1,98 @@
+package com.github.mimo31.gravitysimulator;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Growable store of bodies in primitive arrays, used by the processes of a DomainSimulation.
+ */
+class DomainBodies
+{
+    long[] id = new long[16];
+    double[] x = new double[16];
+    double[] y = new double[16];
+    double[] vx = new double[16];
+    double[] vy = new double[16];
+    double[] mass = new double[16];
+    int count;
+
+    void add(long id, double x, double y, double vx, double vy, double mass)
+    {
+        if (this.count == this.id.length)
+        {
+            int capacity = this.count * 2;
+            this.id = Arrays.copyOf(this.id, capacity);
+            this.x = Arrays.copyOf(this.x, capacity);
+            this.y = Arrays.copyOf(this.y, capacity);
+            this.vx = Arrays.copyOf(this.vx, capacity);
+            this.vy = Arrays.copyOf(this.vy, capacity);
+            this.mass = Arrays.copyOf(this.mass, capacity);
+        }
+        this.id[this.count] = id;
+        this.x[this.count] = x;
+        this.y[this.count] = y;
+        this.vx[this.count] = vx;
+        this.vy[this.count] = vy;
+        this.mass[this.count] = mass;
+        this.count++;
+    }
+
+    /**
+     * Removes the body at the index by moving the last body to its place.
+     */
+    void remove(int index)
+    {
+        int last = --this.count;
+        this.id[index] = this.id[last];
+        this.x[index] = this.x[last];
+        this.y[index] = this.y[last];
+        this.vx[index] = this.vx[last];
+        this.vy[index] = this.vy[last];
+        this.mass[index] = this.mass[last];
+    }
+
+    void clear()
+    {
+        this.count = 0;
+    }
+
+    void write(DataOutputStream out, int index) throws IOException
+    {
+        out.writeLong(this.id[index]);
+        out.writeDouble(this.x[index]);
+        out.writeDouble(this.y[index]);
+        out.writeDouble(this.vx[index]);
+        out.writeDouble(this.vy[index]);
+        out.writeDouble(this.mass[index]);
+    }
+
+    /**
+     * Reads one body written by write and adds it.
+     */
+    void read(DataInputStream in) throws IOException
+    {
+        this.add(in.readLong(), in.readDouble(), in.readDouble(), in.readDouble(), in.readDouble(), in.readDouble());
+    }
+
+    void writeAll(DataOutputStream out) throws IOException
+    {
+        out.writeInt(this.count);
+        for (int i = 0; i < this.count; i++)
+        {
+            this.write(out, i);
+        }
+    }
+
+    /**
+     * Reads the bodies written by writeAll and adds them.
+     */
+    void readAll(DataInputStream in) throws IOException
+    {
+        for (int i = 0, n = in.readInt(); i < n; i++)
+        {
+            this.read(in);
+        }
+    }
+}
@@ -0,0 +1,323 @@
+package com.github.mimo31.gravitysimulator;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.Arrays;
+
+/**
+ * Runs a simulation split between several DomainWorker processes, each owning the bodies in one domain of the plane.
+ * <p>
+ * The protocol (all the numbers are written by DataOutputStream):
+ * <ul>
+ * <li>initialization, to the worker: delta time, domain, bodies (count first)</li>
+ * <li>every step, to the worker: COMMAND_STEP</li>
+ * <li>from the worker: load in ns, number of the bodies, bounding box, cell size and for every cell: number of the bodies,
+ * mass, center of mass and the x, y and mass of its bodies</li>
+ * <li>to the worker: the new domain and the point sources (count first, then x, y and mass)</li>
+ * <li>from the worker: the bodies that left its domain (count first)</li>
+ * <li>to the worker: the bodies that entered its domain (count first)</li>
+ * <li>at the end, to the worker: COMMAND_FINISH, from the worker: all its bodies (count first)</li>
+ * </ul>
+ * A cell of another worker is sent as a single source at its center of mass if it's small compared to its distance from the receiving worker's bodies,
+ * otherwise its bodies are sent one by one. Every few steps, the domains are recomputed so that the measured force computation time
+ * of the workers is about the same.
+ */
+class DomainCoordinator implements Closeable
+{
+    static final int COMMAND_STEP = 1;
+    static final int COMMAND_FINISH = 2;
+
+    // the domains are rebalanced after this many steps
+    private static final int REBALANCE_INTERVAL = 10;
+
+    private static final int CELL_COUNT = DomainWorker.CELLS * DomainWorker.CELLS;
+
+    private final int workers;
+    private final Socket[] sockets;
+    private final DataInputStream[] in;
+    private final DataOutputStream[] out;
+
+    // a cell is sent as a single source if its size is less than theta times its distance, 0 to always send the bodies
+    private final double theta;
+
+    private double[][] domains;
+    private long stepCount;
+
+    // the last summaries of the workers
+    private final long[] loads;
+    private final int[] bodyCounts;
+    private final double[][] boundingBoxes;
+    private final double[] cellSizes;
+    private final int[][] cellCounts;
+    private final double[][] cellMasses;
+    private final double[][] cellCentersX;
+    private final double[][] cellCentersY;
+
+    // x, y and mass of the bodies of each worker, ordered by cell
+    private final double[][] bodyData;
+
+    private final DomainBodies[] migrants;
+
+    /**
+     * Waits for the workers to connect and distributes the bodies between them.
+     */
+    DomainCoordinator(ServerSocket server, int workers, DomainBodies bodies, double deltaTime, double theta) throws IOException
+    {
+        this.workers = workers;
+        this.theta = theta;
+        this.sockets = new Socket[workers];
+        this.in = new DataInputStream[workers];
+        this.out = new DataOutputStream[workers];
+        this.loads = new long[workers];
+        this.bodyCounts = new int[workers];
+        this.boundingBoxes = new double[workers][4];
+        this.cellSizes = new double[workers];
+        this.cellCounts = new int[workers][CELL_COUNT];
+        this.cellMasses = new double[workers][CELL_COUNT];
+        this.cellCentersX = new double[workers][CELL_COUNT];
+        this.cellCentersY = new double[workers][CELL_COUNT];
+        this.bodyData = new double[workers][0];
+        this.migrants = new DomainBodies[workers];
+        for (int w = 0; w < workers; w++)
+        {
+            this.sockets[w] = server.accept();
+            this.sockets[w].setTcpNoDelay(true);
+            this.in[w] = new DataInputStream(new BufferedInputStream(this.sockets[w].getInputStream()));
+            this.out[w] = new DataOutputStream(new BufferedOutputStream(this.sockets[w].getOutputStream()));
+            this.migrants[w] = new DomainBodies();
+        }
+
+        double[] weights = new double[bodies.count];
+        Arrays.fill(weights, 1);
+        this.domains = OrthogonalBisection.split(bodies.x, bodies.y, weights, bodies.count, workers);
+        for (int i = 0; i < bodies.count; i++)
+        {
+            this.migrants[OrthogonalBisection.findDomain(this.domains, bodies.x[i], bodies.y[i])].add(bodies.id[i], bodies.x[i], bodies.y[i], bodies.vx[i], bodies.vy[i], bodies.mass[i]);
+        }
+        for (int w = 0; w < workers; w++)
+        {
+            this.out[w].writeDouble(deltaTime);
+            DomainWorker.writeDomain(this.out[w], this.domains[w]);
+            this.migrants[w].writeAll(this.out[w]);
+            this.migrants[w].clear();
+            this.out[w].flush();
+        }
+    }
+
+    void step() throws IOException
+    {
+        for (int w = 0; w < this.workers; w++)
+        {
+            this.out[w].writeInt(COMMAND_STEP);
+            this.out[w].flush();
+        }
+        for (int w = 0; w < this.workers; w++)
+        {
+            this.readSummary(w);
+        }
+        if (this.stepCount != 0 && this.stepCount % REBALANCE_INTERVAL == 0)
+        {
+            this.rebalance();
+        }
+        for (int w = 0; w < this.workers; w++)
+        {
+            DomainWorker.writeDomain(this.out[w], this.domains[w]);
+            this.writeSources(w);
+            this.out[w].flush();
+        }
+
+        // route the bodies that left their domains
+        for (int w = 0; w < this.workers; w++)
+        {
+            for (int i = 0, n = this.in[w].readInt(); i < n; i++)
+            {
+                long id = this.in[w].readLong();
+                double x = this.in[w].readDouble();
+                double y = this.in[w].readDouble();
+                double vx = this.in[w].readDouble();
+                double vy = this.in[w].readDouble();
+                double mass = this.in[w].readDouble();
+                this.migrants[OrthogonalBisection.findDomain(this.domains, x, y)].add(id, x, y, vx, vy, mass);
+            }
+        }
+        for (int w = 0; w < this.workers; w++)
+        {
+            this.migrants[w].writeAll(this.out[w]);
+            this.migrants[w].clear();
+            this.out[w].flush();
+        }
+        this.stepCount++;
+    }
+
+    private void readSummary(int w) throws IOException
+    {
+        DataInputStream input = this.in[w];
+        this.loads[w] = input.readLong();
+        this.bodyCounts[w] = input.readInt();
+        for (int i = 0; i < 4; i++)
+        {
+            this.boundingBoxes[w][i] = input.readDouble();
+        }
+        this.cellSizes[w] = input.readDouble();
+        if (this.bodyData[w].length < 3 * this.bodyCounts[w])
+        {
+            this.bodyData[w] = new double[3 * this.bodyCounts[w]];
+        }
+        int index = 0;
+        for (int cell = 0; cell < CELL_COUNT; cell++)
+        {
+            this.cellCounts[w][cell] = input.readInt();
+            this.cellMasses[w][cell] = input.readDouble();
+            this.cellCentersX[w][cell] = input.readDouble();
+            this.cellCentersY[w][cell] = input.readDouble();
+            for (int i = 0; i < 3 * this.cellCounts[w][cell]; i++)
+            {
+                this.bodyData[w][index++] = input.readDouble();
+            }
+        }
+    }
+
+    /**
+     * Recomputes the domains giving each body the average force computation time of its worker as its weight.
+     */
+    private void rebalance()
+    {
+        int count = 0;
+        for (int w = 0; w < this.workers; w++)
+        {
+            count += this.bodyCounts[w];
+        }
+        double[] x = new double[count];
+        double[] y = new double[count];
+        double[] weights = new double[count];
+        int index = 0;
+        for (int w = 0; w < this.workers; w++)
+        {
+            double weight = Math.max(this.loads[w], 1) / (double) this.bodyCounts[w];
+            for (int i = 0; i < this.bodyCounts[w]; i++)
+            {
+                x[index] = this.bodyData[w][3 * i];
+                y[index] = this.bodyData[w][3 * i + 1];
+                weights[index++] = weight;
+            }
+        }
+        this.domains = OrthogonalBisection.split(x, y, weights, count, this.workers);
+    }
+
+    /**
+     * Sends the sources representing the bodies of all the other workers to the worker.
+     */
+    private void writeSources(int receiver) throws IOException
+    {
+        DataOutputStream output = this.out[receiver];
+        if (this.bodyCounts[receiver] == 0)
+        {
+            output.writeInt(0);
+            return;
+        }
+        double[] box = this.boundingBoxes[receiver];
+
+        // count the sources first
+        int sources = 0;
+        for (int w = 0; w < this.workers; w++)
+        {
+            if (w == receiver)
+            {
+                continue;
+            }
+            for (int cell = 0; cell < CELL_COUNT; cell++)
+            {
+                if (this.cellCounts[w][cell] != 0)
+                {
+                    sources += this.isFar(w, cell, box) ? 1 : this.cellCounts[w][cell];
+                }
+            }
+        }
+        output.writeInt(sources);
+
+        for (int w = 0; w < this.workers; w++)
+        {
+            if (w == receiver)
+            {
+                continue;
+            }
+            int index = 0;
+            for (int cell = 0; cell < CELL_COUNT; cell++)
+            {
+                int cellCount = this.cellCounts[w][cell];
+                if (cellCount == 0)
+                {
+                    continue;
+                }
+                if (this.isFar(w, cell, box))
+                {
+                    output.writeDouble(this.cellCentersX[w][cell]);
+                    output.writeDouble(this.cellCentersY[w][cell]);
+                    output.writeDouble(this.cellMasses[w][cell]);
+                }
+                else
+                {
+                    for (int i = 0; i < 3 * cellCount; i++)
+                    {
+                        output.writeDouble(this.bodyData[w][index + i]);
+                    }
+                }
+                index += 3 * cellCount;
+            }
+        }
+    }
+
+    /**
+     * @return whether the cell of the worker may be replaced by a single source for the bodies in the box
+     */
+    private boolean isFar(int w, int cell, double[] box)
+    {
+        double x = this.cellCentersX[w][cell];
+        double y = this.cellCentersY[w][cell];
+        double dx = Math.max(Math.max(box[0] - x, x - box[2]), 0);
+        double dy = Math.max(Math.max(box[1] - y, y - box[3]), 0);
+        double distance = Math.sqrt(dx * dx + dy * dy);
+        return this.cellSizes[w] < this.theta * distance;
+    }
+
+    /**
+     * Stops the workers and collects their bodies.
+     */
+    DomainBodies finish() throws IOException
+    {
+        DomainBodies bodies = new DomainBodies();
+        for (int w = 0; w < this.workers; w++)
+        {
+            this.out[w].writeInt(COMMAND_FINISH);
+            this.out[w].flush();
+        }
+        for (int w = 0; w < this.workers; w++)
+        {
+            bodies.readAll(this.in[w]);
+        }
+        return bodies;
+    }
+
+    long getStepCount()
+    {
+        return this.stepCount;
+    }
+
+    @Override
+    public void close() throws IOException
+    {
+        for (Socket socket : this.sockets)
+        {
+            if (socket != null)
+            {
+                socket.close();
+            }
+        }
+    }
+}
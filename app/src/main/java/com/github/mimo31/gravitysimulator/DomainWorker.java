@@ -0,0 +1,275 @@
+package com.github.mimo31.gravitysimulator;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.Socket;
+
+/**
+ * A process of a DomainSimulation that owns the bodies in one domain of the plane.
+ * <p>
+ * In every step, the worker sends a summary of its bodies grouped into cells to the coordinator and receives the point sources
+ * representing the bodies of the other domains (either the bodies themselves or the centers of mass of whole cells).
+ * It then moves its bodies, sends away the ones that have left its domain and adopts the ones that have entered it.
+ * The protocol is described in DomainCoordinator.
+ * <p>
+ * Arguments: host port
+ */
+class DomainWorker
+{
+    // the bodies are grouped into this many cells along each side of their bounding box
+    static final int CELLS = 8;
+
+    private final DataInputStream in;
+    private final DataOutputStream out;
+
+    private final DomainBodies bodies = new DomainBodies();
+
+    // the domain the worker currently owns
+    private double[] domain;
+
+    private double deltaTime;
+
+    // time of the last force computation in ns
+    private long load;
+
+    // point sources from the other domains
+    private double[] sourceX = new double[0];
+    private double[] sourceY = new double[0];
+    private double[] sourceMass = new double[0];
+    private int sourceCount;
+
+    // the bodies sorted by cell
+    private int[] cellOf = new int[0];
+    private int[] sortedBodies = new int[0];
+    private final int[] cellStarts = new int[CELLS * CELLS + 1];
+
+    DomainWorker(Socket socket) throws IOException
+    {
+        socket.setTcpNoDelay(true);
+        this.in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+        this.out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+    }
+
+    public static void main(String[] args) throws IOException
+    {
+        Socket socket = new Socket(args[0], Integer.parseInt(args[1]));
+        try
+        {
+            new DomainWorker(socket).run();
+        }
+        finally
+        {
+            socket.close();
+        }
+    }
+
+    void run() throws IOException
+    {
+        // initialization
+        this.deltaTime = this.in.readDouble();
+        this.domain = readDomain(this.in);
+        this.bodies.readAll(this.in);
+
+        while (true)
+        {
+            int command = this.in.readInt();
+            if (command == DomainCoordinator.COMMAND_FINISH)
+            {
+                this.bodies.writeAll(this.out);
+                this.out.flush();
+                return;
+            }
+            this.writeSummary();
+            this.domain = readDomain(this.in);
+            this.readSources();
+            this.step();
+            this.exchangeMigrants();
+        }
+    }
+
+    /**
+     * Sends the load, the bounding box of the bodies and the cells with their bodies.
+     */
+    private void writeSummary() throws IOException
+    {
+        DomainBodies b = this.bodies;
+        double minX = Double.POSITIVE_INFINITY;
+        double minY = Double.POSITIVE_INFINITY;
+        double maxX = Double.NEGATIVE_INFINITY;
+        double maxY = Double.NEGATIVE_INFINITY;
+        for (int i = 0; i < b.count; i++)
+        {
+            minX = Math.min(minX, b.x[i]);
+            minY = Math.min(minY, b.y[i]);
+            maxX = Math.max(maxX, b.x[i]);
+            maxY = Math.max(maxY, b.y[i]);
+        }
+        double cellSize = Math.max(Math.max(maxX - minX, maxY - minY) / CELLS, Double.MIN_NORMAL);
+
+        // counting sort of the bodies by cell
+        if (this.cellOf.length < b.count)
+        {
+            this.cellOf = new int[b.count];
+            this.sortedBodies = new int[b.count];
+        }
+        int[] cellCounts = new int[CELLS * CELLS];
+        for (int i = 0; i < b.count; i++)
+        {
+            int column = Math.min((int) ((b.x[i] - minX) / cellSize), CELLS - 1);
+            int row = Math.min((int) ((b.y[i] - minY) / cellSize), CELLS - 1);
+            this.cellOf[i] = row * CELLS + column;
+            cellCounts[this.cellOf[i]]++;
+        }
+        this.cellStarts[0] = 0;
+        for (int cell = 0; cell < CELLS * CELLS; cell++)
+        {
+            this.cellStarts[cell + 1] = this.cellStarts[cell] + cellCounts[cell];
+        }
+        int[] positions = this.cellStarts.clone();
+        for (int i = 0; i < b.count; i++)
+        {
+            this.sortedBodies[positions[this.cellOf[i]]++] = i;
+        }
+
+        this.out.writeLong(this.load);
+        this.out.writeInt(b.count);
+        this.out.writeDouble(minX);
+        this.out.writeDouble(minY);
+        this.out.writeDouble(maxX);
+        this.out.writeDouble(maxY);
+        this.out.writeDouble(cellSize);
+        for (int cell = 0; cell < CELLS * CELLS; cell++)
+        {
+            double mass = 0;
+            double massX = 0;
+            double massY = 0;
+            for (int k = this.cellStarts[cell]; k < this.cellStarts[cell + 1]; k++)
+            {
+                int i = this.sortedBodies[k];
+                mass += b.mass[i];
+                massX += b.mass[i] * b.x[i];
+                massY += b.mass[i] * b.y[i];
+            }
+            this.out.writeInt(this.cellStarts[cell + 1] - this.cellStarts[cell]);
+            this.out.writeDouble(mass);
+            this.out.writeDouble(mass == 0 ? 0 : massX / mass);
+            this.out.writeDouble(mass == 0 ? 0 : massY / mass);
+            for (int k = this.cellStarts[cell]; k < this.cellStarts[cell + 1]; k++)
+            {
+                int i = this.sortedBodies[k];
+                this.out.writeDouble(b.x[i]);
+                this.out.writeDouble(b.y[i]);
+                this.out.writeDouble(b.mass[i]);
+            }
+        }
+        this.out.flush();
+    }
+
+    private void readSources() throws IOException
+    {
+        this.sourceCount = this.in.readInt();
+        if (this.sourceX.length < this.sourceCount)
+        {
+            this.sourceX = new double[this.sourceCount];
+            this.sourceY = new double[this.sourceCount];
+            this.sourceMass = new double[this.sourceCount];
+        }
+        for (int i = 0; i < this.sourceCount; i++)
+        {
+            this.sourceX[i] = this.in.readDouble();
+            this.sourceY[i] = this.in.readDouble();
+            this.sourceMass[i] = this.in.readDouble();
+        }
+    }
+
+    /**
+     * Accelerates the bodies by the exact attraction of the local bodies and by the received sources and then moves them.
+     */
+    private void step()
+    {
+        long start = System.nanoTime();
+        DomainBodies b = this.bodies;
+        for (int i = 0; i < b.count; i++)
+        {
+            double xi = b.x[i];
+            double yi = b.y[i];
+            double ax = 0;
+            double ay = 0;
+            for (int j = 0; j < b.count; j++)
+            {
+                if (j != i && b.mass[j] != 0)
+                {
+                    double dx = b.x[j] - xi;
+                    double dy = b.y[j] - yi;
+                    double distanceSquared = dx * dx + dy * dy;
+                    double factor = b.mass[j] / (distanceSquared * Math.sqrt(distanceSquared));
+                    ax += dx * factor;
+                    ay += dy * factor;
+                }
+            }
+            for (int j = 0; j < this.sourceCount; j++)
+            {
+                double dx = this.sourceX[j] - xi;
+                double dy = this.sourceY[j] - yi;
+                double distanceSquared = dx * dx + dy * dy;
+                double factor = this.sourceMass[j] / (distanceSquared * Math.sqrt(distanceSquared));
+                ax += dx * factor;
+                ay += dy * factor;
+            }
+            if (b.mass[i] != 0)
+            {
+                b.vx[i] += ax * this.deltaTime;
+                b.vy[i] += ay * this.deltaTime;
+            }
+        }
+        this.load = System.nanoTime() - start;
+        for (int i = 0; i < b.count; i++)
+        {
+            b.x[i] += b.vx[i] * this.deltaTime;
+            b.y[i] += b.vy[i] * this.deltaTime;
+        }
+    }
+
+    /**
+     * Sends the bodies that are no longer in the domain and receives the bodies that have entered it.
+     */
+    private void exchangeMigrants() throws IOException
+    {
+        DomainBodies b = this.bodies;
+        int emigrants = 0;
+        for (int i = 0; i < b.count; i++)
+        {
+            if (!OrthogonalBisection.contains(this.domain, b.x[i], b.y[i]))
+            {
+                emigrants++;
+            }
+        }
+        this.out.writeInt(emigrants);
+        for (int i = b.count - 1; i >= 0; i--)
+        {
+            if (!OrthogonalBisection.contains(this.domain, b.x[i], b.y[i]))
+            {
+                b.write(this.out, i);
+                b.remove(i);
+            }
+        }
+        this.out.flush();
+        b.readAll(this.in);
+    }
+
+    static double[] readDomain(DataInputStream in) throws IOException
+    {
+        return new double[]{in.readDouble(), in.readDouble(), in.readDouble(), in.readDouble()};
+    }
+
+    static void writeDomain(DataOutputStream out, double[] domain) throws IOException
+    {
+        for (int i = 0; i < 4; i++)
+        {
+            out.writeDouble(domain[i]);
+        }
+    }
+}
@@ -0,0 +1,251 @@
+package com.github.mimo31.gravitysimulator;
+
+import java.io.BufferedWriter;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs many perturbed copies of a GravitySpace to study how stable the scene is.
+ * <p>
+ * Every member is a copy of the base space changed by a Perturbation with its own seed, so any member can be run again alone.
+ * The members are single-threaded and run concurrently on a fixed pool, one member per thread, so the throughput grows with the number of the cores.
+ * A member's copy is only created when a thread starts it, so the memory use is bounded by the pool size.
+ * The summary of every member is written as a CSV line as soon as it and all the members before it are finished.
+ * <p>
+ * Arguments of main: [scene file] [members] [steps] [delta time] [velocity sigma] [output file] [escape distance]
+ * The objects farther than the escape distance from the barycenter that can't come back are demoted and counted as the escapers.
+ */
+class EnsembleRunner
+{
+    static final String HEADER = "member,seed,collisions,escapers,energyDrift,stateHash";
+
+    // the escape distance of main if it's not given
+    private static final double DEFAULT_ESCAPE_DISTANCE = 100000;
+
+    /**
+     * Changes a member before it's run.
+     */
+    interface Perturbation
+    {
+        void perturb(GravitySpace member, Random random);
+    }
+
+    /**
+     * Summary of a finished member.
+     */
+    static class MemberResult
+    {
+        final int member;
+        final long seed;
+        final long collisions;
+        final int escapers;
+
+        // change of the total energy relative to the initial energy
+        final double energyDrift;
+
+        // GravitySpace.computeStateHash of the final state
+        final long stateHash;
+
+        MemberResult(int member, long seed, long collisions, int escapers, double energyDrift, long stateHash)
+        {
+            this.member = member;
+            this.seed = seed;
+            this.collisions = collisions;
+            this.escapers = escapers;
+            this.energyDrift = energyDrift;
+            this.stateHash = stateHash;
+        }
+
+        String toCsvLine()
+        {
+            return this.member + "," + this.seed + "," + this.collisions + "," + this.escapers + "," + this.energyDrift + "," + Long.toHexString(this.stateHash);
+        }
+    }
+
+    private final GravitySpace base;
+    private final int threadCount;
+
+    /**
+     * @param base the space the members are copied from, mustn't be changed while the ensemble runs
+     */
+    EnsembleRunner(GravitySpace base, int threadCount)
+    {
+        this.base = base;
+        this.threadCount = Math.max(threadCount, 1);
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException
+    {
+        if (args.length < 1)
+        {
+            System.out.println("Arguments: [scene file] [members] [steps] [delta time] [velocity sigma] [output file] [escape distance]");
+            return;
+        }
+        int members = args.length > 1 ? Integer.parseInt(args[1]) : 100;
+        int steps = args.length > 2 ? Integer.parseInt(args[2]) : 1000;
+        double deltaTime = args.length > 3 ? Double.parseDouble(args[3]) : 1 / 8.0;
+        double sigma = args.length > 4 ? Double.parseDouble(args[4]) : 0.01;
+        String output = args.length > 5 ? args[5] : "ensemble.csv";
+        double escapeDistance = args.length > 6 ? Double.parseDouble(args[6]) : DEFAULT_ESCAPE_DISTANCE;
+
+        GravitySpace base = new GravitySpace();
+        Reader reader = new InputStreamReader(new FileInputStream(args[0]), "UTF-8");
+        try
+        {
+            SceneFormat.read(reader, SceneFormat.forFileName(args[0]), base);
+        }
+        finally
+        {
+            reader.close();
+        }
+        // copied to every member
+        base.setEscaperPolicy(new EscaperPolicy(EscaperPolicy.Action.DEMOTE, escapeDistance));
+        EnsembleRunner runner = new EnsembleRunner(base, Runtime.getRuntime().availableProcessors());
+        long start = System.nanoTime();
+        Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(output), "UTF-8"));
+        try
+        {
+            runner.run(members, 1, steps, deltaTime, velocityJitter(sigma), writer);
+        }
+        finally
+        {
+            writer.close();
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.println(members + " members of " + base.getNumberOfObjects() + " objects in " + seconds + " s, "
+                + (long) (members * (double) steps / seconds) + " member steps per second.");
+    }
+
+    /**
+     * @return perturbation adding a normally distributed random vector with the standard deviation sigma to the velocity of every moving object
+     */
+    static Perturbation velocityJitter(final double sigma)
+    {
+        return new Perturbation()
+        {
+            @Override
+            public void perturb(GravitySpace member, Random random)
+            {
+                for (int i = 0, n = member.getNumberOfObjects(); i < n; i++)
+                {
+                    GravitationalObject object = member.getObject(i);
+                    if (!object.frozen)
+                    {
+                        member.setVelocity(object, object.velocity.add(new Vector2d(random.nextGaussian() * sigma, random.nextGaussian() * sigma)));
+                    }
+                }
+            }
+        };
+    }
+
+    /**
+     * @return the seed of the member, different members get unrelated seeds
+     */
+    static long getMemberSeed(long seed, int member)
+    {
+        // the finalizer of SplitMix64
+        long z = seed + (member + 1) * 0x9E3779B97F4A7C15L;
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    /**
+     * Runs the members and writes the header and the line of every member in the order of the members.
+     * @param out where the results are written, flushed after every line, null to only return them
+     * @return the results in the order of the members
+     */
+    List<MemberResult> run(int members, final long seed, final int steps, final double deltaTime, final Perturbation perturbation, Writer out)
+            throws IOException, InterruptedException
+    {
+        ExecutorService pool = Executors.newFixedThreadPool(this.threadCount, new ThreadFactory()
+        {
+            private final AtomicInteger number = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable runnable)
+            {
+                Thread thread = new Thread(runnable, "EnsembleRunner-" + this.number.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        try
+        {
+            List<Future<MemberResult>> futures = new ArrayList<>(members);
+            for (int i = 0; i < members; i++)
+            {
+                final int member = i;
+                futures.add(pool.submit(new Callable<MemberResult>()
+                {
+                    @Override
+                    public MemberResult call()
+                    {
+                        return EnsembleRunner.this.runMember(member, getMemberSeed(seed, member), steps, deltaTime, perturbation);
+                    }
+                }));
+            }
+            if (out != null)
+            {
+                out.write(HEADER + "\n");
+            }
+            List<MemberResult> results = new ArrayList<>(members);
+            for (int i = 0; i < members; i++)
+            {
+                MemberResult result;
+                try
+                {
+                    result = futures.get(i).get();
+                }
+                catch (ExecutionException e)
+                {
+                    throw new IllegalStateException("Member " + i + " failed.", e.getCause());
+                }
+                results.add(result);
+                if (out != null)
+                {
+                    out.write(result.toCsvLine() + "\n");
+                    out.flush();
+                }
+            }
+            return results;
+        }
+        finally
+        {
+            pool.shutdownNow();
+        }
+    }
+
+    /**
+     * Creates and runs one member on the calling thread.
+     */
+    MemberResult runMember(int member, long memberSeed, int steps, double deltaTime, Perturbation perturbation)
+    {
+        GravitySpace space = this.base.copy();
+        space.setTrailsEnabled(false);
+        perturbation.perturb(space, new Random(memberSeed));
+        double initialEnergy = space.getTotalEnergy();
+        for (int step = 0; step < steps; step++)
+        {
+            space.update(deltaTime, false);
+        }
+        double energyDrift = initialEnergy == 0 ? 0 : (space.getTotalEnergy() - initialEnergy) / Math.abs(initialEnergy);
+        int escapers = space.getEscaperPolicy() == null ? 0 : space.getEscaperPolicy().getNumberOfEscapers();
+        return new MemberResult(member, memberSeed, space.getNumberOfCollisions(), escapers, energyDrift, space.computeStateHash());
+    }
+}
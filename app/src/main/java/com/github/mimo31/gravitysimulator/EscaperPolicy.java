@@ -0,0 +1,116 @@
+package com.github.mimo31.gravitysimulator;
+
+/**
+ * Decides which objects of a GravitySpace have escaped from the system and what happens to them.
+ * <p>
+ * An object escapes when it is farther than the minimum distance from the barycenter of the system, moves away from it
+ * and its energy relative to the barycenter is positive, so the rest of the system can't pull it back.
+ * The escaped objects are removed, frozen (they stop and no longer attract anything nor collide)
+ * or demoted to tracers (they keep moving in the field of the system, but don't attract anything nor collide).
+ * Either way they stop being sources in the ForceSolver, and the frozen and removed ones stop being computed at all.
+ * <p>
+ * The policy counts the pair interactions the ForceSolver has been spared compared to keeping all the escaped objects.
+ */
+class EscaperPolicy
+{
+    enum Action
+    {
+        REMOVE, FREEZE, DEMOTE
+    }
+
+    // number of the steps between two checks of the objects
+    static final int CHECK_INTERVAL = 16;
+
+    private final Action action;
+    private final double minDistance;
+
+    // number of the objects that have escaped
+    private int escapers;
+
+    // pair interactions of the ForceSolver that have been spared and those that have been computed
+    private long savedInteractions;
+    private long computedInteractions;
+
+    /**
+     * @param minDistance the distance from the barycenter the objects have to be farther than to escape
+     */
+    EscaperPolicy(Action action, double minDistance)
+    {
+        this.action = action;
+        this.minDistance = minDistance;
+    }
+
+    /**
+     * @return a policy with the same settings, but no escapers counted yet
+     */
+    EscaperPolicy copy()
+    {
+        return new EscaperPolicy(this.action, this.minDistance);
+    }
+
+    Action getAction()
+    {
+        return this.action;
+    }
+
+    boolean isCheckDue(long step)
+    {
+        return step % CHECK_INTERVAL == 0;
+    }
+
+    /**
+     * @param x position relative to the barycenter
+     * @param velocityX velocity relative to the barycenter
+     * @param systemMass mass of the rest of the system
+     */
+    boolean isEscaping(double x, double y, double velocityX, double velocityY, double systemMass)
+    {
+        double distanceSquared = x * x + y * y;
+        if (distanceSquared <= this.minDistance * this.minDistance || x * velocityX + y * velocityY <= 0)
+        {
+            return false;
+        }
+
+        // kinetic minus potential energy per unit of mass, the gravitational constant is 1
+        return (velocityX * velocityX + velocityY * velocityY) / 2 > systemMass / Math.sqrt(distanceSquared);
+    }
+
+    void recordEscaper()
+    {
+        this.escapers++;
+    }
+
+    /**
+     * Counts the interactions of one step.
+     * @param computed number of the bodies the ForceSolver has computed the accelerations of
+     * @param sources number of those bodies that attract the others
+     */
+    void recordStep(int computed, int sources)
+    {
+        // if they had been kept, all the escapers would attract the others and all but the demoted ones would be computed in addition
+        long keptComputed = computed + (this.action == Action.DEMOTE ? 0 : this.escapers);
+        long keptSources = sources + this.escapers;
+        long interactions = (long) computed * sources;
+        this.computedInteractions += interactions;
+        this.savedInteractions += keptComputed * keptSources - interactions;
+    }
+
+    int getNumberOfEscapers()
+    {
+        return this.escapers;
+    }
+
+    long getSavedInteractions()
+    {
+        return this.savedInteractions;
+    }
+
+    /**
+     * @return the fraction of the interactions that would have been computed with all the escaped objects, but have been spared
+     */
+    double getSavedFraction()
+    {
+        long total = this.savedInteractions + this.computedInteractions;
+        return total == 0 ? 0 : this.savedInteractions / (double) total;
+    }
+}
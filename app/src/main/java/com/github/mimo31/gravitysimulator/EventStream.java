@@ -0,0 +1,324 @@
+package com.github.mimo31.gravitysimulator;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Publishes what happens to the objects of a GravitySpace as SimulationEvents, so the analytics don't have to compare the objects between the steps.
+ * <p>
+ * The space records the events of a step into the pending batch of the stream and publishes the whole batch when the step ends,
+ * the events recorded between the steps, e.g. the objects added by the user, go out with the batch of the next step.
+ * Every Subscription has its own bounded ring with the space as the only producer and the thread of the subscriber as the only consumer,
+ * so neither of them ever takes a lock or waits. A batch that doesn't fit into the free part of a ring is dropped for that subscriber only
+ * and counted, so a slow subscriber loses whole steps, but it never slows down the steps nor the other subscribers.
+ * <p>
+ * The stream belongs to a single GravitySpace and is only recorded to and published under its monitor.
+ */
+class EventStream
+{
+    // capacity of the rings of the subscriptions if none is specified
+    static final int DEFAULT_CAPACITY = 4096;
+
+    /**
+     * Receives the events polled from a Subscription.
+     */
+    interface Handler
+    {
+        /**
+         * @param event valid only during the call
+         */
+        void onEvent(SimulationEvent event);
+    }
+
+    /**
+     * The ring of the events published to a single subscriber.
+     */
+    static class Subscription
+    {
+        private final int mask;
+        private final int[] types;
+        private final long[] steps;
+        private final long[] ids1;
+        private final long[] ids2;
+        private final double[] x;
+        private final double[] y;
+        private final double[] values;
+
+        // number of the events taken by the consumer, written only by the consumer
+        private final AtomicLong head = new AtomicLong();
+
+        // number of the events published to the ring, written only by the producer
+        private final AtomicLong tail = new AtomicLong();
+
+        // the head as the producer has seen it last time, so it reads the head written by the consumer only when the ring seems full
+        private long cachedHead;
+
+        // the batches and their events that haven't fit into the ring
+        private final AtomicLong droppedBatches = new AtomicLong();
+        private final AtomicLong droppedEvents = new AtomicLong();
+
+        // the event filled for the Handler, only used by the consumer
+        private final SimulationEvent event = new SimulationEvent();
+
+        private Subscription(int capacity)
+        {
+            int size = Integer.highestOneBit(Math.max(capacity, 1) - 1) << 1;
+            this.mask = Math.max(size, 1) - 1;
+            this.types = new int[this.mask + 1];
+            this.steps = new long[this.mask + 1];
+            this.ids1 = new long[this.mask + 1];
+            this.ids2 = new long[this.mask + 1];
+            this.x = new double[this.mask + 1];
+            this.y = new double[this.mask + 1];
+            this.values = new double[this.mask + 1];
+        }
+
+        /**
+         * @return the number of the events the ring can hold, the requested capacity rounded up to a power of two
+         */
+        int getCapacity()
+        {
+            return this.mask + 1;
+        }
+
+        /**
+         * Passes the published events to the handler in the order they have been recorded. Called only by the consumer.
+         * @param maxEvents the most events to pass
+         * @return the number of the events passed
+         */
+        int poll(Handler handler, int maxEvents)
+        {
+            long head = this.head.get();
+            int available = (int) Math.min(this.tail.get() - head, maxEvents);
+            SimulationEvent.Type[] types = SimulationEvent.Type.values();
+            for (int i = 0; i < available; i++)
+            {
+                int index = (int) (head + i) & this.mask;
+                this.event.type = types[this.types[index]];
+                this.event.step = this.steps[index];
+                this.event.id1 = this.ids1[index];
+                this.event.id2 = this.ids2[index];
+                this.event.x = this.x[index];
+                this.event.y = this.y[index];
+                this.event.value = this.values[index];
+                handler.onEvent(this.event);
+            }
+
+            // the producer may reuse the slots only after they have been read
+            this.head.lazySet(head + available);
+            return available;
+        }
+
+        /**
+         * @return the number of the published events that haven't been polled yet
+         */
+        int size()
+        {
+            return (int) (this.tail.get() - this.head.get());
+        }
+
+        long getDroppedBatches()
+        {
+            return this.droppedBatches.get();
+        }
+
+        long getDroppedEvents()
+        {
+            return this.droppedEvents.get();
+        }
+
+        /**
+         * Copies the whole batch to the ring or drops it if there isn't enough free space. Called only by the producer.
+         */
+        private void offer(EventStream batch, long step)
+        {
+            int count = batch.pendingCount;
+            long tail = this.tail.get();
+            if (tail + count - this.cachedHead > this.mask + 1)
+            {
+                this.cachedHead = this.head.get();
+                if (tail + count - this.cachedHead > this.mask + 1)
+                {
+                    this.droppedBatches.incrementAndGet();
+                    this.droppedEvents.addAndGet(count);
+                    return;
+                }
+            }
+            for (int i = 0; i < count; i++)
+            {
+                int index = (int) (tail + i) & this.mask;
+                this.types[index] = batch.pendingTypes[i];
+                this.steps[index] = step;
+                this.ids1[index] = batch.pendingIds1[i];
+                this.ids2[index] = batch.pendingIds2[i];
+                this.x[index] = batch.pendingX[i];
+                this.y[index] = batch.pendingY[i];
+                this.values[index] = batch.pendingValues[i];
+            }
+
+            // the consumer sees the whole batch at once and only after it has been written
+            this.tail.lazySet(tail + count);
+        }
+    }
+
+    // the surfaces of the objects closer than this are reported as close approaches, 0 if they aren't reported
+    private final double approachDistance;
+
+    private final List<Subscription> subscriptions = new CopyOnWriteArrayList<>();
+
+    // the events recorded since the last batch has been published
+    private int pendingCount;
+    private int[] pendingTypes = new int[64];
+    private long[] pendingIds1 = new long[64];
+    private long[] pendingIds2 = new long[64];
+    private double[] pendingX = new double[64];
+    private double[] pendingY = new double[64];
+    private double[] pendingValues = new double[64];
+
+    // the pairs of the ids that have been close in the current and in the previous collision pass, an approach is reported only when it starts
+    private Set<Long> closePairs = new HashSet<>();
+    private Set<Long> previousClosePairs = new HashSet<>();
+
+    /**
+     * @param approachDistance the distance of the surfaces of two objects below which they are reported as approaching each other, 0 not to report the approaches
+     */
+    EventStream(double approachDistance)
+    {
+        this.approachDistance = approachDistance;
+    }
+
+    double getApproachDistance()
+    {
+        return this.approachDistance;
+    }
+
+    /**
+     * Adds a subscriber with its own ring, it receives the batches published from now on. May be called from any thread.
+     * @param capacity the number of the events the ring can hold, it's rounded up to a power of two
+     */
+    Subscription subscribe(int capacity)
+    {
+        Subscription subscription = new Subscription(capacity);
+        this.subscriptions.add(subscription);
+        return subscription;
+    }
+
+    /**
+     * Stops publishing to the subscription. May be called from any thread.
+     */
+    void unsubscribe(Subscription subscription)
+    {
+        this.subscriptions.remove(subscription);
+    }
+
+    /**
+     * @return whether anybody receives the events, so they are worth recording
+     */
+    boolean hasSubscribers()
+    {
+        return !this.subscriptions.isEmpty();
+    }
+
+    /**
+     * Adds an event to the pending batch, nothing is recorded while there are no subscribers.
+     * @param id2 -1 if the event has only one object
+     */
+    void record(SimulationEvent.Type type, long id1, long id2, double x, double y, double value)
+    {
+        if (this.subscriptions.isEmpty())
+        {
+            return;
+        }
+        if (this.pendingCount == this.pendingTypes.length)
+        {
+            int capacity = this.pendingCount * 2;
+            this.pendingTypes = Arrays.copyOf(this.pendingTypes, capacity);
+            this.pendingIds1 = Arrays.copyOf(this.pendingIds1, capacity);
+            this.pendingIds2 = Arrays.copyOf(this.pendingIds2, capacity);
+            this.pendingX = Arrays.copyOf(this.pendingX, capacity);
+            this.pendingY = Arrays.copyOf(this.pendingY, capacity);
+            this.pendingValues = Arrays.copyOf(this.pendingValues, capacity);
+        }
+        int i = this.pendingCount++;
+        this.pendingTypes[i] = type.ordinal();
+        this.pendingIds1[i] = id1;
+        this.pendingIds2[i] = id2;
+        this.pendingX[i] = x;
+        this.pendingY[i] = y;
+        this.pendingValues[i] = value;
+    }
+
+    /**
+     * Records a close approach of the objects unless they have already been close in the previous collision pass.
+     * @param distance the distance of their surfaces, at most the approach distance
+     */
+    void recordApproach(GravitationalObject object1, GravitationalObject object2, double distance)
+    {
+        if (this.subscriptions.isEmpty())
+        {
+            return;
+        }
+        long id1 = Math.min(object1.id, object2.id);
+        long id2 = Math.max(object1.id, object2.id);
+
+        // the ids are assigned one by one, so they fit into the halves of the key
+        Long key = id1 << 32 | id2;
+        if (this.closePairs.add(key) && !this.previousClosePairs.contains(key))
+        {
+            double fraction = (object1.radius + distance / 2) / (object1.radius + object2.radius + distance);
+            this.record(SimulationEvent.Type.CLOSE_APPROACH, object1.id, object2.id,
+                    object1.position.x + (object2.position.x - object1.position.x) * fraction,
+                    object1.position.y + (object2.position.y - object1.position.y) * fraction, distance);
+        }
+    }
+
+    /**
+     * Keeps the pairs of the previous pass in which both objects sleep in the same Aggregate as close in the current pass.
+     * These pairs aren't tested while they sleep, but they don't move apart, so their approach isn't reported again when they wake up.
+     * Must be called before any Aggregate is woken up in the pass.
+     */
+    void keepSleepingPairs(GravitySpace space)
+    {
+        for (Long key : this.previousClosePairs)
+        {
+            GravitationalObject object1 = space.getObjectById(key >>> 32);
+            GravitationalObject object2 = space.getObjectById(key & 0xFFFFFFFFL);
+            if (object1 != null && object2 != null && object1.aggregate != null && object1.aggregate == object2.aggregate)
+            {
+                this.closePairs.add(key);
+            }
+        }
+    }
+
+    /**
+     * Ends a collision pass, the pairs that haven't been recorded as close in it are no longer close.
+     */
+    void endApproachPass()
+    {
+        Set<Long> previous = this.previousClosePairs;
+        previous.clear();
+        this.previousClosePairs = this.closePairs;
+        this.closePairs = previous;
+    }
+
+    /**
+     * Publishes the pending batch to all the subscribers and starts a new one.
+     * @param step the step the events of the batch belong to
+     */
+    void publish(long step)
+    {
+        if (this.pendingCount == 0)
+        {
+            return;
+        }
+        for (Subscription subscription : this.subscriptions)
+        {
+            subscription.offer(this, step);
+        }
+        this.pendingCount = 0;
+    }
+}
@@ -0,0 +1,22 @@
+package com.github.mimo31.gravitysimulator;
+
+/**
+ * Computes the gravitational accelerations of a set of bodies.
+ * <p>
+ * The bodies are passed as primitive arrays, so the solvers don't depend on GravitationalObject and can be run headless.
+ * GravitySpace fills the arrays from its objects before every step.
+ */
+interface ForceSolver
+{
+    /**
+     * Computes the acceleration of every body caused by all the other bodies.
+     * Bodies with zero mass don't attract anything, but their accelerations are still computed.
+     * @param x x coordinates of the bodies
+     * @param y y coordinates of the bodies
+     * @param mass masses of the bodies
+     * @param count number of the bodies, the arrays may be longer
+     * @param ax array the x components of the accelerations are written to
+     * @param ay array the y components of the accelerations are written to
+     */
+    void computeAccelerations(double[] x, double[] y, double[] mass, int count, double[] ax, double[] ay);
+}
@@ -0,0 +1,305 @@
+package com.github.mimo31.gravitysimulator;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ * Binary encoding of the StateFrames streamed by a SimulationServer.
+ * <p>
+ * A key frame contains all the objects: type, step, count and for every object id, x, y, radius and color.
+ * A delta frame contains only the differences from the previous frame sent to the same viewer: type, step,
+ * the ids of the removed objects (count first) and the changed objects (count first) as id, flags and
+ * x and y if the position changed and radius and color if the appearance changed. New objects have both the flags.
+ */
+class FrameCodec
+{
+    static final byte KEY_FRAME = 1;
+    static final byte DELTA_FRAME = 2;
+
+    private static final int POSITION_CHANGED = 1;
+    private static final int APPEARANCE_CHANGED = 2;
+
+    // sizes of the records in bytes used to choose the smaller encoding
+    private static final int KEY_RECORD_SIZE = 8 + 4 * 4;
+    private static final int REMOVAL_RECORD_SIZE = 8;
+    private static final int POSITION_RECORD_SIZE = 4 * 2;
+    private static final int APPEARANCE_RECORD_SIZE = 4 * 2;
+    private static final int DELTA_RECORD_SIZE = 8 + 1;
+
+    private FrameCodec()
+    {
+    }
+
+    /**
+     * Writes the frame as a delta from the base frame if that is smaller than a key frame.
+     * @param base the last frame the receiver has, null to write a key frame
+     */
+    static void write(DataOutputStream out, StateFrame base, StateFrame frame) throws IOException
+    {
+        if (base == null || getDeltaSize(base, frame) >= frame.count * KEY_RECORD_SIZE)
+        {
+            writeKeyFrame(out, frame);
+        }
+        else
+        {
+            writeDeltaFrame(out, base, frame);
+        }
+    }
+
+    static void writeKeyFrame(DataOutputStream out, StateFrame frame) throws IOException
+    {
+        out.writeByte(KEY_FRAME);
+        out.writeLong(frame.step);
+        out.writeInt(frame.count);
+        for (int i = 0; i < frame.count; i++)
+        {
+            out.writeLong(frame.ids[i]);
+            out.writeFloat(frame.x[i]);
+            out.writeFloat(frame.y[i]);
+            out.writeFloat(frame.radius[i]);
+            out.writeInt(frame.color[i]);
+        }
+    }
+
+    static void writeDeltaFrame(DataOutputStream out, StateFrame base, StateFrame frame) throws IOException
+    {
+        out.writeByte(DELTA_FRAME);
+        out.writeLong(frame.step);
+
+        // both the frames are ordered by id, so the removed, kept and new objects are found by merging them
+        int removed = 0;
+        int changed = 0;
+        for (int i = 0, j = 0; i < base.count || j < frame.count; )
+        {
+            int comparison = compare(base, i, frame, j);
+            if (comparison < 0)
+            {
+                removed++;
+                i++;
+            }
+            else
+            {
+                if (comparison > 0 || getChanges(base, i, frame, j) != 0)
+                {
+                    changed++;
+                }
+                if (comparison == 0)
+                {
+                    i++;
+                }
+                j++;
+            }
+        }
+
+        out.writeInt(removed);
+        for (int i = 0, j = 0; i < base.count; )
+        {
+            int comparison = compare(base, i, frame, j);
+            if (comparison < 0)
+            {
+                out.writeLong(base.ids[i++]);
+            }
+            else
+            {
+                if (comparison == 0)
+                {
+                    i++;
+                }
+                j++;
+            }
+        }
+
+        out.writeInt(changed);
+        for (int i = 0, j = 0; j < frame.count; )
+        {
+            int comparison = compare(base, i, frame, j);
+            if (comparison < 0)
+            {
+                i++;
+                continue;
+            }
+            int changes = comparison > 0 ? POSITION_CHANGED | APPEARANCE_CHANGED : getChanges(base, i, frame, j);
+            if (changes != 0)
+            {
+                out.writeLong(frame.ids[j]);
+                out.writeByte(changes);
+                if ((changes & POSITION_CHANGED) != 0)
+                {
+                    out.writeFloat(frame.x[j]);
+                    out.writeFloat(frame.y[j]);
+                }
+                if ((changes & APPEARANCE_CHANGED) != 0)
+                {
+                    out.writeFloat(frame.radius[j]);
+                    out.writeInt(frame.color[j]);
+                }
+            }
+            if (comparison == 0)
+            {
+                i++;
+            }
+            j++;
+        }
+    }
+
+    /**
+     * Reads a frame written by write.
+     * @param base the last frame read from the same stream, null if there is none yet
+     */
+    static StateFrame read(DataInputStream in, StateFrame base) throws IOException
+    {
+        byte type = in.readByte();
+        long step = in.readLong();
+        if (type == KEY_FRAME)
+        {
+            StateFrame frame = new StateFrame(step, in.readInt());
+            for (int i = 0; i < frame.count; i++)
+            {
+                frame.ids[i] = in.readLong();
+                frame.x[i] = in.readFloat();
+                frame.y[i] = in.readFloat();
+                frame.radius[i] = in.readFloat();
+                frame.color[i] = in.readInt();
+            }
+            return frame;
+        }
+        if (type != DELTA_FRAME || base == null)
+        {
+            throw new IOException("Unexpected frame type " + type + ".");
+        }
+
+        long[] removedIds = new long[in.readInt()];
+        for (int i = 0; i < removedIds.length; i++)
+        {
+            removedIds[i] = in.readLong();
+        }
+        int changedCount = in.readInt();
+        long[] changedIds = new long[changedCount];
+        int[] changes = new int[changedCount];
+        float[] x = new float[changedCount];
+        float[] y = new float[changedCount];
+        float[] radius = new float[changedCount];
+        int[] color = new int[changedCount];
+        int added = 0;
+        for (int k = 0; k < changedCount; k++)
+        {
+            changedIds[k] = in.readLong();
+            changes[k] = in.readByte();
+            if ((changes[k] & POSITION_CHANGED) != 0)
+            {
+                x[k] = in.readFloat();
+                y[k] = in.readFloat();
+            }
+            if ((changes[k] & APPEARANCE_CHANGED) != 0)
+            {
+                radius[k] = in.readFloat();
+                color[k] = in.readInt();
+            }
+            if (base.indexOf(changedIds[k]) == -1)
+            {
+                added++;
+            }
+        }
+
+        // merge the base without the removed objects with the changed objects, all of them are ordered by id
+        StateFrame frame = new StateFrame(step, base.count - removedIds.length + added);
+        int r = 0;
+        int k = 0;
+        int j = 0;
+        for (int i = 0; i < base.count || k < changedCount; )
+        {
+            if (i < base.count && r < removedIds.length && base.ids[i] == removedIds[r])
+            {
+                i++;
+                r++;
+                continue;
+            }
+            if (k < changedCount && (i == base.count || changedIds[k] <= base.ids[i]))
+            {
+                boolean existing = i < base.count && changedIds[k] == base.ids[i];
+                frame.ids[j] = changedIds[k];
+                boolean positionChanged = (changes[k] & POSITION_CHANGED) != 0;
+                boolean appearanceChanged = (changes[k] & APPEARANCE_CHANGED) != 0;
+                frame.x[j] = positionChanged ? x[k] : base.x[i];
+                frame.y[j] = positionChanged ? y[k] : base.y[i];
+                frame.radius[j] = appearanceChanged ? radius[k] : base.radius[i];
+                frame.color[j] = appearanceChanged ? color[k] : base.color[i];
+                if (existing)
+                {
+                    i++;
+                }
+                k++;
+            }
+            else
+            {
+                frame.ids[j] = base.ids[i];
+                frame.x[j] = base.x[i];
+                frame.y[j] = base.y[i];
+                frame.radius[j] = base.radius[i];
+                frame.color[j] = base.color[i];
+                i++;
+            }
+            j++;
+        }
+        return frame;
+    }
+
+    /**
+     * Compares the ids at the indices of the frames, an index past the end is treated as a larger id than any other.
+     */
+    private static int compare(StateFrame first, int i, StateFrame second, int j)
+    {
+        if (i == first.count)
+        {
+            return 1;
+        }
+        if (j == second.count)
+        {
+            return -1;
+        }
+        return first.ids[i] < second.ids[j] ? -1 : first.ids[i] == second.ids[j] ? 0 : 1;
+    }
+
+    private static int getChanges(StateFrame base, int i, StateFrame frame, int j)
+    {
+        int changes = 0;
+        if (base.x[i] != frame.x[j] || base.y[i] != frame.y[j])
+        {
+            changes |= POSITION_CHANGED;
+        }
+        if (base.radius[i] != frame.radius[j] || base.color[i] != frame.color[j])
+        {
+            changes |= APPEARANCE_CHANGED;
+        }
+        return changes;
+    }
+
+    private static int getDeltaSize(StateFrame base, StateFrame frame)
+    {
+        int size = 0;
+        for (int i = 0, j = 0; i < base.count || j < frame.count; )
+        {
+            int comparison = compare(base, i, frame, j);
+            if (comparison < 0)
+            {
+                size += REMOVAL_RECORD_SIZE;
+                i++;
+                continue;
+            }
+            int changes = comparison > 0 ? POSITION_CHANGED | APPEARANCE_CHANGED : getChanges(base, i, frame, j);
+            if (changes != 0)
+            {
+                size += DELTA_RECORD_SIZE;
+                size += (changes & POSITION_CHANGED) != 0 ? POSITION_RECORD_SIZE : 0;
+                size += (changes & APPEARANCE_CHANGED) != 0 ? APPEARANCE_RECORD_SIZE : 0;
+            }
+            if (comparison == 0)
+            {
+                i++;
+            }
+            j++;
+        }
+        return size;
+    }
+}
@@ -0,0 +1,237 @@
+package com.github.mimo31.gravitysimulator;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.Locale;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Simulates a copy of a GravitySpace as fast as possible and saves every frame as a PNG file or appends it to a raw RGBA file.
+ * <p>
+ * The frames are drawn by GravitySpace.draw into a few reused bitmaps on the export thread and encoded on another thread,
+ * so the simulation and drawing of the next frames runs while the previous ones are being encoded.
+ * The raw file contains width * height * 4 bytes per frame, it can be turned into a video by e.g.
+ * {@code ffmpeg -f rawvideo -pix_fmt rgba -s WIDTHxHEIGHT -r 60 -i frames.rgba video.mp4}.
+ */
+class FrameExporter
+{
+    enum Format
+    {
+        PNG, RAW_RGBA
+    }
+
+    /**
+     * Receives the progress of an export. The methods are called on the export and encoding threads.
+     */
+    interface Listener
+    {
+        void onFrameEncoded(int frame, int frames);
+
+        /**
+         * @param error the error that stopped the export, null if it finished or was cancelled
+         */
+        void onFinished(File directory, IOException error);
+    }
+
+    // number of the bitmaps the frames are drawn into, one is drawn while the others wait for encoding
+    private static final int BUFFERS = 3;
+
+    private final GravitySpace space;
+    private final int width;
+    private final int height;
+    private final File directory;
+    private final Format format;
+    private final boolean drawLineGrid;
+    private final boolean followObjects;
+
+    private final StepExecutor executor = new StepExecutor(Runtime.getRuntime().availableProcessors());
+    private final BlockingQueue<Bitmap> freeBitmaps = new ArrayBlockingQueue<>(BUFFERS);
+    private final ExecutorService encoder = Executors.newSingleThreadExecutor();
+    private final AtomicReference<IOException> error = new AtomicReference<>();
+    private volatile boolean cancelled;
+
+    // the raw file and the buffer the pixels are copied to, only used by the encoding thread
+    private OutputStream rawOutput;
+    private ByteBuffer pixels;
+
+    /**
+     * @param space the space to export, it's copied, so it can be used while exporting
+     * @param viewWidth width of the view the space is shown in, the exported frames show the same area
+     */
+    FrameExporter(GravitySpace space, int viewWidth, int width, int height, File directory, Format format, boolean drawLineGrid, boolean followObjects)
+    {
+        this.space = space.copy();
+        this.space.setExecutor(this.executor);
+        this.space.scale(width / (double) viewWidth, this.space.getViewPosition());
+        this.width = width;
+        this.height = height;
+        this.directory = directory;
+        this.format = format;
+        this.drawLineGrid = drawLineGrid;
+        this.followObjects = followObjects;
+    }
+
+    /**
+     * Starts exporting on a new thread.
+     * @param substeps number of the steps of the simulation per frame, each moving by 1 / substeps
+     */
+    void start(final int frames, final int substeps, final Listener listener)
+    {
+        new Thread(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                FrameExporter.this.export(frames, substeps, listener);
+            }
+        }, "FrameExporter").start();
+    }
+
+    void cancel()
+    {
+        this.cancelled = true;
+    }
+
+    private void export(final int frames, int substeps, final Listener listener)
+    {
+        try
+        {
+            if (!this.directory.isDirectory() && !this.directory.mkdirs())
+            {
+                throw new IOException("Can't create " + this.directory + ".");
+            }
+            if (this.format == Format.RAW_RGBA)
+            {
+                this.rawOutput = new BufferedOutputStream(new FileOutputStream(new File(this.directory, "frames.rgba")), 1 << 16);
+                this.pixels = ByteBuffer.allocate(this.width * this.height * 4);
+            }
+            for (int i = 0; i < BUFFERS; i++)
+            {
+                this.freeBitmaps.add(Bitmap.createBitmap(this.width, this.height, Bitmap.Config.ARGB_8888));
+            }
+
+            Canvas canvas = new Canvas();
+            for (int frame = 0; frame < frames && !this.cancelled && this.error.get() == null; frame++)
+            {
+                if (frame != 0)
+                {
+                    for (int i = 0; i < substeps; i++)
+                    {
+                        this.space.update(1 / (double) substeps, this.followObjects);
+                    }
+                    this.space.updateViewVelocity();
+                    this.space.recordTrails();
+                }
+
+                // waits while all the bitmaps are being encoded
+                final Bitmap bitmap = this.freeBitmaps.take();
+                bitmap.eraseColor(Color.BLACK);
+                canvas.setBitmap(bitmap);
+                this.space.draw(canvas, this.drawLineGrid);
+
+                final int frameNumber = frame;
+                this.encoder.execute(new Runnable()
+                {
+                    @Override
+                    public void run()
+                    {
+                        FrameExporter.this.encode(bitmap, frameNumber, frames, listener);
+                    }
+                });
+            }
+            this.encoder.shutdown();
+            this.encoder.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+        }
+        catch (IOException e)
+        {
+            this.error.compareAndSet(null, e);
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+        }
+        finally
+        {
+            this.encoder.shutdownNow();
+            this.executor.shutdown();
+            for (Bitmap bitmap : this.freeBitmaps)
+            {
+                bitmap.recycle();
+            }
+            this.closeRawOutput();
+        }
+        listener.onFinished(this.directory, this.error.get());
+    }
+
+    /**
+     * Closes the raw output, also if the export has failed.
+     */
+    private void closeRawOutput()
+    {
+        if (this.rawOutput == null)
+        {
+            return;
+        }
+        try
+        {
+            this.rawOutput.close();
+        }
+        catch (IOException e)
+        {
+            this.error.compareAndSet(null, e);
+        }
+    }
+
+    private void encode(Bitmap bitmap, int frame, int frames, Listener listener)
+    {
+        try
+        {
+            if (this.error.get() == null && !this.cancelled)
+            {
+                if (this.format == Format.PNG)
+                {
+                    OutputStream output = new BufferedOutputStream(new FileOutputStream(new File(this.directory, String.format(Locale.US, "frame%05d.png", frame))), 1 << 16);
+                    try
+                    {
+                        if (!bitmap.compress(Bitmap.CompressFormat.PNG, 100, output))
+                        {
+                            throw new IOException("Can't encode frame " + frame + ".");
+                        }
+                    }
+                    finally
+                    {
+                        output.close();
+                    }
+                }
+                else
+                {
+                    this.pixels.rewind();
+                    bitmap.copyPixelsToBuffer(this.pixels);
+                    this.rawOutput.write(this.pixels.array(), 0, this.pixels.capacity());
+                }
+                listener.onFrameEncoded(frame, frames);
+            }
+        }
+        catch (IOException e)
+        {
+            this.error.compareAndSet(null, e);
+        }
+        finally
+        {
+            this.freeBitmaps.add(bitmap);
+        }
+    }
+}
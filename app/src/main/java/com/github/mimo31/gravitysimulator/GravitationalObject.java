@@ -20,6 +20,28 @@ public class GravitationalObject implements Parcelable
     Vector2d position;
     Vector2d velocity;
 
+    // stable identifier assigned by the GravitySpace the object is added to, 0 if the object hasn't been added yet
+    long id;
+
+    // set when the object is scheduled to be removed from its GravitySpace at the end of the current step
+    boolean removed;
+
+    // set when the object has escaped and its EscaperPolicy has frozen it, it then neither moves nor attracts anything
+    boolean frozen;
+
+    // set when the object has escaped and its EscaperPolicy has demoted it to a tracer, it then moves, but doesn't attract anything
+    boolean tracer;
+
+    // the sleeping aggregate the object moves with, null if it moves on its own
+    ContactIslands.Aggregate aggregate;
+
+    // number of the collision passes in a row the island of the object has been resting
+    int restingPasses;
+
+    // where the object started resting relative to the center of mass of its island
+    double restingOffsetX;
+    double restingOffsetY;
+
     public GravitationalObject(Vector2d position, int radius, int density)
     {
         this.position = position;
@@ -61,6 +83,8 @@ public class GravitationalObject implements Parcelable
         parcel.writeDouble(this.position.y);
         parcel.writeDouble(this.velocity.x);
         parcel.writeDouble(this.velocity.y);
+        parcel.writeLong(this.id);
+        parcel.writeInt((this.frozen ? 1 : 0) | (this.tracer ? 2 : 0));
     }
 
     private GravitationalObject(Parcel parcel)
@@ -69,6 +93,10 @@ public class GravitationalObject implements Parcelable
         this.density = parcel.readInt();
         this.position = new Vector2d(parcel.readDouble(), parcel.readDouble());
         this.velocity = new Vector2d(parcel.readDouble(), parcel.readDouble());
+        this.id = parcel.readLong();
+        int flags = parcel.readInt();
+        this.frozen = (flags & 1) != 0;
+        this.tracer = (flags & 2) != 0;
     }
 
     private static Creator CREATOR = new Creator()
@@ -89,7 +117,8 @@ public class GravitationalObject implements Parcelable
     public int getColor()
     {
         int colorValue = (int) (255 - this.density / (float) 1000 * 255);
-        return Color.rgb(colorValue, colorValue, 255);
+        // the same as Color.rgb, but usable also without the Android framework (in the SimulationServer)
+        return 0xFF000000 | colorValue << 16 | colorValue << 8 | 255;
     }
 
     public Vector2d getGravitationalForce(GravitationalObject object)
@@ -144,4 +173,12 @@ public class GravitationalObject implements Parcelable
     {
         return this.density * Math.pow(this.radius, 2) / 64;
     }
+
+    /**
+     * @return the mass that attracts the other objects, zero for the frozen objects and the tracers
+     */
+    double getGravitatingMass()
+    {
+        return this.frozen || this.tracer ? 0 : this.getMass();
+    }
 }
@@ -9,7 +9,11 @@ import android.os.Bundle;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  * Created by mimo31 on 5/6/2016.
@@ -19,104 +23,1080 @@ import java.util.List;
 class GravitySpace
 {
 
-    private List<GravitationalObject> objects = new ArrayList<>();
+    private ArrayList<GravitationalObject> objects = new ArrayList<>();
+
+    // maps the stable id of every object to its current index in the objects list
+    private final Map<Long, Integer> idToSlot = new HashMap<>();
+
+    // the id that will be assigned to the next added object
+    private long nextId = 1;
+
+    // objects marked as removed during the current step, they are swap-deleted from the list all at once when the step ends
+    private final List<GravitationalObject> pendingRemovals = new ArrayList<>();
+
+    // indicates that update is running, so the removals have to wait until the step ends
+    private boolean stepping;
+
+    // runs the phases of the steps, by default everything is run on the calling thread
+    private StepExecutor executor = new StepExecutor(1);
+
+    // computes the gravitational accelerations in every step
+    private ForceSolver forceSolver = new SymmetricForceSolver();
+
+    // false after a ForceSolver has been set, setExecutor then keeps it
+    private boolean defaultForceSolver = true;
+
+    // arrays the state of the objects is copied to for the ForceSolver
+    private double[] scratchX = new double[0];
+    private double[] scratchY = new double[0];
+    private double[] scratchMass = new double[0];
+    private double[] scratchAx = new double[0];
+    private double[] scratchAy = new double[0];
+    private double[] scratchRadius = new double[0];
+
+    // the state of the objects that aren't frozen packed for the ForceSolver and their slots, used only if some objects are frozen
+    private double[] packedX = new double[0];
+    private double[] packedY = new double[0];
+    private double[] packedMass = new double[0];
+    private double[] packedAx = new double[0];
+    private double[] packedAy = new double[0];
+    private int[] packedSlot = new int[0];
+
+    // finds the objects that escape from the system and removes, freezes or demotes them, null if the escapers are kept
+    private EscaperPolicy escaperPolicy;
+
+    // number of the objects whose collisions are detected in one chunk
+    private static final int COLLISION_CHUNK_SIZE = 64;
+
+    // pairs of the indices of the colliding objects found in each chunk and their numbers
+    private int[][] collisionPairs = new int[0][];
+    private int[] collisionPairCounts = new int[0];
+
+    // groups the touching objects into islands and puts the resting ones to sleep, null if the objects never sleep
+    private ContactIslands islands;
+
+    // slots of the objects taking part in the collision detection, followed by the slots of the sleeping Aggregates,
+    // which are past the slots of the objects in the scratch arrays
+    private int[] collidable = new int[0];
+    private int collidableCount;
+    private int awakeCollidableCount;
+    private ContactIslands.Aggregate[] collidableAggregates = new ContactIslands.Aggregate[0];
+
+    // finds the collisions of the objects in a chunk, only reads the state
+    private final StepExecutor.ChunkTask collisionDetection = new StepExecutor.ChunkTask()
+    {
+        @Override
+        public void run(int chunk, int start, int end)
+        {
+            GravitySpace.this.detectCollisions(chunk, start, end);
+        }
+    };
+
+    // aggregates of the objects that aren't removed, updated with every change of the objects
+    // and recomputed as a side product of every step, so the rounding errors don't accumulate
+    private double totalMass;
+    private double momentumX;
+    private double momentumY;
+
+    // sums of the positions weighted by the masses, divided by the total mass they give the center of mass
+    private double weightedPositionX;
+    private double weightedPositionY;
+
+    // bounding box of the objects including their radii, it can't be shrunk when an object is removed,
+    // so it is invalid from then until the next step or until it's needed
+    private double boundsMinX = Double.POSITIVE_INFINITY;
+    private double boundsMinY = Double.POSITIVE_INFINITY;
+    private double boundsMaxX = Double.NEGATIVE_INFINITY;
+    private double boundsMaxY = Double.NEGATIVE_INFINITY;
+    private boolean boundsValid = true;
+
+    // trails of the objects, null if they aren't recorded
+    private TrailStore trails;
+
+    // massless particles moved along with the objects
+    private TracerField tracers = new TracerField();
+
+    // simulated time between two moves of the tracers, 0 to move them in every step
+    private double tracerStepTime;
+
+    // simulated time since the tracers have been moved last
+    private double tracerTime;
+
+    /**
+     * Receives the checksum of the state after every step.
+     */
+    interface ChecksumListener
+    {
+        void onStep(long step, long checksum);
+    }
+
+    // whether the checksum of the state is computed after every step
+    private boolean checksumsEnabled;
+
+    // rolling checksum of the states after all the steps so far
+    private long checksum;
+
+    // number of the steps performed so far
+    private long stepCount;
+
+    // number of the collisions resolved since the space was created
+    private long collisionCount;
+
+    private ChecksumListener checksumListener;
+
+    // receives the events of the objects, null if they aren't published
+    private EventStream events;
+
+    // distance of the surfaces of the objects the collision detection reports as close in the current pass, 0 if the approaches aren't recorded
+    private double approachDistance;
+
     private Vector2d viewPosition = new Vector2d(0, 0);
     private Vector2d viewVelocity = new Vector2d(0, 0);
     /*
-     * Represents the level of the zoom of the map. That is the natural logarithm of the actual enlargement.
+     * Represents the level of the zoom of the map. That is the natural logarithm of the actual enlargement.
+     */
+    private double zoomLevel = 0;
+
+    /*
+    * Moves the objects according to the laws of gravity.
+     */
+    public void update(double deltaTime, boolean moveView)
+    {
+        this.update(deltaTime, moveView, true);
+    }
+
+    /*
+     * Moves the objects according to the laws of gravity.
+     * @param resolveCollisions Whether the collisions should be resolved in this step.
+     */
+    public void update(double deltaTime, boolean moveView, boolean resolveCollisions)
+    {
+        this.stepping = true;
+        int count = this.objects.size();
+        Tracing.begin(Tracing.STEP, count);
+        int aggregates = this.islands == null ? 0 : this.islands.getAggregates().size();
+        this.ensureScratchCapacity(count + aggregates);
+        int frozen = 0;
+        int sleeping = 0;
+        int sources = 0;
+        for (int i = 0; i < count; i++)
+        {
+            GravitationalObject currentObject = this.objects.get(i);
+            this.scratchX[i] = currentObject.position.x;
+            this.scratchY[i] = currentObject.position.y;
+            this.scratchMass[i] = currentObject.removed ? 0 : currentObject.getGravitatingMass();
+            this.scratchRadius[i] = currentObject.radius;
+            if (currentObject.frozen)
+            {
+                frozen++;
+            }
+            if (currentObject.aggregate != null)
+            {
+                sleeping++;
+            }
+            if (this.scratchMass[i] != 0)
+            {
+                sources++;
+            }
+        }
+        Tracing.begin(Tracing.FORCES, count - frozen - sleeping + aggregates);
+        boolean packed = frozen != 0 || sleeping != 0;
+        int solverBodies = count;
+        if (!packed)
+        {
+            this.forceSolver.computeAccelerations(this.scratchX, this.scratchY, this.scratchMass, count, this.scratchAx, this.scratchAy);
+        }
+        else
+        {
+            solverBodies = this.computePackedAccelerations(count);
+        }
+        Tracing.end(Tracing.FORCES);
+        if (this.escaperPolicy != null)
+        {
+            // the bodies the ForceSolver has actually been passed
+            int solverSources = sources;
+            if (packed)
+            {
+                solverSources = 0;
+                for (int k = 0; k < solverBodies; k++)
+                {
+                    if (this.packedMass[k] != 0)
+                    {
+                        solverSources++;
+                    }
+                }
+            }
+            this.escaperPolicy.recordStep(solverBodies, solverSources);
+        }
+
+        // the tracers are moved by all the time since their last move, the tolerance absorbs the rounding of the sum of the steps
+        this.tracerTime += deltaTime;
+        if (this.tracerTime >= this.tracerStepTime * (1 - 1e-9))
+        {
+            Tracing.begin(Tracing.TRACERS, this.tracers.size());
+            this.tracers.step(this.scratchX, this.scratchY, this.scratchMass, this.scratchRadius, count, this.tracerTime, this.executor);
+            Tracing.end(Tracing.TRACERS);
+            this.tracerTime = 0;
+        }
+
+        // the aggregates are summed while moving the objects, the sleeping objects move by the shift of their Aggregate
+        Tracing.begin(Tracing.INTEGRATION, count);
+        if (this.islands != null)
+        {
+            this.islands.moveAggregates(deltaTime);
+        }
+        double totalMass = 0;
+        double momentumX = 0;
+        double momentumY = 0;
+        double weightedPositionX = 0;
+        double weightedPositionY = 0;
+        double minX = Double.POSITIVE_INFINITY;
+        double minY = Double.POSITIVE_INFINITY;
+        double maxX = Double.NEGATIVE_INFINITY;
+        double maxY = Double.NEGATIVE_INFINITY;
+        for (int i = 0; i < count; i++)
+        {
+            GravitationalObject currentObject = this.objects.get(i);
+            if (currentObject.removed)
+            {
+                continue;
+            }
+            double mass = this.scratchMass[i];
+            if (currentObject.aggregate != null)
+            {
+                currentObject.position = currentObject.position.add(currentObject.aggregate.shift);
+                currentObject.velocity = currentObject.aggregate.velocity;
+            }
+            else if (!currentObject.frozen)
+            {
+                // the objects with zero density aren't attracted, but they still collide
+                if (currentObject.getMass() != 0)
+                {
+                    currentObject.velocity = currentObject.velocity.add(new Vector2d(this.scratchAx[i], this.scratchAy[i]).multiply(deltaTime));
+                }
+                currentObject.position = currentObject.position.add(currentObject.velocity.multiply(deltaTime));
+            }
+            double x = currentObject.position.x;
+            double y = currentObject.position.y;
+            this.scratchX[i] = x;
+            this.scratchY[i] = y;
+            totalMass += mass;
+            momentumX += mass * currentObject.velocity.x;
+            momentumY += mass * currentObject.velocity.y;
+            weightedPositionX += mass * x;
+            weightedPositionY += mass * y;
+            if (!currentObject.frozen && !currentObject.tracer)
+            {
+                double radius = this.scratchRadius[i];
+                minX = Math.min(minX, x - radius);
+                minY = Math.min(minY, y - radius);
+                maxX = Math.max(maxX, x + radius);
+                maxY = Math.max(maxY, y + radius);
+            }
+        }
+        this.totalMass = totalMass;
+        this.momentumX = momentumX;
+        this.momentumY = momentumY;
+        this.weightedPositionX = weightedPositionX;
+        this.weightedPositionY = weightedPositionY;
+        this.boundsMinX = minX;
+        this.boundsMinY = minY;
+        this.boundsMaxX = maxX;
+        this.boundsMaxY = maxY;
+        this.boundsValid = true;
+        Tracing.end(Tracing.INTEGRATION);
+        if (resolveCollisions)
+        {
+            Tracing.begin(Tracing.COLLISIONS, count);
+            this.resolveCollisions(count);
+            Tracing.end(Tracing.COLLISIONS);
+        }
+        if (this.escaperPolicy != null && this.escaperPolicy.isCheckDue(this.stepCount))
+        {
+            Tracing.begin(Tracing.ESCAPERS, count);
+            this.handleEscapers();
+            Tracing.end(Tracing.ESCAPERS);
+        }
+
+        // change the view position
+        if (moveView)
+        {
+            this.viewPosition = this.viewPosition.add(this.viewVelocity.multiply(deltaTime));
+        }
+        this.stepping = false;
+        this.compact();
+
+        this.stepCount++;
+        if (this.events != null)
+        {
+            this.events.publish(this.stepCount);
+        }
+        if (this.checksumsEnabled)
+        {
+            this.checksum = this.computeChecksum();
+            if (this.checksumListener != null)
+            {
+                this.checksumListener.onStep(this.stepCount, this.checksum);
+            }
+        }
+        Tracing.end(Tracing.STEP);
+    }
+
+    /*
+     * Finds the colliding pairs in parallel and then resolves them one by one in a fixed order.
+     * A pair is resolved only if it still collides after the pairs before it have been resolved.
+     * If the objects can sleep, the pairs that are close to each other are recorded as the contacts of the islands,
+     * and the sleeping Aggregates take part as single circles, which wake up when one of their objects is touched.
+     * If there is an EventStream, the collisions and the close approaches are recorded to it, the approaches to the sleeping Aggregates
+     * are tested against their objects.
+     */
+    private void resolveCollisions(int count)
+    {
+        this.approachDistance = this.events != null && this.events.hasSubscribers() ? this.events.getApproachDistance() : 0;
+        this.collectCollidable(count);
+        if (this.approachDistance != 0 && this.islands != null && !this.islands.getAggregates().isEmpty())
+        {
+            this.events.keepSleepingPairs(this);
+        }
+        int chunks = StepExecutor.getNumberOfChunks(this.collidableCount, COLLISION_CHUNK_SIZE);
+        if (this.collisionPairs.length < chunks)
+        {
+            int[][] newPairs = Arrays.copyOf(this.collisionPairs, chunks);
+            for (int i = this.collisionPairs.length; i < chunks; i++)
+            {
+                newPairs[i] = new int[16];
+            }
+            this.collisionPairs = newPairs;
+            this.collisionPairCounts = new int[chunks];
+        }
+        this.executor.forEachChunk(this.collidableCount, COLLISION_CHUNK_SIZE, this.collisionDetection);
+        if (this.islands != null)
+        {
+            this.islands.beginPass(count);
+        }
+        for (int chunk = 0; chunk < chunks; chunk++)
+        {
+            int[] pairs = this.collisionPairs[chunk];
+            for (int k = 0, n = this.collisionPairCounts[chunk]; k < n; k += 2)
+            {
+                // the Aggregates are after all the objects
+                if (pairs[k + 1] >= count)
+                {
+                    this.touchAggregates(pairs[k], pairs[k + 1], count);
+                    continue;
+                }
+                GravitationalObject o1 = this.objects.get(pairs[k]);
+                GravitationalObject o2 = this.objects.get(pairs[k + 1]);
+                if (this.approachDistance != 0 && !this.recordApproach(o1, o2))
+                {
+                    continue;
+                }
+                if (this.islands != null)
+                {
+                    this.islands.addContact(pairs[k], pairs[k + 1]);
+                }
+                if (o1.doesCollide(o2))
+                {
+                    this.collisionCount++;
+                    this.subtractFromAggregates(o1);
+                    this.subtractFromAggregates(o2);
+                    Vector2d distanceVector = o1.position.subtract(o2.position);
+                    double collisionFactor = o1.velocity.subtract(o2.velocity).dot(distanceVector) / distanceVector.dot(distanceVector);
+                    Vector2d addVector = distanceVector.multiply(2 / (o1.getMass() + o2.getMass()) * collisionFactor);
+                    if (this.events != null && this.events.hasSubscribers())
+                    {
+                        Vector2d contact = o2.position.add(distanceVector.multiply(o2.radius / (double) (o1.radius + o2.radius)));
+                        this.events.record(SimulationEvent.Type.COLLISION, o1.id, o2.id, contact.x, contact.y, addVector.getLength() * o1.getMass() * o2.getMass());
+                    }
+                    o1.velocity = o1.velocity.subtract(addVector.multiply(o2.getMass()));
+                    o2.velocity = o2.velocity.add(addVector.multiply(o1.getMass()));
+                    Vector2d totalShift = distanceVector.multiply((o1.radius + o2.radius) / distanceVector.getLength() * 2 - 2);
+                    double o1VelocityFraction = o1.velocity.getLength() / (o1.velocity.getLength() + o2.velocity.getLength());
+                    double o2VelocityFraction = 1 - o1VelocityFraction;
+                    Vector2d o1Shift = totalShift.multiply(o1VelocityFraction);
+                    Vector2d o2Shift = totalShift.multiply(-o2VelocityFraction);
+                    o1.position = o1.position.add(o1Shift);
+                    o2.position = o2.position.add(o2Shift);
+                    this.addToAggregates(o1);
+                    this.addToAggregates(o2);
+                }
+            }
+        }
+        if (this.islands != null)
+        {
+            this.islands.endPass(this.objects, this.collidable, this.awakeCollidableCount);
+        }
+        if (this.approachDistance != 0)
+        {
+            this.events.endApproachPass();
+        }
+    }
+
+    /*
+     * Records the approach of a pair found by the detection if their surfaces are close enough.
+     * @return Whether the objects are close enough to be in contact, the detection also finds the pairs that are only approaching.
+     */
+    private boolean recordApproach(GravitationalObject o1, GravitationalObject o2)
+    {
+        double distance = o1.position.subtract(o2.position).getLength();
+        double touchingDistance = o1.radius + o2.radius;
+        if (distance - touchingDistance <= this.approachDistance)
+        {
+            this.events.recordApproach(o1, o2, distance - touchingDistance);
+        }
+        return distance <= touchingDistance * (this.islands == null ? 1 : ContactIslands.CONTACT_MARGIN);
+    }
+
+    /*
+     * Records the approaches of the object to the objects of the Aggregate.
+     */
+    private void recordApproaches(ContactIslands.Aggregate aggregate, GravitationalObject object)
+    {
+        for (int i = 0, n = aggregate.members.size(); i < n; i++)
+        {
+            this.recordApproach(aggregate.members.get(i), object);
+        }
+    }
+
+    /*
+     * Collects the slots of the objects that can collide and puts the circles around the sleeping Aggregates to the scratch arrays after the objects.
+     */
+    private void collectCollidable(int count)
+    {
+        List<ContactIslands.Aggregate> aggregates = this.islands == null ? Collections.<ContactIslands.Aggregate>emptyList() : this.islands.getAggregates();
+        if (this.collidable.length < count + aggregates.size())
+        {
+            this.collidable = new int[this.scratchX.length];
+        }
+        if (this.collidableAggregates.length < aggregates.size())
+        {
+            this.collidableAggregates = new ContactIslands.Aggregate[Math.max(aggregates.size(), this.collidableAggregates.length * 2)];
+        }
+        int collidableCount = 0;
+        for (int i = 0; i < count; i++)
+        {
+            // the removed, frozen and demoted objects don't collide, the sleeping ones collide as their Aggregates
+            GravitationalObject object = this.objects.get(i);
+            if (!object.removed && !object.frozen && !object.tracer && object.aggregate == null)
+            {
+                this.collidable[collidableCount++] = i;
+            }
+        }
+        this.awakeCollidableCount = collidableCount;
+        for (int a = 0, n = aggregates.size(); a < n; a++)
+        {
+            ContactIslands.Aggregate aggregate = aggregates.get(a);
+            int slot = count + a;
+            this.scratchX[slot] = aggregate.x;
+            this.scratchY[slot] = aggregate.y;
+            this.scratchRadius[slot] = aggregate.radius;
+            this.scratchMass[slot] = aggregate.mass;
+            this.collidableAggregates[a] = aggregate;
+            this.collidable[collidableCount++] = slot;
+        }
+        this.collidableCount = collidableCount;
+    }
+
+    /*
+     * Wakes up the sleeping Aggregates of a pair found by the detection if one of their objects touches the other side of the pair.
+     * The collisions of their objects are resolved by the next pass. The approaches are recorded for their objects.
+     */
+    private void touchAggregates(int slot1, int slot2, int count)
+    {
+        ContactIslands.Aggregate aggregate2 = this.collidableAggregates[slot2 - count];
+        if (slot1 < count)
+        {
+            GravitationalObject object = this.objects.get(slot1);
+            if (this.approachDistance != 0)
+            {
+                this.recordApproaches(aggregate2, object);
+            }
+            if (aggregate2.asleep && ContactIslands.touches(aggregate2, object))
+            {
+                this.islands.wake(aggregate2);
+            }
+            return;
+        }
+        ContactIslands.Aggregate aggregate1 = this.collidableAggregates[slot1 - count];
+        if (this.approachDistance != 0)
+        {
+            for (int i = 0, n = aggregate1.members.size(); i < n; i++)
+            {
+                this.recordApproaches(aggregate2, aggregate1.members.get(i));
+            }
+        }
+        if (aggregate1.asleep && aggregate2.asleep && ContactIslands.touches(aggregate1, aggregate2))
+        {
+            this.islands.wake(aggregate1);
+            this.islands.wake(aggregate2);
+        }
+    }
+
+    /*
+     * Stores the pairs of the colliding objects whose first object is in the chunk of the collidable slots.
+     */
+    private void detectCollisions(int chunk, int start, int end)
+    {
+        int[] pairs = this.collisionPairs[chunk];
+        int pairCount = 0;
+
+        // the islands need the pairs that are close, not only those that collide, and the EventStream the pairs that approach each other
+        double margin = this.islands == null ? 1 : ContactIslands.CONTACT_MARGIN;
+        double approachDistance = this.approachDistance;
+        for (int k = start; k < end; k++)
+        {
+            int i = this.collidable[k];
+            double xi = this.scratchX[i];
+            double yi = this.scratchY[i];
+            double radius = this.scratchRadius[i];
+            for (int l = k + 1; l < this.collidableCount; l++)
+            {
+                int j = this.collidable[l];
+                double dx = xi - this.scratchX[j];
+                double dy = yi - this.scratchY[j];
+                if (Math.sqrt(dx * dx + dy * dy) <= Math.max((radius + this.scratchRadius[j]) * margin, radius + this.scratchRadius[j] + approachDistance))
+                {
+                    if (pairCount + 2 > pairs.length)
+                    {
+                        pairs = Arrays.copyOf(pairs, pairs.length * 2);
+                        this.collisionPairs[chunk] = pairs;
+                    }
+                    pairs[pairCount++] = i;
+                    pairs[pairCount++] = j;
+                }
+            }
+        }
+        this.collisionPairCounts[chunk] = pairCount;
+    }
+
+    private void ensureScratchCapacity(int count)
+    {
+        if (this.scratchX.length < count)
+        {
+            int capacity = Math.max(count, this.scratchX.length * 2);
+            this.scratchX = new double[capacity];
+            this.scratchY = new double[capacity];
+            this.scratchMass = new double[capacity];
+            this.scratchAx = new double[capacity];
+            this.scratchAy = new double[capacity];
+            this.scratchRadius = new double[capacity];
+        }
+    }
+
+    /*
+     * Computes the accelerations of the objects that aren't frozen nor sleeping, the frozen objects are left out of the ForceSolver completely
+     * and the objects of every sleeping Aggregate are replaced by a single body at its center of mass.
+     * @return The number of the bodies passed to the ForceSolver, their masses are the first ones in packedMass.
+     */
+    private int computePackedAccelerations(int count)
+    {
+        if (this.packedX.length < count)
+        {
+            int capacity = this.scratchX.length;
+            this.packedX = new double[capacity];
+            this.packedY = new double[capacity];
+            this.packedMass = new double[capacity];
+            this.packedAx = new double[capacity];
+            this.packedAy = new double[capacity];
+            this.packedSlot = new int[capacity];
+        }
+        int packed = 0;
+        for (int i = 0; i < count; i++)
+        {
+            GravitationalObject object = this.objects.get(i);
+            if (object.frozen || object.aggregate != null)
+            {
+                this.scratchAx[i] = 0;
+                this.scratchAy[i] = 0;
+                continue;
+            }
+            this.packedX[packed] = this.scratchX[i];
+            this.packedY[packed] = this.scratchY[i];
+            this.packedMass[packed] = this.scratchMass[i];
+            this.packedSlot[packed] = i;
+            packed++;
+        }
+        int packedObjects = packed;
+        List<ContactIslands.Aggregate> aggregates = this.islands == null ? Collections.<ContactIslands.Aggregate>emptyList() : this.islands.getAggregates();
+        for (int a = 0, n = aggregates.size(); a < n; a++)
+        {
+            ContactIslands.Aggregate aggregate = aggregates.get(a);
+            this.packedX[packed] = aggregate.x;
+            this.packedY[packed] = aggregate.y;
+            this.packedMass[packed] = aggregate.mass;
+            packed++;
+        }
+        this.forceSolver.computeAccelerations(this.packedX, this.packedY, this.packedMass, packed, this.packedAx, this.packedAy);
+        for (int k = 0; k < packedObjects; k++)
+        {
+            this.scratchAx[this.packedSlot[k]] = this.packedAx[k];
+            this.scratchAy[this.packedSlot[k]] = this.packedAy[k];
+        }
+        for (int a = 0, n = aggregates.size(); a < n; a++)
+        {
+            aggregates.get(a).accelerationX = this.packedAx[packedObjects + a];
+            aggregates.get(a).accelerationY = this.packedAy[packedObjects + a];
+        }
+        return packed;
+    }
+
+    /*
+     * Removes, freezes or demotes the objects that escape from the barycenter of the system, as chosen by the EscaperPolicy.
+     */
+    private void handleEscapers()
+    {
+        if (this.totalMass == 0)
+        {
+            return;
+        }
+        double centerX = this.weightedPositionX / this.totalMass;
+        double centerY = this.weightedPositionY / this.totalMass;
+        double centerVelocityX = this.momentumX / this.totalMass;
+        double centerVelocityY = this.momentumY / this.totalMass;
+        double totalMass = this.totalMass;
+        for (int i = 0, count = this.objects.size(); i < count; i++)
+        {
+            GravitationalObject object = this.objects.get(i);
+            if (object.removed || object.frozen || object.tracer)
+            {
+                continue;
+            }
+            if (!this.escaperPolicy.isEscaping(object.position.x - centerX, object.position.y - centerY,
+                    object.velocity.x - centerVelocityX, object.velocity.y - centerVelocityY, totalMass - object.getMass()))
+            {
+                continue;
+            }
+            if (object.aggregate != null)
+            {
+                this.islands.wake(object.aggregate);
+            }
+            if (this.events != null)
+            {
+                this.events.record(SimulationEvent.Type.ESCAPE, object.id, -1, object.position.x, object.position.y, 0);
+            }
+            switch (this.escaperPolicy.getAction())
+            {
+                case REMOVE:
+                    this.markRemoved(object.id);
+                    break;
+                case FREEZE:
+                    this.subtractFromAggregates(object);
+                    object.frozen = true;
+                    object.velocity = new Vector2d(0, 0);
+                    break;
+                case DEMOTE:
+                    this.subtractFromAggregates(object);
+                    object.tracer = true;
+                    break;
+            }
+            this.escaperPolicy.recordEscaper();
+            this.boundsValid = false;
+        }
+    }
+
+    /*
+     * @return The massless tracers moved by the objects of the space. They aren't saved in the Bundle nor in the snapshots.
+     */
+    TracerField getTracers()
+    {
+        return this.tracers;
+    }
+
+    /*
+     * Sets the simulated time between two moves of the tracers, 0 to move them in every step.
+     * The tracers are the most expensive part of a step when there are many of them, but they don't need the accuracy of the objects.
+     */
+    void setTracerStepTime(double tracerStepTime)
+    {
+        this.tracerStepTime = tracerStepTime;
+    }
+
+    /*
+     * Sets the policy for the objects escaping from the system, null to keep them as they are.
+     */
+    void setEscaperPolicy(EscaperPolicy escaperPolicy)
+    {
+        this.escaperPolicy = escaperPolicy;
+    }
+
+    EscaperPolicy getEscaperPolicy()
+    {
+        return this.escaperPolicy;
+    }
+
+    /*
+     * Enables or disables putting the resting piles of the objects to sleep, the sleeping objects are woken up when disabled.
+     * The sleeping objects move as rigid bodies, so the steps are no longer exact.
+     */
+    void setSleepingEnabled(boolean sleepingEnabled)
+    {
+        if (!sleepingEnabled && this.islands != null)
+        {
+            this.islands.wakeAll();
+            this.islands = null;
+        }
+        else if (sleepingEnabled && this.islands == null)
+        {
+            this.islands = new ContactIslands();
+        }
+    }
+
+    boolean isSleepingEnabled()
+    {
+        return this.islands != null;
+    }
+
+    /*
+     * @return The islands of the touching objects and the sleeping Aggregates, null if sleeping isn't enabled.
+     */
+    ContactIslands getContactIslands()
+    {
+        return this.islands;
+    }
+
+    /*
+     * Sets the stream the events of the objects are published to once per step, null to stop publishing them.
+     * The objects of a space created from a snapshot or copied aren't reported as added.
+     */
+    void setEventStream(EventStream events)
+    {
+        this.events = events;
+    }
+
+    EventStream getEventStream()
+    {
+        return this.events;
+    }
+
+    /*
+     * Sets the solver used to compute the gravitational accelerations, SymmetricForceSolver is used by default.
+     */
+    public void setForceSolver(ForceSolver forceSolver)
+    {
+        this.forceSolver = forceSolver;
+        this.defaultForceSolver = false;
+    }
+
+    /*
+     * Sets the executor the steps are run on. If no ForceSolver has been set, switches to a SymmetricForceSolver using it,
+     * a ForceSolver that has been set is kept as it is.
+     * The results of the steps are the same for any number of threads of the executor.
+     */
+    public void setExecutor(StepExecutor executor)
+    {
+        this.executor = executor;
+        if (this.defaultForceSolver)
+        {
+            this.forceSolver = new SymmetricForceSolver(executor);
+        }
+    }
+
+    /*
+     * Enables or disables computing the checksum of the state after every step. The checksum is reset when enabled.
      */
-    private double zoomLevel = 0;
+    void setChecksumsEnabled(boolean checksumsEnabled)
+    {
+        this.checksumsEnabled = checksumsEnabled;
+        this.checksum = 0;
+    }
+
+    void setChecksumListener(ChecksumListener checksumListener)
+    {
+        this.checksumListener = checksumListener;
+    }
 
     /*
-    * Moves the objects according to the laws of gravity.
+     * @return The rolling checksum of the states after all the steps since the checksums have been enabled.
      */
-    public void update(double deltaTime, boolean moveView)
+    long getChecksum()
     {
-        for (int i = 0; i < this.objects.size(); i++)
+        return this.checksum;
+    }
+
+    long getStepCount()
+    {
+        return this.stepCount;
+    }
+
+    /*
+     * Mixes the id, position and velocity of every object in the order of the list into the previous checksum.
+     */
+    private long computeChecksum()
+    {
+        return this.hashState(this.checksum);
+    }
+
+    /*
+     * @return Hash of the current state only, unlike the checksum it doesn't depend on the states after the previous steps.
+     */
+    long computeStateHash()
+    {
+        return this.hashState(0);
+    }
+
+    private long hashState(long seed)
+    {
+        long hash = mixIntoChecksum(seed, this.stepCount);
+        for (int i = 0, n = this.objects.size(); i < n; i++)
         {
-            GravitationalObject currentObject = this.objects.get(i);
-            if (currentObject.getMass() != 0)
+            GravitationalObject object = this.objects.get(i);
+            hash = mixIntoChecksum(hash, object.id);
+            hash = mixIntoChecksum(hash, Double.doubleToLongBits(object.position.x));
+            hash = mixIntoChecksum(hash, Double.doubleToLongBits(object.position.y));
+            hash = mixIntoChecksum(hash, Double.doubleToLongBits(object.velocity.x));
+            hash = mixIntoChecksum(hash, Double.doubleToLongBits(object.velocity.y));
+        }
+        return hash;
+    }
+
+    private static long mixIntoChecksum(long hash, long value)
+    {
+        hash ^= value;
+        hash *= 0x100000001b3L;
+        return hash ^ (hash >>> 29);
+    }
+
+    /*
+     * Sets the velocity of the view to the velocity of the center of mass, so the view follows the objects.
+     */
+    void updateViewVelocity()
+    {
+        if (this.totalMass == 0)
+        {
+            if (this.viewVelocity.x != 0 || this.viewVelocity.y != 0)
             {
-                Vector2d totalForce = new Vector2d(0, 0);
-                for (int j = 0; j < this.objects.size(); j++)
-                {
-                    if (j != i)
-                    {
-                        totalForce = totalForce.add(currentObject.getGravitationalForce(this.objects.get(j)));
-                    }
-                }
-                currentObject.velocity = currentObject.velocity.add(totalForce.multiply(deltaTime / currentObject.getMass()));
+                this.viewVelocity = new Vector2d(0, 0);
             }
-            currentObject.position = currentObject.position.add(currentObject.velocity.multiply(deltaTime));
+            return;
+        }
+        this.viewVelocity = new Vector2d(this.momentumX / this.totalMass, this.momentumY / this.totalMass);
+    }
+
+    private void addToAggregates(GravitationalObject object)
+    {
+        double mass = object.getGravitatingMass();
+        this.totalMass += mass;
+        this.momentumX += mass * object.velocity.x;
+        this.momentumY += mass * object.velocity.y;
+        this.weightedPositionX += mass * object.position.x;
+        this.weightedPositionY += mass * object.position.y;
+        // the escaped objects would keep zooming the view out
+        if (this.boundsValid && !object.frozen && !object.tracer)
+        {
+            this.boundsMinX = Math.min(this.boundsMinX, object.position.x - object.radius);
+            this.boundsMinY = Math.min(this.boundsMinY, object.position.y - object.radius);
+            this.boundsMaxX = Math.max(this.boundsMaxX, object.position.x + object.radius);
+            this.boundsMaxY = Math.max(this.boundsMaxY, object.position.y + object.radius);
         }
+    }
+
+    /*
+     * Subtracts the object from the sums, the bounding box is left as it is.
+     */
+    private void subtractFromAggregates(GravitationalObject object)
+    {
+        double mass = object.getGravitatingMass();
+        this.totalMass -= mass;
+        this.momentumX -= mass * object.velocity.x;
+        this.momentumY -= mass * object.velocity.y;
+        this.weightedPositionX -= mass * object.position.x;
+        this.weightedPositionY -= mass * object.position.y;
+    }
+
+    /*
+     * Computes all the aggregates from scratch.
+     */
+    private void recomputeAggregates()
+    {
+        this.totalMass = 0;
+        this.momentumX = 0;
+        this.momentumY = 0;
+        this.weightedPositionX = 0;
+        this.weightedPositionY = 0;
+        this.boundsMinX = Double.POSITIVE_INFINITY;
+        this.boundsMinY = Double.POSITIVE_INFINITY;
+        this.boundsMaxX = Double.NEGATIVE_INFINITY;
+        this.boundsMaxY = Double.NEGATIVE_INFINITY;
+        this.boundsValid = true;
         for (int i = 0; i < this.objects.size(); i++)
         {
-            for (int j = i + 1; j < this.objects.size(); j++)
+            GravitationalObject object = this.objects.get(i);
+            if (!object.removed)
             {
-                GravitationalObject o1 = this.objects.get(i);
-                GravitationalObject o2 = this.objects.get(j);
-                if (o1.doesCollide(o2))
+                this.addToAggregates(object);
+            }
+        }
+    }
+
+    public double getTotalMass()
+    {
+        return this.totalMass;
+    }
+
+    public Vector2d getMomentum()
+    {
+        return new Vector2d(this.momentumX, this.momentumY);
+    }
+
+    /*
+     * @return Kinetic plus potential energy of the objects with mass, O(n^2).
+     */
+    double getTotalEnergy()
+    {
+        int count = this.objects.size();
+        double kinetic = 0;
+        double potential = 0;
+        for (int i = 0; i < count; i++)
+        {
+            GravitationalObject object = this.objects.get(i);
+            double mass = object.removed ? 0 : object.getGravitatingMass();
+            if (mass == 0)
+            {
+                continue;
+            }
+            kinetic += mass * object.velocity.dot(object.velocity) / 2;
+            for (int j = i + 1; j < count; j++)
+            {
+                GravitationalObject other = this.objects.get(j);
+                double otherMass = other.removed ? 0 : other.getGravitatingMass();
+                double dx = other.position.x - object.position.x;
+                double dy = other.position.y - object.position.y;
+                double distance = Math.sqrt(dx * dx + dy * dy);
+                if (otherMass != 0 && distance != 0)
                 {
-                    Vector2d distanceVector = o1.position.subtract(o2.position);
-                    double collisionFactor = o1.velocity.subtract(o2.velocity).dot(distanceVector) / distanceVector.dot(distanceVector);
-                    Vector2d addVector = distanceVector.multiply(2 / (o1.getMass() + o2.getMass()) * collisionFactor);
-                    o1.velocity = o1.velocity.subtract(addVector.multiply(o2.getMass()));
-                    o2.velocity = o2.velocity.add(addVector.multiply(o1.getMass()));
-                    Vector2d totalShift = distanceVector.multiply((o1.radius + o2.radius) / distanceVector.getLength() * 2 - 2);
-                    double o1VelocityFraction = o1.velocity.getLength() / (o1.velocity.getLength() + o2.velocity.getLength());
-                    double o2VelocityFraction = 1 - o1VelocityFraction;
-                    Vector2d o1Shift = totalShift.multiply(o1VelocityFraction);
-                    Vector2d o2Shift = totalShift.multiply(-o2VelocityFraction);
-                    o1.position = o1.position.add(o1Shift);
-                    o2.position = o2.position.add(o2Shift);
+                    potential -= mass * otherMass / distance;
                 }
             }
         }
+        return kinetic + potential;
+    }
 
-        // change the view position
-        if (moveView)
+    long getNumberOfCollisions()
+    {
+        return this.collisionCount;
+    }
+
+    /*
+     * @return The center of mass of all the objects or null if there are no objects with mass.
+     */
+    public Vector2d getCenterOfMass()
+    {
+        if (this.totalMass == 0)
         {
-            this.viewPosition = this.viewPosition.add(this.viewVelocity.multiply(deltaTime));
+            return null;
         }
+        return new Vector2d(this.weightedPositionX / this.totalMass, this.weightedPositionY / this.totalMass);
     }
 
-    void updateViewVelocity()
+    /*
+     * @return The bounding box of all the objects that haven't escaped including their radii as {minX, minY, maxX, maxY} or null if there are no such objects.
+     */
+    public double[] getBounds()
     {
-        if (this.objects.size() == 0)
+        if (!this.boundsValid)
         {
-            if (this.viewVelocity.x != 0 || this.viewVelocity.y != 0)
+            this.recomputeAggregates();
+        }
+        if (this.boundsMinX > this.boundsMaxX)
+        {
+            return null;
+        }
+        return new double[]{this.boundsMinX, this.boundsMinY, this.boundsMaxX, this.boundsMaxY};
+    }
+
+    /*
+     * Sets the velocity of an object in the space and updates the momentum.
+     */
+    public void setVelocity(GravitationalObject object, Vector2d velocity)
+    {
+        if (this.getObjectById(object.id) == object)
+        {
+            if (object.aggregate != null)
             {
-                this.viewVelocity = new Vector2d(0, 0);
+                this.islands.wake(object.aggregate);
+            }
+            double mass = object.getGravitatingMass();
+            this.momentumX += mass * (velocity.x - object.velocity.x);
+            this.momentumY += mass * (velocity.y - object.velocity.y);
+        }
+        object.velocity = velocity;
+    }
+
+    /*
+     * Starts or stops recording the trails of the objects. The recorded trails are dropped when stopped.
+     */
+    void setTrailsEnabled(boolean trailsEnabled)
+    {
+        if (!trailsEnabled)
+        {
+            this.trails = null;
+        }
+        else if (this.trails == null)
+        {
+            this.trails = new TrailStore(TrailStore.DEFAULT_BUDGET);
+        }
+    }
+
+    boolean areTrailsEnabled()
+    {
+        return this.trails != null;
+    }
+
+    /*
+     * Adds the current positions of the objects to their trails, if the trails are enabled.
+     */
+    void recordTrails()
+    {
+        if (this.trails == null)
+        {
+            return;
+        }
+        for (int i = 0; i < this.objects.size(); i++)
+        {
+            GravitationalObject object = this.objects.get(i);
+            if (!object.removed)
+            {
+                this.trails.record(i, object.position.x, object.position.y);
             }
+        }
+    }
+
+    /*
+     * Moves and zooms the view, so all the objects are visible.
+     */
+    public void zoomToFit(int viewWidth, int viewHeight)
+    {
+        double[] bounds = this.getBounds();
+        if (bounds == null)
+        {
             return;
         }
-        Vector2d momentum = new Vector2d(0, 0);
-        double mass = 0;
-        for (int i = 0, n = this.objects.size(); i < n; i++)
+        this.viewPosition = new Vector2d((bounds[0] + bounds[2]) / 2, (bounds[1] + bounds[3]) / 2);
+
+        // leave a margin of 5 % on each side
+        double enlargement = 0.9 * Math.min(viewWidth / (bounds[2] - bounds[0]), viewHeight / (bounds[3] - bounds[1]));
+        if (!Double.isInfinite(enlargement))
         {
-            GravitationalObject obj = this.objects.get(i);
-            double objMass = obj.getMass();
-            momentum = momentum.add(obj.velocity.multiply(objMass));
-            mass += objMass;
+            this.zoomLevel = Math.log(enlargement);
         }
-        this.viewVelocity = momentum.multiply(1 / mass);
     }
 
+    /*
+     * @return Bundle with the state of the space in the compact form of a SpaceSnapshot, the tracers aren't included.
+     */
     public Bundle putToBundle()
     {
-        Bundle bundle = new Bundle();
-        bundle.putDouble("viewX", this.viewPosition.x);
-        bundle.putDouble("viewY", this.viewPosition.y);
-        bundle.putParcelableArray("objects", this.objects.toArray(new GravitationalObject[this.objects.size()]));
-        bundle.putDouble("zoom", this.zoomLevel);
+        Tracing.begin(Tracing.SAVE_STATE, this.objects.size());
+        SpaceSnapshot snapshot = new SpaceSnapshot();
+        this.captureSnapshot(snapshot);
+        Bundle bundle = snapshot.putToBundle();
+        Tracing.end(Tracing.SAVE_STATE);
         return bundle;
     }
 
     public GravitySpace(Bundle bundle)
     {
-        this.viewPosition = new Vector2d(bundle.getDouble("viewX"), bundle.getDouble("viewY"));
-        this.objects = new ArrayList<>(Arrays.asList((GravitationalObject[]) bundle.getParcelableArray("objects")));
-        this.zoomLevel = bundle.getDouble("zoom");
+        this(SpaceSnapshot.fromBundle(bundle));
     }
 
     public GravitySpace()
@@ -124,8 +1104,104 @@ class GravitySpace
 
     }
 
+    /*
+     * Copies the state of the space into the snapshot. Must be called between the steps.
+     */
+    void captureSnapshot(SpaceSnapshot snapshot)
+    {
+        int count = this.objects.size();
+        snapshot.ensureCapacity(count);
+        int captured = 0;
+        for (int i = 0; i < count; i++)
+        {
+            GravitationalObject object = this.objects.get(i);
+            if (!object.removed)
+            {
+                snapshot.ids[captured] = object.id;
+                snapshot.x[captured] = object.position.x;
+                snapshot.y[captured] = object.position.y;
+                snapshot.velocityX[captured] = object.velocity.x;
+                snapshot.velocityY[captured] = object.velocity.y;
+                snapshot.radius[captured] = object.radius;
+                snapshot.density[captured] = object.density;
+                snapshot.flags[captured] = (byte) ((object.frozen ? SpaceSnapshot.FROZEN : 0) | (object.tracer ? SpaceSnapshot.TRACER : 0));
+                captured++;
+            }
+        }
+        snapshot.count = captured;
+        snapshot.viewX = this.viewPosition.x;
+        snapshot.viewY = this.viewPosition.y;
+        snapshot.zoomLevel = this.zoomLevel;
+        snapshot.nextId = this.nextId;
+        snapshot.stepCount = this.stepCount;
+    }
+
+    /*
+     * Creates a space with the state captured in the snapshot.
+     */
+    GravitySpace(SpaceSnapshot snapshot)
+    {
+        this.viewPosition = new Vector2d(snapshot.viewX, snapshot.viewY);
+        this.zoomLevel = snapshot.zoomLevel;
+        this.nextId = snapshot.nextId;
+        this.stepCount = snapshot.stepCount;
+        this.objects.ensureCapacity(snapshot.count);
+        for (int i = 0; i < snapshot.count; i++)
+        {
+            GravitationalObject object = new GravitationalObject(new Vector2d(snapshot.x[i], snapshot.y[i]), snapshot.radius[i], snapshot.density[i]);
+            object.velocity = new Vector2d(snapshot.velocityX[i], snapshot.velocityY[i]);
+            object.id = snapshot.ids[i];
+            object.frozen = (snapshot.flags[i] & SpaceSnapshot.FROZEN) != 0;
+            object.tracer = (snapshot.flags[i] & SpaceSnapshot.TRACER) != 0;
+            this.idToSlot.put(object.id, i);
+            this.objects.add(object);
+        }
+        this.recomputeAggregates();
+    }
+
+    /*
+     * @return A copy of the space with copies of all the objects keeping their ids, of the sleeping Aggregates and of the tracers. The trails are enabled if they are enabled here, but empty.
+     */
+    GravitySpace copy()
+    {
+        GravitySpace copy = new GravitySpace();
+        copy.viewPosition = this.viewPosition;
+        copy.viewVelocity = this.viewVelocity;
+        copy.zoomLevel = this.zoomLevel;
+        copy.nextId = this.nextId;
+        copy.stepCount = this.stepCount;
+        copy.objects.ensureCapacity(this.objects.size());
+        for (int i = 0; i < this.objects.size(); i++)
+        {
+            GravitationalObject object = this.objects.get(i);
+            if (!object.removed)
+            {
+                GravitationalObject objectCopy = new GravitationalObject(object.position, object.radius, object.density);
+                objectCopy.velocity = object.velocity;
+                objectCopy.id = object.id;
+                objectCopy.frozen = object.frozen;
+                objectCopy.tracer = object.tracer;
+                objectCopy.restingPasses = object.restingPasses;
+                objectCopy.restingOffsetX = object.restingOffsetX;
+                objectCopy.restingOffsetY = object.restingOffsetY;
+                copy.idToSlot.put(objectCopy.id, copy.objects.size());
+                copy.objects.add(objectCopy);
+            }
+        }
+        copy.recomputeAggregates();
+        copy.setTrailsEnabled(this.areTrailsEnabled());
+        copy.escaperPolicy = this.escaperPolicy == null ? null : this.escaperPolicy.copy();
+        // the sleeping piles stay asleep in the copy, so it continues like this space
+        copy.islands = this.islands == null ? null : this.islands.copy(copy);
+        copy.tracers = this.tracers.copy();
+        copy.tracerStepTime = this.tracerStepTime;
+        copy.tracerTime = this.tracerTime;
+        return copy;
+    }
+
     public void draw(Canvas canvas, boolean drawLineGrid)
     {
+        Tracing.begin(Tracing.DRAW, this.objects.size());
         int width = canvas.getWidth();
         int height = canvas.getHeight();
 
@@ -159,6 +1235,20 @@ class GravitySpace
             }
         }
 
+        if (this.trails != null)
+        {
+            p.setStrokeWidth(2);
+            p.setColor(Color.argb(127, 127, 127, 255));
+            this.trails.draw(canvas, p, this.objects, this.viewPosition.x, this.viewPosition.y, enlargement);
+        }
+
+        if (this.tracers.size() != 0)
+        {
+            p.setStrokeWidth(2);
+            p.setColor(Color.argb(191, 191, 191, 255));
+            this.tracers.draw(canvas, p, this.viewPosition.x, this.viewPosition.y, enlargement);
+        }
+
         for (int i = 0; i < this.objects.size(); i++)
         {
             GravitationalObject currentObject = this.objects.get(i);
@@ -171,6 +1261,7 @@ class GravitySpace
                 canvas.drawCircle((float) realCenterVector.x, (float) realCenterVector.y, (float) objectRealSize, p);
             }
         }
+        Tracing.end(Tracing.DRAW);
     }
 
     public void drawSpecific(Canvas canvas, GravitationalObject object, int centerColor, boolean withVelocity)
@@ -197,6 +1288,22 @@ class GravitySpace
         }
     }
 
+    /*
+     * Draws line segments given in the space coordinates as x0, y0, x1, y1 of every segment.
+     * The stroke width of the paint is in pixels.
+     */
+    public void drawSegments(Canvas canvas, float[] segments, int segmentCount, Paint p)
+    {
+        float enlargement = (float) this.getEnlargement();
+        canvas.save();
+        canvas.translate(canvas.getWidth() / 2f, canvas.getHeight() / 2f);
+        canvas.scale(enlargement, enlargement);
+        canvas.translate((float) -this.viewPosition.x, (float) -this.viewPosition.y);
+        p.setStrokeWidth(p.getStrokeWidth() / enlargement);
+        canvas.drawLines(segments, 0, 4 * segmentCount, p);
+        canvas.restore();
+    }
+
     /*
      * Draws an arrow from the center of the passed GravitationalObject pointing in the direction of the velocity of the object.
      */
@@ -221,9 +1328,48 @@ class GravitySpace
         }
     }
 
-    public void addObject(GravitationalObject object)
+    /*
+     * Adds the object to the space and assigns it a new id.
+     * @return The id of the added object.
+     */
+    public long addObject(GravitationalObject object)
     {
+        object.id = this.nextId++;
+        object.removed = false;
+        this.idToSlot.put(object.id, this.objects.size());
         this.objects.add(object);
+        this.addToAggregates(object);
+        if (this.events != null)
+        {
+            this.events.record(SimulationEvent.Type.ADDED, object.id, -1, object.position.x, object.position.y, 0);
+        }
+        return object.id;
+    }
+
+    public void addObjects(Collection<GravitationalObject> objects)
+    {
+        this.objects.ensureCapacity(this.objects.size() + objects.size());
+        for (GravitationalObject object : objects)
+        {
+            this.addObject(object);
+        }
+    }
+
+    /*
+     * Adds the objects described by the first bodies.count entries of the snapshot and assigns them new ids.
+     * The ids and the view in the snapshot are ignored.
+     */
+    void addObjects(SpaceSnapshot bodies)
+    {
+        this.objects.ensureCapacity(this.objects.size() + bodies.count);
+        for (int i = 0; i < bodies.count; i++)
+        {
+            GravitationalObject object = new GravitationalObject(new Vector2d(bodies.x[i], bodies.y[i]), bodies.radius[i], bodies.density[i]);
+            object.velocity = new Vector2d(bodies.velocityX[i], bodies.velocityY[i]);
+            object.frozen = (bodies.flags[i] & SpaceSnapshot.FROZEN) != 0;
+            object.tracer = (bodies.flags[i] & SpaceSnapshot.TRACER) != 0;
+            this.addObject(object);
+        }
     }
 
     public GravitationalObject getObject(int index)
@@ -231,14 +1377,106 @@ class GravitySpace
         return this.objects.get(index);
     }
 
+    /*
+     * @return The object with the passed id or null if there is no such object in the space.
+     */
+    public GravitationalObject getObjectById(long id)
+    {
+        Integer slot = this.idToSlot.get(id);
+        if (slot == null)
+        {
+            return null;
+        }
+        GravitationalObject object = this.objects.get(slot);
+        return object.removed ? null : object;
+    }
+
     public int getNumberOfObjects()
     {
-        return this.objects.size();
+        return this.objects.size() - this.pendingRemovals.size();
+    }
+
+    /*
+     * Removes the object with the passed id. If called during a step, the removal is deferred until the step ends.
+     */
+    public void removeObject(long id)
+    {
+        this.markRemoved(id);
+        if (!this.stepping)
+        {
+            this.compact();
+        }
+    }
+
+    /*
+     * Removes all the objects with the passed ids. The objects are marked first and then compacted at once, so the cost is linear in the number of removed objects.
+     */
+    public void removeObjects(long[] ids)
+    {
+        for (long id : ids)
+        {
+            this.markRemoved(id);
+        }
+        if (!this.stepping)
+        {
+            this.compact();
+        }
+    }
+
+    private void markRemoved(long id)
+    {
+        Integer slot = this.idToSlot.get(id);
+        if (slot != null)
+        {
+            GravitationalObject object = this.objects.get(slot);
+            if (!object.removed)
+            {
+                if (object.aggregate != null)
+                {
+                    this.islands.wake(object.aggregate);
+                }
+                object.removed = true;
+                this.pendingRemovals.add(object);
+                this.subtractFromAggregates(object);
+                this.boundsValid = false;
+                if (this.events != null)
+                {
+                    this.events.record(SimulationEvent.Type.REMOVED, object.id, -1, object.position.x, object.position.y, 0);
+                }
+            }
+        }
     }
 
-    public void removeObject(int index)
+    /*
+     * Swap-deletes all the objects marked as removed. The last object in the list is moved to the slot of each removed object.
+     */
+    private void compact()
     {
-        this.objects.remove(index);
+        for (int i = 0, n = this.pendingRemovals.size(); i < n; i++)
+        {
+            int slot = this.idToSlot.remove(this.pendingRemovals.get(i).id);
+            int lastSlot = this.objects.size() - 1;
+            GravitationalObject last = this.objects.remove(lastSlot);
+            if (this.trails != null)
+            {
+                this.trails.remove(slot);
+            }
+            if (slot != lastSlot)
+            {
+                this.objects.set(slot, last);
+                this.idToSlot.put(last.id, slot);
+                if (this.trails != null)
+                {
+                    this.trails.move(lastSlot, slot);
+                }
+            }
+        }
+        this.pendingRemovals.clear();
+        if (this.objects.isEmpty())
+        {
+            // get rid of the rounding errors
+            this.recomputeAggregates();
+        }
     }
 
     /*
@@ -256,16 +1494,16 @@ class GravitySpace
 
     /*
      * @param spaceLocation The vector to find.
-     * @return The index of the GravitationalObject that contains the passed spaceLocation. If no object contains this location -1 is returned.
+     * @return The id of the GravitationalObject that contains the passed spaceLocation. If no object contains this location -1 is returned.
      */
-    public int isContainedIn(Vector2d spaceLocation)
+    public long isContainedIn(Vector2d spaceLocation)
     {
         for (int i = 0; i < this.objects.size(); i++)
         {
             GravitationalObject currentObject = this.objects.get(i);
             if (currentObject.position.subtract(spaceLocation).selfDot() <= Math.pow(currentObject.radius, 2))
             {
-                return i;
+                return currentObject.id;
             }
         }
         return -1;
@@ -276,11 +1514,6 @@ class GravitySpace
         return Math.exp(this.zoomLevel);
     }
 
-    public void drawObjectVelocity(Canvas canvas, int index)
-    {
-        this.drawObjectVelocity(canvas, this.objects.get(index));
-    }
-
     public void drawObjectVelocity(Canvas canvas, GravitationalObject object)
     {
         Paint p = new Paint();
@@ -322,11 +1555,14 @@ class GravitySpace
         {
             return;
         }
-        double leastDistance = (this.viewPosition.subtract(objects.get(0).position)).selfDot();
+        double leastDistance = Double.POSITIVE_INFINITY;
         int leastDistanceIndex = 0;
-        for (int i = 1; i < objects.size(); i++)
+        for (int i = 0; i < objects.size(); i++)
         {
-            double distance = (this.viewPosition.subtract(objects.get(i).position)).selfDot();
+            Vector2d position = objects.get(i).position;
+            double dx = this.viewPosition.x - position.x;
+            double dy = this.viewPosition.y - position.y;
+            double distance = dx * dx + dy * dy;
             if (distance < leastDistance)
             {
                 leastDistance = distance;
@@ -12,6 +12,9 @@ import android.view.GestureDetector;
 import android.view.MotionEvent;
 import android.view.ScaleGestureDetector;
 import android.view.View;
+import android.widget.Toast;
+
+import java.io.File;
 
 /**
  * Created by mimo31 on 3/20/2016.
@@ -41,14 +44,14 @@ public class GravityView extends View implements DialogInterface.OnClickListener
     // when the object is added, it is set to 1, and it is animated down to zero when the button completely disappears
     private float confirmHidingState;
 
-    // index of the object we should be showing info of
+    // id of the object we should be showing info of
     // when no info should be shown, value is -1
-    private int objectInfoIndex = -1;
+    private long objectInfoId = -1;
 
     // animation state of the object info panel
     // 0 - hidden
     // 1 - completely shown
-    // if not already hidden or completely shown, the value is animated depending on objectInfoIndex == -1
+    // if not already hidden or completely shown, the value is animated depending on objectInfoId == -1
     private float objectInfoState;
 
     // the gravitational object which has been previously selected
@@ -60,7 +63,23 @@ public class GravityView extends View implements DialogInterface.OnClickListener
     private boolean changingVelocity;
 
     // GravitySpace - where all objects are stored (except the one that is being added and the deleted ones)
-    private GravitySpace space = new GravitySpace();
+    private GravitySpace space;
+
+    // objects farther than this from the barycenter that can't come back are demoted to tracers
+    private static final double ESCAPE_DISTANCE = 100000;
+
+    // the tracers are moved once per tick, so they cost as much at any number of the substeps
+    private static final double TRACER_STEP_TIME = 1;
+
+    // number of the tracers added by addTracerRing
+    private static final int TRACER_RING_SIZE = 20000;
+
+    // threads the steps of the GravitySpace are run on
+    private final StepExecutor executor;
+
+    // the largest number of objects put into the Bundle of the View, a larger space would exceed the size limit of the Bundles
+    // and is restored from the autosave after the process has been killed
+    private static final int MAX_BUNDLED_OBJECTS = 5000;
 
     // indicates whether the line grid in the background should be drawn
     // this is can be directly specified by the user in the settings
@@ -69,32 +88,126 @@ public class GravityView extends View implements DialogInterface.OnClickListener
     // indicates whether the view should move along with the center of mass of the objects
     public boolean followObjects = true;
 
+    // indicates whether the view should be moved and zoomed after every tick, so all the objects are visible
+    // this can be directly specified by the user in the settings
+    public boolean zoomToFit;
+
+    // saves the space periodically, so it can be restored after the process has been killed
+    private final Autosave autosave;
+
+    // chooses the number of substeps and the collision frequency so that the ticks fit into the frame
+    private final QualityGovernor governor;
+
+    // indicates whether the trails of the objects are recorded and drawn
+    // this can be directly specified by the user in the settings
+    private boolean showTrails;
+
+    // whether the objects escaping from the system are demoted to tracers, off by default, so the physics is unchanged
+    private boolean demoteEscapers;
+
+    // whether the resting piles are simulated as single bodies until something hits them, off by default, as it's not exact
+    private boolean sleepingEnabled;
+
+    // indicates whether the governor is forbidden to lower the accuracy of the simulation
+    // this is can be directly specified by the user in the settings
+    private boolean fullAccuracy;
+
+    // runs the space faster than it's displayed, null when the time isn't warped
+    private TimeWarp timeWarp;
+
+    // predicts the path of the object being added
+    private final TrajectoryPredictor predictor;
+
     public GravityView(MainActivity attachedTo)
+    {
+        this(attachedTo, new StepExecutor(Runtime.getRuntime().availableProcessors()), new Autosave(attachedTo.getFilesDir()), new QualityGovernor());
+        this.setSpace(new GravitySpace());
+    }
+
+    /**
+     * Restores the View after the process has been killed.
+     * The space is empty if it was too large to be put into the Bundle.
+     */
+    public GravityView(MainActivity attachedTo, Bundle bundle)
+    {
+        this(attachedTo);
+        if (bundle.containsKey("space"))
+        {
+            this.setSpace(new GravitySpace(bundle.getBundle("space")));
+        }
+        this.restoreSettings(bundle);
+    }
+
+    /**
+     * Attaches the simulation of the previous Activity after a configuration change, only the settings of the View are read from the Bundle.
+     */
+    GravityView(MainActivity attachedTo, Bundle bundle, RetainedSimulation retained)
+    {
+        this(attachedTo, retained.executor, retained.autosave, retained.governor);
+        this.space = retained.space;
+        this.restoreSettings(bundle);
+    }
+
+    private GravityView(MainActivity attachedTo, StepExecutor executor, Autosave autosave, QualityGovernor governor)
     {
         super(attachedTo.getApplicationContext());
         this.attachedTo = attachedTo;
         this.gestureDetector = new GestureDetectorCompat(attachedTo.getApplicationContext(), new GestureListener(this));
         this.scaleDetector = new ScaleGestureDetector(attachedTo.getApplicationContext(), new ScaleListener(this));
+        this.executor = executor;
+        this.autosave = autosave;
+        this.governor = governor;
+        this.predictor = new TrajectoryPredictor(new TrajectoryPredictor.Listener()
+        {
+            @Override
+            public void onTrajectoryPredicted()
+            {
+                GravityView.this.postInvalidate();
+            }
+        });
     }
 
-    public GravityView(MainActivity attachedTo, Bundle bundle)
+    private void restoreSettings(Bundle bundle)
     {
-        this(attachedTo);
-        this.space = new GravitySpace(bundle.getBundle("space"));
         this.paused = bundle.getBoolean("paused");
         this.followObjects = bundle.getBoolean("followObjects");
+        this.zoomToFit = bundle.getBoolean("zoomToFit");
         this.showLineGrid = bundle.getBoolean("showLineGrid");
+        this.setFullAccuracy(bundle.getBoolean("fullAccuracy"));
+        this.setShowTrails(bundle.getBoolean("showTrails"));
+        this.setDemoteEscapers(bundle.getBoolean("demoteEscapers"));
+        this.setSleepingEnabled(bundle.getBoolean("sleepingEnabled"));
         this.changingVelocity = bundle.getBoolean("changingVelocity");
         this.lastObjectInfoShown = bundle.getParcelable("lastObjectInfoShown");
+        if (this.lastObjectInfoShown != null)
+        {
+            // the parceled object is a copy, continue with the object in the space if it's there
+            GravitationalObject liveObject = this.space.getObjectById(this.lastObjectInfoShown.id);
+            if (liveObject != null)
+            {
+                this.lastObjectInfoShown = liveObject;
+            }
+        }
         this.objectInfoState = bundle.getFloat("objectInfoState");
-        this.objectInfoIndex = bundle.getInt("objectInfoIndex");
+        this.objectInfoId = bundle.getLong("objectInfoId", -1);
         this.positionConfirmed = bundle.getBoolean("positionConfirmed");
+        this.setTimeWarp(bundle.getInt("timeWarp", 1));
     }
 
     @Override
     public void draw(Canvas canvas)
     {
         super.draw(canvas);
+
+        // the TimeWarp may be running the space on its thread
+        synchronized (this.space)
+        {
+            this.drawSimulation(canvas);
+        }
+    }
+
+    private void drawSimulation(Canvas canvas)
+    {
         Paint p = new Paint();
 
         int width = canvas.getWidth();
@@ -124,6 +237,15 @@ public class GravityView extends View implements DialogInterface.OnClickListener
         if (this.attachedTo.state == ViewState.ADDING_OBJECT || this.attachedTo.state == ViewState.ANIM_ADD_OBJECT_CANCEL ||
                 this.attachedTo.state == ViewState.ANIM_ADD_OBJECT_TO_GRAVITY)
         {
+            // draw the predicted path of the adding object, red if it ends by a collision
+            TrajectoryPredictor.Trajectory trajectory = this.predictor.getTrajectory();
+            if (trajectory != null)
+            {
+                p.setColor(trajectory.collides ? Color.argb(191, 255, 63, 63) : Color.argb(191, 255, 255, 0));
+                p.setStrokeWidth(3);
+                this.space.drawSegments(canvas, trajectory.segments, trajectory.segmentCount, p);
+            }
+
             // draw the adding object with the specific color depending on whether the object is valid
             this.space.drawSpecific(canvas, this.attachedTo.addingObject, this.isAddingObjectValid ? Color.GREEN : Color.RED, this.positionConfirmed);
         }
@@ -156,15 +278,14 @@ public class GravityView extends View implements DialogInterface.OnClickListener
         // draw the info panel
         if (this.objectInfoState != 0)
         {
-            GravitationalObject objectToUse;
-            if (this.objectInfoIndex == -1)
+            GravitationalObject objectToUse = this.objectInfoId == -1 ? null : this.space.getObjectById(this.objectInfoId);
+            if (objectToUse == null)
             {
                 objectToUse = this.lastObjectInfoShown;
             }
             else
             {
-                objectToUse = this.space.getObject(this.objectInfoIndex);
-                this.space.drawObjectVelocity(canvas, this.objectInfoIndex);
+                this.space.drawObjectVelocity(canvas, objectToUse);
             }
             objectToUse.drawInfo(canvas, MainActivity.getMovableViewPosition(this.objectInfoState, 0));
         }
@@ -196,6 +317,21 @@ public class GravityView extends View implements DialogInterface.OnClickListener
         {
             StringDraw.drawMaxString(text, menuButtonRect, canvas.getHeight() / 128, canvas, p);
         }
+
+        // show the quality level chosen by the governor under the top rectangle
+        if (this.governor.getLevel() != 0)
+        {
+            p.setColor(Color.GRAY);
+            String qualityText = "Quality " + (this.governor.getNumberOfLevels() - this.governor.getLevel()) + "/" + this.governor.getNumberOfLevels() + ", " + this.governor.getSubsteps() + " substeps";
+            StringDraw.drawMaxString(qualityText, new Rect(width * 2 / 3, height / 16, width, height * 3 / 32), height / 256, StringDraw.TextAlign.RIGHT, canvas, p);
+        }
+
+        // show the time warp factor under the top rectangle
+        if (this.timeWarp != null)
+        {
+            p.setColor(Color.GRAY);
+            StringDraw.drawMaxString("Time warp \u00d7" + this.timeWarp.getFactor(), new Rect(0, height / 16, width / 3, height * 3 / 32), height / 256, canvas, p);
+        }
     }
 
     @Override
@@ -207,8 +343,14 @@ public class GravityView extends View implements DialogInterface.OnClickListener
         ViewState activityState = this.attachedTo.state;
         if (activityState == ViewState.SIMULATION || activityState == ViewState.ADDING_OBJECT)
         {
-            this.gestureDetector.onTouchEvent(event);
-            this.scaleDetector.onTouchEvent(event);
+            synchronized (this.space)
+            {
+                this.gestureDetector.onTouchEvent(event);
+                this.scaleDetector.onTouchEvent(event);
+            }
+
+            // a gesture may have started the simulation or an animation
+            this.attachedTo.requestUpdate();
         }
         return true;
     }
@@ -218,24 +360,40 @@ public class GravityView extends View implements DialogInterface.OnClickListener
      */
     private void validateAddingObject()
     {
-        this.isAddingObjectValid = !this.space.doesCollide(this.attachedTo.addingObject);
+        synchronized (this.space)
+        {
+            this.isAddingObjectValid = !this.space.doesCollide(this.attachedTo.addingObject);
+        }
     }
 
     void startAddingObject()
     {
-        this.objectInfoIndex = -1;
+        this.objectInfoId = -1;
         this.objectInfoState = 0;
         this.changingVelocity = false;
         this.positionConfirmed = false;
         this.validateAddingObject();
+        this.predictAddingObjectPath();
+    }
+
+    /**
+     * Restarts the prediction of the path of the adding object, should be called whenever its position or velocity changes.
+     */
+    private void predictAddingObjectPath()
+    {
+        synchronized (this.space)
+        {
+            this.predictor.predict(this.space, this.attachedTo.addingObject);
+        }
     }
 
     /**
      * Updates the GravityView.
      * Only to be called when the Activity is in the SIMULATION ViewState.
-     * If the above rule is followed, should be called approx. every 17 ms.
+     * If the above rule is followed, should be called once per SimulationLoop tick.
+     * @return whether anything has changed, false when paused and no animation is in progress
      */
-    void update()
+    boolean update()
     {
         boolean doInvalidate = false;
 
@@ -251,19 +409,41 @@ public class GravityView extends View implements DialogInterface.OnClickListener
         }
 
         // update the objects, if not paused or not changing velocity
-        if (!this.paused && !this.changingVelocity)
+        if (!this.paused && !this.changingVelocity && this.timeWarp != null)
         {
-            for (int i = 0; i < 64; i++)
+            this.updateWarped();
+            doInvalidate = true;
+        }
+        else if (!this.paused && !this.changingVelocity)
+        {
+            long tickStart = System.nanoTime();
+            int substeps = this.governor.getSubsteps();
+            int collisionInterval = this.governor.getCollisionInterval();
+            Tracing.begin(Tracing.VIEW_UPDATE, this.space.getNumberOfObjects(), substeps);
+            for (int i = 0; i < substeps; i++)
             {
-                this.space.update(1 / (double) 64, this.followObjects);
+                this.space.update(1 / (double) substeps, this.followObjects, (i + 1) % collisionInterval == 0);
             }
             this.space.updateViewVelocity();
+            this.space.recordTrails();
+            if (this.zoomToFit)
+            {
+                this.space.zoomToFit(this.getWidth(), this.getHeight());
+            }
+            this.governor.reportTickTime(System.nanoTime() - tickStart);
+            this.autosave.tick(this.space);
+            Tracing.end(Tracing.VIEW_UPDATE);
             doInvalidate = true;
         }
+        else if (this.timeWarp != null)
+        {
+            // the simulation has stopped, don't let the TimeWarp finish the ticks granted before
+            this.timeWarp.cancelPendingTicks();
+        }
 
         // object is selected - info panel should be completely shown && info panel isn't completely shown
         // - animate the showing of the info panel
-        if (this.objectInfoIndex != -1 && this.objectInfoState != 1)
+        if (this.objectInfoId != -1 && this.objectInfoState != 1)
         {
             this.objectInfoState += 0.08;
             if (this.objectInfoState > 1)
@@ -274,7 +454,7 @@ public class GravityView extends View implements DialogInterface.OnClickListener
         }
         // no object is selected - info panel should be completely hidden && info panel isn't completely hidden
         // - animate the hiding of the info panel
-        else if (this.objectInfoIndex == -1 && this.objectInfoState != 0)
+        else if (this.objectInfoId == -1 && this.objectInfoState != 0)
         {
             this.objectInfoState -= 0.08;
             if (this.objectInfoState < 0)
@@ -288,15 +468,46 @@ public class GravityView extends View implements DialogInterface.OnClickListener
         {
             this.postInvalidate();
         }
+        return doInvalidate;
+    }
+
+    /**
+     * Grants the TimeWarp the ticks of this displayed tick and shows the state it has reached.
+     * Lowers the factor if the engine can't keep up with it.
+     */
+    private void updateWarped()
+    {
+        if (this.timeWarp.isBehind())
+        {
+            int factor = TimeWarp.getLowerFactor(this.timeWarp.getFactor());
+            this.setTimeWarp(factor);
+            Toast.makeText(this.attachedTo.getApplicationContext(), "The simulation is too slow for this time warp, continuing at \u00d7" + factor + ".", Toast.LENGTH_SHORT).show();
+            if (this.timeWarp == null)
+            {
+                return;
+            }
+        }
+        Tracing.begin(Tracing.VIEW_UPDATE, this.space.getNumberOfObjects());
+        synchronized (this.space)
+        {
+            this.timeWarp.tick(this.followObjects);
+            this.space.recordTrails();
+            if (this.zoomToFit)
+            {
+                this.space.zoomToFit(this.getWidth(), this.getHeight());
+            }
+            this.autosave.tick(this.space);
+        }
+        Tracing.end(Tracing.VIEW_UPDATE);
     }
 
     /**
      * Selects an object. That also starts the animation of showing the object info panel.
-     * @param objectIndex index of the object to select
+     * @param objectId id of the object to select
      */
-    private void showObjectInfo(int objectIndex)
+    private void showObjectInfo(long objectId)
     {
-        this.objectInfoIndex = objectIndex;
+        this.objectInfoId = objectId;
     }
 
     /**
@@ -316,8 +527,12 @@ public class GravityView extends View implements DialogInterface.OnClickListener
      */
     private void hideObjectInfo()
     {
-        this.lastObjectInfoShown = this.space.getObject(this.objectInfoIndex);
-        this.objectInfoIndex = -1;
+        GravitationalObject selectedObject = this.space.getObjectById(this.objectInfoId);
+        if (selectedObject != null)
+        {
+            this.lastObjectInfoShown = selectedObject;
+        }
+        this.objectInfoId = -1;
     }
 
     /**
@@ -347,10 +562,14 @@ public class GravityView extends View implements DialogInterface.OnClickListener
     @Override
     public void onClick(DialogInterface dialog, int which)
     {
-        int indexToRemove = this.objectInfoIndex;
-        this.hideObjectInfo();
-        this.space.removeObject(indexToRemove);
-        this.space.updateViewVelocity();
+        long idToRemove = this.objectInfoId;
+        synchronized (this.space)
+        {
+            this.hideObjectInfo();
+            this.space.removeObject(idToRemove);
+            this.space.updateViewVelocity();
+        }
+        this.attachedTo.requestUpdate();
         dialog.cancel();
     }
 
@@ -359,7 +578,220 @@ public class GravityView extends View implements DialogInterface.OnClickListener
      */
     void clearAllObjects()
     {
-        this.space = new GravitySpace();
+        this.setSpace(new GravitySpace());
+        this.autosave.discard();
+    }
+
+    /**
+     * Adds a ring of tracers on circular orbits around the most massive object.
+     * @return false if there is no object
+     */
+    boolean addTracerRing()
+    {
+        synchronized (this.space)
+        {
+            GravitationalObject center = null;
+            for (int i = 0; i < this.space.getNumberOfObjects(); i++)
+            {
+                GravitationalObject object = this.space.getObject(i);
+                if (center == null || object.getGravitatingMass() > center.getGravitatingMass())
+                {
+                    center = object;
+                }
+            }
+            if (center == null)
+            {
+                return false;
+            }
+            this.space.getTracers().addRing(center, 2 * center.radius, 20 * center.radius, TRACER_RING_SIZE);
+        }
+        this.attachedTo.requestUpdate();
+        return true;
+    }
+
+    /**
+     * Saves the GravitySpace in the background right away, e.g. when the app goes to the background.
+     */
+    void autosave()
+    {
+        synchronized (this.space)
+        {
+            this.autosave.save(this.space);
+        }
+    }
+
+    /**
+     * Loads the last autosaved GravitySpace in the background, the listener is called on the background thread if there is one.
+     */
+    void loadAutosave(Autosave.LoadListener listener)
+    {
+        this.autosave.load(listener);
+    }
+
+    void discardAutosave()
+    {
+        this.autosave.discard();
+    }
+
+    /**
+     * Replaces the GravitySpace by a loaded one.
+     */
+    void restoreSpace(GravitySpace space)
+    {
+        synchronized (this.space)
+        {
+            this.hideObjectInfo();
+        }
+        this.setSpace(space);
+    }
+
+    private void setSpace(GravitySpace space)
+    {
+        int timeWarpFactor = this.getTimeWarp();
+        this.stopTimeWarp();
+        this.space = space;
+        this.space.setExecutor(this.executor);
+        this.space.setTrailsEnabled(this.showTrails);
+        this.space.setTracerStepTime(TRACER_STEP_TIME);
+        this.space.setEscaperPolicy(this.demoteEscapers ? new EscaperPolicy(EscaperPolicy.Action.DEMOTE, ESCAPE_DISTANCE) : null);
+        this.space.setSleepingEnabled(this.sleepingEnabled);
+        this.setTimeWarp(timeWarpFactor);
+    }
+
+    /**
+     * @return how many times faster than normally the simulation runs
+     */
+    int getTimeWarp()
+    {
+        return this.timeWarp == null ? 1 : this.timeWarp.getFactor();
+    }
+
+    /**
+     * Sets how many times faster than normally the simulation runs.
+     * The ticks are then run on a background thread and only the latest state is drawn, the factor is lowered if the engine can't keep up with it.
+     * @param factor one of TimeWarp.FACTORS
+     */
+    void setTimeWarp(int factor)
+    {
+        this.stopTimeWarp();
+        if (factor > 1)
+        {
+            this.timeWarp = new TimeWarp(this.space, factor, this.governor);
+            this.timeWarp.start();
+        }
+    }
+
+    private void stopTimeWarp()
+    {
+        if (this.timeWarp != null)
+        {
+            this.timeWarp.stop();
+            this.timeWarp = null;
+        }
+    }
+
+    /**
+     * Creates an exporter of the current state of the simulation showing the same area as the View with the same settings.
+     */
+    FrameExporter createExporter(int width, int height, File directory, FrameExporter.Format format)
+    {
+        synchronized (this.space)
+        {
+            return new FrameExporter(this.space, this.getWidth(), width, height, directory, format, this.showLineGrid, this.followObjects);
+        }
+    }
+
+    /**
+     * @return the live parts of the simulation to be attached to the View of the next Activity after a configuration change
+     */
+    RetainedSimulation retain()
+    {
+        // the next View starts its own TimeWarp with the factor from the Bundle
+        this.stopTimeWarp();
+        return new RetainedSimulation(this.space, this.executor, this.autosave, this.governor);
+    }
+
+    /**
+     * Stops the threads used by the simulation. Should be called when the View is no longer used and the simulation isn't retained.
+     */
+    void release()
+    {
+        this.stopTimeWarp();
+        this.predictor.shutdown();
+        this.executor.shutdown();
+        this.autosave.shutdown();
+    }
+
+    boolean isShowTrails()
+    {
+        return this.showTrails;
+    }
+
+    void setShowTrails(boolean showTrails)
+    {
+        this.showTrails = showTrails;
+        synchronized (this.space)
+        {
+            this.space.setTrailsEnabled(showTrails);
+        }
+    }
+
+    boolean isDemoteEscapers()
+    {
+        return this.demoteEscapers;
+    }
+
+    /**
+     * Enables or disables demoting the objects that escape from the system to tracers, the already demoted objects stay demoted.
+     */
+    void setDemoteEscapers(boolean demoteEscapers)
+    {
+        this.demoteEscapers = demoteEscapers;
+        synchronized (this.space)
+        {
+            if (demoteEscapers != (this.space.getEscaperPolicy() != null))
+            {
+                this.space.setEscaperPolicy(demoteEscapers ? new EscaperPolicy(EscaperPolicy.Action.DEMOTE, ESCAPE_DISTANCE) : null);
+            }
+        }
+    }
+
+    boolean isSleepingEnabled()
+    {
+        return this.sleepingEnabled;
+    }
+
+    /**
+     * Enables or disables putting the resting piles to sleep, the sleeping piles are woken up when disabled.
+     */
+    void setSleepingEnabled(boolean sleepingEnabled)
+    {
+        this.sleepingEnabled = sleepingEnabled;
+        synchronized (this.space)
+        {
+            this.space.setSleepingEnabled(sleepingEnabled);
+        }
+    }
+
+    boolean isFullAccuracy()
+    {
+        return this.fullAccuracy;
+    }
+
+    /**
+     * Sets whether the simulation must always run with the full accuracy, even if the ticks don't then fit into the frames.
+     */
+    void setFullAccuracy(boolean fullAccuracy)
+    {
+        this.fullAccuracy = fullAccuracy;
+        if (fullAccuracy)
+        {
+            this.governor.setAccuracyFloors(64, 1);
+        }
+        else
+        {
+            this.governor.setAccuracyFloors(8, 4);
+        }
     }
 
     /**
@@ -367,24 +799,40 @@ public class GravityView extends View implements DialogInterface.OnClickListener
      */
     public Vector2d getSpaceViewPosition()
     {
-        return this.space.getViewPosition();
+        synchronized (this.space)
+        {
+            return this.space.getViewPosition();
+        }
     }
 
     /**
-     * @return Bundle with all relevant state data about the View including the GravitySpace.
+     * @param includeSpace whether the GravitySpace should be included, it's left out anyway if it has more than MAX_BUNDLED_OBJECTS objects
+     * @return Bundle with all relevant state data about the View.
      */
-    public Bundle putToBundle()
+    public Bundle putToBundle(boolean includeSpace)
     {
         Bundle bundle = new Bundle();
-        bundle.putBundle("space", this.space.putToBundle());
+        if (includeSpace && this.space.getNumberOfObjects() <= MAX_BUNDLED_OBJECTS)
+        {
+            synchronized (this.space)
+            {
+                bundle.putBundle("space", this.space.putToBundle());
+            }
+        }
         bundle.putBoolean("paused", this.paused);
         bundle.putBoolean("followObjects", this.followObjects);
+        bundle.putBoolean("zoomToFit", this.zoomToFit);
         bundle.putBoolean("showLineGrid", this.showLineGrid);
+        bundle.putBoolean("fullAccuracy", this.fullAccuracy);
+        bundle.putBoolean("showTrails", this.showTrails);
+        bundle.putBoolean("demoteEscapers", this.demoteEscapers);
+        bundle.putBoolean("sleepingEnabled", this.sleepingEnabled);
         bundle.putBoolean("changingVelocity", this.changingVelocity);
         bundle.putParcelable("lastObjectInfoShown", this.lastObjectInfoShown);
         bundle.putFloat("objectInfoState", this.objectInfoState);
-        bundle.putInt("objectInfoIndex", this.objectInfoIndex);
+        bundle.putLong("objectInfoId", this.objectInfoId);
         bundle.putBoolean("positionConfirmed", this.positionConfirmed);
+        bundle.putInt("timeWarp", this.getTimeWarp());
         return bundle;
     }
 
@@ -446,7 +894,7 @@ public class GravityView extends View implements DialogInterface.OnClickListener
                 }
 
                 // check if the object info panel was tapped
-                if (this.attachedTo.objectInfoIndex != -1 && this.attachedTo.objectInfoState == 1 && tapY >= viewHeight * 5 / 6)
+                if (this.attachedTo.objectInfoId != -1 && this.attachedTo.objectInfoState == 1 && tapY >= viewHeight * 5 / 6)
                 {
                     this.handleObjectInfoClicks(tapX, tapY);
                     return true;
@@ -455,10 +903,10 @@ public class GravityView extends View implements DialogInterface.OnClickListener
                 // check if an object was tapped
                 GravitySpace space = this.attachedTo.space;
                 Vector2d spaceLocation = space.getSpaceLocation(new Vector2d(tapX, tapY), viewWidth, viewHeight);
-                int clickedIndex = space.isContainedIn(spaceLocation);
-                if (clickedIndex != -1)
+                long clickedId = space.isContainedIn(spaceLocation);
+                if (clickedId != -1)
                 {
-                    this.attachedTo.showObjectInfo(clickedIndex);
+                    this.attachedTo.showObjectInfo(clickedId);
                     this.attachedTo.postInvalidate();
                 }
             }
@@ -475,6 +923,7 @@ public class GravityView extends View implements DialogInterface.OnClickListener
                         {
                             this.attachedTo.space.addObject(activity.addingObject);
                             this.attachedTo.space.updateViewVelocity();
+                            this.attachedTo.predictor.cancel();
                             activity.addingObject = null;
                             activity.state = ViewState.SIMULATION;
                             this.attachedTo.confirmHidingState = 1;
@@ -531,6 +980,7 @@ public class GravityView extends View implements DialogInterface.OnClickListener
                     // validate that the new object does not collide with other objects
                     this.attachedTo.validateAddingObject();
                 }
+                this.attachedTo.predictAddingObjectPath();
                 this.attachedTo.postInvalidate();
             }
             return true;
@@ -597,7 +1047,7 @@ public class GravityView extends View implements DialogInterface.OnClickListener
                     // the location of the tap in GravitySpace coordinates
                     Vector2d spaceClickLocation = this.attachedTo.space.getSpaceLocation(new Vector2d(tapX, tapY), viewWidth, viewHeight);
 
-                    changingObject.velocity = spaceClickLocation.subtract(changingObject.position).multiply(1 / (double) 32);
+                    this.attachedTo.space.setVelocity(changingObject, spaceClickLocation.subtract(changingObject.position).multiply(1 / (double) 32));
 
                     this.attachedTo.postInvalidate();
                 }
@@ -631,7 +1081,11 @@ public class GravityView extends View implements DialogInterface.OnClickListener
         public void onLongPress(MotionEvent e)
         {
             super.onLongPress(e);
-            this.attachedTo.space.goToTheNearestObject();
+            // the long press is detected by a delayed message, not in onTouchEvent, so the space isn't locked yet
+            synchronized (this.attachedTo.space)
+            {
+                this.attachedTo.space.goToTheNearestObject();
+            }
             this.attachedTo.postInvalidate();
         }
     }
@@ -663,14 +1117,19 @@ public class GravityView extends View implements DialogInterface.OnClickListener
             {
                 // stop changing velocity
                 this.changingVelocity = false;
-                this.space.updateViewVelocity();
+                synchronized (this.space)
+                {
+                    this.space.updateViewVelocity();
+                }
                 return false;
             }
-            if (this.objectInfoIndex != -1)
+            if (this.objectInfoId != -1)
             {
                 // hide the object info panel
-                this.objectInfoIndex = -1;
-                this.lastObjectInfoShown = this.space.getObject(this.objectInfoIndex);
+                synchronized (this.space)
+                {
+                    this.hideObjectInfo();
+                }
                 return false;
             }
             return true;
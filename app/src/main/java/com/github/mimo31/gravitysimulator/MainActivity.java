@@ -7,35 +7,62 @@ import android.graphics.Canvas;
 import android.graphics.Color;
 import android.graphics.Paint;
 import android.graphics.Rect;
+import android.os.Build;
 import android.os.Bundle;
-import android.os.Handler;
 import android.support.v4.view.GestureDetectorCompat;
 import android.support.v7.app.AlertDialog;
+import android.util.Log;
 import android.view.GestureDetector;
 import android.view.MotionEvent;
 import android.view.View;
 import android.view.ViewGroup;
+import android.view.ViewStub;
 import android.view.Window;
 import android.view.animation.Animation;
 import android.view.animation.ScaleAnimation;
 import android.view.inputmethod.InputMethodManager;
+import android.widget.Button;
 import android.widget.CheckBox;
 import android.widget.CompoundButton;
 import android.widget.TextView;
 import android.widget.Toast;
 
-public class MainActivity extends Activity implements Runnable
+import java.io.File;
+import java.io.IOException;
+import java.text.DateFormat;
+import java.util.Date;
+
+public class MainActivity extends Activity implements SimulationLoop.Tickable
 {
-    // attached views
+    // attached views, all but the GravityView are null until their first use
     private GravityView gravityView;
     private PauseMenuView pauseView;
     private View addObjectView;
     private View helpView;
     private View settingsView;
 
-    private final Handler updateHandler = new Handler();
-    private boolean updating = true;
-    private final int updateDelay = 17;
+    // placeholders of the views inflated on their first use
+    private ViewStub helpStub;
+    private ViewStub addObjectStub;
+    private ViewStub settingsStub;
+
+    // when onCreate was called in ns, for measuring the startup
+    private long createTime;
+
+    // whether the work deferred until the first frame has been scheduled
+    private boolean startupFinished;
+
+    // time from onCreate to the first frame in ms, -1 until the first frame has been drawn, read by the startup benchmark
+    private volatile long startupTime = -1;
+
+    // whether the autosave should be offered when the startup is finished
+    private boolean offerRestore;
+
+    // calls tick in sync with the display, goes idle when nothing is changing
+    private final SimulationLoop loop = new SimulationLoop(this);
+
+    // the running export of the frames, null if there is none
+    private FrameExporter exporter;
     public GravitationalObject addingObject;
 
     // state when an animation between view is performed
@@ -51,55 +78,124 @@ public class MainActivity extends Activity implements Runnable
     protected void onCreate(Bundle savedInstanceState)
     {
         super.onCreate(savedInstanceState);
+        this.createTime = System.nanoTime();
 
-        // create the GravityView
-        if (savedInstanceState != null)
+        // create the GravityView, continue the simulation of the previous Activity if it's a configuration change
+        RetainedSimulation retained = (RetainedSimulation) this.getLastNonConfigurationInstance();
+        if (savedInstanceState != null && retained != null)
         {
-            this.gravityView = new GravityView(this, savedInstanceState.getBundle("GravityView"));
+            this.gravityView = new GravityView(this, savedInstanceState.getBundle("GravityView"), retained);
             this.gravityView.setVisibility(View.GONE);
         }
+        else if (savedInstanceState != null)
+        {
+            Bundle viewBundle = savedInstanceState.getBundle("GravityView");
+            this.gravityView = new GravityView(this, viewBundle);
+            this.gravityView.setVisibility(View.GONE);
+            // the space was too large for the Bundle
+            this.offerRestore = !viewBundle.containsKey("space");
+        }
         else
         {
             this.gravityView = new GravityView(this);
+            this.offerRestore = true;
         }
         this.addContentView(this.gravityView, new ViewGroup.LayoutParams(ViewGroup.LayoutParams.MATCH_PARENT, ViewGroup.LayoutParams.MATCH_PARENT));
 
-        //int width = getWidth();
-        //int height = getHeight();
-
-        // create the PauseView
-        this.pauseView = new PauseMenuView(this);
-        this.addContentView(this.pauseView, new ViewGroup.LayoutParams(ViewGroup.LayoutParams.MATCH_PARENT, ViewGroup.LayoutParams.MATCH_PARENT));
-        this.pauseView.setVisibility(View.GONE);
-
-        // create the HelpView
-        this.helpView = this.getLayoutInflater().inflate(R.layout.help_layout, null);
-        this.addContentView(this.helpView, new ViewGroup.LayoutParams(ViewGroup.LayoutParams.MATCH_PARENT, ViewGroup.LayoutParams.MATCH_PARENT));
-        this.helpView.setVisibility(View.GONE);
+        // the other views are created on their first use, the stubs keep their places in the order of the views
+        this.helpStub = this.addViewStub(R.layout.help_layout);
+        this.addObjectStub = this.addViewStub(R.layout.add_object_layout);
+        this.settingsStub = this.addViewStub(R.layout.settings_layout);
+    }
 
-        // create the AddObjectView
-        this.addObjectView = this.getLayoutInflater().inflate(R.layout.add_object_layout, null);
-        this.addContentView(this.addObjectView, new ViewGroup.LayoutParams(ViewGroup.LayoutParams.MATCH_PARENT, ViewGroup.LayoutParams.MATCH_PARENT));
-        this.addObjectView.setVisibility(View.GONE);
+    private ViewStub addViewStub(int layout)
+    {
+        ViewStub stub = new ViewStub(this, layout);
+        this.addContentView(stub, new ViewGroup.LayoutParams(ViewGroup.LayoutParams.MATCH_PARENT, ViewGroup.LayoutParams.MATCH_PARENT));
+        return stub;
+    }
 
-        // create the SettingsView
-        this.settingsView = this.getLayoutInflater().inflate(R.layout.settings_layout, null);
-        this.addContentView(this.settingsView, new ViewGroup.LayoutParams(ViewGroup.LayoutParams.MATCH_PARENT, ViewGroup.LayoutParams.MATCH_PARENT));
+    /**
+     * @return the PauseView, it's created on the first call
+     */
+    private PauseMenuView getPauseView()
+    {
+        if (this.pauseView == null)
+        {
+            this.pauseView = new PauseMenuView(this);
+            this.pauseView.setVisibility(View.GONE);
 
-        CheckBox gridCheckBox = (CheckBox) this.findViewById(R.id.settingsGridCheckBox);
-        CheckBox followCheckBox = (CheckBox) this.findViewById(R.id.settingsFollowCheckBox);
+            // right above the GravityView
+            ViewGroup content = (ViewGroup) this.getWindow().findViewById(Window.ID_ANDROID_CONTENT);
+            content.addView(this.pauseView, content.indexOfChild(this.gravityView) + 1, new ViewGroup.LayoutParams(ViewGroup.LayoutParams.MATCH_PARENT, ViewGroup.LayoutParams.MATCH_PARENT));
+        }
+        return this.pauseView;
+    }
 
-        // set listeners to checked changes on the CheckBoxes
-        SettingsChangeListener listener = new SettingsChangeListener(this);
-        gridCheckBox.setOnCheckedChangeListener(listener);
-        followCheckBox.setOnCheckedChangeListener(listener);
+    /**
+     * @return the HelpView, it's inflated on the first call
+     */
+    private View getHelpView()
+    {
+        if (this.helpView == null)
+        {
+            this.helpView = this.helpStub.inflate();
+            this.helpView.setVisibility(View.GONE);
+        }
+        return this.helpView;
+    }
 
-        // set the check states of the CheckBoxes based on the GravityView variables
-        gridCheckBox.setChecked(this.gravityView.showLineGrid);
-        followCheckBox.setChecked(this.gravityView.followObjects);
-        this.settingsView.setVisibility(View.GONE);
+    /**
+     * @return the AddObjectView, it's inflated on the first call
+     */
+    private View getAddObjectView()
+    {
+        if (this.addObjectView == null)
+        {
+            this.addObjectView = this.addObjectStub.inflate();
+            this.addObjectView.setVisibility(View.GONE);
+        }
+        return this.addObjectView;
+    }
 
-        this.updateHandler.postDelayed(this, updateDelay);
+    /**
+     * @return the SettingsView, it's inflated on the first call and its CheckBoxes are set according to the GravityView
+     */
+    private View getSettingsView()
+    {
+        if (this.settingsView == null)
+        {
+            this.settingsView = this.settingsStub.inflate();
+
+            CheckBox gridCheckBox = (CheckBox) this.findViewById(R.id.settingsGridCheckBox);
+            CheckBox followCheckBox = (CheckBox) this.findViewById(R.id.settingsFollowCheckBox);
+            CheckBox accuracyCheckBox = (CheckBox) this.findViewById(R.id.settingsAccuracyCheckBox);
+            CheckBox zoomCheckBox = (CheckBox) this.findViewById(R.id.settingsZoomCheckBox);
+            CheckBox trailsCheckBox = (CheckBox) this.findViewById(R.id.settingsTrailsCheckBox);
+            CheckBox escapersCheckBox = (CheckBox) this.findViewById(R.id.settingsEscapersCheckBox);
+            CheckBox sleepingCheckBox = (CheckBox) this.findViewById(R.id.settingsSleepingCheckBox);
+
+            // set the check states of the CheckBoxes based on the GravityView variables
+            gridCheckBox.setChecked(this.gravityView.showLineGrid);
+            followCheckBox.setChecked(this.gravityView.followObjects);
+            accuracyCheckBox.setChecked(this.gravityView.isFullAccuracy());
+            zoomCheckBox.setChecked(this.gravityView.zoomToFit);
+            trailsCheckBox.setChecked(this.gravityView.isShowTrails());
+            escapersCheckBox.setChecked(this.gravityView.isDemoteEscapers());
+            sleepingCheckBox.setChecked(this.gravityView.isSleepingEnabled());
+
+            // set listeners to checked changes on the CheckBoxes, after the states are set, so they aren't called now
+            SettingsChangeListener listener = new SettingsChangeListener(this);
+            gridCheckBox.setOnCheckedChangeListener(listener);
+            followCheckBox.setOnCheckedChangeListener(listener);
+            accuracyCheckBox.setOnCheckedChangeListener(listener);
+            zoomCheckBox.setOnCheckedChangeListener(listener);
+            trailsCheckBox.setOnCheckedChangeListener(listener);
+            escapersCheckBox.setOnCheckedChangeListener(listener);
+            sleepingCheckBox.setOnCheckedChangeListener(listener);
+            this.settingsView.setVisibility(View.GONE);
+        }
+        return this.settingsView;
     }
 
     public static float getMovableViewPosition(float state, float initialSpeed)
@@ -108,26 +204,74 @@ public class MainActivity extends Activity implements Runnable
     }
 
     @Override
-    public void run()
+    public boolean tick()
+    {
+        if (!this.startupFinished)
+        {
+            // the first frame is drawn after the first tick
+            this.startupFinished = true;
+            this.gravityView.post(new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    MainActivity.this.finishStartup();
+                }
+            });
+        }
+        return this.update();
+    }
+
+    /**
+     * @return time from onCreate to the first frame in ms, -1 if the first frame hasn't been drawn yet
+     */
+    long getStartupTime()
     {
-        if (this.updating)
+        return this.startupTime;
+    }
+
+    /**
+     * Does the work that isn't needed for the first frame and reports how long the startup took.
+     */
+    private void finishStartup()
+    {
+        this.startupTime = (System.nanoTime() - this.createTime) / 1000000;
+        Log.i("Startup", "The first frame has been drawn " + this.startupTime + " ms after onCreate.");
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT)
+        {
+            this.reportFullyDrawn();
+        }
+        if (this.offerRestore)
         {
-            this.update();
-            updateHandler.postDelayed(this, updateDelay);
+            this.gravityView.loadAutosave(new RestoreListener(this));
         }
     }
 
+    /**
+     * Resumes the updates if they have been suspended because nothing was changing.
+     * Should be called after anything that may start an animation or the simulation.
+     */
+    void requestUpdate()
+    {
+        this.loop.wake();
+    }
+
     /**
      * Updates everything in the Activity.
-     * Should be called every updateDelay ms (when the Activity is shown to the user, else it doesn't need to be updated).
+     * Should be called once per SimulationLoop tick (when the Activity is shown to the user, else it doesn't need to be updated).
+     * @return whether anything has changed, if not, the updates may be suspended until requestUpdate is called
      */
-    private void update()
+    private boolean update()
     {
+        boolean changed = false;
+
         // if the state is an animation
         if (this.state == ViewState.ANIM_ADD_OBJECT_CANCEL || this.state == ViewState.ANIM_ADD_OBJECT_TO_GRAVITY ||
                 this.state == ViewState.ANIM_ADD_OBJECT_TO_PAUSE || this.state == ViewState.ANIM_PAUSE_TO_ADD_OBJECT ||
                 this.state == ViewState.ANIM_PAUSING || this.state == ViewState.ANIM_RESUMING)
         {
+            changed = true;
+
             // animate animationState
             this.animationState += 0.08;
             if (this.animationState > 1)
@@ -147,26 +291,26 @@ public class MainActivity extends Activity implements Runnable
             {
                 case ANIM_ADD_OBJECT_CANCEL:
                     this.gravityView.setX(positionPart * width);
-                    this.addObjectView.setX((positionPart - 1) * width);
+                    this.getAddObjectView().setX((positionPart - 1) * width);
                     break;
                 case ANIM_ADD_OBJECT_TO_GRAVITY:
-                    this.addObjectView.setX(-positionPart * width);
+                    this.getAddObjectView().setX(-positionPart * width);
                     this.gravityView.setX((1 - positionPart) * width);
                     break;
                 case ANIM_ADD_OBJECT_TO_PAUSE:
-                    this.addObjectView.setY(-positionPart * height);
-                    this.pauseView.setY((1 - positionPart) * height);
+                    this.getAddObjectView().setY(-positionPart * height);
+                    this.getPauseView().setY((1 - positionPart) * height);
                     break;
                 case ANIM_PAUSE_TO_ADD_OBJECT:
-                    this.pauseView.setY(positionPart * height);
-                    this.addObjectView.setY((positionPart - 1) * height);
+                    this.getPauseView().setY(positionPart * height);
+                    this.getAddObjectView().setY((positionPart - 1) * height);
                     break;
                 case ANIM_PAUSING:
                     this.gravityView.setX(positionPart * width);
-                    this.pauseView.setX((positionPart - 1) * width);
+                    this.getPauseView().setX((positionPart - 1) * width);
                     break;
                 case ANIM_RESUMING:
-                    this.pauseView.setX(-positionPart * width);
+                    this.getPauseView().setX(-positionPart * width);
                     this.gravityView.setX((1 - positionPart) * width);
             }
 
@@ -181,18 +325,18 @@ public class MainActivity extends Activity implements Runnable
                         break;
                     case ANIM_ADD_OBJECT_TO_GRAVITY:
                         this.state = ViewState.ADDING_OBJECT;
-                        this.addObjectView.setVisibility(View.GONE);
+                        this.getAddObjectView().setVisibility(View.GONE);
                         break;
                     case ANIM_ADD_OBJECT_TO_PAUSE:
                         this.state = ViewState.PAUSE_VIEW;
-                        this.addObjectView.setVisibility(View.GONE);
+                        this.getAddObjectView().setVisibility(View.GONE);
                         break;
                     case ANIM_PAUSE_TO_ADD_OBJECT:
                         this.state = ViewState.ADD_OBJECT_VIEW;
-                        this.pauseView.setVisibility(View.GONE);
+                        this.getPauseView().setVisibility(View.GONE);
 
                         // focus on the radius EditText and pop up the keyboard
-                        this.addObjectView.findViewById(R.id.radiusText).requestFocus();
+                        this.getAddObjectView().findViewById(R.id.radiusText).requestFocus();
                         this.showSoftKeyboard();
                         break;
                     case ANIM_PAUSING:
@@ -201,7 +345,7 @@ public class MainActivity extends Activity implements Runnable
                         break;
                     case ANIM_RESUMING:
                         this.state = ViewState.SIMULATION;
-                        this.pauseView.setVisibility(View.GONE);
+                        this.getPauseView().setVisibility(View.GONE);
                         break;
                 }
                 this.animationState = 0;
@@ -211,8 +355,9 @@ public class MainActivity extends Activity implements Runnable
         // update the GravityView if needed
         if (this.state == ViewState.SIMULATION)
         {
-            this.gravityView.update();
+            changed |= this.gravityView.update();
         }
+        return changed;
     }
 
     /**
@@ -225,14 +370,16 @@ public class MainActivity extends Activity implements Runnable
         int height = this.getHeight();
 
         // set the correct initial position of the AddObjectView
-        this.addObjectView.setX(0);
-        this.addObjectView.setY(-height);
+        this.getAddObjectView().setX(0);
+        this.getAddObjectView().setY(-height);
 
         // show the AddObjectView
-        this.addObjectView.setVisibility(View.VISIBLE);
+        this.getAddObjectView().setVisibility(View.VISIBLE);
 
         // clear its EditTexts
         this.clearAddObjectView();
+
+        this.requestUpdate();
     }
 
     /**
@@ -249,8 +396,8 @@ public class MainActivity extends Activity implements Runnable
      */
     private void clearAddObjectView()
     {
-        ((TextView) this.addObjectView.findViewById(R.id.radiusText)).setText("");
-        ((TextView) this.addObjectView.findViewById(R.id.densityText)).setText("");
+        ((TextView) this.getAddObjectView().findViewById(R.id.radiusText)).setText("");
+        ((TextView) this.getAddObjectView().findViewById(R.id.densityText)).setText("");
     }
 
     /**
@@ -264,8 +411,8 @@ public class MainActivity extends Activity implements Runnable
         scaleAnimation.setAnimationListener(new ShowHelpListener(this));
 
         // start the animation
-        this.helpView.setVisibility(View.VISIBLE);
-        this.helpView.startAnimation(scaleAnimation);
+        this.getHelpView().setVisibility(View.VISIBLE);
+        this.getHelpView().startAnimation(scaleAnimation);
     }
 
     private static class ShowHelpListener implements Animation.AnimationListener
@@ -294,7 +441,7 @@ public class MainActivity extends Activity implements Runnable
         public void onAnimationEnd(Animation animation)
         {
             this.attachedTo.state = ViewState.HELP_VIEW;
-            this.attachedTo.pauseView.setVisibility(View.GONE);
+            this.attachedTo.getPauseView().setVisibility(View.GONE);
         }
     }
 
@@ -310,7 +457,7 @@ public class MainActivity extends Activity implements Runnable
         scaleAnimation.setAnimationListener(new HideHelpListener(this));
 
         // start the animation
-        this.helpView.startAnimation(scaleAnimation);
+        this.getHelpView().startAnimation(scaleAnimation);
     }
 
     private static class HideHelpListener implements Animation.AnimationListener
@@ -327,7 +474,7 @@ public class MainActivity extends Activity implements Runnable
         public void onAnimationStart(Animation animation)
         {
             this.attachedTo.state = ViewState.ANIM_HELP;
-            this.attachedTo.pauseView.setVisibility(View.VISIBLE);
+            this.attachedTo.getPauseView().setVisibility(View.VISIBLE);
         }
 
         @Override
@@ -340,7 +487,7 @@ public class MainActivity extends Activity implements Runnable
         public void onAnimationEnd(Animation animation)
         {
             this.attachedTo.state = ViewState.PAUSE_VIEW;
-            this.attachedTo.helpView.setVisibility(View.GONE);
+            this.attachedTo.getHelpView().setVisibility(View.GONE);
         }
     }
 
@@ -405,6 +552,8 @@ public class MainActivity extends Activity implements Runnable
         // prepare the GravityView
         this.gravityView.startAddingObject();
         this.gravityView.postInvalidate();
+
+        this.requestUpdate();
     }
 
     @Override
@@ -412,15 +561,19 @@ public class MainActivity extends Activity implements Runnable
     {
         super.onSaveInstanceState(outState);
 
-        outState.putBundle("GravityView", this.gravityView.putToBundle());
+        // the space is retained over a configuration change, so it's only needed if the process gets killed
+        outState.putBundle("GravityView", this.gravityView.putToBundle(!this.isChangingConfigurations()));
 
         outState.putSerializable("ViewState", this.state);
 
-        // save the data from the AddObjectView
-        TextView radiusText = (TextView) this.addObjectView.findViewById(R.id.radiusText);
-        TextView densityText = (TextView) this.addObjectView.findViewById(R.id.densityText);
-        outState.putString("AddObjectView-Radius", radiusText.getText().toString());
-        outState.putString("AddObjectView-Density", densityText.getText().toString());
+        // save the data from the AddObjectView if it has been used
+        if (this.addObjectView != null)
+        {
+            TextView radiusText = (TextView) this.addObjectView.findViewById(R.id.radiusText);
+            TextView densityText = (TextView) this.addObjectView.findViewById(R.id.densityText);
+            outState.putString("AddObjectView-Radius", radiusText.getText().toString());
+            outState.putString("AddObjectView-Density", densityText.getText().toString());
+        }
 
         // save data about the adding object
         if (this.state == ViewState.ADDING_OBJECT)
@@ -433,15 +586,38 @@ public class MainActivity extends Activity implements Runnable
     protected void onPause()
     {
         super.onPause();
-        this.updating = false;
+        this.loop.stop();
+        if (!this.isChangingConfigurations())
+        {
+            this.gravityView.autosave();
+        }
     }
 
     @Override
     protected void onResume()
     {
         super.onResume();
-        this.updating = true;
-        this.updateHandler.postDelayed(this, updateDelay);
+        this.loop.start();
+    }
+
+    @Override
+    public Object onRetainNonConfigurationInstance()
+    {
+        return this.gravityView.retain();
+    }
+
+    @Override
+    protected void onDestroy()
+    {
+        super.onDestroy();
+        if (!this.isChangingConfigurations())
+        {
+            this.gravityView.release();
+        }
+        if (this.exporter != null)
+        {
+            this.exporter.cancel();
+        }
     }
 
     @Override
@@ -459,16 +635,16 @@ public class MainActivity extends Activity implements Runnable
                 this.gravityView.setVisibility(View.VISIBLE);
                 break;
             case PAUSE_VIEW:
-                this.pauseView.setVisibility(View.VISIBLE);
+                this.getPauseView().setVisibility(View.VISIBLE);
                 break;
             case HELP_VIEW:
-                this.helpView.setVisibility(View.VISIBLE);
+                this.getHelpView().setVisibility(View.VISIBLE);
                 break;
             case SETTINGS_VIEW:
-                this.settingsView.setVisibility(View.VISIBLE);
+                this.getSettingsView().setVisibility(View.VISIBLE);
                 break;
             case ADD_OBJECT_VIEW:
-                this.addObjectView.setVisibility(View.VISIBLE);
+                this.getAddObjectView().setVisibility(View.VISIBLE);
                 break;
             case ADDING_OBJECT:
                 this.gravityView.setVisibility(View.VISIBLE);
@@ -476,33 +652,36 @@ public class MainActivity extends Activity implements Runnable
             case ANIM_PAUSING:
             case ANIM_RESUMING:
                 this.gravityView.setVisibility(View.VISIBLE);
-                this.pauseView.setVisibility(View.VISIBLE);
+                this.getPauseView().setVisibility(View.VISIBLE);
                 break;
             case ANIM_HELP:
-                this.pauseView.setVisibility(View.VISIBLE);
-                this.helpView.setVisibility(View.VISIBLE);
+                this.getPauseView().setVisibility(View.VISIBLE);
+                this.getHelpView().setVisibility(View.VISIBLE);
                 break;
             case ANIM_SETTINGS:
-                this.pauseView.setVisibility(View.VISIBLE);
-                this.settingsView.setVisibility(View.VISIBLE);
+                this.getPauseView().setVisibility(View.VISIBLE);
+                this.getSettingsView().setVisibility(View.VISIBLE);
                 break;
             case ANIM_ADD_OBJECT_TO_GRAVITY:
             case ANIM_ADD_OBJECT_CANCEL:
-                this.addObjectView.setVisibility(View.VISIBLE);
+                this.getAddObjectView().setVisibility(View.VISIBLE);
                 this.gravityView.setVisibility(View.VISIBLE);
                 break;
             case ANIM_ADD_OBJECT_TO_PAUSE:
             case ANIM_PAUSE_TO_ADD_OBJECT:
-                this.addObjectView.setVisibility(View.VISIBLE);
-                this.pauseView.setVisibility(View.VISIBLE);
+                this.getAddObjectView().setVisibility(View.VISIBLE);
+                this.getPauseView().setVisibility(View.VISIBLE);
                 break;
         }
 
-        // load the data in AddObjectView
-        TextView radiusText = (TextView) this.addObjectView.findViewById(R.id.radiusText);
-        TextView densityText = (TextView) this.addObjectView.findViewById(R.id.densityText);
-        radiusText.setText(savedInstanceState.getString("AddObjectView-Radius"));
-        densityText.setText(savedInstanceState.getString("AddObjectView-Density"));
+        // load the data in AddObjectView if it had been used
+        if (savedInstanceState.containsKey("AddObjectView-Radius"))
+        {
+            TextView radiusText = (TextView) this.getAddObjectView().findViewById(R.id.radiusText);
+            TextView densityText = (TextView) this.getAddObjectView().findViewById(R.id.densityText);
+            radiusText.setText(savedInstanceState.getString("AddObjectView-Radius"));
+            densityText.setText(savedInstanceState.getString("AddObjectView-Density"));
+        }
 
         // load the adding object
         if (savedInstanceState.containsKey("AddingObject"))
@@ -522,11 +701,13 @@ public class MainActivity extends Activity implements Runnable
         int height = this.getHeight();
 
         // set correct initial position for the PauseView
-        this.pauseView.setX(0);
-        this.pauseView.setY(height);
+        this.getPauseView().setX(0);
+        this.getPauseView().setY(height);
 
         // show the PauseView
-        this.pauseView.setVisibility(View.VISIBLE);
+        this.getPauseView().setVisibility(View.VISIBLE);
+
+        this.requestUpdate();
     }
 
     /**
@@ -539,12 +720,14 @@ public class MainActivity extends Activity implements Runnable
         int width = this.getWidth();
 
         // set the correct initial position for PauseView
-        this.pauseView.setX(-width);
-        this.pauseView.setY(0);
+        this.getPauseView().setX(-width);
+        this.getPauseView().setY(0);
 
         // show the PauseView
-        this.pauseView.setVisibility(View.VISIBLE);
-        this.pauseView.postInvalidate();
+        this.getPauseView().setVisibility(View.VISIBLE);
+        this.getPauseView().postInvalidate();
+
+        this.requestUpdate();
     }
 
     /**
@@ -561,6 +744,8 @@ public class MainActivity extends Activity implements Runnable
 
         // show the GravityView
         this.gravityView.setVisibility(View.VISIBLE);
+
+        this.requestUpdate();
     }
 
     /**
@@ -588,11 +773,13 @@ public class MainActivity extends Activity implements Runnable
 
         // set the correct initial position for AddObjectView
         int width = this.getWidth();
-        this.addObjectView.setX(-width);
-        this.addObjectView.setY(0);
+        this.getAddObjectView().setX(-width);
+        this.getAddObjectView().setY(0);
 
         // show the AddObjectView
-        this.addObjectView.setVisibility(View.VISIBLE);
+        this.getAddObjectView().setVisibility(View.VISIBLE);
+
+        this.requestUpdate();
     }
 
     private static class PauseMenuView extends View
@@ -741,11 +928,21 @@ public class MainActivity extends Activity implements Runnable
             // find the CheckBoxes
             CheckBox gridCheckBox = (CheckBox) this.attachedTo.findViewById(R.id.settingsGridCheckBox);
             CheckBox followCheckBox = (CheckBox) this.attachedTo.findViewById(R.id.settingsFollowCheckBox);
+            CheckBox accuracyCheckBox = (CheckBox) this.attachedTo.findViewById(R.id.settingsAccuracyCheckBox);
+            CheckBox zoomCheckBox = (CheckBox) this.attachedTo.findViewById(R.id.settingsZoomCheckBox);
+            CheckBox trailsCheckBox = (CheckBox) this.attachedTo.findViewById(R.id.settingsTrailsCheckBox);
+            CheckBox escapersCheckBox = (CheckBox) this.attachedTo.findViewById(R.id.settingsEscapersCheckBox);
+            CheckBox sleepingCheckBox = (CheckBox) this.attachedTo.findViewById(R.id.settingsSleepingCheckBox);
 
             // set the variables in the GravityView
             GravityView gravityView = this.attachedTo.gravityView;
             gravityView.showLineGrid = gridCheckBox.isChecked();
             gravityView.followObjects = followCheckBox.isChecked();
+            gravityView.setFullAccuracy(accuracyCheckBox.isChecked());
+            gravityView.zoomToFit = zoomCheckBox.isChecked();
+            gravityView.setShowTrails(trailsCheckBox.isChecked());
+            gravityView.setDemoteEscapers(escapersCheckBox.isChecked());
+            gravityView.setSleepingEnabled(sleepingCheckBox.isChecked());
         }
     }
 
@@ -759,9 +956,18 @@ public class MainActivity extends Activity implements Runnable
         scaleAnimation.setDuration(200);
         scaleAnimation.setAnimationListener(new ShowSettingsListener(this));
 
+        // the factor may have been lowered since the settings were shown last time
+        this.updateTimeWarpButton();
+
         // start the animation
-        this.settingsView.setVisibility(View.VISIBLE);
-        this.settingsView.startAnimation(scaleAnimation);
+        this.getSettingsView().setVisibility(View.VISIBLE);
+        this.getSettingsView().startAnimation(scaleAnimation);
+    }
+
+    private void updateTimeWarpButton()
+    {
+        Button timeWarpButton = (Button) this.getSettingsView().findViewById(R.id.settingsTimeWarpButton);
+        timeWarpButton.setText("TIME WARP \u00d7" + this.gravityView.getTimeWarp());
     }
 
     private static class ShowSettingsListener implements Animation.AnimationListener
@@ -790,7 +996,141 @@ public class MainActivity extends Activity implements Runnable
         public void onAnimationEnd(Animation animation)
         {
             this.attachedTo.state = ViewState.SETTINGS_VIEW;
-            this.attachedTo.pauseView.setVisibility(View.GONE);
+            this.attachedTo.getPauseView().setVisibility(View.GONE);
+        }
+    }
+
+    /**
+     * Starts exporting the following frames of the simulation as PNG files. Called by the export button in the settings.
+     */
+    public void exportFrames(View v)
+    {
+        if (this.exporter != null)
+        {
+            Toast.makeText(this.getApplicationContext(), "The frames are already being exported.", Toast.LENGTH_SHORT).show();
+            return;
+        }
+        if (this.gravityView.getWidth() == 0)
+        {
+            return;
+        }
+
+        // 10 s of video at 60 fps with the aspect ratio of the screen
+        int width = 1280;
+        int height = width * this.gravityView.getHeight() / this.gravityView.getWidth() / 2 * 2;
+        int frames = 600;
+        File base = this.getExternalFilesDir(null);
+        if (base == null)
+        {
+            base = this.getFilesDir();
+        }
+        File directory = new File(base, "export-" + System.currentTimeMillis());
+
+        this.exporter = this.gravityView.createExporter(width, height, directory, FrameExporter.Format.PNG);
+        this.exporter.start(frames, 64, new ExportListener(this));
+        Toast.makeText(this.getApplicationContext(), "Exporting " + frames + " frames to " + directory + ".", Toast.LENGTH_LONG).show();
+    }
+
+    /**
+     * Switches to the next time warp factor, after the highest one the time isn't warped. Called by the time warp button in the settings.
+     */
+    public void cycleTimeWarp(View v)
+    {
+        this.gravityView.setTimeWarp(TimeWarp.getNextFactor(this.gravityView.getTimeWarp()));
+        this.updateTimeWarpButton();
+    }
+
+    /**
+     * Adds a ring of tracers around the most massive object. Called by the tracer button in the settings.
+     */
+    public void addTracerRing(View v)
+    {
+        if (!this.gravityView.addTracerRing())
+        {
+            Toast.makeText(this.getApplicationContext(), "There is no object to put the ring around.", Toast.LENGTH_SHORT).show();
+        }
+    }
+
+    /**
+     * Asks the user whether to restore the simulation that has been autosaved.
+     */
+    private static class RestoreListener implements Autosave.LoadListener
+    {
+        private final MainActivity attachedTo;
+
+        private RestoreListener(MainActivity attachedTo)
+        {
+            this.attachedTo = attachedTo;
+        }
+
+        @Override
+        public void onLoaded(final GravitySpace space, final long savedAt)
+        {
+            this.attachedTo.runOnUiThread(new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    final MainActivity activity = RestoreListener.this.attachedTo;
+                    if (activity.isFinishing())
+                    {
+                        return;
+                    }
+                    AlertDialog.Builder alertBuilder = new AlertDialog.Builder(activity, R.style.DialogTheme);
+                    alertBuilder.setTitle("Restore");
+                    alertBuilder.setMessage("Do you want to restore the simulation saved on " + DateFormat.getDateTimeInstance(DateFormat.SHORT, DateFormat.SHORT).format(new Date(savedAt)) + "?");
+                    alertBuilder.setPositiveButton("YES", new DialogInterface.OnClickListener()
+                    {
+                        @Override
+                        public void onClick(DialogInterface dialog, int which)
+                        {
+                            activity.gravityView.restoreSpace(space);
+                            activity.requestUpdate();
+                            dialog.cancel();
+                        }
+                    });
+                    alertBuilder.setNegativeButton("NO", new DialogInterface.OnClickListener()
+                    {
+                        @Override
+                        public void onClick(DialogInterface dialog, int which)
+                        {
+                            activity.gravityView.discardAutosave();
+                            dialog.cancel();
+                        }
+                    });
+                    alertBuilder.show();
+                }
+            });
+        }
+    }
+
+    private static class ExportListener implements FrameExporter.Listener
+    {
+        private final MainActivity attachedTo;
+
+        private ExportListener(MainActivity attachedTo)
+        {
+            this.attachedTo = attachedTo;
+        }
+
+        @Override
+        public void onFrameEncoded(int frame, int frames)
+        {
+        }
+
+        @Override
+        public void onFinished(final File directory, final IOException error)
+        {
+            this.attachedTo.runOnUiThread(new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    ExportListener.this.attachedTo.exporter = null;
+                    String message = error == null ? "The frames have been exported to " + directory + "." : "The export has failed: " + error.getMessage();
+                    Toast.makeText(ExportListener.this.attachedTo.getApplicationContext(), message, Toast.LENGTH_LONG).show();
+                }
+            });
         }
     }
 
@@ -806,7 +1146,7 @@ public class MainActivity extends Activity implements Runnable
         scaleAnimation.setAnimationListener(new HideSettingsListener(this));
 
         // start the animation
-        this.settingsView.startAnimation(scaleAnimation);
+        this.getSettingsView().startAnimation(scaleAnimation);
     }
 
     private static class HideSettingsListener implements Animation.AnimationListener
@@ -823,7 +1163,7 @@ public class MainActivity extends Activity implements Runnable
         public void onAnimationStart(Animation animation)
         {
             this.attachedTo.state = ViewState.ANIM_SETTINGS;
-            this.attachedTo.pauseView.setVisibility(View.VISIBLE);
+            this.attachedTo.getPauseView().setVisibility(View.VISIBLE);
         }
 
         @Override
@@ -836,7 +1176,7 @@ public class MainActivity extends Activity implements Runnable
         public void onAnimationEnd(Animation animation)
         {
             this.attachedTo.state = ViewState.PAUSE_VIEW;
-            this.attachedTo.settingsView.setVisibility(View.GONE);
+            this.attachedTo.getSettingsView().setVisibility(View.GONE);
         }
     }
 
@@ -865,6 +1205,7 @@ public class MainActivity extends Activity implements Runnable
             {
                 super.onBackPressed();
             }
+            this.requestUpdate();
         }
     }
 }
@@ -0,0 +1,143 @@
+package com.github.mimo31.gravitysimulator;
+
+/**
+ * Splits the plane into rectangular domains with about the same total weight of the bodies in each of them.
+ * <p>
+ * The bodies are recursively bisected along the longer side of their bounding box at the weighted median.
+ * The outer domains extend to infinity, so every point of the plane belongs to exactly one domain.
+ */
+class OrthogonalBisection
+{
+    // number of the halvings used to find a weighted median
+    private static final int MEDIAN_ITERATIONS = 60;
+
+    private OrthogonalBisection()
+    {
+    }
+
+    /**
+     * @param weight the cost of each body, the domains get about the same sum of the weights
+     * @param parts number of the domains
+     * @return the domains as {minX, minY, maxX, maxY}, min inclusive and max exclusive
+     */
+    static double[][] split(double[] x, double[] y, double[] weight, int count, int parts)
+    {
+        int[] indices = new int[count];
+        for (int i = 0; i < count; i++)
+        {
+            indices[i] = i;
+        }
+        double[][] domains = new double[parts][];
+        split(x, y, weight, indices, 0, count, new double[]{Double.NEGATIVE_INFINITY, Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY, Double.POSITIVE_INFINITY}, domains, 0, parts);
+        return domains;
+    }
+
+    /**
+     * @return the index of the domain containing the point
+     */
+    static int findDomain(double[][] domains, double x, double y)
+    {
+        for (int i = 0; i < domains.length; i++)
+        {
+            if (contains(domains[i], x, y))
+            {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    static boolean contains(double[] domain, double x, double y)
+    {
+        return x >= domain[0] && y >= domain[1] && x < domain[2] && y < domain[3];
+    }
+
+    /**
+     * Splits the bodies indices[start..end) lying in the bounds into parts domains stored from domains[firstDomain].
+     */
+    private static void split(double[] x, double[] y, double[] weight, int[] indices, int start, int end, double[] bounds, double[][] domains, int firstDomain, int parts)
+    {
+        if (parts == 1)
+        {
+            domains[firstDomain] = bounds;
+            return;
+        }
+
+        // split along the longer side of the bounding box of the bodies
+        double minX = Double.POSITIVE_INFINITY;
+        double minY = Double.POSITIVE_INFINITY;
+        double maxX = Double.NEGATIVE_INFINITY;
+        double maxY = Double.NEGATIVE_INFINITY;
+        double totalWeight = 0;
+        for (int i = start; i < end; i++)
+        {
+            int body = indices[i];
+            minX = Math.min(minX, x[body]);
+            minY = Math.min(minY, y[body]);
+            maxX = Math.max(maxX, x[body]);
+            maxY = Math.max(maxY, y[body]);
+            totalWeight += weight[body];
+        }
+        boolean alongX = end == start || maxX - minX >= maxY - minY;
+        double[] coordinates = alongX ? x : y;
+        double low = alongX ? minX : minY;
+        double high = alongX ? maxX : maxY;
+        if (end == start)
+        {
+            low = 0;
+            high = 0;
+        }
+
+        // find the coordinate that splits the weight in the ratio of the parts by halving the interval
+        int firstParts = parts / 2;
+        double targetWeight = totalWeight * firstParts / parts;
+        for (int iteration = 0; iteration < MEDIAN_ITERATIONS && low < high; iteration++)
+        {
+            double middle = (low + high) / 2;
+            double belowWeight = 0;
+            for (int i = start; i < end; i++)
+            {
+                if (coordinates[indices[i]] < middle)
+                {
+                    belowWeight += weight[indices[i]];
+                }
+            }
+            if (belowWeight < targetWeight)
+            {
+                low = middle;
+            }
+            else
+            {
+                high = middle;
+            }
+        }
+        double splitCoordinate = high;
+
+        // partition the indices
+        int middleIndex = start;
+        for (int i = start; i < end; i++)
+        {
+            if (coordinates[indices[i]] < splitCoordinate)
+            {
+                int temp = indices[i];
+                indices[i] = indices[middleIndex];
+                indices[middleIndex++] = temp;
+            }
+        }
+
+        double[] firstBounds = bounds.clone();
+        double[] secondBounds = bounds.clone();
+        if (alongX)
+        {
+            firstBounds[2] = splitCoordinate;
+            secondBounds[0] = splitCoordinate;
+        }
+        else
+        {
+            firstBounds[3] = splitCoordinate;
+            secondBounds[1] = splitCoordinate;
+        }
+        split(x, y, weight, indices, start, middleIndex, firstBounds, domains, firstDomain, firstParts);
+        split(x, y, weight, indices, middleIndex, end, secondBounds, domains, firstDomain + firstParts, parts - firstParts);
+    }
+}
@@ -0,0 +1,401 @@
+package com.github.mimo31.gravitysimulator;
+
+import java.util.Arrays;
+
+/**
+ * Approximate solver for large smooth distributions of bodies, O(n + G log G) where G is the number of the grid cells.
+ * <p>
+ * The mass of the bodies is deposited onto a square grid covering all the bodies with cloud-in-cell weighting.
+ * The potential is then obtained by convolving the mass grid with the Green's function of the force law of the simulation
+ * (the attraction falls with the square of the distance, so the potential of a unit mass is -1 / r).
+ * The convolution is done by FFT on a grid padded to twice the size, so the bodies don't feel periodic images.
+ * The forces are the central differences of the potential, interpolated back to the bodies with the same weighting.
+ * <p>
+ * The Green's function is softened on the scale of a cell. Optionally, the missing short-range part of the force is added
+ * by direct summation over the nearby bodies (P3M).
+ */
+class ParticleMeshSolver implements ForceSolver
+{
+    // the softening length of the mesh force in cells, which is also the split scale between the mesh and the direct forces
+    private static final double SPLIT_SCALE = 1.25;
+
+    // the short-range correction is summed up to this many split scales
+    private static final double CUTOFF_SCALES = 4;
+
+    // the smallest side of the square covering the bodies, so the cells of bodies at a single point still have a finite size
+    private static final double MIN_EXTENT = 1;
+
+    // number of the grid cells along one side of the grid the bodies are deposited to
+    private final int gridSize;
+
+    // whether the short-range forces are corrected by direct summation
+    private final boolean shortRangeCorrection;
+
+    // side of the padded grid the convolution is computed on
+    private final int paddedSize;
+
+    // the padded mass grid, transformed in place
+    private final double[] gridRe;
+    private final double[] gridIm;
+
+    // transform of the Green's function, depends only on the cell size
+    private final double[] kernelRe;
+    private final double[] kernelIm;
+    private double kernelCellSize = -1;
+
+    private final double[] potential;
+    private final double[] fieldX;
+    private final double[] fieldY;
+
+    // twiddle factors of the FFT
+    private final double[] cosTable;
+    private final double[] sinTable;
+
+    // buffers for the column transforms
+    private final double[] columnRe;
+    private final double[] columnIm;
+
+    // linked lists of the bodies in the bins of the short-range correction
+    private int[] binHeads = new int[0];
+    private int[] binNext = new int[0];
+
+    /**
+     * @param gridSize number of the grid cells along one side, must be a power of two and at least 8
+     * @param shortRangeCorrection whether to add the direct short-range correction (P3M)
+     */
+    ParticleMeshSolver(int gridSize, boolean shortRangeCorrection)
+    {
+        if (gridSize < 8 || Integer.bitCount(gridSize) != 1)
+        {
+            throw new IllegalArgumentException("The grid size must be a power of two and at least 8.");
+        }
+        this.gridSize = gridSize;
+        this.shortRangeCorrection = shortRangeCorrection;
+        this.paddedSize = gridSize * 2;
+        int paddedCells = this.paddedSize * this.paddedSize;
+        this.gridRe = new double[paddedCells];
+        this.gridIm = new double[paddedCells];
+        this.kernelRe = new double[paddedCells];
+        this.kernelIm = new double[paddedCells];
+        this.potential = new double[gridSize * gridSize];
+        this.fieldX = new double[gridSize * gridSize];
+        this.fieldY = new double[gridSize * gridSize];
+        this.cosTable = new double[this.paddedSize / 2];
+        this.sinTable = new double[this.paddedSize / 2];
+        for (int i = 0; i < this.paddedSize / 2; i++)
+        {
+            this.cosTable[i] = Math.cos(2 * Math.PI * i / this.paddedSize);
+            this.sinTable[i] = Math.sin(2 * Math.PI * i / this.paddedSize);
+        }
+        this.columnRe = new double[this.paddedSize];
+        this.columnIm = new double[this.paddedSize];
+    }
+
+    @Override
+    public void computeAccelerations(double[] x, double[] y, double[] mass, int count, double[] ax, double[] ay)
+    {
+        if (count < 2)
+        {
+            // a single body doesn't attract itself
+            if (count == 1)
+            {
+                ax[0] = 0;
+                ay[0] = 0;
+            }
+            return;
+        }
+
+        // find the square covering all the bodies
+        double minX = x[0];
+        double maxX = x[0];
+        double minY = y[0];
+        double maxY = y[0];
+        for (int i = 1; i < count; i++)
+        {
+            minX = Math.min(minX, x[i]);
+            maxX = Math.max(maxX, x[i]);
+            minY = Math.min(minY, y[i]);
+            maxY = Math.max(maxY, y[i]);
+        }
+        double extent = Math.max(Math.max(maxX - minX, maxY - minY), MIN_EXTENT);
+
+        // the cell size is rounded up to a power of two, so the transformed kernel can be reused while the extent doesn't change much
+        // two cells are left free on each side, so the weighting and the differences never leave the grid
+        double cellSize = Math.pow(2, Math.ceil(Math.log(extent / (this.gridSize - 4)) / Math.log(2)));
+        while (cellSize * (this.gridSize - 4) < extent)
+        {
+            cellSize *= 2;
+        }
+        double originX = Math.floor(minX / cellSize) * cellSize - cellSize;
+        double originY = Math.floor(minY / cellSize) * cellSize - cellSize;
+
+        if (cellSize != this.kernelCellSize)
+        {
+            this.computeKernel(cellSize);
+        }
+
+        this.depositMass(x, y, mass, count, originX, originY, cellSize);
+
+        // convolve the mass with the kernel
+        this.transform(this.gridRe, this.gridIm, false, this.gridSize);
+        double scale = 1 / (double) (this.paddedSize * this.paddedSize);
+        for (int i = 0, n = this.gridRe.length; i < n; i++)
+        {
+            double re = this.gridRe[i] * this.kernelRe[i] - this.gridIm[i] * this.kernelIm[i];
+            double im = this.gridRe[i] * this.kernelIm[i] + this.gridIm[i] * this.kernelRe[i];
+            this.gridRe[i] = re * scale;
+            this.gridIm[i] = im * scale;
+        }
+        this.transform(this.gridRe, this.gridIm, true, this.gridSize);
+
+        int size = this.gridSize;
+        for (int row = 0; row < size; row++)
+        {
+            System.arraycopy(this.gridRe, row * this.paddedSize, this.potential, row * size, size);
+        }
+
+        // the field is the negative gradient of the potential, the outermost cells are never used
+        double differenceFactor = -1 / (2 * cellSize);
+        for (int row = 1; row < size - 1; row++)
+        {
+            for (int column = 1; column < size - 1; column++)
+            {
+                int cell = row * size + column;
+                this.fieldX[cell] = (this.potential[cell + 1] - this.potential[cell - 1]) * differenceFactor;
+                this.fieldY[cell] = (this.potential[cell + size] - this.potential[cell - size]) * differenceFactor;
+            }
+        }
+
+        this.interpolateField(x, y, count, originX, originY, cellSize, ax, ay);
+
+        if (this.shortRangeCorrection)
+        {
+            this.addShortRangeCorrection(x, y, mass, count, originX, originY, cellSize, ax, ay);
+        }
+    }
+
+    /**
+     * Fills the kernel with the transform of the softened Green's function sampled on the padded grid.
+     */
+    private void computeKernel(double cellSize)
+    {
+        double softeningSquared = SPLIT_SCALE * cellSize * SPLIT_SCALE * cellSize;
+        for (int row = 0; row < this.paddedSize; row++)
+        {
+            // the negative offsets wrap around
+            double dy = (row < this.gridSize ? row : row - this.paddedSize) * cellSize;
+            for (int column = 0; column < this.paddedSize; column++)
+            {
+                double dx = (column < this.gridSize ? column : column - this.paddedSize) * cellSize;
+                this.kernelRe[row * this.paddedSize + column] = -1 / Math.sqrt(dx * dx + dy * dy + softeningSquared);
+            }
+        }
+        Arrays.fill(this.kernelIm, 0);
+        this.transform(this.kernelRe, this.kernelIm, false, this.paddedSize);
+        this.kernelCellSize = cellSize;
+    }
+
+    private void depositMass(double[] x, double[] y, double[] mass, int count, double originX, double originY, double cellSize)
+    {
+        Arrays.fill(this.gridRe, 0);
+        Arrays.fill(this.gridIm, 0);
+        double inverseCellSize = 1 / cellSize;
+        int stride = this.paddedSize;
+        for (int i = 0; i < count; i++)
+        {
+            double m = mass[i];
+            if (m == 0)
+            {
+                continue;
+            }
+            double u = (x[i] - originX) * inverseCellSize;
+            double v = (y[i] - originY) * inverseCellSize;
+            int column = (int) u;
+            int row = (int) v;
+            double fx = u - column;
+            double fy = v - row;
+            int cell = row * stride + column;
+            this.gridRe[cell] += m * (1 - fx) * (1 - fy);
+            this.gridRe[cell + 1] += m * fx * (1 - fy);
+            this.gridRe[cell + stride] += m * (1 - fx) * fy;
+            this.gridRe[cell + stride + 1] += m * fx * fy;
+        }
+    }
+
+    private void interpolateField(double[] x, double[] y, int count, double originX, double originY, double cellSize, double[] ax, double[] ay)
+    {
+        double inverseCellSize = 1 / cellSize;
+        int size = this.gridSize;
+        for (int i = 0; i < count; i++)
+        {
+            double u = (x[i] - originX) * inverseCellSize;
+            double v = (y[i] - originY) * inverseCellSize;
+            int column = (int) u;
+            int row = (int) v;
+            double fx = u - column;
+            double fy = v - row;
+            int cell = row * size + column;
+            double w00 = (1 - fx) * (1 - fy);
+            double w10 = fx * (1 - fy);
+            double w01 = (1 - fx) * fy;
+            double w11 = fx * fy;
+            ax[i] = w00 * this.fieldX[cell] + w10 * this.fieldX[cell + 1] + w01 * this.fieldX[cell + size] + w11 * this.fieldX[cell + size + 1];
+            ay[i] = w00 * this.fieldY[cell] + w10 * this.fieldY[cell + 1] + w01 * this.fieldY[cell + size] + w11 * this.fieldY[cell + size + 1];
+        }
+    }
+
+    /**
+     * Adds the difference between the exact and the softened force of all the bodies closer than the cutoff.
+     * The bodies are sorted into square bins of the cutoff size, so only the neighbouring bins need to be searched.
+     */
+    private void addShortRangeCorrection(double[] x, double[] y, double[] mass, int count, double originX, double originY, double cellSize, double[] ax, double[] ay)
+    {
+        double split = SPLIT_SCALE * cellSize;
+        double splitSquared = split * split;
+        double cutoff = CUTOFF_SCALES * split;
+        double cutoffSquared = cutoff * cutoff;
+        int bins = (int) Math.ceil(this.gridSize * cellSize / cutoff);
+
+        if (this.binHeads.length < bins * bins)
+        {
+            this.binHeads = new int[bins * bins];
+        }
+        if (this.binNext.length < count)
+        {
+            this.binNext = new int[Math.max(count, this.binNext.length * 2)];
+        }
+        Arrays.fill(this.binHeads, 0, bins * bins, -1);
+        for (int i = 0; i < count; i++)
+        {
+            if (mass[i] != 0)
+            {
+                int bin = (int) ((y[i] - originY) / cutoff) * bins + (int) ((x[i] - originX) / cutoff);
+                this.binNext[i] = this.binHeads[bin];
+                this.binHeads[bin] = i;
+            }
+        }
+
+        for (int i = 0; i < count; i++)
+        {
+            int binX = (int) ((x[i] - originX) / cutoff);
+            int binY = (int) ((y[i] - originY) / cutoff);
+            double axi = 0;
+            double ayi = 0;
+            for (int neighbourY = Math.max(binY - 1, 0); neighbourY <= Math.min(binY + 1, bins - 1); neighbourY++)
+            {
+                for (int neighbourX = Math.max(binX - 1, 0); neighbourX <= Math.min(binX + 1, bins - 1); neighbourX++)
+                {
+                    for (int j = this.binHeads[neighbourY * bins + neighbourX]; j != -1; j = this.binNext[j])
+                    {
+                        if (j == i)
+                        {
+                            continue;
+                        }
+                        double dx = x[j] - x[i];
+                        double dy = y[j] - y[i];
+                        double distanceSquared = dx * dx + dy * dy;
+                        // the bodies at the same point have no direction to attract each other in
+                        if (distanceSquared < cutoffSquared && distanceSquared != 0)
+                        {
+                            double softenedSquared = distanceSquared + splitSquared;
+                            double factor = mass[j] * (1 / (distanceSquared * Math.sqrt(distanceSquared)) - 1 / (softenedSquared * Math.sqrt(softenedSquared)));
+                            axi += dx * factor;
+                            ayi += dy * factor;
+                        }
+                    }
+                }
+            }
+            ax[i] += axi;
+            ay[i] += ayi;
+        }
+    }
+
+    /**
+     * Computes the 2D FFT of the padded grid in place. The inverse transform is not scaled.
+     * @param rows number of the first rows that are transformed, the mass grid has only the first gridSize rows non-zero
+     *             before the forward transform and only the first gridSize rows are needed after the inverse transform
+     */
+    private void transform(double[] re, double[] im, boolean inverse, int rows)
+    {
+        int size = this.paddedSize;
+        if (!inverse)
+        {
+            for (int row = 0; row < rows; row++)
+            {
+                this.fft(re, im, row * size, inverse);
+            }
+        }
+        for (int column = 0; column < size; column++)
+        {
+            for (int row = 0; row < size; row++)
+            {
+                this.columnRe[row] = re[row * size + column];
+                this.columnIm[row] = im[row * size + column];
+            }
+            this.fft(this.columnRe, this.columnIm, 0, inverse);
+            for (int row = 0; row < size; row++)
+            {
+                re[row * size + column] = this.columnRe[row];
+                im[row * size + column] = this.columnIm[row];
+            }
+        }
+        if (inverse)
+        {
+            for (int row = 0; row < rows; row++)
+            {
+                this.fft(re, im, row * size, inverse);
+            }
+        }
+    }
+
+    /**
+     * Iterative radix-2 FFT of paddedSize values starting at offset.
+     */
+    private void fft(double[] re, double[] im, int offset, boolean inverse)
+    {
+        int n = this.paddedSize;
+
+        // bit reversal permutation
+        for (int i = 1, j = 0; i < n; i++)
+        {
+            int bit = n >> 1;
+            for (; (j & bit) != 0; bit >>= 1)
+            {
+                j ^= bit;
+            }
+            j ^= bit;
+            if (i < j)
+            {
+                double temp = re[offset + i];
+                re[offset + i] = re[offset + j];
+                re[offset + j] = temp;
+                temp = im[offset + i];
+                im[offset + i] = im[offset + j];
+                im[offset + j] = temp;
+            }
+        }
+
+        double sign = inverse ? 1 : -1;
+        for (int length = 2; length <= n; length <<= 1)
+        {
+            int half = length >> 1;
+            int tableStep = n / length;
+            for (int start = 0; start < n; start += length)
+            {
+                for (int k = 0; k < half; k++)
+                {
+                    double wRe = this.cosTable[k * tableStep];
+                    double wIm = sign * this.sinTable[k * tableStep];
+                    int a = offset + start + k;
+                    int b = a + half;
+                    double tRe = re[b] * wRe - im[b] * wIm;
+                    double tIm = re[b] * wIm + im[b] * wRe;
+                    re[b] = re[a] - tRe;
+                    im[b] = im[a] - tIm;
+                    re[a] += tRe;
+                    im[a] += tIm;
+                }
+            }
+        }
+    }
+}
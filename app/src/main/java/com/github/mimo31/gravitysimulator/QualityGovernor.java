@@ -0,0 +1,135 @@
+package com.github.mimo31.gravitysimulator;
+
+/**
+ * Adapts the accuracy of the simulation to hold a target time per simulation tick.
+ * <p>
+ * The governor measures how long each tick of the GravitySpace takes and moves between predefined quality levels.
+ * A higher level means fewer substeps per tick and less frequent collision resolution.
+ * The levels can't get below the configured accuracy floors.
+ * The governor is thread-safe, so the ticks can be reported by the worker of a TimeWarp.
+ */
+class QualityGovernor
+{
+    // substeps per tick for each quality level, level 0 is the most accurate one
+    private static final int[] SUBSTEPS = {64, 48, 32, 32, 16, 16, 8};
+
+    // collisions are resolved once per this many substeps for each quality level
+    private static final int[] COLLISION_INTERVALS = {1, 1, 1, 2, 2, 4, 4};
+
+    // weight of the latest measurement in the moving average of the tick time
+    private static final double AVERAGE_WEIGHT = 0.1;
+
+    // minimal number of ticks between two level changes
+    private static final int COOLDOWN_TICKS = 30;
+
+    // the tick time we are trying to hold in ns, part of the frame is left for drawing
+    private long targetTickTime = 10000000;
+
+    // the worst level allowed by the accuracy floors
+    private int maxLevel = SUBSTEPS.length - 1;
+
+    private int level;
+
+    // moving average of the measured tick time in ns, -1 if nothing has been measured at the current level yet
+    private double averageTickTime = -1;
+
+    private int ticksSinceChange;
+
+    /**
+     * Sets the tick time the governor tries to hold.
+     * @param targetTickTime the time in ns
+     */
+    synchronized void setTargetTickTime(long targetTickTime)
+    {
+        this.targetTickTime = targetTickTime;
+    }
+
+    /**
+     * Sets the accuracy floors. The governor never uses fewer substeps or less frequent collisions than specified.
+     * @param minSubsteps the minimal number of substeps per tick
+     * @param maxCollisionInterval the maximal number of substeps between two collision resolutions
+     */
+    synchronized void setAccuracyFloors(int minSubsteps, int maxCollisionInterval)
+    {
+        this.maxLevel = 0;
+        for (int i = 1; i < SUBSTEPS.length; i++)
+        {
+            if (SUBSTEPS[i] >= minSubsteps && COLLISION_INTERVALS[i] <= maxCollisionInterval)
+            {
+                this.maxLevel = i;
+            }
+        }
+        if (this.level > this.maxLevel)
+        {
+            this.setLevel(this.maxLevel);
+        }
+    }
+
+    synchronized int getSubsteps()
+    {
+        return SUBSTEPS[this.level];
+    }
+
+    synchronized int getCollisionInterval()
+    {
+        return COLLISION_INTERVALS[this.level];
+    }
+
+    /**
+     * @return the currently used quality level, 0 is the most accurate one
+     */
+    synchronized int getLevel()
+    {
+        return this.level;
+    }
+
+    /**
+     * @return the number of the quality levels
+     */
+    int getNumberOfLevels()
+    {
+        return SUBSTEPS.length;
+    }
+
+    /**
+     * Reports how long the last tick took and possibly changes the quality level.
+     * @param tickTime the time in ns
+     */
+    synchronized void reportTickTime(long tickTime)
+    {
+        if (this.averageTickTime < 0)
+        {
+            this.averageTickTime = tickTime;
+        }
+        else
+        {
+            this.averageTickTime += (tickTime - this.averageTickTime) * AVERAGE_WEIGHT;
+        }
+        this.ticksSinceChange++;
+        if (this.ticksSinceChange < COOLDOWN_TICKS)
+        {
+            return;
+        }
+
+        if (this.averageTickTime > this.targetTickTime && this.level < this.maxLevel)
+        {
+            this.setLevel(this.level + 1);
+        }
+        else if (this.level > 0)
+        {
+            // estimate the cost of the better level from the ratio of the substeps
+            double betterTickTime = this.averageTickTime * SUBSTEPS[this.level - 1] / SUBSTEPS[this.level];
+            if (betterTickTime < this.targetTickTime * 0.8)
+            {
+                this.setLevel(this.level - 1);
+            }
+        }
+    }
+
+    private void setLevel(int level)
+    {
+        this.level = level;
+        this.averageTickTime = -1;
+        this.ticksSinceChange = 0;
+    }
+}
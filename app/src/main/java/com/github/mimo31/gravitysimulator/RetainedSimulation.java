@@ -0,0 +1,28 @@
+package com.github.mimo31.gravitysimulator;
+
+/**
+ * The live parts of the simulation kept over a configuration change, so the new Activity continues with them instead of parceling the space.
+ * <p>
+ * Holds no reference to the Activity or the Views, so the old ones can be collected.
+ * It's passed from onRetainNonConfigurationInstance to the next Activity and attached to its GravityView.
+ */
+class RetainedSimulation
+{
+    final GravitySpace space;
+
+    // threads of the steps, also used by the space
+    final StepExecutor executor;
+
+    final Autosave autosave;
+
+    // keeps the quality level, so the new View doesn't start with a stutter
+    final QualityGovernor governor;
+
+    RetainedSimulation(GravitySpace space, StepExecutor executor, Autosave autosave, QualityGovernor governor)
+    {
+        this.space = space;
+        this.executor = executor;
+        this.autosave = autosave;
+        this.governor = governor;
+    }
+}
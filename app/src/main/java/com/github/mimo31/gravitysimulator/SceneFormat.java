@@ -0,0 +1,684 @@
+package com.github.mimo31.gravitysimulator;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+
+/**
+ * Reads and writes the objects of a GravitySpace as text tables, one object per line.
+ * <p>
+ * CSV files have a header naming the columns, which may be in any order: x, y, vx, vy, radius, density, frozen and tracer.
+ * The velocity columns and the 0 or 1 flags set by an EscaperPolicy are optional and other columns are ignored.
+ * Without a header the columns are x, y, vx, vy, radius, density.
+ * JSON Lines files have one flat object with the same keys on every line. Empty lines and CSV lines starting with # are skipped.
+ * <p>
+ * The text is scanned directly from a char buffer into primitive arrays, which are added to the space in batches,
+ * so no Strings or other objects are created per line.
+ */
+class SceneFormat
+{
+    enum Format
+    {
+        CSV, JSON_LINES
+    }
+
+    // names of the values of an object, in the default order of the CSV columns
+    private static final String[] NAMES = { "x", "y", "vx", "vy", "radius", "density", "frozen", "tracer" };
+    private static final int X = 0;
+    private static final int Y = 1;
+    private static final int VELOCITY_X = 2;
+    private static final int VELOCITY_Y = 3;
+    private static final int RADIUS = 4;
+    private static final int DENSITY = 5;
+    private static final int FROZEN = 6;
+    private static final int TRACER = 7;
+
+    // the values that every object must have, as bits indexed by the values
+    private static final int REQUIRED = 1 << X | 1 << Y | 1 << RADIUS | 1 << DENSITY;
+
+    // number of the objects added to the space at once
+    private static final int BATCH_SIZE = 4096;
+
+    /**
+     * @return the format of a file with the name based on its extension
+     */
+    static Format forFileName(String name)
+    {
+        return name.endsWith(".jsonl") || name.endsWith(".json") ? Format.JSON_LINES : Format.CSV;
+    }
+
+    /**
+     * Adds all the objects in the text to the space. If there is an error, the objects before it have already been added,
+     * so a new space should be passed and only used when this returns.
+     * @return number of the added objects
+     */
+    static int read(Reader reader, Format format, GravitySpace space) throws IOException
+    {
+        Scanner scanner = new Scanner(reader);
+        SpaceSnapshot batch = new SpaceSnapshot();
+        batch.ensureCapacity(BATCH_SIZE);
+        double[] values = new double[NAMES.length];
+        int read = 0;
+
+        // the value in each CSV column or -1 if the column is ignored
+        int[] columns = null;
+        while (scanner.skipBlankLine())
+        {
+            if (format == Format.CSV)
+            {
+                if (scanner.peek() == '#')
+                {
+                    scanner.skipLine();
+                    continue;
+                }
+                if (columns == null)
+                {
+                    if (!scanner.isNumberStart())
+                    {
+                        columns = scanner.readHeader();
+                        continue;
+                    }
+                    columns = new int[] { X, Y, VELOCITY_X, VELOCITY_Y, RADIUS, DENSITY };
+                }
+                scanner.readCsvLine(columns, values);
+            }
+            else
+            {
+                scanner.readJsonLine(values);
+            }
+            scanner.checkObject(values);
+
+            int index = batch.count++;
+            batch.x[index] = values[X];
+            batch.y[index] = values[Y];
+            batch.velocityX[index] = values[VELOCITY_X];
+            batch.velocityY[index] = values[VELOCITY_Y];
+            batch.radius[index] = (int) values[RADIUS];
+            batch.density[index] = (int) values[DENSITY];
+            batch.flags[index] = (byte) ((values[FROZEN] != 0 ? SpaceSnapshot.FROZEN : 0) | (values[TRACER] != 0 ? SpaceSnapshot.TRACER : 0));
+            if (batch.count == BATCH_SIZE)
+            {
+                space.addObjects(batch);
+                read += batch.count;
+                batch.count = 0;
+            }
+        }
+        space.addObjects(batch);
+        return read + batch.count;
+    }
+
+    /**
+     * Writes all the objects of the space. Must be called between the steps.
+     */
+    static void write(Writer writer, Format format, GravitySpace space) throws IOException
+    {
+        StringBuilder line = new StringBuilder(128);
+        if (format == Format.CSV)
+        {
+            writer.write("x,y,vx,vy,radius,density,frozen,tracer\n");
+        }
+        for (int i = 0; i < space.getNumberOfObjects(); i++)
+        {
+            GravitationalObject object = space.getObject(i);
+            line.setLength(0);
+            if (format == Format.CSV)
+            {
+                line.append(object.position.x).append(',').append(object.position.y).append(',')
+                        .append(object.velocity.x).append(',').append(object.velocity.y).append(',')
+                        .append(object.radius).append(',').append(object.density).append(',')
+                        .append(object.frozen ? 1 : 0).append(',').append(object.tracer ? 1 : 0).append('\n');
+            }
+            else
+            {
+                line.append("{\"x\":").append(object.position.x).append(",\"y\":").append(object.position.y)
+                        .append(",\"vx\":").append(object.velocity.x).append(",\"vy\":").append(object.velocity.y)
+                        .append(",\"radius\":").append(object.radius).append(",\"density\":").append(object.density)
+                        .append(",\"frozen\":").append(object.frozen ? 1 : 0).append(",\"tracer\":").append(object.tracer ? 1 : 0).append("}\n");
+            }
+            writer.append(line);
+        }
+        writer.flush();
+    }
+
+    /**
+     * Reads the text through a buffer and keeps track of the line number.
+     */
+    private static class Scanner
+    {
+        // powers of ten that are exact doubles
+        private static final double[] POWERS_OF_TEN = new double[23];
+
+        static
+        {
+            POWERS_OF_TEN[0] = 1;
+            for (int i = 1; i < POWERS_OF_TEN.length; i++)
+            {
+                POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10;
+            }
+        }
+
+        private final Reader reader;
+        private final char[] buffer = new char[1 << 16];
+        private int position;
+        private int limit;
+        private int line = 1;
+
+        // the characters of the number being read, for the numbers that aren't converted exactly by the fast path
+        private char[] number = new char[32];
+
+        // the name of the JSON key being read
+        private final char[] key = new char[16];
+
+        Scanner(Reader reader)
+        {
+            this.reader = reader;
+        }
+
+        /**
+         * @return the next character or -1 at the end of the text
+         */
+        int peek() throws IOException
+        {
+            if (this.position == this.limit)
+            {
+                this.limit = this.reader.read(this.buffer, 0, this.buffer.length);
+                this.position = 0;
+                if (this.limit <= 0)
+                {
+                    this.limit = 0;
+                    return -1;
+                }
+            }
+            return this.buffer[this.position];
+        }
+
+        private int next() throws IOException
+        {
+            int c = this.peek();
+            if (c != -1)
+            {
+                this.position++;
+            }
+            return c;
+        }
+
+        private SceneFormatException error(String message)
+        {
+            return new SceneFormatException(this.line, message);
+        }
+
+        private void skipSpaces() throws IOException
+        {
+            for (int c = this.peek(); c == ' ' || c == '\t'; c = this.peek())
+            {
+                this.position++;
+            }
+        }
+
+        private boolean isEndOfLine(int c)
+        {
+            return c == '\n' || c == '\r' || c == -1;
+        }
+
+        /**
+         * Moves to the next line, the rest of the current one has to be only spaces.
+         */
+        private void endLine() throws IOException
+        {
+            this.skipSpaces();
+            int c = this.next();
+            if (c == '\r' && this.peek() == '\n')
+            {
+                this.position++;
+            }
+            else if (!this.isEndOfLine(c))
+            {
+                throw this.error("Unexpected '" + (char) c + "'.");
+            }
+            this.line++;
+        }
+
+        void skipLine() throws IOException
+        {
+            for (int c = this.peek(); !this.isEndOfLine(c); c = this.peek())
+            {
+                this.position++;
+            }
+            this.endLine();
+        }
+
+        /**
+         * Skips the lines with only spaces.
+         * @return false if the end of the text has been reached
+         */
+        boolean skipBlankLine() throws IOException
+        {
+            while (true)
+            {
+                this.skipSpaces();
+                int c = this.peek();
+                if (c == -1)
+                {
+                    return false;
+                }
+                if (c != '\n' && c != '\r')
+                {
+                    return true;
+                }
+                this.endLine();
+            }
+        }
+
+        boolean isNumberStart() throws IOException
+        {
+            int c = this.peek();
+            return c == '-' || c == '+' || c == '.' || (c >= '0' && c <= '9');
+        }
+
+        /**
+         * Reads a number, which may be in the exponential notation.
+         */
+        private double readNumber() throws IOException
+        {
+            int length = 0;
+            boolean negative = false;
+            int c = this.peek();
+            if (c == '-' || c == '+')
+            {
+                negative = c == '-';
+                this.number[length++] = (char) c;
+                this.position++;
+            }
+
+            // the first 18 significant digits, the value is mantissa * 10^exponent
+            long mantissa = 0;
+            int significantDigits = 0;
+            int exponent = 0;
+            boolean truncated = false;
+            boolean anyDigits = false;
+            boolean fraction = false;
+            while (true)
+            {
+                c = this.peek();
+                if (c >= '0' && c <= '9')
+                {
+                    anyDigits = true;
+                    if (significantDigits < 18)
+                    {
+                        mantissa = mantissa * 10 + (c - '0');
+                        if (mantissa != 0)
+                        {
+                            significantDigits++;
+                        }
+                        if (fraction)
+                        {
+                            exponent--;
+                        }
+                    }
+                    else
+                    {
+                        truncated |= c != '0';
+                        if (!fraction)
+                        {
+                            exponent++;
+                        }
+                    }
+                }
+                else if (c == '.' && !fraction)
+                {
+                    fraction = true;
+                }
+                else
+                {
+                    break;
+                }
+                length = this.appendToNumber(length, c);
+                this.position++;
+            }
+            if (!anyDigits)
+            {
+                throw this.error(this.isEndOfLine(c) ? "Missing a number." : "Expected a number, found '" + (char) c + "'.");
+            }
+            if (c == 'e' || c == 'E')
+            {
+                length = this.appendToNumber(length, c);
+                this.position++;
+                c = this.peek();
+                boolean negativeExponent = c == '-';
+                if (c == '-' || c == '+')
+                {
+                    length = this.appendToNumber(length, c);
+                    this.position++;
+                    c = this.peek();
+                }
+                if (c < '0' || c > '9')
+                {
+                    throw this.error("Missing the exponent of a number.");
+                }
+                int explicitExponent = 0;
+                for (; c >= '0' && c <= '9'; c = this.peek())
+                {
+                    if (explicitExponent < 10000)
+                    {
+                        explicitExponent = explicitExponent * 10 + (c - '0');
+                    }
+                    length = this.appendToNumber(length, c);
+                    this.position++;
+                }
+                exponent += negativeExponent ? -explicitExponent : explicitExponent;
+            }
+
+            // mantissa and the power of ten are exact, so one multiplication or division rounds correctly
+            if (!truncated && mantissa <= 1L << 53 && exponent >= -22 && exponent <= 22)
+            {
+                double value = exponent >= 0 ? mantissa * POWERS_OF_TEN[exponent] : mantissa / POWERS_OF_TEN[-exponent];
+                return negative ? -value : value;
+            }
+            return Double.parseDouble(new String(this.number, 0, length));
+        }
+
+        private int appendToNumber(int length, int c)
+        {
+            if (length == this.number.length)
+            {
+                char[] newNumber = new char[2 * length];
+                System.arraycopy(this.number, 0, newNumber, 0, length);
+                this.number = newNumber;
+            }
+            this.number[length] = (char) c;
+            return length + 1;
+        }
+
+        /**
+         * Reads a CSV header line.
+         * @return the value in each column or -1 if it is ignored
+         */
+        int[] readHeader() throws IOException
+        {
+            StringBuilder name = new StringBuilder();
+            int[] columns = new int[NAMES.length];
+            int count = 0;
+            int present = 0;
+            while (true)
+            {
+                this.skipSpaces();
+                name.setLength(0);
+                for (int c = this.peek(); c != ',' && !this.isEndOfLine(c); c = this.peek())
+                {
+                    name.append((char) c);
+                    this.position++;
+                }
+                String column = name.toString().trim().replace("\"", "");
+                int value = -1;
+                for (int i = 0; i < NAMES.length; i++)
+                {
+                    if (NAMES[i].equalsIgnoreCase(column))
+                    {
+                        value = i;
+                    }
+                }
+                if (value != -1)
+                {
+                    if ((present & 1 << value) != 0)
+                    {
+                        throw this.error("Duplicate column " + column + ".");
+                    }
+                    present |= 1 << value;
+                }
+                if (count == columns.length)
+                {
+                    int[] newColumns = new int[2 * count];
+                    System.arraycopy(columns, 0, newColumns, 0, count);
+                    columns = newColumns;
+                }
+                columns[count++] = value;
+                if (this.peek() != ',')
+                {
+                    break;
+                }
+                this.position++;
+            }
+            this.endLine();
+            if ((present & REQUIRED) != REQUIRED)
+            {
+                throw new SceneFormatException(this.line - 1, "The header has to contain the columns x, y, radius and density.");
+            }
+            int[] header = new int[count];
+            System.arraycopy(columns, 0, header, 0, count);
+            return header;
+        }
+
+        void readCsvLine(int[] columns, double[] values) throws IOException
+        {
+            values[VELOCITY_X] = 0;
+            values[VELOCITY_Y] = 0;
+            values[FROZEN] = 0;
+            values[TRACER] = 0;
+            for (int i = 0; i < columns.length; i++)
+            {
+                if (i != 0)
+                {
+                    if (this.peek() != ',')
+                    {
+                        throw this.error("Expected " + columns.length + " columns, found " + i + ".");
+                    }
+                    this.position++;
+                }
+                this.skipSpaces();
+                if (columns[i] == -1)
+                {
+                    for (int c = this.peek(); c != ',' && !this.isEndOfLine(c); c = this.peek())
+                    {
+                        this.position++;
+                    }
+                }
+                else
+                {
+                    values[columns[i]] = this.readNumber();
+                    this.skipSpaces();
+                }
+            }
+            if (this.peek() == ',')
+            {
+                throw this.error("More than " + columns.length + " columns.");
+            }
+            this.endLine();
+        }
+
+        void readJsonLine(double[] values) throws IOException
+        {
+            values[VELOCITY_X] = 0;
+            values[VELOCITY_Y] = 0;
+            values[FROZEN] = 0;
+            values[TRACER] = 0;
+            if (this.next() != '{')
+            {
+                throw this.error("Expected a JSON object.");
+            }
+            int present = 0;
+            this.skipSpaces();
+            if (this.peek() == '}')
+            {
+                this.position++;
+            }
+            else
+            {
+                while (true)
+                {
+                    this.skipSpaces();
+                    int value = this.readKey();
+                    this.skipSpaces();
+                    if (this.next() != ':')
+                    {
+                        throw this.error("Expected ':' after a key.");
+                    }
+                    this.skipSpaces();
+                    if (value == -1)
+                    {
+                        this.skipJsonValue();
+                    }
+                    else
+                    {
+                        values[value] = this.readNumber();
+                        present |= 1 << value;
+                    }
+                    this.skipSpaces();
+                    int c = this.next();
+                    if (c == '}')
+                    {
+                        break;
+                    }
+                    if (c != ',')
+                    {
+                        throw this.error("Expected ',' or '}' in the object.");
+                    }
+                }
+            }
+            this.endLine();
+            for (int i = 0; i < NAMES.length; i++)
+            {
+                if ((REQUIRED & ~present & 1 << i) != 0)
+                {
+                    throw new SceneFormatException(this.line - 1, "Missing \"" + NAMES[i] + "\".");
+                }
+            }
+        }
+
+        /**
+         * Reads a quoted key.
+         * @return the value with the name or -1 if the key is ignored
+         */
+        private int readKey() throws IOException
+        {
+            if (this.next() != '"')
+            {
+                throw this.error("Expected a quoted key.");
+            }
+            int length = 0;
+            for (int c = this.next(); c != '"'; c = this.next())
+            {
+                if (this.isEndOfLine(c))
+                {
+                    throw this.error("Unterminated key.");
+                }
+                if (c == '\\')
+                {
+                    this.next();
+                    length = this.key.length + 1;
+                }
+                else if (length < this.key.length)
+                {
+                    this.key[length++] = (char) c;
+                }
+                else
+                {
+                    length = this.key.length + 1;
+                }
+            }
+            for (int i = 0; i < NAMES.length; i++)
+            {
+                if (NAMES[i].length() == length && this.keyEquals(NAMES[i], length))
+                {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        private boolean keyEquals(String name, int length)
+        {
+            for (int i = 0; i < length; i++)
+            {
+                if (name.charAt(i) != this.key[i])
+                {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * Skips a JSON value of a key that is ignored, including nested objects and arrays.
+         */
+        private void skipJsonValue() throws IOException
+        {
+            int depth = 0;
+            boolean inString = false;
+            while (true)
+            {
+                int c = this.peek();
+                if (this.isEndOfLine(c))
+                {
+                    if (inString || depth != 0)
+                    {
+                        throw this.error("Unterminated value.");
+                    }
+                    return;
+                }
+                if (inString)
+                {
+                    if (c == '\\')
+                    {
+                        this.position++;
+                    }
+                    else if (c == '"')
+                    {
+                        inString = false;
+                    }
+                }
+                else if (c == '"')
+                {
+                    inString = true;
+                }
+                else if (c == '{' || c == '[')
+                {
+                    depth++;
+                }
+                else if (c == '}' || c == ']')
+                {
+                    if (depth == 0)
+                    {
+                        return;
+                    }
+                    depth--;
+                }
+                else if (c == ',' && depth == 0)
+                {
+                    return;
+                }
+                this.position++;
+            }
+        }
+
+        /**
+         * Checks that the values of the object read from the last line are valid.
+         */
+        void checkObject(double[] values) throws SceneFormatException
+        {
+            int objectLine = this.line - 1;
+            for (int i = 0; i < NAMES.length; i++)
+            {
+                if (Double.isNaN(values[i]) || Double.isInfinite(values[i]))
+                {
+                    throw new SceneFormatException(objectLine, "The " + NAMES[i] + " isn't finite.");
+                }
+            }
+            if (values[RADIUS] != Math.rint(values[RADIUS]) || values[RADIUS] < 1 || values[RADIUS] > Integer.MAX_VALUE)
+            {
+                throw new SceneFormatException(objectLine, "The radius has to be a positive integer.");
+            }
+            // the objects with zero density are allowed as in the dialog adding an object
+            if (values[DENSITY] != Math.rint(values[DENSITY]) || values[DENSITY] < 0 || values[DENSITY] > Integer.MAX_VALUE)
+            {
+                throw new SceneFormatException(objectLine, "The density has to be a non-negative integer.");
+            }
+            for (int i = FROZEN; i <= TRACER; i++)
+            {
+                if (values[i] != 0 && values[i] != 1)
+                {
+                    throw new SceneFormatException(objectLine, "The " + NAMES[i] + " flag has to be 0 or 1.");
+                }
+            }
+        }
+    }
+}
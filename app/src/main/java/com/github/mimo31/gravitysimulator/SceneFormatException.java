@@ -0,0 +1,27 @@
+package com.github.mimo31.gravitysimulator;
+
+import java.io.IOException;
+
+/**
+ * Thrown when a scene file can't be parsed, the message starts with the number of the line with the error.
+ */
+class SceneFormatException extends IOException
+{
+    private static final long serialVersionUID = 1L;
+
+    private final int lineNumber;
+
+    SceneFormatException(int lineNumber, String message)
+    {
+        super("Line " + lineNumber + ": " + message);
+        this.lineNumber = lineNumber;
+    }
+
+    /**
+     * @return the number of the line with the error, starting at 1
+     */
+    int getLineNumber()
+    {
+        return this.lineNumber;
+    }
+}
@@ -0,0 +1,75 @@
+package com.github.mimo31.gravitysimulator;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.Socket;
+
+/**
+ * Connection of a viewer to a SimulationServer. Reads the streamed frames and sends edits.
+ * <p>
+ * The frames should be read by one thread, the edits may be sent from any thread.
+ */
+class SimulationClient implements Closeable
+{
+    private final Socket socket;
+    private final DataInputStream in;
+    private final DataOutputStream out;
+
+    // the last frame read
+    private StateFrame frame;
+
+    SimulationClient(String host, int port) throws IOException
+    {
+        this.socket = new Socket(host, port);
+        this.socket.setTcpNoDelay(true);
+        this.in = new DataInputStream(new BufferedInputStream(this.socket.getInputStream()));
+        this.out = new DataOutputStream(new BufferedOutputStream(this.socket.getOutputStream()));
+    }
+
+    /**
+     * Waits for the next frame from the server.
+     */
+    StateFrame readFrame() throws IOException
+    {
+        this.frame = FrameCodec.read(this.in, this.frame);
+        return this.frame;
+    }
+
+    synchronized void addObject(double x, double y, double velocityX, double velocityY, int radius, int density) throws IOException
+    {
+        this.out.writeByte(SimulationServer.EDIT_ADD);
+        this.out.writeDouble(x);
+        this.out.writeDouble(y);
+        this.out.writeDouble(velocityX);
+        this.out.writeDouble(velocityY);
+        this.out.writeInt(radius);
+        this.out.writeInt(density);
+        this.out.flush();
+    }
+
+    synchronized void removeObject(long id) throws IOException
+    {
+        this.out.writeByte(SimulationServer.EDIT_REMOVE);
+        this.out.writeLong(id);
+        this.out.flush();
+    }
+
+    synchronized void setVelocity(long id, double velocityX, double velocityY) throws IOException
+    {
+        this.out.writeByte(SimulationServer.EDIT_SET_VELOCITY);
+        this.out.writeLong(id);
+        this.out.writeDouble(velocityX);
+        this.out.writeDouble(velocityY);
+        this.out.flush();
+    }
+
+    @Override
+    public void close() throws IOException
+    {
+        this.socket.close();
+    }
+}
@@ -0,0 +1,46 @@
+package com.github.mimo31.gravitysimulator;
+
+/**
+ * Something that has happened to the objects of a GravitySpace, as delivered by an EventStream.
+ * <p>
+ * The Subscription fills the same instance for every event it delivers, so the fields are only valid during the call of the Handler.
+ */
+class SimulationEvent
+{
+    enum Type
+    {
+        // an object has been added, id1 is the object
+        ADDED,
+
+        // an object has been removed, id1 is the object
+        REMOVED,
+
+        // two objects have collided, x and y are the point of the contact and value is the magnitude of the impulse
+        COLLISION,
+
+        // the surfaces of two objects have got closer than the approach distance of the stream, value is the distance of the surfaces
+        CLOSE_APPROACH,
+
+        // an object has escaped from the system, x and y are its position, the EscaperPolicy decides what happens to it next
+        ESCAPE
+    }
+
+    Type type;
+
+    // the step the event has been published with
+    long step;
+
+    // the ids of the objects, id2 is -1 if the event has only one object
+    long id1;
+    long id2;
+
+    double x;
+    double y;
+    double value;
+
+    @Override
+    public String toString()
+    {
+        return this.type + " at step " + this.step + " of " + this.id1 + (this.id2 == -1 ? "" : " and " + this.id2) + " at (" + this.x + ", " + this.y + "), " + this.value;
+    }
+}
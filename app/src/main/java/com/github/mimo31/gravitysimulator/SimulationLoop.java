@@ -0,0 +1,188 @@
+package com.github.mimo31.gravitysimulator;
+
+import android.os.Build;
+import android.os.Handler;
+import android.view.Choreographer;
+
+/**
+ * Drives the updates of the Activity in sync with the display refresh.
+ * <p>
+ * The elapsed frame time is collected in an accumulator which is then consumed in fixed ticks of TICK_NANOS,
+ * so the simulation speed doesn't depend on the refresh rate of the display.
+ * When a tick reports that nothing is changing, the loop stops requesting frames completely until wake is called.
+ */
+class SimulationLoop implements Runnable
+{
+    /**
+     * Something that is updated by the loop.
+     */
+    interface Tickable
+    {
+        /**
+         * Performs one fixed tick.
+         * @return whether anything has changed, that is whether further ticks are needed
+         */
+        boolean tick();
+    }
+
+    // duration of one simulation tick
+    static final long TICK_NANOS = 1000000000L / 60;
+
+    // when the frames are late (e.g. after a long GC), at most this many ticks are performed in one frame, the rest of the time is dropped
+    private static final int MAX_TICKS_PER_FRAME = 4;
+
+    // delay between updates on devices without Choreographer
+    private static final int FALLBACK_DELAY = 17;
+
+    private final Tickable target;
+
+    // used on API 16+, null on older devices
+    private final VsyncCallback vsyncCallback;
+
+    // used on devices without Choreographer
+    private final Handler fallbackHandler;
+
+    // whether the loop has been started (the Activity is resumed)
+    private boolean running;
+
+    // whether a frame is already requested
+    private boolean scheduled;
+
+    // time of the last frame in ns, -1 if the loop has just been (re)started
+    private long lastFrameTime = -1;
+
+    // time not yet consumed by ticks in ns
+    private long accumulator;
+
+    SimulationLoop(Tickable target)
+    {
+        this.target = target;
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN)
+        {
+            this.vsyncCallback = new VsyncCallback(this);
+            this.fallbackHandler = null;
+        }
+        else
+        {
+            this.vsyncCallback = null;
+            this.fallbackHandler = new Handler();
+        }
+    }
+
+    /**
+     * Starts requesting frames. Should be called when the Activity is resumed.
+     */
+    void start()
+    {
+        this.running = true;
+        this.wake();
+    }
+
+    /**
+     * Stops requesting frames. Should be called when the Activity is paused.
+     */
+    void stop()
+    {
+        this.running = false;
+        if (this.scheduled)
+        {
+            if (this.vsyncCallback != null)
+            {
+                Choreographer.getInstance().removeFrameCallback(this.vsyncCallback);
+            }
+            else
+            {
+                this.fallbackHandler.removeCallbacks(this);
+            }
+            this.scheduled = false;
+        }
+    }
+
+    /**
+     * Resumes the ticking after the loop has gone idle. Should be called whenever something that may need updating happens.
+     * Does nothing if the loop is already ticking or stopped.
+     */
+    void wake()
+    {
+        if (this.running && !this.scheduled)
+        {
+            // the time spent idle shouldn't be caught up
+            this.lastFrameTime = -1;
+            this.accumulator = 0;
+            this.schedule();
+        }
+    }
+
+    private void schedule()
+    {
+        this.scheduled = true;
+        if (this.vsyncCallback != null)
+        {
+            Choreographer.getInstance().postFrameCallback(this.vsyncCallback);
+        }
+        else
+        {
+            this.fallbackHandler.postDelayed(this, FALLBACK_DELAY);
+        }
+    }
+
+    @Override
+    public void run()
+    {
+        this.doFrame(System.nanoTime());
+    }
+
+    private void doFrame(long frameTimeNanos)
+    {
+        this.scheduled = false;
+        if (!this.running)
+        {
+            return;
+        }
+
+        // the first frame after a start always performs one tick
+        if (this.lastFrameTime == -1)
+        {
+            this.lastFrameTime = frameTimeNanos - TICK_NANOS;
+        }
+        this.accumulator += frameTimeNanos - this.lastFrameTime;
+        this.lastFrameTime = frameTimeNanos;
+        if (this.accumulator > MAX_TICKS_PER_FRAME * TICK_NANOS)
+        {
+            this.accumulator = MAX_TICKS_PER_FRAME * TICK_NANOS;
+        }
+
+        boolean active = true;
+        while (this.accumulator >= TICK_NANOS)
+        {
+            this.accumulator -= TICK_NANOS;
+            if (!this.target.tick())
+            {
+                active = false;
+                break;
+            }
+        }
+
+        // go idle if nothing has changed, wake() starts the loop again
+        if (active)
+        {
+            this.schedule();
+        }
+    }
+
+    private static class VsyncCallback implements Choreographer.FrameCallback
+    {
+        private final SimulationLoop loop;
+
+        private VsyncCallback(SimulationLoop loop)
+        {
+            this.loop = loop;
+        }
+
+        @Override
+        public void doFrame(long frameTimeNanos)
+        {
+            this.loop.doFrame(frameTimeNanos);
+        }
+    }
+}
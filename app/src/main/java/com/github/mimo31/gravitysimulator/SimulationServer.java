@@ -0,0 +1,410 @@
+package com.github.mimo31.gravitysimulator;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Steps a GravitySpace without any UI and streams its state to viewers connected over a local socket.
+ * <p>
+ * Every viewer has its own thread sending the frames and a slot for the newest frame. If the viewer is slower than the simulation,
+ * the frame in the slot is replaced by a newer one, so a slow viewer only gets fewer frames and never holds up the simulation.
+ * The frames are encoded by FrameCodec against the last frame sent to the same viewer.
+ * <p>
+ * The viewers may send edits (EDIT_ADD, EDIT_REMOVE and EDIT_SET_VELOCITY followed by their arguments as written by SimulationClient).
+ * The edits are queued and applied by the simulation thread between the steps.
+ * <p>
+ * Arguments of main: [port] [number of random objects or a CSV or JSON Lines scene file to load]
+ */
+class SimulationServer implements Closeable
+{
+    static final byte EDIT_ADD = 1;
+    static final byte EDIT_REMOVE = 2;
+    static final byte EDIT_SET_VELOCITY = 3;
+
+    // the frames are captured at most this often
+    private static final long FRAME_NANOS = 1000000000 / 60;
+
+    /**
+     * A change of the space requested by a viewer.
+     */
+    private interface Edit
+    {
+        void apply(GravitySpace space);
+    }
+
+    private final GravitySpace space;
+    private final double deltaTime;
+    private final int stepsPerFrame;
+    private final ServerSocket serverSocket;
+
+    private final List<Viewer> viewers = new CopyOnWriteArrayList<>();
+    private final ConcurrentLinkedQueue<Edit> edits = new ConcurrentLinkedQueue<>();
+
+    private volatile boolean running;
+    private Thread simulationThread;
+    private Thread acceptThread;
+
+    /**
+     * @param port port to listen on, 0 for any free port
+     */
+    SimulationServer(GravitySpace space, double deltaTime, int stepsPerFrame, int port) throws IOException
+    {
+        this.space = space;
+        this.deltaTime = deltaTime;
+        this.stepsPerFrame = stepsPerFrame;
+        this.serverSocket = new ServerSocket(port, 50, InetAddress.getLoopbackAddress());
+    }
+
+    public static void main(String[] args) throws IOException
+    {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : 7531;
+        GravitySpace space = new GravitySpace();
+        space.setExecutor(new StepExecutor(Runtime.getRuntime().availableProcessors()));
+        int count = 1000;
+        if (args.length > 1 && args[1].matches("\\d+"))
+        {
+            count = Integer.parseInt(args[1]);
+        }
+        else if (args.length > 1)
+        {
+            Reader reader = new InputStreamReader(new FileInputStream(args[1]), "UTF-8");
+            try
+            {
+                SceneFormat.read(reader, SceneFormat.forFileName(args[1]), space);
+            }
+            finally
+            {
+                reader.close();
+            }
+            count = 0;
+        }
+        Random random = new Random();
+        for (int i = 0; i < count; i++)
+        {
+            double r = 2000 * Math.sqrt(random.nextDouble());
+            double angle = random.nextDouble() * 2 * Math.PI;
+            GravitationalObject object = new GravitationalObject(new Vector2d(r * Math.cos(angle), r * Math.sin(angle)), 4 + random.nextInt(12), 100 + random.nextInt(900));
+            if (!space.doesCollide(object))
+            {
+                space.addObject(object);
+            }
+        }
+        SimulationServer server = new SimulationServer(space, 1 / 8.0, 8, port);
+        server.start();
+        System.out.println("Simulating " + space.getNumberOfObjects() + " objects, listening on port " + server.getPort() + ".");
+    }
+
+    int getPort()
+    {
+        return this.serverSocket.getLocalPort();
+    }
+
+    int getNumberOfViewers()
+    {
+        return this.viewers.size();
+    }
+
+    void start()
+    {
+        this.running = true;
+        this.simulationThread = new Thread(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                SimulationServer.this.simulate();
+            }
+        }, "SimulationServer");
+        this.acceptThread = new Thread(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                SimulationServer.this.acceptViewers();
+            }
+        }, "SimulationServer-accept");
+        this.simulationThread.start();
+        this.acceptThread.start();
+    }
+
+    @Override
+    public void close() throws IOException
+    {
+        this.running = false;
+        this.serverSocket.close();
+        for (Viewer viewer : this.viewers)
+        {
+            viewer.close();
+        }
+        if (this.simulationThread != null)
+        {
+            try
+            {
+                this.simulationThread.join();
+            }
+            catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private void simulate()
+    {
+        long nextFrame = System.nanoTime();
+        while (this.running)
+        {
+            for (int i = 0; i < this.stepsPerFrame; i++)
+            {
+                this.applyEdits();
+                this.space.update(this.deltaTime, false);
+            }
+            this.applyEdits();
+            if (!this.viewers.isEmpty())
+            {
+                StateFrame frame = StateFrame.capture(this.space);
+                for (Viewer viewer : this.viewers)
+                {
+                    viewer.offer(frame);
+                }
+            }
+
+            // don't run faster than the frame rate, but don't try to catch up if running slower
+            nextFrame += FRAME_NANOS;
+            long now = System.nanoTime();
+            if (nextFrame > now)
+            {
+                try
+                {
+                    Thread.sleep((nextFrame - now) / 1000000, (int) ((nextFrame - now) % 1000000));
+                }
+                catch (InterruptedException e)
+                {
+                    return;
+                }
+            }
+            else
+            {
+                nextFrame = now;
+            }
+        }
+    }
+
+    private void applyEdits()
+    {
+        for (Edit edit = this.edits.poll(); edit != null; edit = this.edits.poll())
+        {
+            edit.apply(this.space);
+        }
+    }
+
+    private void acceptViewers()
+    {
+        while (this.running)
+        {
+            try
+            {
+                Viewer viewer = new Viewer(this.serverSocket.accept());
+                this.viewers.add(viewer);
+                viewer.start();
+            }
+            catch (IOException e)
+            {
+                // the server socket has been closed
+                return;
+            }
+        }
+    }
+
+    /**
+     * Reads one edit sent by a viewer.
+     */
+    private static Edit readEdit(DataInputStream in) throws IOException
+    {
+        byte type = in.readByte();
+        switch (type)
+        {
+            case EDIT_ADD:
+                final double x = in.readDouble();
+                final double y = in.readDouble();
+                final double velocityX = in.readDouble();
+                final double velocityY = in.readDouble();
+                final int radius = in.readInt();
+                final int density = in.readInt();
+                return new Edit()
+                {
+                    @Override
+                    public void apply(GravitySpace space)
+                    {
+                        GravitationalObject object = new GravitationalObject(new Vector2d(x, y), radius, density);
+                        object.velocity = new Vector2d(velocityX, velocityY);
+                        space.addObject(object);
+                    }
+                };
+            case EDIT_REMOVE:
+                final long removedId = in.readLong();
+                return new Edit()
+                {
+                    @Override
+                    public void apply(GravitySpace space)
+                    {
+                        space.removeObject(removedId);
+                    }
+                };
+            case EDIT_SET_VELOCITY:
+                final long id = in.readLong();
+                final double newVelocityX = in.readDouble();
+                final double newVelocityY = in.readDouble();
+                return new Edit()
+                {
+                    @Override
+                    public void apply(GravitySpace space)
+                    {
+                        GravitationalObject object = space.getObjectById(id);
+                        if (object != null)
+                        {
+                            space.setVelocity(object, new Vector2d(newVelocityX, newVelocityY));
+                        }
+                    }
+                };
+            default:
+                throw new IOException("Unknown edit type " + type + ".");
+        }
+    }
+
+    /**
+     * A connected viewer with its threads for sending the frames and receiving the edits.
+     */
+    private class Viewer implements Closeable
+    {
+        private final Socket socket;
+        private final DataInputStream in;
+        private final DataOutputStream out;
+
+        // the newest frame not sent yet, guarded by this
+        private StateFrame pendingFrame;
+        private boolean closed;
+
+        // the last frame sent, only used by the sending thread
+        private StateFrame sentFrame;
+
+        Viewer(Socket socket) throws IOException
+        {
+            this.socket = socket;
+            socket.setTcpNoDelay(true);
+            this.in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            this.out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+        }
+
+        void start()
+        {
+            new Thread(new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    Viewer.this.sendFrames();
+                }
+            }, "SimulationServer-send").start();
+            new Thread(new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    Viewer.this.receiveEdits();
+                }
+            }, "SimulationServer-receive").start();
+        }
+
+        /**
+         * Puts the frame to the slot replacing the frame that hasn't been sent yet, if any.
+         */
+        synchronized void offer(StateFrame frame)
+        {
+            this.pendingFrame = frame;
+            this.notifyAll();
+        }
+
+        private synchronized StateFrame takeFrame() throws InterruptedException
+        {
+            while (this.pendingFrame == null && !this.closed)
+            {
+                this.wait();
+            }
+            StateFrame frame = this.pendingFrame;
+            this.pendingFrame = null;
+            return frame;
+        }
+
+        private void sendFrames()
+        {
+            try
+            {
+                for (StateFrame frame = this.takeFrame(); frame != null; frame = this.takeFrame())
+                {
+                    FrameCodec.write(this.out, this.sentFrame, frame);
+                    this.out.flush();
+                    this.sentFrame = frame;
+                }
+            }
+            catch (IOException | InterruptedException e)
+            {
+                // the viewer has disconnected
+            }
+            this.close();
+        }
+
+        private void receiveEdits()
+        {
+            try
+            {
+                while (true)
+                {
+                    SimulationServer.this.edits.add(readEdit(this.in));
+                }
+            }
+            catch (IOException e)
+            {
+                // the viewer has disconnected or sent something unexpected
+            }
+            this.close();
+        }
+
+        @Override
+        public void close()
+        {
+            synchronized (this)
+            {
+                if (this.closed)
+                {
+                    return;
+                }
+                this.closed = true;
+                this.notifyAll();
+            }
+            SimulationServer.this.viewers.remove(this);
+            try
+            {
+                this.socket.close();
+            }
+            catch (IOException e)
+            {
+                // nothing more to do with the socket
+            }
+        }
+    }
+}
@@ -0,0 +1,158 @@
+package com.github.mimo31.gravitysimulator;
+
+import android.os.Bundle;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Copy of the state of a GravitySpace in primitive arrays, so it can be taken between two steps without allocating
+ * and written to a file on another thread while the simulation goes on.
+ * <p>
+ * The arrays are reused by the next capture if they are large enough.
+ */
+class SpaceSnapshot
+{
+    // number of the bytes written per object
+    static final int OBJECT_BYTES = 49;
+
+    // bits of the flags
+    static final byte FROZEN = 1;
+    static final byte TRACER = 2;
+
+    int count;
+    long[] ids = new long[0];
+    double[] x = new double[0];
+    double[] y = new double[0];
+    double[] velocityX = new double[0];
+    double[] velocityY = new double[0];
+    int[] radius = new int[0];
+    int[] density = new int[0];
+    byte[] flags = new byte[0];
+
+    double viewX;
+    double viewY;
+    double zoomLevel;
+    long nextId;
+    long stepCount;
+
+    /**
+     * Makes sure the arrays can hold the objects, their content is lost if they are reallocated.
+     */
+    void ensureCapacity(int capacity)
+    {
+        if (this.ids.length < capacity)
+        {
+            int newCapacity = Math.max(capacity, this.ids.length * 3 / 2);
+            this.ids = new long[newCapacity];
+            this.x = new double[newCapacity];
+            this.y = new double[newCapacity];
+            this.velocityX = new double[newCapacity];
+            this.velocityY = new double[newCapacity];
+            this.radius = new int[newCapacity];
+            this.density = new int[newCapacity];
+            this.flags = new byte[newCapacity];
+        }
+    }
+
+    void write(DataOutputStream out) throws IOException
+    {
+        out.writeDouble(this.viewX);
+        out.writeDouble(this.viewY);
+        out.writeDouble(this.zoomLevel);
+        out.writeLong(this.nextId);
+        out.writeLong(this.stepCount);
+        out.writeInt(this.count);
+        for (int i = 0; i < this.count; i++)
+        {
+            out.writeLong(this.ids[i]);
+            out.writeDouble(this.x[i]);
+            out.writeDouble(this.y[i]);
+            out.writeDouble(this.velocityX[i]);
+            out.writeDouble(this.velocityY[i]);
+            out.writeInt(this.radius[i]);
+            out.writeInt(this.density[i]);
+            out.writeByte(this.flags[i]);
+        }
+    }
+
+    /**
+     * @param maxCount the largest number of objects expected, so a damaged count doesn't allocate huge arrays
+     */
+    static SpaceSnapshot read(DataInputStream in, long maxCount) throws IOException
+    {
+        SpaceSnapshot snapshot = new SpaceSnapshot();
+        snapshot.viewX = in.readDouble();
+        snapshot.viewY = in.readDouble();
+        snapshot.zoomLevel = in.readDouble();
+        snapshot.nextId = in.readLong();
+        snapshot.stepCount = in.readLong();
+        int count = in.readInt();
+        if (count < 0 || count > maxCount)
+        {
+            throw new IOException("Invalid number of objects " + count + ".");
+        }
+        snapshot.ensureCapacity(count);
+        snapshot.count = count;
+        for (int i = 0; i < count; i++)
+        {
+            snapshot.ids[i] = in.readLong();
+            snapshot.x[i] = in.readDouble();
+            snapshot.y[i] = in.readDouble();
+            snapshot.velocityX[i] = in.readDouble();
+            snapshot.velocityY[i] = in.readDouble();
+            snapshot.radius[i] = in.readInt();
+            snapshot.density[i] = in.readInt();
+            snapshot.flags[i] = in.readByte();
+        }
+        return snapshot;
+    }
+
+    /**
+     * Puts the snapshot into a Bundle as a few primitive arrays, which is much smaller and faster to parcel than the objects.
+     * The arrays are shared with the Bundle if they have the exact length, so the snapshot shouldn't be reused.
+     */
+    Bundle putToBundle()
+    {
+        Bundle bundle = new Bundle();
+        bundle.putDouble("viewX", this.viewX);
+        bundle.putDouble("viewY", this.viewY);
+        bundle.putDouble("zoom", this.zoomLevel);
+        bundle.putLong("nextId", this.nextId);
+        bundle.putLong("stepCount", this.stepCount);
+        bundle.putLongArray("ids", this.ids.length == this.count ? this.ids : Arrays.copyOf(this.ids, this.count));
+        bundle.putDoubleArray("x", this.x.length == this.count ? this.x : Arrays.copyOf(this.x, this.count));
+        bundle.putDoubleArray("y", this.y.length == this.count ? this.y : Arrays.copyOf(this.y, this.count));
+        bundle.putDoubleArray("velocityX", this.velocityX.length == this.count ? this.velocityX : Arrays.copyOf(this.velocityX, this.count));
+        bundle.putDoubleArray("velocityY", this.velocityY.length == this.count ? this.velocityY : Arrays.copyOf(this.velocityY, this.count));
+        bundle.putIntArray("radius", this.radius.length == this.count ? this.radius : Arrays.copyOf(this.radius, this.count));
+        bundle.putIntArray("density", this.density.length == this.count ? this.density : Arrays.copyOf(this.density, this.count));
+        bundle.putByteArray("flags", this.flags.length == this.count ? this.flags : Arrays.copyOf(this.flags, this.count));
+        return bundle;
+    }
+
+    /**
+     * Reads a snapshot put into a Bundle by putToBundle, the arrays are taken from the Bundle without copying.
+     */
+    static SpaceSnapshot fromBundle(Bundle bundle)
+    {
+        SpaceSnapshot snapshot = new SpaceSnapshot();
+        snapshot.viewX = bundle.getDouble("viewX");
+        snapshot.viewY = bundle.getDouble("viewY");
+        snapshot.zoomLevel = bundle.getDouble("zoom");
+        snapshot.nextId = bundle.getLong("nextId", 1);
+        snapshot.stepCount = bundle.getLong("stepCount");
+        snapshot.ids = bundle.getLongArray("ids");
+        snapshot.x = bundle.getDoubleArray("x");
+        snapshot.y = bundle.getDoubleArray("y");
+        snapshot.velocityX = bundle.getDoubleArray("velocityX");
+        snapshot.velocityY = bundle.getDoubleArray("velocityY");
+        snapshot.radius = bundle.getIntArray("radius");
+        snapshot.density = bundle.getIntArray("density");
+        snapshot.flags = bundle.getByteArray("flags");
+        snapshot.count = snapshot.ids.length;
+        return snapshot;
+    }
+}
@@ -0,0 +1,62 @@
+package com.github.mimo31.gravitysimulator;
+
+import java.util.Arrays;
+
+/**
+ * Immutable picture of the objects of a GravitySpace as seen by a viewer: positions, radii and colors.
+ * <p>
+ * The objects are ordered by their ids, so two frames can be compared in one pass.
+ */
+class StateFrame
+{
+    final long step;
+    final int count;
+    final long[] ids;
+    final float[] x;
+    final float[] y;
+    final float[] radius;
+    final int[] color;
+
+    StateFrame(long step, int count)
+    {
+        this.step = step;
+        this.count = count;
+        this.ids = new long[count];
+        this.x = new float[count];
+        this.y = new float[count];
+        this.radius = new float[count];
+        this.color = new int[count];
+    }
+
+    /**
+     * Captures the current state of the space. Must be called between the steps.
+     */
+    static StateFrame capture(GravitySpace space)
+    {
+        int count = space.getNumberOfObjects();
+        StateFrame frame = new StateFrame(space.getStepCount(), count);
+        for (int i = 0; i < count; i++)
+        {
+            frame.ids[i] = space.getObject(i).id;
+        }
+        Arrays.sort(frame.ids);
+        for (int i = 0; i < count; i++)
+        {
+            GravitationalObject object = space.getObjectById(frame.ids[i]);
+            frame.x[i] = (float) object.position.x;
+            frame.y[i] = (float) object.position.y;
+            frame.radius[i] = object.radius;
+            frame.color[i] = object.getColor();
+        }
+        return frame;
+    }
+
+    /**
+     * @return the index of the object with the id or -1 if the frame doesn't contain it
+     */
+    int indexOf(long id)
+    {
+        int index = Arrays.binarySearch(this.ids, 0, this.count, id);
+        return index < 0 ? -1 : index;
+    }
+}
@@ -0,0 +1,167 @@
+package com.github.mimo31.gravitysimulator;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Runs the phases of a simulation step in parallel.
+ * <p>
+ * The work is always split into chunks of a fixed size that doesn't depend on the number of the threads.
+ * Every chunk writes its results only to its own part of the output, and whatever needs combining is combined by the caller in the order of the chunks.
+ * Therefore, the results are bit-for-bit the same for any number of threads.
+ */
+class StepExecutor
+{
+    /**
+     * A part of a phase working on the items from start (inclusive) to end (exclusive).
+     */
+    interface ChunkTask
+    {
+        void run(int chunk, int start, int end);
+    }
+
+    private final int threadCount;
+
+    // null if only the calling thread is used
+    private final ExecutorService pool;
+
+    /**
+     * @param threadCount number of the threads working on each phase including the calling thread
+     */
+    StepExecutor(int threadCount)
+    {
+        this.threadCount = Math.max(threadCount, 1);
+        if (this.threadCount == 1)
+        {
+            this.pool = null;
+        }
+        else
+        {
+            this.pool = Executors.newFixedThreadPool(this.threadCount - 1, new ThreadFactory()
+            {
+                private final AtomicInteger number = new AtomicInteger();
+
+                @Override
+                public Thread newThread(Runnable runnable)
+                {
+                    Thread thread = new Thread(runnable, "StepExecutor-" + this.number.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+    }
+
+    int getThreadCount()
+    {
+        return this.threadCount;
+    }
+
+    /**
+     * @return the number of the chunks forEachChunk splits count items into
+     */
+    static int getNumberOfChunks(int count, int chunkSize)
+    {
+        return (count + chunkSize - 1) / chunkSize;
+    }
+
+    /**
+     * Runs the task on all the chunks and waits until all of them are done. The calling thread works on the chunks as well.
+     * @param count number of the items
+     * @param chunkSize number of the items in one chunk (the last one may be smaller)
+     */
+    void forEachChunk(final int count, final int chunkSize, final ChunkTask task)
+    {
+        final int chunks = getNumberOfChunks(count, chunkSize);
+        if (this.pool == null || chunks <= 1)
+        {
+            for (int chunk = 0; chunk < chunks; chunk++)
+            {
+                task.run(chunk, chunk * chunkSize, Math.min((chunk + 1) * chunkSize, count));
+            }
+            return;
+        }
+
+        // the threads take the chunks one by one, so the unequally expensive chunks are balanced
+        final AtomicInteger nextChunk = new AtomicInteger();
+        final AtomicReference<Throwable> failure = new AtomicReference<>();
+        int helpers = Math.min(this.threadCount - 1, chunks - 1);
+        final CountDownLatch helpersDone = new CountDownLatch(helpers);
+        final Runnable worker = new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                try
+                {
+                    for (int chunk = nextChunk.getAndIncrement(); chunk < chunks; chunk = nextChunk.getAndIncrement())
+                    {
+                        task.run(chunk, chunk * chunkSize, Math.min((chunk + 1) * chunkSize, count));
+                    }
+                }
+                catch (Throwable e)
+                {
+                    // an Error of a helper is rethrown on the calling thread as well, so the step never goes on with chunks missing
+                    failure.compareAndSet(null, e);
+                    nextChunk.set(chunks);
+                }
+            }
+        };
+        for (int i = 0; i < helpers; i++)
+        {
+            this.pool.execute(new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    try
+                    {
+                        worker.run();
+                    }
+                    finally
+                    {
+                        helpersDone.countDown();
+                    }
+                }
+            });
+        }
+        worker.run();
+        try
+        {
+            helpersDone.await();
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for the step to finish.", e);
+        }
+        Throwable thrown = failure.get();
+        if (thrown instanceof RuntimeException)
+        {
+            throw (RuntimeException) thrown;
+        }
+        if (thrown instanceof Error)
+        {
+            throw (Error) thrown;
+        }
+        if (thrown != null)
+        {
+            throw new IllegalStateException("A chunk of the step failed.", thrown);
+        }
+    }
+
+    /**
+     * Stops the threads. The executor may not be used afterwards.
+     */
+    void shutdown()
+    {
+        if (this.pool != null)
+        {
+            this.pool.shutdown();
+        }
+    }
+}
@@ -3,14 +3,75 @@ package com.github.mimo31.gravitysimulator;
 import android.graphics.Canvas;
 import android.graphics.Paint;
 import android.graphics.Rect;
+import android.graphics.Typeface;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 /**
  * Created by Viktor on 3/11/2016.
  *
  * Class for drawing strings into rectangular bounds.
+ * <p>
+ * The measurements of the strings are cached, so the labels that don't change aren't measured again in every frame.
+ * Only used from the UI thread.
  */
 public class StringDraw {
 
+    // maximum number of the cached measurements
+    private static final int CACHE_SIZE = 128;
+
+    // measurements of the recently drawn strings, the least recently used ones are dropped
+    private static final Map<Measurement, Measurement> cache = new LinkedHashMap<Measurement, Measurement>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Measurement, Measurement> eldest) {
+            return this.size() > CACHE_SIZE;
+        }
+    };
+
+    // reused to look up the cache without allocating
+    private static final Measurement lookupKey = new Measurement();
+
+    /**
+     * Measurement of a string with a typeface in bounds of a size. The position of the bounds doesn't matter.
+     */
+    private static class Measurement {
+        String string;
+        int width;
+        int height;
+        Typeface typeface;
+
+        // the largest text size that fits into the bounds
+        float maxTextSize;
+
+        // bounds of the string drawn with measuredTextSize, 0 if not measured yet
+        float measuredTextSize;
+        final Rect textBounds = new Rect();
+
+        void setKey(String string, Rect bounds, Typeface typeface) {
+            this.string = string;
+            this.width = bounds.right - bounds.left;
+            this.height = bounds.bottom - bounds.top;
+            this.typeface = typeface;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Measurement)) {
+                return false;
+            }
+            Measurement other = (Measurement) o;
+            return this.width == other.width && this.height == other.height && this.typeface == other.typeface && this.string.equals(other.string);
+        }
+
+        @Override
+        public int hashCode() {
+            int hash = this.string.hashCode();
+            hash = 31 * hash + this.width;
+            hash = 31 * hash + this.height;
+            return 31 * hash + (this.typeface == null ? 0 : this.typeface.hashCode());
+        }
+    }
 
     public enum TextAlign {
         MIDDLE, UP, UP_RIGHT, RIGHT, DOWN_RIGHT, DOWN, DOWN_LEFT, LEFT, UP_LEFT
@@ -22,11 +83,27 @@ public class StringDraw {
 
     public static void drawMaxString(String s, Rect bounds, int borderSize, TextAlign align, Canvas canvas, Paint p) {
         bounds = applyBorders(bounds, borderSize);
-        p.setTextSize(getMaxTextSize(s, bounds, p));
-        fitString(s, bounds, align, canvas, p);
+        Measurement measurement = getMeasurement(s, bounds, p);
+        p.setTextSize(measurement.maxTextSize);
+        fitString(measurement, bounds, align, canvas, p);
     }
 
-    private static float getMaxTextSize(String s, Rect bounds, Paint p) {
+    /**
+     * @return the cached measurement of the string in the bounds, the max text size is computed if it isn't cached
+     */
+    private static Measurement getMeasurement(String s, Rect bounds, Paint p) {
+        lookupKey.setKey(s, bounds, p.getTypeface());
+        Measurement measurement = cache.get(lookupKey);
+        if (measurement == null) {
+            measurement = new Measurement();
+            measurement.setKey(s, bounds, p.getTypeface());
+            measurement.maxTextSize = computeMaxTextSize(s, bounds, p);
+            cache.put(measurement, measurement);
+        }
+        return measurement;
+    }
+
+    private static float computeMaxTextSize(String s, Rect bounds, Paint p) {
         p.setTextSize(100);
         Rect bounds100 = new Rect();
         p.getTextBounds(s, 0, s.length(), bounds100);
@@ -38,9 +115,13 @@ public class StringDraw {
         }
     }
 
-    private static void fitString(String s, Rect bounds, TextAlign align, Canvas canvas, Paint p) {
-        Rect textSize = new Rect();
-        p.getTextBounds(s, 0, s.length(), textSize);
+    private static void fitString(Measurement measurement, Rect bounds, TextAlign align, Canvas canvas, Paint p) {
+        String s = measurement.string;
+        Rect textSize = measurement.textBounds;
+        if (measurement.measuredTextSize != p.getTextSize()) {
+            p.getTextBounds(s, 0, s.length(), textSize);
+            measurement.measuredTextSize = p.getTextSize();
+        }
         int leftX = bounds.left - textSize.left;
         int middleX = (bounds.left + bounds.right - textSize.left - textSize.right) / 2;
         int rightX = bounds.right - textSize.right;
@@ -94,16 +175,17 @@ public class StringDraw {
         for (int i = 0; i < bounds.length; i++) {
             bounds[i] = applyBorders(bounds[i], borderSize);
         }
-        float smallestTextSize = getMaxTextSize(strings[0], bounds[0], p);
-        for (int i = 1; i < strings.length; i++) {
-            float currentTextSize = getMaxTextSize(strings[i], bounds[i], p);
-            if (currentTextSize < smallestTextSize) {
-                smallestTextSize = currentTextSize;
+        Measurement[] measurements = new Measurement[strings.length];
+        float smallestTextSize = Float.POSITIVE_INFINITY;
+        for (int i = 0; i < strings.length; i++) {
+            measurements[i] = getMeasurement(strings[i], bounds[i], p);
+            if (measurements[i].maxTextSize < smallestTextSize) {
+                smallestTextSize = measurements[i].maxTextSize;
             }
         }
         p.setTextSize(smallestTextSize);
         for (int i = 0; i < strings.length; i++) {
-            fitString(strings[i], bounds[i], align, canvas, p);
+            fitString(measurements[i], bounds[i], align, canvas, p);
         }
     }
 
@@ -0,0 +1,153 @@
+package com.github.mimo31.gravitysimulator;
+
+/**
+ * Exact solver that evaluates every pair of bodies once and applies the attraction to both of them, O(n^2 / 2).
+ * <p>
+ * The bodies are split into tiles of TILE_SIZE consecutive bodies, whose arrays fit into the cache together.
+ * The pairs of the tiles are processed in rounds of a round-robin tournament, so no tile is in two pairs of the same round.
+ * The pairs of one round are run in parallel on a StepExecutor and every acceleration is summed in the order of the rounds,
+ * so the results don't depend on the number of the threads.
+ * The results differ from DirectForceSolver only by rounding.
+ * Coincident bodies don't attract each other.
+ */
+class SymmetricForceSolver implements ForceSolver
+{
+    // number of the bodies in one tile
+    static final int TILE_SIZE = 128;
+
+    private final StepExecutor executor;
+
+    // arrays of the current computation, used by the tasks
+    private double[] x;
+    private double[] y;
+    private double[] mass;
+    private double[] ax;
+    private double[] ay;
+    private int count;
+
+    // the tile each tile is paired with in the current round, every tile is paired with itself in the first round
+    private int[] pairedTile = new int[0];
+
+    // tiles of the current round in the order of the pairs, tile firstTiles[k] is paired with pairedTile[firstTiles[k]]
+    private int[] firstTiles = new int[0];
+
+    private final StepExecutor.ChunkTask pairTask = new StepExecutor.ChunkTask()
+    {
+        @Override
+        public void run(int chunk, int start, int end)
+        {
+            for (int k = start; k < end; k++)
+            {
+                int tile = SymmetricForceSolver.this.firstTiles[k];
+                SymmetricForceSolver.this.computePair(tile, SymmetricForceSolver.this.pairedTile[tile]);
+            }
+        }
+    };
+
+    SymmetricForceSolver()
+    {
+        this(new StepExecutor(1));
+    }
+
+    SymmetricForceSolver(StepExecutor executor)
+    {
+        this.executor = executor;
+    }
+
+    @Override
+    public void computeAccelerations(double[] x, double[] y, double[] mass, int count, double[] ax, double[] ay)
+    {
+        this.x = x;
+        this.y = y;
+        this.mass = mass;
+        this.ax = ax;
+        this.ay = ay;
+        this.count = count;
+        for (int i = 0; i < count; i++)
+        {
+            ax[i] = 0;
+            ay[i] = 0;
+        }
+        int tiles = StepExecutor.getNumberOfChunks(count, TILE_SIZE);
+        if (this.pairedTile.length < tiles)
+        {
+            this.pairedTile = new int[tiles];
+            this.firstTiles = new int[tiles];
+        }
+
+        // every tile with itself
+        for (int tile = 0; tile < tiles; tile++)
+        {
+            this.pairedTile[tile] = tile;
+            this.firstTiles[tile] = tile;
+        }
+        this.executor.forEachChunk(tiles, 1, this.pairTask);
+
+        // the circle method: one tile stays, the others rotate around it, a dummy tile is added if the number is odd
+        int players = tiles % 2 == 0 ? tiles : tiles + 1;
+        for (int round = 0; round < players - 1; round++)
+        {
+            int pairs = 0;
+            for (int i = 0; i < players / 2; i++)
+            {
+                int first = i == 0 ? players - 1 : (round + i) % (players - 1);
+                int second = (round - i + players - 1) % (players - 1);
+                if (first < tiles && second < tiles)
+                {
+                    this.pairedTile[first] = second;
+                    this.firstTiles[pairs++] = first;
+                }
+            }
+            this.executor.forEachChunk(pairs, 1, this.pairTask);
+        }
+
+        this.x = null;
+        this.y = null;
+        this.mass = null;
+        this.ax = null;
+        this.ay = null;
+    }
+
+    /**
+     * Adds the attractions between the bodies of the two tiles, or between all the pairs of the bodies of a tile if the tiles are the same.
+     */
+    private void computePair(int firstTile, int secondTile)
+    {
+        double[] x = this.x;
+        double[] y = this.y;
+        double[] mass = this.mass;
+        double[] ax = this.ax;
+        double[] ay = this.ay;
+        int firstStart = firstTile * TILE_SIZE;
+        int firstEnd = Math.min(firstStart + TILE_SIZE, this.count);
+        int secondStart = secondTile * TILE_SIZE;
+        int secondEnd = Math.min(secondStart + TILE_SIZE, this.count);
+        for (int i = firstStart; i < firstEnd; i++)
+        {
+            double xi = x[i];
+            double yi = y[i];
+            double massI = mass[i];
+            double axi = 0;
+            double ayi = 0;
+            for (int j = firstTile == secondTile ? i + 1 : secondStart; j < secondEnd; j++)
+            {
+                double dx = x[j] - xi;
+                double dy = y[j] - yi;
+                double distanceSquared = dx * dx + dy * dy;
+                if (distanceSquared == 0)
+                {
+                    continue;
+                }
+                double inverseCube = 1 / (distanceSquared * Math.sqrt(distanceSquared));
+                double factorI = mass[j] * inverseCube;
+                double factorJ = massI * inverseCube;
+                axi += dx * factorI;
+                ayi += dy * factorI;
+                ax[j] -= dx * factorJ;
+                ay[j] -= dy * factorJ;
+            }
+            ax[i] += axi;
+            ay[i] += ayi;
+        }
+    }
+}
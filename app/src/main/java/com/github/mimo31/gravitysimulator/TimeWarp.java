@@ -0,0 +1,229 @@
+package com.github.mimo31.gravitysimulator;
+
+/**
+ * Runs the GravitySpace faster than it's displayed on a background thread.
+ * <p>
+ * Every displayed tick grants the worker the factor ticks of the simulation, the worker runs them as fast as it can
+ * and the View only draws the latest state, so the intermediate states are never drawn.
+ * The worker holds the monitor of the space during every substep, anything else using the space must hold it too.
+ * If the worker falls more than MAX_LAG_FRAMES displayed ticks behind, the engine can't keep up with the factor and a lower one should be used.
+ * The substeps of every tick are taken from the QualityGovernor and the worker reports its ticks to it,
+ * so the accuracy is lowered before the factor is.
+ */
+class TimeWarp implements Runnable
+{
+    // the available factors in the increasing order, 1 means no warp
+    static final int[] FACTORS = {1, 10, 100};
+
+    // the worker is behind when it has more ticks to do than granted by this many displayed ticks,
+    // few enough for the factor to be lowered before the shown state visibly stalls
+    private static final int MAX_LAG_FRAMES = 5;
+
+    private final GravitySpace space;
+    private final int factor;
+    private final QualityGovernor governor;
+
+    // ticks granted to the worker and not yet started
+    private int pendingTicks;
+
+    // ticks finished since the last displayed tick
+    private int finishedTicks;
+
+    // whether the worker is running a tick right now
+    private boolean busy;
+
+    // whether the view moves along with the center of mass of the objects
+    private boolean moveView;
+
+    // moveView of the tick the worker is running, only used by the worker
+    private boolean tickMovesView;
+
+    private boolean stopped;
+
+    private Thread thread;
+
+    /**
+     * @param governor chooses the substeps of every tick
+     */
+    TimeWarp(GravitySpace space, int factor, QualityGovernor governor)
+    {
+        this.space = space;
+        this.factor = factor;
+        this.governor = governor;
+    }
+
+    int getFactor()
+    {
+        return this.factor;
+    }
+
+    /**
+     * @return the next lower factor, 1 if this is already the lowest one
+     */
+    static int getLowerFactor(int factor)
+    {
+        for (int i = FACTORS.length - 1; i >= 0; i--)
+        {
+            if (FACTORS[i] < factor)
+            {
+                return FACTORS[i];
+            }
+        }
+        return 1;
+    }
+
+    /**
+     * @return the next higher factor, 1 after the highest one
+     */
+    static int getNextFactor(int factor)
+    {
+        for (int factorOption : FACTORS)
+        {
+            if (factorOption > factor)
+            {
+                return factorOption;
+            }
+        }
+        return 1;
+    }
+
+    void start()
+    {
+        this.thread = new Thread(this, "TimeWarp");
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    /**
+     * Grants the worker the ticks of one displayed tick. Called once per SimulationLoop tick while the simulation runs.
+     * @param moveView whether the view should move along with the center of mass of the objects
+     * @return the number of the ticks the worker has finished since the previous call
+     */
+    synchronized int tick(boolean moveView)
+    {
+        this.moveView = moveView;
+        this.pendingTicks += this.factor;
+        int finished = this.finishedTicks;
+        this.finishedTicks = 0;
+        this.notifyAll();
+        return finished;
+    }
+
+    /**
+     * @return whether the worker can't keep up with the factor
+     */
+    synchronized boolean isBehind()
+    {
+        return this.pendingTicks > this.factor * MAX_LAG_FRAMES;
+    }
+
+    /**
+     * Drops the granted ticks that haven't been started yet, e.g. when the simulation gets paused.
+     */
+    synchronized void cancelPendingTicks()
+    {
+        this.pendingTicks = 0;
+    }
+
+    /**
+     * Waits until the worker has no ticks to do.
+     */
+    synchronized void awaitIdle() throws InterruptedException
+    {
+        while ((this.pendingTicks != 0 || this.busy) && !this.stopped)
+        {
+            this.wait();
+        }
+    }
+
+    /**
+     * Stops the worker and waits for it to finish the current tick.
+     */
+    void stop()
+    {
+        synchronized (this)
+        {
+            this.stopped = true;
+            this.notifyAll();
+        }
+        if (this.thread != null && this.thread != Thread.currentThread())
+        {
+            boolean interrupted = false;
+            while (this.thread.isAlive())
+            {
+                try
+                {
+                    this.thread.join();
+                }
+                catch (InterruptedException e)
+                {
+                    interrupted = true;
+                }
+            }
+            if (interrupted)
+            {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    @Override
+    public void run()
+    {
+        while (this.takeTick())
+        {
+            long tickStart = System.nanoTime();
+            boolean moveView = this.tickMovesView;
+            int substeps = this.governor.getSubsteps();
+            int collisionInterval = this.governor.getCollisionInterval();
+            for (int i = 0; i < substeps; i++)
+            {
+                synchronized (this.space)
+                {
+                    this.space.update(1 / (double) substeps, moveView, (i + 1) % collisionInterval == 0);
+                }
+            }
+            synchronized (this.space)
+            {
+                this.space.updateViewVelocity();
+            }
+            // the factor ticks have to fit into the time of a single displayed tick
+            this.governor.reportTickTime((System.nanoTime() - tickStart) * this.factor);
+            this.finishTick();
+        }
+    }
+
+    /**
+     * Waits for a granted tick and starts it.
+     * @return false if the worker has been stopped
+     */
+    private synchronized boolean takeTick()
+    {
+        while (this.pendingTicks == 0 && !this.stopped)
+        {
+            try
+            {
+                this.wait();
+            }
+            catch (InterruptedException e)
+            {
+                this.stopped = true;
+            }
+        }
+        if (this.stopped)
+        {
+            return false;
+        }
+        this.pendingTicks--;
+        this.busy = true;
+        this.tickMovesView = this.moveView;
+        return true;
+    }
+
+    private synchronized void finishTick()
+    {
+        this.busy = false;
+        this.finishedTicks++;
+        this.notifyAll();
+    }
+}
@@ -0,0 +1,269 @@
+package com.github.mimo31.gravitysimulator;
+
+import android.graphics.Canvas;
+import android.graphics.Paint;
+
+import java.util.Arrays;
+
+/**
+ * Massless particles moving in the field of the objects of a GravitySpace, for visualizing flows, rings and tidal tails.
+ * <p>
+ * The tracers are stored in primitive arrays apart from the objects. They are attracted only by the objects with mass
+ * and don't attract anything, so a step costs O(objects * tracers) and the tracers are moved in parallel chunks.
+ * The distance to an object is never taken as less than its radius, so the tracers passing through the objects aren't flung away.
+ * If the collisions are enabled, the tracers that get into an object are absorbed by it instead.
+ */
+class TracerField
+{
+    // number of the tracers moved in one chunk
+    private static final int CHUNK_SIZE = 1024;
+
+    // number of the points drawn by one call to drawPoints
+    private static final int POINT_BATCH = 2048;
+
+    private double[] x = new double[0];
+    private double[] y = new double[0];
+    private double[] velocityX = new double[0];
+    private double[] velocityY = new double[0];
+    private int count;
+
+    // whether the tracers inside the objects are absorbed
+    private boolean collisionsEnabled;
+
+    // the objects attracting the tracers in the current step
+    private double[] sourceX = new double[0];
+    private double[] sourceY = new double[0];
+    private double[] sourceMass = new double[0];
+    private double[] sourceRadiusSquared = new double[0];
+    private int sourceCount;
+    private double deltaTime;
+
+    // set for the tracers absorbed in the current step
+    private boolean[] absorbed = new boolean[0];
+
+    // buffer of the points passed to drawPoints
+    private final float[] points = new float[2 * POINT_BATCH];
+
+    private final StepExecutor.ChunkTask moveTask = new StepExecutor.ChunkTask()
+    {
+        @Override
+        public void run(int chunk, int start, int end)
+        {
+            TracerField.this.move(start, end);
+        }
+    };
+
+    void add(double x, double y, double velocityX, double velocityY)
+    {
+        if (this.count == this.x.length)
+        {
+            int capacity = Math.max(16, this.count * 2);
+            this.x = Arrays.copyOf(this.x, capacity);
+            this.y = Arrays.copyOf(this.y, capacity);
+            this.velocityX = Arrays.copyOf(this.velocityX, capacity);
+            this.velocityY = Arrays.copyOf(this.velocityY, capacity);
+            this.absorbed = new boolean[capacity];
+        }
+        this.x[this.count] = x;
+        this.y[this.count] = y;
+        this.velocityX[this.count] = velocityX;
+        this.velocityY[this.count] = velocityY;
+        this.count++;
+    }
+
+    /**
+     * Adds tracers on circular orbits around an object, evenly spread between the inner and the outer radius.
+     */
+    void addRing(GravitationalObject center, double innerRadius, double outerRadius, int tracers)
+    {
+        double mass = center.getMass();
+        for (int i = 0; i < tracers; i++)
+        {
+            // the golden angle spreads the tracers evenly without any visible pattern
+            double angle = i * 2.399963229728653;
+            double distance = innerRadius + (outerRadius - innerRadius) * (i + 0.5) / tracers;
+            double speed = Math.sqrt(mass / distance);
+            double cos = Math.cos(angle);
+            double sin = Math.sin(angle);
+            this.add(center.position.x + distance * cos, center.position.y + distance * sin,
+                    center.velocity.x - speed * sin, center.velocity.y + speed * cos);
+        }
+    }
+
+    void clear()
+    {
+        this.count = 0;
+    }
+
+    int size()
+    {
+        return this.count;
+    }
+
+    double getX(int index)
+    {
+        return this.x[index];
+    }
+
+    double getY(int index)
+    {
+        return this.y[index];
+    }
+
+    void setCollisionsEnabled(boolean collisionsEnabled)
+    {
+        this.collisionsEnabled = collisionsEnabled;
+    }
+
+    /**
+     * @return a copy of the tracers and their settings
+     */
+    TracerField copy()
+    {
+        TracerField copy = new TracerField();
+        copy.x = Arrays.copyOf(this.x, this.count);
+        copy.y = Arrays.copyOf(this.y, this.count);
+        copy.velocityX = Arrays.copyOf(this.velocityX, this.count);
+        copy.velocityY = Arrays.copyOf(this.velocityY, this.count);
+        copy.absorbed = new boolean[this.count];
+        copy.count = this.count;
+        copy.collisionsEnabled = this.collisionsEnabled;
+        return copy;
+    }
+
+    /**
+     * Moves the tracers by one step in the field of the objects, the objects with zero mass are ignored.
+     * @param x x coordinates of the objects at the start of the step
+     * @param count number of the objects, the arrays may be longer
+     */
+    void step(double[] x, double[] y, double[] mass, double[] radius, int count, double deltaTime, StepExecutor executor)
+    {
+        if (this.count == 0)
+        {
+            return;
+        }
+        if (this.sourceX.length < count)
+        {
+            this.sourceX = new double[count];
+            this.sourceY = new double[count];
+            this.sourceMass = new double[count];
+            this.sourceRadiusSquared = new double[count];
+        }
+        this.sourceCount = 0;
+        for (int i = 0; i < count; i++)
+        {
+            if (mass[i] != 0)
+            {
+                this.sourceX[this.sourceCount] = x[i];
+                this.sourceY[this.sourceCount] = y[i];
+                this.sourceMass[this.sourceCount] = mass[i];
+                this.sourceRadiusSquared[this.sourceCount] = radius[i] * radius[i];
+                this.sourceCount++;
+            }
+        }
+        this.deltaTime = deltaTime;
+        executor.forEachChunk(this.count, CHUNK_SIZE, this.moveTask);
+        if (this.collisionsEnabled)
+        {
+            this.removeAbsorbed();
+        }
+    }
+
+    /**
+     * Moves the tracers from start (inclusive) to end (exclusive).
+     */
+    private void move(int start, int end)
+    {
+        double[] sourceX = this.sourceX;
+        double[] sourceY = this.sourceY;
+        double[] sourceMass = this.sourceMass;
+        double[] sourceRadiusSquared = this.sourceRadiusSquared;
+        int sourceCount = this.sourceCount;
+        double deltaTime = this.deltaTime;
+        boolean collisionsEnabled = this.collisionsEnabled;
+        for (int i = start; i < end; i++)
+        {
+            double xi = this.x[i];
+            double yi = this.y[i];
+            double ax = 0;
+            double ay = 0;
+            boolean inside = false;
+            for (int j = 0; j < sourceCount; j++)
+            {
+                double dx = sourceX[j] - xi;
+                double dy = sourceY[j] - yi;
+                double distanceSquared = dx * dx + dy * dy;
+                if (distanceSquared < sourceRadiusSquared[j])
+                {
+                    inside = true;
+                    distanceSquared = sourceRadiusSquared[j];
+                }
+                // the same formula as in SymmetricForceSolver, so outside the objects a tracer moves approximately like a demoted object
+                double factor = sourceMass[j] * (1 / (distanceSquared * Math.sqrt(distanceSquared)));
+                ax += dx * factor;
+                ay += dy * factor;
+            }
+            this.absorbed[i] = inside && collisionsEnabled;
+            double velocityX = this.velocityX[i] + ax * deltaTime;
+            double velocityY = this.velocityY[i] + ay * deltaTime;
+            this.velocityX[i] = velocityX;
+            this.velocityY[i] = velocityY;
+            this.x[i] = xi + velocityX * deltaTime;
+            this.y[i] = yi + velocityY * deltaTime;
+        }
+    }
+
+    /**
+     * Removes the absorbed tracers keeping the order of the others.
+     */
+    private void removeAbsorbed()
+    {
+        int kept = 0;
+        for (int i = 0; i < this.count; i++)
+        {
+            if (!this.absorbed[i])
+            {
+                this.x[kept] = this.x[i];
+                this.y[kept] = this.y[i];
+                this.velocityX[kept] = this.velocityX[i];
+                this.velocityY[kept] = this.velocityY[i];
+                kept++;
+            }
+        }
+        this.count = kept;
+    }
+
+    /**
+     * Draws the visible tracers as points.
+     * @param viewX space x coordinate of the center of the view
+     * @param viewY space y coordinate of the center of the view
+     */
+    void draw(Canvas canvas, Paint paint, double viewX, double viewY, double enlargement)
+    {
+        int width = canvas.getWidth();
+        int height = canvas.getHeight();
+        float centerX = width / 2f;
+        float centerY = height / 2f;
+        int batched = 0;
+        for (int i = 0; i < this.count; i++)
+        {
+            float pointX = (float) ((this.x[i] - viewX) * enlargement) + centerX;
+            float pointY = (float) ((this.y[i] - viewY) * enlargement) + centerY;
+            if (pointX < 0 || pointY < 0 || pointX > width || pointY > height)
+            {
+                continue;
+            }
+            this.points[2 * batched] = pointX;
+            this.points[2 * batched + 1] = pointY;
+            if (++batched == POINT_BATCH)
+            {
+                canvas.drawPoints(this.points, 0, 2 * batched, paint);
+                batched = 0;
+            }
+        }
+        if (batched != 0)
+        {
+            canvas.drawPoints(this.points, 0, 2 * batched, paint);
+        }
+    }
+}
@@ -0,0 +1,161 @@
+package com.github.mimo31.gravitysimulator;
+
+import android.os.Build;
+import android.os.Trace;
+
+/**
+ * Named sections of the hot paths for profilers, shown by systrace and Perfetto on the devices.
+ * <p>
+ * A section is begun and ended on the same thread and the sections nest.
+ * The sections carry the number of the bodies and the number of the substeps, -1 if it's not known.
+ * On the devices they are appended to the names of the sections, the names are cached, so nothing is allocated while the numbers don't change.
+ * Off the devices (the headless server, the unit tests) there is no backend unless one is set, for example one emitting JFR events.
+ * When ENABLED is false, the compiler removes the bodies of the methods and the calls to them are optimized out by ProGuard.
+ */
+final class Tracing
+{
+    // false removes all the sections from the build
+    static final boolean ENABLED = true;
+
+    static final Section VIEW_UPDATE = new Section("GravityView.update");
+    static final Section STEP = new Section("GravitySpace.update");
+    static final Section FORCES = new Section("forces");
+    static final Section TRACERS = new Section("tracers");
+    static final Section INTEGRATION = new Section("integration");
+    static final Section COLLISIONS = new Section("collisions");
+    static final Section ESCAPERS = new Section("escapers");
+    static final Section DRAW = new Section("GravitySpace.draw");
+    static final Section SAVE_STATE = new Section("GravitySpace.putToBundle");
+    static final Section AUTOSAVE_CAPTURE = new Section("Autosave.capture");
+    static final Section AUTOSAVE_WRITE = new Section("Autosave.write");
+
+    /**
+     * Receives the sections, called on the thread running the section.
+     */
+    interface Backend
+    {
+        void beginSection(Section section, int bodies, int substeps);
+
+        void endSection(Section section);
+    }
+
+    /**
+     * A kind of section with its name.
+     */
+    static final class Section
+    {
+        final String name;
+
+        // the last label, replaced as a whole, so the threads always see a consistent one
+        private Label label;
+
+        private Section(String name)
+        {
+            this.name = name;
+            this.label = new Label(-1, -1, name);
+        }
+
+        /**
+         * @return the name with the numbers appended, the same string as last time if the numbers are the same
+         */
+        String getLabel(int bodies, int substeps)
+        {
+            Label label = this.label;
+            if (label.bodies != bodies || label.substeps != substeps)
+            {
+                String text = this.name;
+                if (bodies != -1)
+                {
+                    text += " bodies=" + bodies;
+                }
+                if (substeps != -1)
+                {
+                    text += " substeps=" + substeps;
+                }
+                label = new Label(bodies, substeps, text);
+                this.label = label;
+            }
+            return label.text;
+        }
+    }
+
+    private static final class Label
+    {
+        final int bodies;
+        final int substeps;
+        final String text;
+
+        Label(int bodies, int substeps, String text)
+        {
+            this.bodies = bodies;
+            this.substeps = substeps;
+            this.text = text;
+        }
+    }
+
+    /**
+     * Backend writing the sections to the systrace buffer with android.os.Trace, available since API 18.
+     */
+    private static final class SystraceBackend implements Backend
+    {
+        @Override
+        public void beginSection(Section section, int bodies, int substeps)
+        {
+            Trace.beginSection(section.getLabel(bodies, substeps));
+        }
+
+        @Override
+        public void endSection(Section section)
+        {
+            Trace.endSection();
+        }
+    }
+
+    private static volatile Backend backend = Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR2 ? new SystraceBackend() : null;
+
+    private Tracing()
+    {
+    }
+
+    /**
+     * Sets where the sections go, null to drop them. Should be called while no section is open.
+     */
+    static void setBackend(Backend backend)
+    {
+        Tracing.backend = backend;
+    }
+
+    static void begin(Section section)
+    {
+        begin(section, -1, -1);
+    }
+
+    static void begin(Section section, int bodies)
+    {
+        begin(section, bodies, -1);
+    }
+
+    static void begin(Section section, int bodies, int substeps)
+    {
+        if (ENABLED)
+        {
+            Backend backend = Tracing.backend;
+            if (backend != null)
+            {
+                backend.beginSection(section, bodies, substeps);
+            }
+        }
+    }
+
+    static void end(Section section)
+    {
+        if (ENABLED)
+        {
+            Backend backend = Tracing.backend;
+            if (backend != null)
+            {
+                backend.endSection(section);
+            }
+        }
+    }
+}
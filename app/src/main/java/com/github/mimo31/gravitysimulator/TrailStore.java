@@ -0,0 +1,315 @@
+package com.github.mimo31.gravitysimulator;
+
+import android.graphics.Canvas;
+import android.graphics.Paint;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Stores the trails of the objects of a GravitySpace and draws them.
+ * <p>
+ * Every trail is a ring buffer of float coordinates that grows up to MAX_CAPACITY points and then overwrites its oldest points.
+ * A new point on a nearly straight continuation of the trail replaces the last point instead of being added, so straight
+ * parts of the trails take only a few points. The capacity of all the trails together is limited, when it's exceeded,
+ * the oldest trails are cleared and start again.
+ * <p>
+ * The trails are indexed by the slots of the objects in the GravitySpace, which notifies the store when an object
+ * is removed and another one moved to its slot.
+ */
+class TrailStore
+{
+    // capacities of a trail in points
+    private static final int MIN_CAPACITY = 16;
+    private static final int MAX_CAPACITY = 512;
+
+    // default limit of the number of the points of all the trails
+    static final int DEFAULT_BUDGET = 1 << 17;
+
+    // a point replaces the last point if the angle between the last segment and the new one has a cosine at least this
+    private static final double STRAIGHT_COSINE = Math.cos(Math.toRadians(2));
+
+    // number of the segments drawn by one call to drawLines
+    private static final int LINE_BATCH = 1024;
+
+    // segments shorter than this on the screen are merged
+    private static final float MIN_SEGMENT_PIXELS = 1.5f;
+
+    private static class Trail
+    {
+        // interleaved x and y of the points, the oldest point is at start
+        float[] points;
+        int start;
+        int size;
+
+        // false once the object of the trail has been removed or the trail has been evicted
+        boolean alive = true;
+
+        Trail(int capacity)
+        {
+            this.points = new float[2 * capacity];
+        }
+
+        int capacity()
+        {
+            return this.points.length / 2;
+        }
+
+        /**
+         * @param age 0 for the newest point, 1 for the one before it, ...
+         */
+        int index(int age)
+        {
+            return 2 * ((this.start + this.size - 1 - age) % this.capacity());
+        }
+    }
+
+    private final int budget;
+
+    // number of the points allocated by all the trails
+    private int allocated;
+
+    private Trail[] trails = new Trail[0];
+
+    // the trails in the order of their creation, may contain the ones that are no longer alive
+    private final ArrayDeque<Trail> creationOrder = new ArrayDeque<>();
+
+    // buffer of the segments passed to drawLines
+    private final float[] lines = new float[4 * LINE_BATCH];
+
+    TrailStore(int budget)
+    {
+        this.budget = budget;
+    }
+
+    /**
+     * Adds the current position of the object in the slot to its trail.
+     */
+    void record(int slot, double x, double y)
+    {
+        if (slot >= this.trails.length)
+        {
+            this.trails = Arrays.copyOf(this.trails, Math.max(slot + 1, this.trails.length * 2));
+        }
+        Trail trail = this.trails[slot];
+        if (trail == null)
+        {
+            trail = this.createTrail(MIN_CAPACITY);
+            if (trail == null)
+            {
+                return;
+            }
+            this.trails[slot] = trail;
+        }
+
+        float newX = (float) x;
+        float newY = (float) y;
+        if (trail.size >= 2)
+        {
+            int last = trail.index(0);
+            int beforeLast = trail.index(1);
+            float lastX = trail.points[last];
+            float lastY = trail.points[last + 1];
+            double dx1 = lastX - trail.points[beforeLast];
+            double dy1 = lastY - trail.points[beforeLast + 1];
+            double dx2 = newX - lastX;
+            double dy2 = newY - lastY;
+            double dot = dx1 * dx2 + dy1 * dy2;
+            if (dot >= 0 && dot * dot >= STRAIGHT_COSINE * STRAIGHT_COSINE * (dx1 * dx1 + dy1 * dy1) * (dx2 * dx2 + dy2 * dy2))
+            {
+                // extend the last segment
+                trail.points[last] = newX;
+                trail.points[last + 1] = newY;
+                return;
+            }
+        }
+        if (trail.size == trail.capacity() && trail.capacity() < MAX_CAPACITY)
+        {
+            this.grow(trail);
+        }
+        if (trail.size == trail.capacity())
+        {
+            // overwrite the oldest point
+            trail.start = (trail.start + 1) % trail.capacity();
+            trail.size--;
+        }
+        trail.size++;
+        int index = trail.index(0);
+        trail.points[index] = newX;
+        trail.points[index + 1] = newY;
+    }
+
+    /**
+     * Called when the object in the slot is removed.
+     */
+    void remove(int slot)
+    {
+        if (slot < this.trails.length && this.trails[slot] != null)
+        {
+            this.release(this.trails[slot]);
+            this.trails[slot] = null;
+        }
+    }
+
+    /**
+     * Called when the object in one slot is moved to another, empty slot.
+     */
+    void move(int from, int to)
+    {
+        if (from < this.trails.length)
+        {
+            this.trails[to] = this.trails[from];
+            this.trails[from] = null;
+        }
+    }
+
+    void clear()
+    {
+        Arrays.fill(this.trails, null);
+        this.creationOrder.clear();
+        this.allocated = 0;
+    }
+
+    int getAllocatedPoints()
+    {
+        return this.allocated;
+    }
+
+    /**
+     * @return number of the points in the trail of the object in the slot
+     */
+    int getSize(int slot)
+    {
+        return slot < this.trails.length && this.trails[slot] != null ? this.trails[slot].size : 0;
+    }
+
+    /**
+     * Draws all the trails, each ending at the current position of its object.
+     * @param objects the objects by slot
+     * @param viewX space x coordinate of the center of the view
+     * @param viewY space y coordinate of the center of the view
+     */
+    void draw(Canvas canvas, Paint paint, List<GravitationalObject> objects, double viewX, double viewY, double enlargement)
+    {
+        float centerX = canvas.getWidth() / 2f;
+        float centerY = canvas.getHeight() / 2f;
+        float scale = (float) enlargement;
+        float floatViewX = (float) viewX;
+        float floatViewY = (float) viewY;
+        int segments = 0;
+        for (int slot = 0, n = Math.min(objects.size(), this.trails.length); slot < n; slot++)
+        {
+            Trail trail = this.trails[slot];
+            if (trail == null || trail.size == 0)
+            {
+                continue;
+            }
+            Vector2d position = objects.get(slot).position;
+            float previousX = (float) ((position.x - viewX) * enlargement) + centerX;
+            float previousY = (float) ((position.y - viewY) * enlargement) + centerY;
+            for (int age = 0; age < trail.size; age++)
+            {
+                int index = trail.index(age);
+                float pointX = (trail.points[index] - floatViewX) * scale + centerX;
+                float pointY = (trail.points[index + 1] - floatViewY) * scale + centerY;
+                float dx = pointX - previousX;
+                float dy = pointY - previousY;
+                if (dx * dx + dy * dy < MIN_SEGMENT_PIXELS * MIN_SEGMENT_PIXELS && age != trail.size - 1)
+                {
+                    continue;
+                }
+                int offset = 4 * segments;
+                this.lines[offset] = previousX;
+                this.lines[offset + 1] = previousY;
+                this.lines[offset + 2] = pointX;
+                this.lines[offset + 3] = pointY;
+                if (++segments == LINE_BATCH)
+                {
+                    canvas.drawLines(this.lines, 0, 4 * segments, paint);
+                    segments = 0;
+                }
+                previousX = pointX;
+                previousY = pointY;
+            }
+        }
+        if (segments != 0)
+        {
+            canvas.drawLines(this.lines, 0, 4 * segments, paint);
+        }
+    }
+
+    /**
+     * @return a new trail or null if there is no trail to evict to make room for it
+     */
+    private Trail createTrail(int capacity)
+    {
+        if (!this.makeRoom(capacity, null))
+        {
+            return null;
+        }
+        Trail trail = new Trail(capacity);
+        this.allocated += capacity;
+        this.creationOrder.addLast(trail);
+        return trail;
+    }
+
+    /**
+     * Doubles the capacity of the trail if the budget allows it.
+     */
+    private void grow(Trail trail)
+    {
+        int capacity = trail.capacity();
+        if (!this.makeRoom(capacity, trail))
+        {
+            return;
+        }
+        float[] points = new float[4 * capacity];
+        for (int age = trail.size - 1, i = 0; age >= 0; age--, i += 2)
+        {
+            int index = trail.index(age);
+            points[i] = trail.points[index];
+            points[i + 1] = trail.points[index + 1];
+        }
+        trail.points = points;
+        trail.start = 0;
+        this.allocated += capacity;
+    }
+
+    /**
+     * Clears the oldest trails until there is room for the points.
+     * @param keep a trail that mustn't be cleared
+     * @return whether there is enough room
+     */
+    private boolean makeRoom(int points, Trail keep)
+    {
+        for (int remaining = this.creationOrder.size(); this.allocated + points > this.budget; remaining--)
+        {
+            if (remaining == 0)
+            {
+                return false;
+            }
+            Trail oldest = this.creationOrder.pollFirst();
+            if (!oldest.alive)
+            {
+                continue;
+            }
+            if (oldest != keep && oldest.capacity() > MIN_CAPACITY)
+            {
+                // the trail starts again as the newest one with the smallest capacity
+                this.allocated -= oldest.capacity() - MIN_CAPACITY;
+                oldest.points = new float[2 * MIN_CAPACITY];
+                oldest.start = 0;
+                oldest.size = 0;
+            }
+            this.creationOrder.addLast(oldest);
+        }
+        return true;
+    }
+
+    private void release(Trail trail)
+    {
+        trail.alive = false;
+        this.allocated -= trail.capacity();
+    }
+}
@@ -0,0 +1,254 @@
+package com.github.mimo31.gravitysimulator;
+
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Predicts the path of the object that is being added, so the user sees what orbit the chosen velocity produces.
+ * <p>
+ * The prediction is a cheap approximation computed on a background thread.
+ * The other objects are frozen at their positions at the time of the request and the object moves in their field by steps much longer than the substeps of the simulation.
+ * Every request cancels the previous one, the worker abandons a cancelled prediction after its current step and a cancelled trajectory is never returned.
+ * The UI thread only captures the objects and reads the finished trajectory, it never waits for the worker.
+ */
+class TrajectoryPredictor
+{
+    // number of the steps of a prediction
+    static final int STEPS = 4000;
+
+    // simulated time of a step, a tick of the simulation takes 1
+    static final double STEP_TIME = 0.25;
+
+    // a segment of the trajectory is kept per this many steps
+    static final int STEPS_PER_SEGMENT = 8;
+
+    // the worker thread stops when it has nothing to do for this long, so a forgotten predictor doesn't keep a thread
+    private static final long KEEP_ALIVE_SECONDS = 5;
+
+    /**
+     * Called on the worker thread when a prediction has been finished.
+     */
+    interface Listener
+    {
+        void onTrajectoryPredicted();
+    }
+
+    /**
+     * A finished prediction.
+     */
+    static class Trajectory
+    {
+        // the request the trajectory has been predicted for
+        private final int generation;
+
+        // x0, y0, x1, y1 of every segment in the space coordinates
+        final float[] segments;
+
+        final int segmentCount;
+
+        // whether the prediction has ended because the object would collide with another one
+        final boolean collides;
+
+        private Trajectory(int generation, float[] segments, int segmentCount, boolean collides)
+        {
+            this.generation = generation;
+            this.segments = segments;
+            this.segmentCount = segmentCount;
+            this.collides = collides;
+        }
+    }
+
+    private final Listener listener;
+
+    private final ThreadPoolExecutor worker;
+
+    // incremented by every request and cancellation, the predictions of the older requests are abandoned
+    private final AtomicInteger generation = new AtomicInteger();
+
+    // the latest finished prediction, it's outdated if its generation isn't the current one
+    private volatile Trajectory trajectory;
+
+    /**
+     * @param listener notified when a trajectory has been predicted, may be null
+     */
+    TrajectoryPredictor(Listener listener)
+    {
+        this.listener = listener;
+        this.worker = new ThreadPoolExecutor(1, 1, KEEP_ALIVE_SECONDS, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), new ThreadFactory()
+        {
+            @Override
+            public Thread newThread(Runnable runnable)
+            {
+                Thread thread = new Thread(runnable, "TrajectoryPredictor");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        this.worker.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Cancels the running prediction and starts predicting the path of the object among the objects of the space.
+     * Captures the objects of the space, so the caller must hold the monitor of the space if it's being simulated.
+     * @param object the object being added, it isn't in the space
+     */
+    void predict(GravitySpace space, GravitationalObject object)
+    {
+        final int requestGeneration = this.generation.incrementAndGet();
+        final Bodies bodies = new Bodies(space);
+        final double x = object.position.x;
+        final double y = object.position.y;
+        final double velocityX = object.velocity.x;
+        final double velocityY = object.velocity.y;
+        final double radius = object.radius;
+        this.worker.execute(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                Trajectory trajectory = TrajectoryPredictor.this.integrate(bodies, x, y, velocityX, velocityY, radius, requestGeneration);
+                if (trajectory != null)
+                {
+                    TrajectoryPredictor.this.trajectory = trajectory;
+                    if (TrajectoryPredictor.this.listener != null)
+                    {
+                        TrajectoryPredictor.this.listener.onTrajectoryPredicted();
+                    }
+                }
+            }
+        });
+    }
+
+    /**
+     * Predicts the path of the object on the calling thread.
+     */
+    Trajectory predictNow(GravitySpace space, GravitationalObject object)
+    {
+        return this.integrate(new Bodies(space), object.position.x, object.position.y, object.velocity.x, object.velocity.y, object.radius, -1);
+    }
+
+    /**
+     * Cancels the running prediction and forgets the last trajectory.
+     */
+    void cancel()
+    {
+        this.generation.incrementAndGet();
+    }
+
+    /**
+     * @return the trajectory of the latest request, null if it hasn't been predicted yet or it has been cancelled
+     */
+    Trajectory getTrajectory()
+    {
+        Trajectory trajectory = this.trajectory;
+        return trajectory != null && trajectory.generation == this.generation.get() ? trajectory : null;
+    }
+
+    /**
+     * Stops the worker thread, the predictor can't be used after that.
+     */
+    void shutdown()
+    {
+        this.cancel();
+        this.worker.shutdownNow();
+    }
+
+    /**
+     * Moves the object among the fixed bodies by symplectic Euler steps until it collides with one of them or the steps run out.
+     * @param requestGeneration the request of the prediction, -1 if it can't be cancelled
+     * @return the trajectory, null if the request has been cancelled
+     */
+    private Trajectory integrate(Bodies bodies, double x, double y, double velocityX, double velocityY, double radius, int requestGeneration)
+    {
+        float[] segments = new float[4 * (STEPS / STEPS_PER_SEGMENT + 1)];
+        int segmentCount = 0;
+        float segmentStartX = (float) x;
+        float segmentStartY = (float) y;
+        boolean collides = false;
+        for (int step = 1; step <= STEPS; step++)
+        {
+            if (requestGeneration != -1 && this.generation.get() != requestGeneration)
+            {
+                return null;
+            }
+            double accelerationX = 0;
+            double accelerationY = 0;
+            for (int i = 0; i < bodies.count; i++)
+            {
+                double dx = bodies.x[i] - x;
+                double dy = bodies.y[i] - y;
+                double distanceSquared = dx * dx + dy * dy;
+                double touchingDistance = radius + bodies.radius[i];
+                if (distanceSquared < touchingDistance * touchingDistance)
+                {
+                    collides = true;
+                    break;
+                }
+                double factor = bodies.mass[i] / (distanceSquared * Math.sqrt(distanceSquared));
+                accelerationX += dx * factor;
+                accelerationY += dy * factor;
+            }
+            if (!collides)
+            {
+                velocityX += accelerationX * STEP_TIME;
+                velocityY += accelerationY * STEP_TIME;
+                x += velocityX * STEP_TIME;
+                y += velocityY * STEP_TIME;
+            }
+            if (collides || step % STEPS_PER_SEGMENT == 0 || step == STEPS)
+            {
+                int offset = 4 * segmentCount++;
+                segments[offset] = segmentStartX;
+                segments[offset + 1] = segmentStartY;
+                segmentStartX = (float) x;
+                segmentStartY = (float) y;
+                segments[offset + 2] = segmentStartX;
+                segments[offset + 3] = segmentStartY;
+            }
+            if (collides)
+            {
+                break;
+            }
+        }
+        return new Trajectory(requestGeneration, segments, segmentCount, collides);
+    }
+
+    /**
+     * The positions, the masses and the radii of the attracting objects captured at the time of a request.
+     */
+    private static class Bodies
+    {
+        private final double[] x;
+        private final double[] y;
+        private final double[] mass;
+        private final double[] radius;
+        private final int count;
+
+        private Bodies(GravitySpace space)
+        {
+            int objects = space.getNumberOfObjects();
+            this.x = new double[objects];
+            this.y = new double[objects];
+            this.mass = new double[objects];
+            this.radius = new double[objects];
+            int count = 0;
+            for (int i = 0; i < objects; i++)
+            {
+                GravitationalObject object = space.getObject(i);
+                double mass = object.getGravitatingMass();
+                if (mass != 0)
+                {
+                    this.x[count] = object.position.x;
+                    this.y[count] = object.position.y;
+                    this.mass[count] = mass;
+                    this.radius[count] = object.radius;
+                    count++;
+                }
+            }
+            this.count = count;
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package com.github.mimo31.gravitysimulator;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks that the incrementally maintained aggregates of GravitySpace match the ones computed from the objects.
+ */
+public class AggregatesTest
+{
+    @Test
+    public void aggregates_matchTheObjects() throws Exception
+    {
+        GravitySpace space = new GravitySpace();
+        Random random = new Random(5);
+        for (int i = 0; i < 200; i++)
+        {
+            GravitationalObject object = new GravitationalObject(new Vector2d(random.nextDouble() * 1500, random.nextDouble() * 1500), 5 + random.nextInt(20), 1 + random.nextInt(1000));
+            object.velocity = new Vector2d(random.nextGaussian() * 10, random.nextGaussian() * 10);
+            space.addObject(object);
+        }
+        assertAggregatesMatch(space);
+
+        for (int step = 0; step < 20; step++)
+        {
+            space.update(1 / (double) 16, false);
+            assertAggregatesMatch(space);
+        }
+
+        space.removeObject(space.getObject(10).id);
+        space.removeObjects(new long[]{space.getObject(0).id, space.getObject(5).id});
+        GravitationalObject changed = space.getObject(7);
+        space.setVelocity(changed, new Vector2d(100, -50));
+        assertAggregatesMatch(space);
+
+        space.removeObjects(idsOf(space));
+        assertEquals(0, space.getTotalMass(), 0);
+        assertNull(space.getCenterOfMass());
+        assertNull(space.getBounds());
+    }
+
+    private static long[] idsOf(GravitySpace space)
+    {
+        long[] ids = new long[space.getNumberOfObjects()];
+        for (int i = 0; i < ids.length; i++)
+        {
+            ids[i] = space.getObject(i).id;
+        }
+        return ids;
+    }
+
+    private static void assertAggregatesMatch(GravitySpace space)
+    {
+        double mass = 0;
+        double momentumX = 0;
+        double momentumY = 0;
+        double weightedX = 0;
+        double weightedY = 0;
+        double minX = Double.POSITIVE_INFINITY;
+        double maxY = Double.NEGATIVE_INFINITY;
+        for (int i = 0; i < space.getNumberOfObjects(); i++)
+        {
+            GravitationalObject object = space.getObject(i);
+            double objectMass = object.getMass();
+            mass += objectMass;
+            momentumX += objectMass * object.velocity.x;
+            momentumY += objectMass * object.velocity.y;
+            weightedX += objectMass * object.position.x;
+            weightedY += objectMass * object.position.y;
+            minX = Math.min(minX, object.position.x - object.radius);
+            maxY = Math.max(maxY, object.position.y + object.radius);
+        }
+        double tolerance = 1e-9;
+        assertEquals(mass, space.getTotalMass(), mass * tolerance);
+        Vector2d momentum = space.getMomentum();
+        assertEquals(momentumX, momentum.x, mass * tolerance);
+        assertEquals(momentumY, momentum.y, mass * tolerance);
+        Vector2d centerOfMass = space.getCenterOfMass();
+        assertEquals(weightedX / mass, centerOfMass.x, 1e-6);
+        assertEquals(weightedY / mass, centerOfMass.y, 1e-6);
+
+        // the box may only be larger, right after the collisions are resolved
+        double[] bounds = space.getBounds();
+        assertTrue(bounds[0] <= minX + 1e-9);
+        assertTrue(bounds[3] >= maxY - 1e-9);
+    }
+}
@@ -0,0 +1,94 @@
+package com.github.mimo31.gravitysimulator;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks that the autosave files restore the space and that damaged files are rejected.
+ */
+public class AutosaveTest
+{
+    @Test
+    public void savedSpace_isRestored() throws Exception
+    {
+        GravitySpace space = createSpace(200);
+        space.update(1 / (double) 64, false);
+        space.removeObject(space.getObject(5).id);
+        SpaceSnapshot snapshot = new SpaceSnapshot();
+        space.captureSnapshot(snapshot);
+
+        File directory = createDirectory();
+        File file = new File(directory, Autosave.FILE_NAME);
+        File tempFile = new File(directory, Autosave.FILE_NAME + ".tmp");
+        Autosave.write(file, tempFile, snapshot, 1234);
+        assertFalse(tempFile.exists());
+
+        long[] savedAt = new long[1];
+        GravitySpace restored = new GravitySpace(Autosave.read(file, savedAt));
+        assertEquals(1234, savedAt[0]);
+        assertEquals(space.getNumberOfObjects(), restored.getNumberOfObjects());
+        assertEquals(space.getStepCount(), restored.getStepCount());
+        for (int i = 0; i < space.getNumberOfObjects(); i++)
+        {
+            GravitationalObject object = space.getObject(i);
+            GravitationalObject restoredObject = restored.getObjectById(object.id);
+            assertEquals(object.position.x, restoredObject.position.x, 0);
+            assertEquals(object.position.y, restoredObject.position.y, 0);
+            assertEquals(object.velocity.x, restoredObject.velocity.x, 0);
+            assertEquals(object.velocity.y, restoredObject.velocity.y, 0);
+            assertEquals(object.radius, restoredObject.radius);
+            assertEquals(object.density, restoredObject.density);
+        }
+
+        // both spaces continue in the same way
+        space.update(1 / (double) 64, false);
+        restored.update(1 / (double) 64, false);
+        assertEquals(space.getObject(0).position.x, restored.getObjectById(space.getObject(0).id).position.x, 0);
+    }
+
+    @Test(expected = IOException.class)
+    public void damagedSave_isRejected() throws Exception
+    {
+        SpaceSnapshot snapshot = new SpaceSnapshot();
+        createSpace(100).captureSnapshot(snapshot);
+        File directory = createDirectory();
+        File file = new File(directory, Autosave.FILE_NAME);
+        Autosave.write(file, new File(directory, Autosave.FILE_NAME + ".tmp"), snapshot, 0);
+
+        try (RandomAccessFile access = new RandomAccessFile(file, "rw"))
+        {
+            access.seek(access.length() / 2);
+            int value = access.read();
+            access.seek(access.length() / 2);
+            access.write(value ^ 1);
+        }
+        Autosave.read(file, new long[1]);
+    }
+
+    private static File createDirectory() throws IOException
+    {
+        File directory = File.createTempFile("autosave", "");
+        assertTrue(directory.delete() && directory.mkdir());
+        directory.deleteOnExit();
+        return directory;
+    }
+
+    private static GravitySpace createSpace(int count)
+    {
+        GravitySpace space = new GravitySpace();
+        Random random = new Random(3);
+        for (int i = 0; i < count; i++)
+        {
+            GravitationalObject object = new GravitationalObject(new Vector2d(random.nextDouble() * 20000, random.nextDouble() * 20000), 2 + random.nextInt(5), 1 + random.nextInt(1000));
+            object.velocity = new Vector2d(random.nextGaussian(), random.nextGaussian());
+            space.addObject(object);
+        }
+        return space;
+    }
+}
@@ -0,0 +1,135 @@
+package com.github.mimo31.gravitysimulator;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks that a resting pile falls asleep without changing its motion, that it wakes up when it's hit and that it's copied asleep.
+ */
+public class ContactIslandsTest
+{
+    @Test
+    public void sleeping_isOffByDefault()
+    {
+        GravitySpace space = createPile();
+        assertFalse(space.isSleepingEnabled());
+        assertNull(space.getContactIslands());
+        runTicks(space, 40);
+        for (int i = 0; i < space.getNumberOfObjects(); i++)
+        {
+            assertNull(space.getObject(i).aggregate);
+        }
+    }
+
+    @Test
+    public void restingPile_fallsAsleepAndKeepsItsMomentum()
+    {
+        GravitySpace space = createPile();
+        space.setSleepingEnabled(true);
+        Vector2d momentum = computeMomentum(space);
+        runTicks(space, 40);
+
+        ContactIslands islands = space.getContactIslands();
+        assertEquals(1, islands.getAggregates().size());
+        assertEquals(space.getNumberOfObjects(), islands.getNumberOfSleepingObjects());
+        Vector2d sleepingMomentum = computeMomentum(space);
+        assertEquals(momentum.x, sleepingMomentum.x, 1e-6);
+        assertEquals(momentum.y, sleepingMomentum.y, 1e-6);
+
+        // the whole pile drifts with the velocity of the Aggregate
+        double x = space.getObject(0).position.x;
+        runTicks(space, 10);
+        assertEquals(x + 10, space.getObject(0).position.x, 1e-6);
+    }
+
+    @Test
+    public void hitPile_wakesUp()
+    {
+        GravitySpace space = createPile();
+        space.setSleepingEnabled(true);
+        runTicks(space, 40);
+        ContactIslands islands = space.getContactIslands();
+        assertEquals(1, islands.getAggregates().size());
+
+        double pileX = space.getObject(0).position.x;
+        GravitationalObject projectile = new GravitationalObject(new Vector2d(pileX + 200, 0), 5, 1);
+        space.addObject(projectile);
+        space.setVelocity(projectile, new Vector2d(-5, 0));
+        runTicks(space, 40);
+        assertEquals(1, islands.getNumberOfWokenUp());
+
+        // the collision has been resolved after the wake, the light projectile bounced back from the pile
+        assertTrue(projectile.velocity.x > 0);
+        assertTrue(projectile.position.x > pileX);
+    }
+
+    @Test
+    public void copy_keepsThePileAsleepAndContinuesExactly()
+    {
+        GravitySpace space = createPile();
+        space.setSleepingEnabled(true);
+        runTicks(space, 40);
+        GravitySpace copy = space.copy();
+        assertEquals(1, copy.getContactIslands().getAggregates().size());
+        assertEquals(space.getNumberOfObjects(), copy.getContactIslands().getNumberOfSleepingObjects());
+        assertSame(copy.getContactIslands().getAggregates().get(0), copy.getObject(0).aggregate);
+
+        // the copy wakes up at the same step when it's hit
+        double pileX = space.getObject(0).position.x;
+        for (GravitySpace run : new GravitySpace[]{space, copy})
+        {
+            GravitationalObject projectile = new GravitationalObject(new Vector2d(pileX + 200, 0), 5, 1);
+            run.addObject(projectile);
+            run.setVelocity(projectile, new Vector2d(-5, 0));
+            runTicks(run, 40);
+        }
+        assertEquals(1, copy.getContactIslands().getNumberOfWokenUp());
+        assertEquals(space.computeStateHash(), copy.computeStateHash());
+    }
+
+    /**
+     * @return a packed hexagonal pile of 19 objects moving by 1 to the right
+     */
+    private static GravitySpace createPile()
+    {
+        GravitySpace space = new GravitySpace();
+        for (int j = -2; j <= 2; j++)
+        {
+            for (int i = -2; i <= 2; i++)
+            {
+                if (Math.abs(i + j) <= 2)
+                {
+                    GravitationalObject object = new GravitationalObject(new Vector2d(20 * (i + j * 0.5), 20 * j * Math.sqrt(3) / 2), 10, 100);
+                    space.addObject(object);
+                    space.setVelocity(object, new Vector2d(1, 0));
+                }
+            }
+        }
+        return space;
+    }
+
+    private static void runTicks(GravitySpace space, int ticks)
+    {
+        for (int tick = 0; tick < ticks; tick++)
+        {
+            for (int i = 0; i < 64; i++)
+            {
+                space.update(1 / 64.0, false, true);
+            }
+        }
+    }
+
+    private static Vector2d computeMomentum(GravitySpace space)
+    {
+        double x = 0;
+        double y = 0;
+        for (int i = 0; i < space.getNumberOfObjects(); i++)
+        {
+            GravitationalObject object = space.getObject(i);
+            x += object.getGravitatingMass() * object.velocity.x;
+            y += object.getGravitatingMass() * object.velocity.y;
+        }
+        return new Vector2d(x, y);
+    }
+}
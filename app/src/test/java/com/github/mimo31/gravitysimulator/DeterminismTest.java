@@ -0,0 +1,144 @@
+package com.github.mimo31.gravitysimulator;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks that the steps of GravitySpace give the same results for any number of threads.
+ */
+public class DeterminismTest
+{
+    private static final int STEPS = 40;
+
+    @Test
+    public void checksums_areIndependentOfThreadCount() throws Exception
+    {
+        long[] singleThreaded = runAndRecordChecksums(1);
+        long[] multiThreaded = runAndRecordChecksums(4);
+        assertEquals(-1, DivergenceFinder.findFirstDifferentChecksum(singleThreaded, multiThreaded));
+    }
+
+    @Test
+    public void divergence_reportsFirstStepAndObject() throws Exception
+    {
+        GravitySpace first = createCluster(new StepExecutor(1));
+        GravitySpace second = createCluster(new StepExecutor(3));
+        GravitationalObject perturbed = second.getObject(17);
+        perturbed.velocity = new Vector2d(Math.nextUp(perturbed.velocity.x), perturbed.velocity.y);
+
+        DivergenceFinder.Divergence divergence = DivergenceFinder.runSideBySide(first, second, STEPS, 1 / (double) 64);
+        assertNotNull(divergence);
+        assertEquals(1, divergence.step);
+        assertEquals(perturbed.id, divergence.objectId);
+    }
+
+    @Test
+    public void errorOfHelper_isRethrownOnCallingThread()
+    {
+        StepExecutor executor = new StepExecutor(3);
+        final Thread caller = Thread.currentThread();
+        try
+        {
+            executor.forEachChunk(64, 1, new StepExecutor.ChunkTask()
+            {
+                @Override
+                public void run(int chunk, int start, int end)
+                {
+                    if (Thread.currentThread() != caller)
+                    {
+                        throw new AssertionError("chunk " + chunk);
+                    }
+                    // gives the helpers time to take some of the chunks
+                    try
+                    {
+                        Thread.sleep(1);
+                    }
+                    catch (InterruptedException e)
+                    {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            });
+            fail("The Error of the helper wasn't rethrown.");
+        }
+        catch (AssertionError e)
+        {
+            assertTrue(e.getMessage().startsWith("chunk "));
+        }
+        finally
+        {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void setExecutor_keepsTheForceSolverThatHasBeenSet()
+    {
+        final int[] calls = new int[1];
+        final ForceSolver direct = new DirectForceSolver();
+        GravitySpace space = createCluster(new StepExecutor(1));
+        space.setForceSolver(new ForceSolver()
+        {
+            @Override
+            public void computeAccelerations(double[] x, double[] y, double[] mass, int count, double[] ax, double[] ay)
+            {
+                calls[0]++;
+                direct.computeAccelerations(x, y, mass, count, ax, ay);
+            }
+        });
+        StepExecutor executor = new StepExecutor(2);
+        space.setExecutor(executor);
+        space.update(1 / (double) 64, false);
+        executor.shutdown();
+        assertEquals(1, calls[0]);
+    }
+
+    private static long[] runAndRecordChecksums(int threadCount)
+    {
+        StepExecutor executor = new StepExecutor(threadCount);
+        GravitySpace space = createCluster(executor);
+        final long[] checksums = new long[STEPS];
+        final int[] callbacks = new int[1];
+        space.setChecksumsEnabled(true);
+        space.setChecksumListener(new GravitySpace.ChecksumListener()
+        {
+            @Override
+            public void onStep(long step, long checksum)
+            {
+                assertEquals(callbacks[0] + 1, step);
+                checksums[(int) step - 1] = checksum;
+                callbacks[0]++;
+            }
+        });
+        for (int i = 0; i < STEPS; i++)
+        {
+            space.update(1 / (double) 64, false);
+            space.updateViewVelocity();
+        }
+        executor.shutdown();
+
+        // the arrays are compared, so they must have been filled by the listener
+        assertEquals(STEPS, callbacks[0]);
+        return checksums;
+    }
+
+    /**
+     * Creates a dense cluster, so there are collisions as well.
+     */
+    private static GravitySpace createCluster(StepExecutor executor)
+    {
+        GravitySpace space = new GravitySpace();
+        space.setExecutor(executor);
+        Random random = new Random(42);
+        for (int i = 0; i < 300; i++)
+        {
+            GravitationalObject object = new GravitationalObject(new Vector2d(random.nextDouble() * 2000, random.nextDouble() * 2000), 5 + random.nextInt(20), 1 + random.nextInt(1000));
+            object.velocity = new Vector2d(random.nextGaussian() * 10, random.nextGaussian() * 10);
+            space.addObject(object);
+        }
+        return space;
+    }
+}
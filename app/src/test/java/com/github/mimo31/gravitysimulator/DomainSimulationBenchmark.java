@@ -0,0 +1,120 @@
+package com.github.mimo31.gravitysimulator;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Compares a simulation split between several DomainWorker processes with the same simulation run in a single process.
+ * <p>
+ * Reports the differences of the final positions relative to the radius of the disk and the throughput of both runs.
+ * With theta 0, the far field is sent body by body, so the runs differ only by the order of the summation.
+ * Run the main method from the IDE or with the unit test classpath.
+ * Arguments: [number of processes] [number of bodies] [steps] [theta]
+ */
+public class DomainSimulationBenchmark
+{
+    // largest allowed difference of a position relative to the radius of the disk,
+    // checked at the 99th percentile, because the few bodies in close encounters amplify any difference, even a rounding error
+    private static final double TOLERANCE = 1e-3;
+
+    private static final double DELTA_TIME = 1e-3;
+
+    public static void main(String[] args) throws IOException, InterruptedException
+    {
+        int processes = args.length > 0 ? Integer.parseInt(args[0]) : 4;
+        int count = args.length > 1 ? Integer.parseInt(args[1]) : 8000;
+        int steps = args.length > 2 ? Integer.parseInt(args[2]) : 30;
+        double theta = args.length > 3 ? Double.parseDouble(args[3]) : 0.3;
+
+        DomainBodies initial = createDisk(count);
+
+        // single process
+        double[] x = initial.x.clone();
+        double[] y = initial.y.clone();
+        double[] vx = initial.vx.clone();
+        double[] vy = initial.vy.clone();
+        double[] ax = new double[count];
+        double[] ay = new double[count];
+        ForceSolver solver = new DirectForceSolver();
+        long singleStart = System.nanoTime();
+        for (int step = 0; step < steps; step++)
+        {
+            solver.computeAccelerations(x, y, initial.mass, count, ax, ay);
+            for (int i = 0; i < count; i++)
+            {
+                vx[i] += ax[i] * DELTA_TIME;
+                vy[i] += ay[i] * DELTA_TIME;
+                x[i] += vx[i] * DELTA_TIME;
+                y[i] += vy[i] * DELTA_TIME;
+            }
+        }
+        double singleTime = (System.nanoTime() - singleStart) / 1e9;
+
+        // several processes
+        Process[] workers = new Process[processes];
+        DomainBodies result;
+        double distributedTime;
+        try (ServerSocket server = new ServerSocket(0, processes, InetAddress.getLoopbackAddress()))
+        {
+            String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+            for (int i = 0; i < processes; i++)
+            {
+                workers[i] = new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"), DomainWorker.class.getName(), "127.0.0.1", String.valueOf(server.getLocalPort()))
+                        .inheritIO().start();
+            }
+            try (DomainCoordinator coordinator = new DomainCoordinator(server, processes, initial, DELTA_TIME, theta))
+            {
+                long distributedStart = System.nanoTime();
+                for (int step = 0; step < steps; step++)
+                {
+                    coordinator.step();
+                }
+                distributedTime = (System.nanoTime() - distributedStart) / 1e9;
+                result = coordinator.finish();
+            }
+        }
+        for (Process worker : workers)
+        {
+            worker.waitFor();
+        }
+
+        double[] differences = new double[result.count];
+        for (int i = 0; i < result.count; i++)
+        {
+            // the ids are the indices of the bodies
+            int body = (int) result.id[i];
+            differences[i] = Math.hypot(result.x[i] - x[body], result.y[i] - y[body]);
+        }
+        Arrays.sort(differences);
+        double percentileDifference = differences[result.count * 99 / 100];
+        System.out.printf("%d bodies, %d steps, theta %.2f%n", count, steps, theta);
+        System.out.printf("single process: %.2f steps/s%n", steps / singleTime);
+        System.out.printf("%d processes: %.2f steps/s (%.2fx)%n", processes, steps / distributedTime, singleTime / distributedTime);
+        System.out.printf("bodies returned: %d of %d%n", result.count, count);
+        System.out.printf("position difference: median %.2e, 99th percentile %.2e, largest %.2e of the disk radius%n", differences[result.count / 2], percentileDifference, differences[result.count - 1]);
+        System.out.printf("99th percentile within the tolerance of %.0e: %s%n", TOLERANCE, percentileDifference <= TOLERANCE && result.count == count ? "OK" : "FAILED");
+    }
+
+    /**
+     * Creates a rotating uniform disk of radius 1 and total mass 1, the ids are the indices of the bodies.
+     */
+    private static DomainBodies createDisk(int count)
+    {
+        Random random = new Random(1);
+        DomainBodies bodies = new DomainBodies();
+        for (int i = 0; i < count; i++)
+        {
+            double r = Math.sqrt(random.nextDouble());
+            double angle = random.nextDouble() * 2 * Math.PI;
+
+            // circular velocity for the mass enclosed in r
+            double speed = Math.sqrt(r);
+            bodies.add(i, r * Math.cos(angle), r * Math.sin(angle), -speed * Math.sin(angle), speed * Math.cos(angle), 1.0 / count);
+        }
+        return bodies;
+    }
+}
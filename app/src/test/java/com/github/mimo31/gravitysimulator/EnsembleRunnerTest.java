@@ -0,0 +1,53 @@
+package com.github.mimo31.gravitysimulator;
+
+import org.junit.Test;
+
+import java.io.StringWriter;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks that the ensemble members are reproducible and independent of the number of the threads.
+ */
+public class EnsembleRunnerTest
+{
+    @Test
+    public void results_areIndependentOfThreadCount() throws Exception
+    {
+        GravitySpace base = createCluster();
+        EnsembleRunner.Perturbation jitter = EnsembleRunner.velocityJitter(0.1);
+        StringWriter singleOutput = new StringWriter();
+        List<EnsembleRunner.MemberResult> single = new EnsembleRunner(base, 1).run(6, 7, 50, 1 / 8.0, jitter, singleOutput);
+        StringWriter parallelOutput = new StringWriter();
+        List<EnsembleRunner.MemberResult> parallel = new EnsembleRunner(base, 3).run(6, 7, 50, 1 / 8.0, jitter, parallelOutput);
+
+        assertEquals(singleOutput.toString(), parallelOutput.toString());
+        String[] lines = parallelOutput.toString().split("\n");
+        assertEquals(7, lines.length);
+        assertEquals(EnsembleRunner.HEADER, lines[0]);
+        assertNotEquals(single.get(0).stateHash, single.get(1).stateHash);
+        assertTrue(Math.abs(single.get(0).energyDrift) < 0.1);
+
+        // a member can be run again alone from its seed
+        EnsembleRunner.MemberResult again = new EnsembleRunner(base, 1).runMember(4, single.get(4).seed, 50, 1 / 8.0, jitter);
+        assertEquals(single.get(4).stateHash, again.stateHash);
+        assertEquals(single.get(4).collisions, again.collisions);
+    }
+
+    private static GravitySpace createCluster()
+    {
+        GravitySpace space = new GravitySpace();
+        Random random = new Random(5);
+        for (int i = 0; i < 100; i++)
+        {
+            GravitationalObject object = new GravitationalObject(new Vector2d(random.nextDouble() * 1000, random.nextDouble() * 1000), 5 + random.nextInt(10), 1 + random.nextInt(100));
+            if (!space.doesCollide(object))
+            {
+                space.addObject(object);
+            }
+        }
+        return space;
+    }
+}
@@ -0,0 +1,150 @@
+package com.github.mimo31.gravitysimulator;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks that the escaping objects are found and handled by the EscaperPolicy, while the bound ones are kept.
+ */
+public class EscaperPolicyTest
+{
+    @Test
+    public void escaper_isRemoved()
+    {
+        GravitySpace space = createSpace(EscaperPolicy.Action.REMOVE);
+        runSteps(space);
+        assertEquals(3, space.getNumberOfObjects());
+        assertEquals(1, space.getEscaperPolicy().getNumberOfEscapers());
+        assertTrue(space.getEscaperPolicy().getSavedInteractions() > 0);
+    }
+
+    @Test
+    public void escaper_isFrozen()
+    {
+        GravitySpace space = createSpace(EscaperPolicy.Action.FREEZE);
+        runSteps(space);
+        GravitationalObject escaper = space.getObject(3);
+        assertTrue(escaper.frozen);
+        Vector2d position = escaper.position;
+        double mass = space.getTotalMass();
+        space.update(1, false);
+        assertSame(position, escaper.position);
+        assertEquals(mass, space.getTotalMass(), 1e-9);
+        assertTrue(space.getEscaperPolicy().getSavedFraction() > 0);
+    }
+
+    @Test
+    public void escaper_isDemoted()
+    {
+        GravitySpace space = createSpace(EscaperPolicy.Action.DEMOTE);
+        runSteps(space);
+        GravitationalObject escaper = space.getObject(3);
+        assertTrue(escaper.tracer);
+        for (int i = 0; i < 3; i++)
+        {
+            assertFalse(space.getObject(i).tracer);
+        }
+
+        // the tracer is still pulled back by the system
+        double speed = escaper.velocity.getLength();
+        space.update(1, false);
+        assertTrue(escaper.velocity.getLength() < speed);
+        assertEquals(space.getObject(0).getMass() + space.getObject(1).getMass() + space.getObject(2).getMass(), space.getTotalMass(), 1e-9);
+    }
+
+    @Test
+    public void escapers_areLeftOutOfTheBounds()
+    {
+        for (EscaperPolicy.Action action : new EscaperPolicy.Action[]{EscaperPolicy.Action.FREEZE, EscaperPolicy.Action.DEMOTE})
+        {
+            GravitySpace space = createSpace(action);
+            runSteps(space);
+            space.update(1, false);
+            double[] bounds = space.getBounds();
+
+            // only the star and the planets, the farthest one is 2000 from the star
+            assertTrue(bounds[0] > -2100);
+            assertTrue(bounds[2] < 2100);
+        }
+    }
+
+    @Test
+    public void savedInteractions_countOnlyTheEscapers()
+    {
+        GravitySpace space = createSpace(EscaperPolicy.Action.FREEZE);
+        runSteps(space);
+        EscaperPolicy policy = space.getEscaperPolicy();
+        long saved = policy.getSavedInteractions();
+        space.update(1, false);
+
+        // the three bodies left are computed, the escaper would add itself to both sides of the 3 * 3 interactions
+        assertEquals(4 * 4 - 3 * 3, policy.getSavedInteractions() - saved);
+    }
+
+    @Test
+    public void zeroDensityObject_isNotAttractedButCollides()
+    {
+        GravitySpace space = new GravitySpace();
+        GravitationalObject star = new GravitationalObject(new Vector2d(0, 0), 50, 1000);
+        space.addObject(star);
+        GravitationalObject massless = new GravitationalObject(new Vector2d(200, 0), 10, 0);
+        space.addObject(massless);
+        space.setVelocity(massless, new Vector2d(-5, 0));
+
+        // it moves straight with its own velocity until it reaches the star
+        runTicks(space, 20);
+        assertEquals(-5, massless.velocity.x, 0);
+        assertEquals(0, massless.velocity.y, 0);
+        assertEquals(100, massless.position.x, 1e-9);
+        assertEquals(0, space.getNumberOfCollisions());
+
+        runTicks(space, 20);
+        assertTrue(space.getNumberOfCollisions() > 0);
+        assertTrue(massless.velocity.x > 0);
+        assertTrue(massless.position.x > 60);
+        assertEquals(0, star.velocity.getLength(), 0);
+    }
+
+    private static GravitySpace createSpace(EscaperPolicy.Action action)
+    {
+        GravitySpace space = new GravitySpace();
+        space.setEscaperPolicy(new EscaperPolicy(action, 5000));
+
+        // a massive star with two planets on circular orbits
+        GravitationalObject star = new GravitationalObject(new Vector2d(0, 0), 50, 1000);
+        space.addObject(star);
+        double starMass = star.getMass();
+        for (int distance : new int[] { 1000, 2000 })
+        {
+            GravitationalObject planet = new GravitationalObject(new Vector2d(distance, 0), 2, 10);
+            planet.velocity = new Vector2d(0, Math.sqrt(starMass / distance));
+            space.addObject(planet);
+        }
+
+        // leaves the system much faster than the escape velocity
+        GravitationalObject escaper = new GravitationalObject(new Vector2d(-3000, 0), 2, 10);
+        escaper.velocity = new Vector2d(-4 * Math.sqrt(2 * starMass / 3000), 0);
+        space.addObject(escaper);
+        return space;
+    }
+
+    private static void runSteps(GravitySpace space)
+    {
+        for (int i = 0; i < 400; i++)
+        {
+            space.update(1, false);
+        }
+    }
+
+    private static void runTicks(GravitySpace space, int ticks)
+    {
+        for (int tick = 0; tick < ticks; tick++)
+        {
+            for (int i = 0; i < 64; i++)
+            {
+                space.update(1 / 64.0, false, true);
+            }
+        }
+    }
+}
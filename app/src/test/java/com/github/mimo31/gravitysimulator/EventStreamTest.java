@@ -0,0 +1,293 @@
+package com.github.mimo31.gravitysimulator;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks the events published by a GravitySpace and that a slow subscriber only loses whole batches.
+ */
+public class EventStreamTest
+{
+    @Test
+    public void headOnCollision_isPublishedWithItsImpulse()
+    {
+        GravitySpace space = new GravitySpace();
+        EventStream events = new EventStream(0);
+        EventStream.Subscription subscription = events.subscribe(EventStream.DEFAULT_CAPACITY);
+        space.setEventStream(events);
+        GravitationalObject left = new GravitationalObject(new Vector2d(-30, 0), 10, 1);
+        GravitationalObject right = new GravitationalObject(new Vector2d(30, 0), 10, 1);
+        space.addObject(left);
+        space.addObject(right);
+        space.setVelocity(left, new Vector2d(20, 0));
+        space.setVelocity(right, new Vector2d(-20, 0));
+        for (int i = 0; i < 64; i++)
+        {
+            space.update(1 / 64.0, false, true);
+        }
+
+        List<SimulationEvent> received = poll(subscription);
+        assertEquals(3, received.size());
+        assertEvent(received.get(0), SimulationEvent.Type.ADDED, 1, left.id, -1);
+        assertEvent(received.get(1), SimulationEvent.Type.ADDED, 1, right.id, -1);
+        SimulationEvent collision = received.get(2);
+        assertEquals(SimulationEvent.Type.COLLISION, collision.type);
+
+        // the equal masses swap their velocities, so each of them gets the impulse of twice its momentum
+        double impulse = 2 * left.getMass() * 20;
+        assertEquals(impulse, collision.value, impulse * 0.05);
+        assertEquals(0, collision.x, 1);
+        assertEquals(0, collision.y, 1e-9);
+    }
+
+    @Test
+    public void removalsAndEscapes_arePublished()
+    {
+        GravitySpace space = new GravitySpace();
+        space.setEscaperPolicy(new EscaperPolicy(EscaperPolicy.Action.REMOVE, 1000));
+        EventStream events = new EventStream(0);
+        EventStream.Subscription subscription = events.subscribe(EventStream.DEFAULT_CAPACITY);
+        space.setEventStream(events);
+        space.addObject(new GravitationalObject(new Vector2d(0, 0), 10, 1));
+        GravitationalObject escaper = new GravitationalObject(new Vector2d(2000, 0), 1, 1);
+        space.addObject(escaper);
+        space.setVelocity(escaper, new Vector2d(100, 0));
+        GravitationalObject removed = new GravitationalObject(new Vector2d(0, 500), 1, 1);
+        space.addObject(removed);
+        space.removeObject(removed.id);
+        space.update(1 / 64.0, false, true);
+
+        List<SimulationEvent> received = poll(subscription);
+        assertEquals(6, received.size());
+        assertEvent(received.get(3), SimulationEvent.Type.REMOVED, 1, removed.id, -1);
+        assertEvent(received.get(4), SimulationEvent.Type.ESCAPE, 1, escaper.id, -1);
+        assertEvent(received.get(5), SimulationEvent.Type.REMOVED, 1, escaper.id, -1);
+        assertNull(space.getObjectById(escaper.id));
+    }
+
+    @Test
+    public void closeApproach_isPublishedOnceWhenItStarts()
+    {
+        GravitySpace space = new GravitySpace();
+        EventStream events = new EventStream(20);
+        EventStream.Subscription subscription = events.subscribe(EventStream.DEFAULT_CAPACITY);
+        GravitationalObject star = new GravitationalObject(new Vector2d(0, 0), 10, 1);
+        GravitationalObject planet = new GravitationalObject(new Vector2d(60, 0), 10, 1);
+        space.addObject(star);
+        space.addObject(planet);
+        space.setVelocity(planet, new Vector2d(-2, 0));
+        space.setEventStream(events);
+
+        // the planet approaches the star for about 10 steps, collides with it and bounces back
+        List<SimulationEvent> received = new ArrayList<>();
+        for (int i = 0; i < 40; i++)
+        {
+            space.update(1, false, true);
+            received.addAll(poll(subscription));
+        }
+        assertEquals(2, received.size());
+        SimulationEvent approach = received.get(0);
+        assertEquals(SimulationEvent.Type.CLOSE_APPROACH, approach.type);
+        assertTrue(approach.value > 0 && approach.value <= 20);
+        assertTrue(approach.step < received.get(1).step);
+        // the middle of the gap between the surfaces
+        assertTrue(approach.x > 10 && approach.x < 50);
+        assertEquals(SimulationEvent.Type.COLLISION, received.get(1).type);
+    }
+
+    @Test
+    public void sleepingPile_reportsTheApproachesToItsObjectsAndNoBurstWhenItWakes()
+    {
+        GravitySpace space = new GravitySpace();
+        space.setSleepingEnabled(true);
+        EventStream events = new EventStream(5);
+        EventStream.Subscription subscription = events.subscribe(EventStream.DEFAULT_CAPACITY);
+        space.setEventStream(events);
+
+        // a packed hexagonal pile of 19 objects, the neighbors are in contact
+        for (int j = -2; j <= 2; j++)
+        {
+            for (int i = -2; i <= 2; i++)
+            {
+                if (Math.abs(i + j) <= 2)
+                {
+                    space.addObject(new GravitationalObject(new Vector2d(20 * (i + j * 0.5), 20 * j * Math.sqrt(3) / 2), 10, 100));
+                }
+            }
+        }
+        runTicks(space, 40);
+        assertEquals(1, space.getContactIslands().getAggregates().size());
+        poll(subscription);
+
+        GravitationalObject projectile = new GravitationalObject(new Vector2d(200, 0), 5, 1);
+        space.addObject(projectile);
+        space.setVelocity(projectile, new Vector2d(-5, 0));
+        runTicks(space, 40);
+        assertEquals(1, space.getContactIslands().getNumberOfWokenUp());
+
+        long firstApproach = -1;
+        long firstCollision = -1;
+        for (SimulationEvent event : poll(subscription))
+        {
+            if (event.type == SimulationEvent.Type.CLOSE_APPROACH)
+            {
+                // the pairs in the pile have been close since before it fell asleep
+                assertTrue(event.toString(), event.id1 == projectile.id || event.id2 == projectile.id);
+                if (firstApproach == -1)
+                {
+                    firstApproach = event.step;
+                    assertTrue(event.value > 0 && event.value <= 5);
+                }
+            }
+            else if (event.type == SimulationEvent.Type.COLLISION && firstCollision == -1)
+            {
+                firstCollision = event.step;
+            }
+        }
+        // the approach is reported while the pile still sleeps
+        assertTrue(firstApproach != -1 && firstApproach < firstCollision);
+    }
+
+    @Test
+    public void fullRing_dropsWholeBatchesWithoutBlocking()
+    {
+        GravitySpace space = new GravitySpace();
+        EventStream events = new EventStream(0);
+        EventStream.Subscription slow = events.subscribe(5);
+        EventStream.Subscription fast = events.subscribe(64);
+        assertEquals(8, slow.getCapacity());
+        space.setEventStream(events);
+        for (int batch = 0; batch < 4; batch++)
+        {
+            for (int i = 0; i < 3; i++)
+            {
+                space.addObject(new GravitationalObject(new Vector2d(100 * (3 * batch + i), 0), 1, 0));
+            }
+            space.update(1, false, false);
+            assertEquals(3 * (batch + 1), fast.size());
+        }
+
+        // only the first two batches fit
+        assertEquals(6, slow.size());
+        assertEquals(2, slow.getDroppedBatches());
+        assertEquals(6, slow.getDroppedEvents());
+        assertEquals(0, fast.getDroppedEvents());
+        assertEquals(6, poll(slow).size());
+
+        for (int i = 0; i < 3; i++)
+        {
+            space.addObject(new GravitationalObject(new Vector2d(-100 * (i + 1), 0), 1, 0));
+        }
+        space.update(1, false, false);
+        assertEquals(3, slow.size());
+        assertEquals(15, poll(fast).size());
+    }
+
+    @Test
+    public void concurrentConsumer_receivesWholeBatchesInOrder() throws InterruptedException
+    {
+        final GravitySpace space = new GravitySpace();
+        EventStream events = new EventStream(0);
+        final EventStream.Subscription subscription = events.subscribe(16);
+        space.setEventStream(events);
+        final int objects = 20000;
+        final List<Long> ids = new ArrayList<>();
+        final AtomicBoolean finished = new AtomicBoolean();
+        Thread consumer = new Thread(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                EventStream.Handler handler = new EventStream.Handler()
+                {
+                    @Override
+                    public void onEvent(SimulationEvent event)
+                    {
+                        ids.add(event.id1);
+                    }
+                };
+                while (!finished.get() || subscription.size() != 0)
+                {
+                    subscription.poll(handler, 5);
+                }
+            }
+        });
+
+        // a failing producer mustn't leave the consumer spinning
+        consumer.setDaemon(true);
+        consumer.start();
+        try
+        {
+            for (int i = 0; i < objects; i++)
+            {
+                GravitationalObject object = new GravitationalObject(new Vector2d(i, 0), 1, 0);
+                space.addObject(object);
+                space.removeObject(object.id);
+                space.update(1, false, false);
+            }
+        }
+        finally
+        {
+            finished.set(true);
+        }
+        consumer.join(60000);
+        assertFalse(consumer.isAlive());
+
+        // every batch is the addition and the removal of a single object, they are never split
+        assertEquals(2 * (objects - subscription.getDroppedBatches()), ids.size());
+        for (int i = 0; i < ids.size(); i += 2)
+        {
+            assertEquals(ids.get(i), ids.get(i + 1));
+            assertTrue(i == 0 || ids.get(i) > ids.get(i - 1));
+        }
+    }
+
+    private static void runTicks(GravitySpace space, int ticks)
+    {
+        for (int tick = 0; tick < ticks; tick++)
+        {
+            for (int i = 0; i < 64; i++)
+            {
+                space.update(1 / 64.0, false, true);
+            }
+        }
+    }
+
+    private static void assertEvent(SimulationEvent event, SimulationEvent.Type type, long step, long id1, long id2)
+    {
+        assertEquals(type, event.type);
+        assertEquals(step, event.step);
+        assertEquals(id1, event.id1);
+        assertEquals(id2, event.id2);
+    }
+
+    /**
+     * @return copies of all the events published to the subscription
+     */
+    private static List<SimulationEvent> poll(EventStream.Subscription subscription)
+    {
+        final List<SimulationEvent> received = new ArrayList<>();
+        subscription.poll(new EventStream.Handler()
+        {
+            @Override
+            public void onEvent(SimulationEvent event)
+            {
+                SimulationEvent copy = new SimulationEvent();
+                copy.type = event.type;
+                copy.step = event.step;
+                copy.id1 = event.id1;
+                copy.id2 = event.id2;
+                copy.x = event.x;
+                copy.y = event.y;
+                copy.value = event.value;
+                received.add(copy);
+            }
+        }, Integer.MAX_VALUE);
+        return received;
+    }
+}
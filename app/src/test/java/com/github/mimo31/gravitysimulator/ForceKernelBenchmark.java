@@ -0,0 +1,99 @@
+package com.github.mimo31.gravitysimulator;
+
+import java.util.Random;
+
+/**
+ * Headless benchmark of the direct-sum kernels on random bodies.
+ * <p>
+ * Compares the old per-pair path through GravitationalObject.getGravitationalForce, the DirectForceSolver
+ * and the SymmetricForceSolver, and checks that the symmetric kernel gives the same accelerations.
+ * Run the main method from the IDE or with the unit test classpath. Arguments: [number of bodies] [number of threads]
+ */
+public class ForceKernelBenchmark
+{
+    public static void main(String[] args)
+    {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 4000;
+        int threads = args.length > 1 ? Integer.parseInt(args[1]) : 1;
+        Random random = new Random(5);
+        GravitationalObject[] objects = new GravitationalObject[count];
+        double[] x = new double[count];
+        double[] y = new double[count];
+        double[] mass = new double[count];
+        for (int i = 0; i < count; i++)
+        {
+            objects[i] = new GravitationalObject(new Vector2d(random.nextDouble() * 100000, random.nextDouble() * 100000), 1 + random.nextInt(30), 1 + random.nextInt(1000));
+            x[i] = objects[i].position.x;
+            y[i] = objects[i].position.y;
+            mass[i] = objects[i].getMass();
+        }
+
+        StepExecutor executor = new StepExecutor(threads);
+        double[] directX = new double[count];
+        double[] directY = new double[count];
+        double[] symmetricX = new double[count];
+        double[] symmetricY = new double[count];
+        ForceSolver direct = new DirectForceSolver(executor);
+        ForceSolver symmetric = new SymmetricForceSolver(executor);
+        int repetitions = 10;
+        double legacyTime = 0;
+        double directTime = 0;
+        double symmetricTime = 0;
+
+        // the first round warms up the JIT
+        for (int round = 0; round < 2; round++)
+        {
+            long start = System.nanoTime();
+            computeLegacy(objects, directX, directY);
+            legacyTime = (System.nanoTime() - start) / 1e6;
+
+            start = System.nanoTime();
+            for (int i = 0; i < repetitions; i++)
+            {
+                direct.computeAccelerations(x, y, mass, count, directX, directY);
+            }
+            directTime = (System.nanoTime() - start) / 1e6 / repetitions;
+
+            start = System.nanoTime();
+            for (int i = 0; i < repetitions; i++)
+            {
+                symmetric.computeAccelerations(x, y, mass, count, symmetricX, symmetricY);
+            }
+            symmetricTime = (System.nanoTime() - start) / 1e6 / repetitions;
+        }
+        executor.shutdown();
+
+        double maxError = 0;
+        for (int i = 0; i < count; i++)
+        {
+            double dx = symmetricX[i] - directX[i];
+            double dy = symmetricY[i] - directY[i];
+            maxError = Math.max(maxError, Math.sqrt((dx * dx + dy * dy) / (directX[i] * directX[i] + directY[i] * directY[i])));
+        }
+        System.out.printf("%d bodies, %d threads%n", count, threads);
+        System.out.printf("getGravitationalForce: %.1f ms%n", legacyTime);
+        System.out.printf("direct: %.1f ms (%.2fx)%n", directTime, legacyTime / directTime);
+        System.out.printf("symmetric: %.1f ms (%.2fx, %.2fx over direct), max relative difference %.1e%n", symmetricTime, legacyTime / symmetricTime, directTime / symmetricTime, maxError);
+    }
+
+    /**
+     * The accelerations as they were computed before the ForceSolvers, through the forces of every ordered pair of the objects.
+     */
+    private static void computeLegacy(GravitationalObject[] objects, double[] ax, double[] ay)
+    {
+        for (int i = 0; i < objects.length; i++)
+        {
+            Vector2d force = new Vector2d(0, 0);
+            for (int j = 0; j < objects.length; j++)
+            {
+                if (i != j)
+                {
+                    force = force.add(objects[i].getGravitationalForce(objects[j]));
+                }
+            }
+            double mass = objects[i].getMass();
+            ax[i] = force.x / mass;
+            ay[i] = force.y / mass;
+        }
+    }
+}
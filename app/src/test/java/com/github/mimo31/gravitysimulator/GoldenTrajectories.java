@@ -0,0 +1,293 @@
+package com.github.mimo31.gravitysimulator;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.util.Random;
+
+/**
+ * Reference scenarios and their golden trajectories for checking the variants of the engine against an accurate solution.
+ * <p>
+ * A golden trajectory is the positions of all the objects at every sampled step of a scenario run by the reference engine,
+ * the single-threaded DirectForceSolver with every step split into referenceSubsteps substeps.
+ * The short steps make the golden trajectory close to the exact solution, so the tolerance of a scenario bounds the integration error
+ * of the engine at its step and not only the rounding. The numbers are stored with all their digits, so they are read back exactly.
+ * The files are in the test resources under golden/. Run the main method with the path of the test resources to regenerate them,
+ * which is needed only when the physics deliberately changes.
+ */
+class GoldenTrajectories
+{
+    /**
+     * A fixed initial state with the length of its run and how far an engine may get from the golden trajectory.
+     */
+    enum Scenario
+    {
+        /**
+         * A light planet on an eccentric orbit around a star, for one period.
+         */
+        KEPLER(0.25, 7740, 90, 1000, 2, 8),
+        /**
+         * Three equal bodies chasing each other along the figure eight, for one period.
+         */
+        FIGURE_EIGHT(1, 6336, 64, 1000, 3, 45),
+        /**
+         * A grid of nearly touching bodies collapsing into a pile and bouncing in it, at the step of the most accurate tick.
+         * The collisions make the orbits of the single bodies chaotic once the pile forms,
+         * so after the collapse starts only the center of mass and the size of the pile are compared.
+         */
+        COLLISION_PILE(1 / 32.0, 1280, 16, 64, 3, 3, 128),
+        /**
+         * 1000 random bodies in a disk, at the step of the least accurate tick.
+         */
+        CLUSTER(1 / 8.0, 80, 40, 16, 0.5, 0.5);
+
+        final double deltaTime;
+        final int steps;
+
+        // the positions are recorded after every sampleInterval steps
+        final int sampleInterval;
+
+        // number of the substeps of every step in the run of the reference engine
+        final int referenceSubsteps;
+
+        // largest allowed distance of an object from its golden position
+        final double tolerance;
+
+        // the tolerance for the ParticleMeshSolver, which approximates the forces
+        final double meshTolerance;
+
+        // the objects are compared one by one up to this step, later only the center of mass and the root mean square distance
+        // of the objects from it are compared
+        final int individualSteps;
+
+        Scenario(double deltaTime, int steps, int sampleInterval, int referenceSubsteps, double tolerance, double meshTolerance)
+        {
+            this(deltaTime, steps, sampleInterval, referenceSubsteps, tolerance, meshTolerance, steps);
+        }
+
+        Scenario(double deltaTime, int steps, int sampleInterval, int referenceSubsteps, double tolerance, double meshTolerance, int individualSteps)
+        {
+            this.deltaTime = deltaTime;
+            this.steps = steps;
+            this.sampleInterval = sampleInterval;
+            this.referenceSubsteps = referenceSubsteps;
+            this.tolerance = tolerance;
+            this.meshTolerance = meshTolerance;
+            this.individualSteps = individualSteps;
+        }
+
+        String getResourceName()
+        {
+            return "golden/" + this.name().toLowerCase() + ".txt";
+        }
+
+        GravitySpace create()
+        {
+            GravitySpace space = new GravitySpace();
+            switch (this)
+            {
+                case KEPLER:
+                    // mass 25000, the planet starts at the apocenter of an orbit with eccentricity 0.5
+                    space.addObject(new GravitationalObject(new Vector2d(0, 0), 40, 1000));
+                    addObject(space, 2000, 0, 0, 2.5, 2, 10);
+                    break;
+                case FIGURE_EIGHT:
+                    // the initial conditions of Chenciner and Montgomery scaled to the distance 1000 and the mass 1000
+                    addObject(space, -970.00436, 243.08753, 0.466203685, 0.43236573, 8, 1000);
+                    addObject(space, 970.00436, -243.08753, 0.466203685, 0.43236573, 8, 1000);
+                    addObject(space, 0, 0, -0.93240737, -0.86473146, 8, 1000);
+                    break;
+                case COLLISION_PILE:
+                    Random jitter = new Random(49);
+                    for (int i = 0; i < 7; i++)
+                    {
+                        for (int j = 0; j < 7; j++)
+                        {
+                            addObject(space, i * 25 + jitter.nextDouble(), j * 25 + jitter.nextDouble(), 0, 0, 10, 100);
+                        }
+                    }
+                    break;
+                default:
+                    Random random = new Random(1000);
+                    while (space.getNumberOfObjects() < 1000)
+                    {
+                        double distance = 20000 * Math.sqrt(random.nextDouble());
+                        double angle = random.nextDouble() * 2 * Math.PI;
+                        double x = distance * Math.cos(angle);
+                        double y = distance * Math.sin(angle);
+                        double velocityX = random.nextGaussian();
+                        double velocityY = random.nextGaussian();
+                        int radius = 5 + random.nextInt(20);
+                        int density = 1 + random.nextInt(1000);
+                        // the bodies start apart, so the run doesn't begin by resolving overlaps, which depends on the step
+                        if (isFree(space, x, y, 2 * radius + 50))
+                        {
+                            addObject(space, x, y, velocityX, velocityY, radius, density);
+                        }
+                    }
+            }
+            return space;
+        }
+
+        /**
+         * @return whether no object is closer to the point than the distance plus its radius
+         */
+        private static boolean isFree(GravitySpace space, double x, double y, double distance)
+        {
+            for (int i = 0; i < space.getNumberOfObjects(); i++)
+            {
+                GravitationalObject object = space.getObject(i);
+                if (Math.hypot(object.position.x - x, object.position.y - y) < distance + object.radius)
+                {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private static void addObject(GravitySpace space, double x, double y, double velocityX, double velocityY, int radius, int density)
+        {
+            GravitationalObject object = new GravitationalObject(new Vector2d(x, y), radius, density);
+            object.velocity = new Vector2d(velocityX, velocityY);
+            space.addObject(object);
+        }
+    }
+
+    /**
+     * Positions of the objects at the sampled steps, indexed by the sample and the order of the objects.
+     */
+    static class Trajectory
+    {
+        final double[][] x;
+        final double[][] y;
+
+        Trajectory(int samples, int objects)
+        {
+            this.x = new double[samples][objects];
+            this.y = new double[samples][objects];
+        }
+    }
+
+    private GoldenTrajectories()
+    {
+    }
+
+    /**
+     * Regenerates the golden trajectories with the reference engine.
+     * Arguments: path of the test resources
+     */
+    public static void main(String[] args) throws IOException
+    {
+        File directory = new File(args.length > 0 ? args[0] : "app/src/test/resources");
+        for (Scenario scenario : Scenario.values())
+        {
+            GravitySpace space = scenario.create();
+            space.setForceSolver(new DirectForceSolver());
+            Trajectory trajectory = run(scenario, space, scenario.referenceSubsteps);
+            File file = new File(directory, scenario.getResourceName());
+            file.getParentFile().mkdirs();
+            try (PrintWriter writer = new PrintWriter(new OutputStreamWriter(new FileOutputStream(file), "UTF-8")))
+            {
+                write(writer, scenario, trajectory);
+            }
+            System.out.println("Wrote " + file);
+        }
+    }
+
+    /**
+     * Runs the scenario on the space and records the positions at step 0 and after every sampleInterval steps.
+     */
+    static Trajectory run(Scenario scenario, GravitySpace space)
+    {
+        return run(scenario, space, 1);
+    }
+
+    /**
+     * Runs the scenario on the space with every step split into the given number of substeps.
+     */
+    static Trajectory run(Scenario scenario, GravitySpace space, int substeps)
+    {
+        int objects = space.getNumberOfObjects();
+        Trajectory trajectory = new Trajectory(scenario.steps / scenario.sampleInterval + 1, objects);
+        record(space, trajectory, 0);
+        for (int step = 1; step <= scenario.steps; step++)
+        {
+            for (int i = 0; i < substeps; i++)
+            {
+                space.update(scenario.deltaTime / substeps, false);
+            }
+            if (step % scenario.sampleInterval == 0)
+            {
+                record(space, trajectory, step / scenario.sampleInterval);
+            }
+        }
+        return trajectory;
+    }
+
+    private static void record(GravitySpace space, Trajectory trajectory, int sample)
+    {
+        if (space.getNumberOfObjects() != trajectory.x[sample].length)
+        {
+            throw new IllegalStateException("The number of the objects changed during the run.");
+        }
+        for (int i = 0; i < trajectory.x[sample].length; i++)
+        {
+            Vector2d position = space.getObject(i).position;
+            trajectory.x[sample][i] = position.x;
+            trajectory.y[sample][i] = position.y;
+        }
+    }
+
+    /**
+     * Writes the trajectory as a header line and one line per object and sample: the step, the index of the object and its position.
+     */
+    static void write(PrintWriter writer, Scenario scenario, Trajectory trajectory)
+    {
+        writer.println("# " + scenario.name() + ", regenerate with GoldenTrajectories.main");
+        writer.println(trajectory.x.length + " " + trajectory.x[0].length);
+        for (int sample = 0; sample < trajectory.x.length; sample++)
+        {
+            for (int i = 0; i < trajectory.x[sample].length; i++)
+            {
+                writer.println(sample * scenario.sampleInterval + " " + i + " " + trajectory.x[sample][i] + " " + trajectory.y[sample][i]);
+            }
+        }
+    }
+
+    /**
+     * Reads the golden trajectory of the scenario from the test resources.
+     */
+    static Trajectory read(Scenario scenario) throws IOException
+    {
+        InputStream stream = GoldenTrajectories.class.getClassLoader().getResourceAsStream(scenario.getResourceName());
+        if (stream == null)
+        {
+            throw new IOException("Missing resource " + scenario.getResourceName() + ".");
+        }
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(stream, "UTF-8")))
+        {
+            String line = reader.readLine();
+            while (line.startsWith("#"))
+            {
+                line = reader.readLine();
+            }
+            String[] size = line.split(" ");
+            Trajectory trajectory = new Trajectory(Integer.parseInt(size[0]), Integer.parseInt(size[1]));
+            for (int sample = 0; sample < trajectory.x.length; sample++)
+            {
+                for (int i = 0; i < trajectory.x[sample].length; i++)
+                {
+                    String[] values = reader.readLine().split(" ");
+                    trajectory.x[sample][i] = Double.parseDouble(values[2]);
+                    trajectory.y[sample][i] = Double.parseDouble(values[3]);
+                }
+            }
+            return trajectory;
+        }
+    }
+}
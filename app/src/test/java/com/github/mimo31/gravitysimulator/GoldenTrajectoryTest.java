@@ -0,0 +1,206 @@
+package com.github.mimo31.gravitysimulator;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Runs every variant of the engine on the reference scenarios and compares them with the golden trajectories.
+ * <p>
+ * A new solver or a new way of running the engine is added as a variant here, with its own tolerance if it approximates the forces.
+ * A failure names the first sampled step at which the run got further from the golden trajectory than the tolerance of the scenario.
+ */
+public class GoldenTrajectoryTest
+{
+    /**
+     * A way of configuring the engine.
+     */
+    private enum Variant
+    {
+        DIRECT, DIRECT_PARALLEL, SYMMETRIC, SYMMETRIC_PARALLEL, PARTICLE_MESH;
+
+        void configure(GravitySpace space, StepExecutor executor)
+        {
+            switch (this)
+            {
+                case DIRECT:
+                    space.setForceSolver(new DirectForceSolver());
+                    break;
+                case DIRECT_PARALLEL:
+                    // the solver that has been set is kept by setExecutor
+                    space.setForceSolver(new DirectForceSolver(executor));
+                    space.setExecutor(executor);
+                    break;
+                case SYMMETRIC:
+                    space.setForceSolver(new SymmetricForceSolver());
+                    break;
+                case PARTICLE_MESH:
+                    space.setForceSolver(new ParticleMeshSolver(64, true));
+                    break;
+                default:
+                    space.setExecutor(executor);
+            }
+        }
+
+        /**
+         * @return how far the variant may get from the golden trajectory of the scenario
+         */
+        double getTolerance(GoldenTrajectories.Scenario scenario)
+        {
+            return this == PARTICLE_MESH ? scenario.meshTolerance : scenario.tolerance;
+        }
+    }
+
+    @Test
+    public void kepler_matchesGolden() throws Exception
+    {
+        checkAllVariants(GoldenTrajectories.Scenario.KEPLER);
+    }
+
+    @Test
+    public void figureEight_matchesGolden() throws Exception
+    {
+        checkAllVariants(GoldenTrajectories.Scenario.FIGURE_EIGHT);
+    }
+
+    @Test
+    public void collisionPile_matchesGolden() throws Exception
+    {
+        checkAllVariants(GoldenTrajectories.Scenario.COLLISION_PILE);
+    }
+
+    @Test
+    public void cluster_matchesGolden() throws Exception
+    {
+        checkAllVariants(GoldenTrajectories.Scenario.CLUSTER);
+    }
+
+    @Test
+    public void divergence_reportsFirstStepBeyondTolerance()
+    {
+        GoldenTrajectories.Scenario scenario = GoldenTrajectories.Scenario.KEPLER;
+        GoldenTrajectories.Trajectory golden = new GoldenTrajectories.Trajectory(3, 2);
+        GoldenTrajectories.Trajectory run = new GoldenTrajectories.Trajectory(3, 2);
+        run.x[1][1] = scenario.tolerance / 2;
+        run.y[2][0] = scenario.tolerance * 2;
+        assertEquals("Object 0 is 4.0 from its golden position after step 180, the tolerance is 2.0.",
+                findDivergence(scenario, golden, run, new double[]{1, 1}, scenario.tolerance));
+    }
+
+    @Test
+    public void divergence_afterTheIndividualSteps_comparesTheCenterOfMassAndTheSize()
+    {
+        GoldenTrajectories.Scenario scenario = GoldenTrajectories.Scenario.COLLISION_PILE;
+        int samples = scenario.individualSteps / scenario.sampleInterval + 2;
+        GoldenTrajectories.Trajectory golden = new GoldenTrajectories.Trajectory(samples, 2);
+        GoldenTrajectories.Trajectory run = new GoldenTrajectories.Trajectory(samples, 2);
+        for (int sample = 0; sample < samples; sample++)
+        {
+            golden.x[sample][1] = 100;
+            run.x[sample][1] = 100;
+        }
+
+        // the objects swapped places, which keeps the center of mass and the size
+        run.x[samples - 1][0] = 100;
+        run.x[samples - 1][1] = 0;
+        assertNull(findDivergence(scenario, golden, run, new double[]{1, 1}, scenario.tolerance));
+
+        run.x[samples - 1][1] = 10 * scenario.tolerance;
+        String divergence = findDivergence(scenario, golden, run, new double[]{1, 1}, scenario.tolerance);
+        assertTrue(divergence, divergence.startsWith("The center of mass is 15.0 from its golden position after step " + (samples - 1) * scenario.sampleInterval));
+    }
+
+    private static void checkAllVariants(GoldenTrajectories.Scenario scenario) throws Exception
+    {
+        GoldenTrajectories.Trajectory golden = GoldenTrajectories.read(scenario);
+        GravitySpace initial = scenario.create();
+        double[] mass = new double[initial.getNumberOfObjects()];
+        for (int i = 0; i < mass.length; i++)
+        {
+            mass[i] = initial.getObject(i).getMass();
+        }
+        StepExecutor executor = new StepExecutor(4);
+        try
+        {
+            for (Variant variant : Variant.values())
+            {
+                GravitySpace space = scenario.create();
+                variant.configure(space, executor);
+                String divergence = findDivergence(scenario, golden, GoldenTrajectories.run(scenario, space), mass, variant.getTolerance(scenario));
+                assertNull(scenario + " with " + variant + ": " + divergence, divergence);
+            }
+        }
+        finally
+        {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * Compares the objects one by one up to the individualSteps of the scenario and then their center of mass
+     * and their root mean square distance from it.
+     * @return the description of the first sample at which the run is further from the golden trajectory than the tolerance, null if there is none
+     */
+    private static String findDivergence(GoldenTrajectories.Scenario scenario, GoldenTrajectories.Trajectory golden, GoldenTrajectories.Trajectory run,
+                                         double[] mass, double tolerance)
+    {
+        for (int sample = 0; sample < golden.x.length; sample++)
+        {
+            int step = sample * scenario.sampleInterval;
+            if (step <= scenario.individualSteps)
+            {
+                for (int i = 0; i < golden.x[sample].length; i++)
+                {
+                    double distance = Math.hypot(run.x[sample][i] - golden.x[sample][i], run.y[sample][i] - golden.y[sample][i]);
+                    // also fails on NaN
+                    if (!(distance <= tolerance))
+                    {
+                        return "Object " + i + " is " + distance + " from its golden position after step " + step + ", the tolerance is " + tolerance + ".";
+                    }
+                }
+            }
+            else
+            {
+                double[] goldenBulk = getBulk(golden.x[sample], golden.y[sample], mass);
+                double[] runBulk = getBulk(run.x[sample], run.y[sample], mass);
+                double distance = Math.hypot(runBulk[0] - goldenBulk[0], runBulk[1] - goldenBulk[1]);
+                if (!(distance <= tolerance))
+                {
+                    return "The center of mass is " + distance + " from its golden position after step " + step + ", the tolerance is " + tolerance + ".";
+                }
+                double difference = Math.abs(runBulk[2] - goldenBulk[2]);
+                if (!(difference <= tolerance))
+                {
+                    return "The size differs by " + difference + " from the golden size after step " + step + ", the tolerance is " + tolerance + ".";
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return the center of mass of the objects and their root mean square distance from it weighted by the mass
+     */
+    private static double[] getBulk(double[] x, double[] y, double[] mass)
+    {
+        double totalMass = 0;
+        double centerX = 0;
+        double centerY = 0;
+        for (int i = 0; i < x.length; i++)
+        {
+            totalMass += mass[i];
+            centerX += mass[i] * x[i];
+            centerY += mass[i] * y[i];
+        }
+        centerX /= totalMass;
+        centerY /= totalMass;
+        double sum = 0;
+        for (int i = 0; i < x.length; i++)
+        {
+            double dx = x[i] - centerX;
+            double dy = y[i] - centerY;
+            sum += mass[i] * (dx * dx + dy * dy);
+        }
+        return new double[]{centerX, centerY, Math.sqrt(sum / totalMass)};
+    }
+}
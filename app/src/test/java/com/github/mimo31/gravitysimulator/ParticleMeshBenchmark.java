@@ -0,0 +1,92 @@
+package com.github.mimo31.gravitysimulator;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Headless benchmark of the ParticleMeshSolver on a galaxy disk.
+ * <p>
+ * Compares the accuracy against the DirectForceSolver on a small disk and then measures how the time of one
+ * force evaluation grows with the number of the bodies. Run the main method from the IDE or with the unit test classpath.
+ * Arguments: [grid size] [largest number of bodies]
+ */
+public class ParticleMeshBenchmark
+{
+    public static void main(String[] args)
+    {
+        int gridSize = args.length > 0 ? Integer.parseInt(args[0]) : 256;
+        int maxCount = args.length > 1 ? Integer.parseInt(args[1]) : 1000000;
+
+        // accuracy against the exact solver
+        int smallCount = 5000;
+        double[][] disk = createDisk(smallCount, 1);
+        double[] exactX = new double[smallCount];
+        double[] exactY = new double[smallCount];
+        long directStart = System.nanoTime();
+        new DirectForceSolver().computeAccelerations(disk[0], disk[1], disk[2], smallCount, exactX, exactY);
+        long directTime = System.nanoTime() - directStart;
+        for (boolean shortRangeCorrection : new boolean[]{false, true})
+        {
+            double[] meshX = new double[smallCount];
+            double[] meshY = new double[smallCount];
+            new ParticleMeshSolver(gridSize, shortRangeCorrection).computeAccelerations(disk[0], disk[1], disk[2], smallCount, meshX, meshY);
+            // the median is used, because the few closest pairs dominate any mean and the plain mesh doesn't resolve them by design
+            double[] errors = new double[smallCount];
+            for (int i = 0; i < smallCount; i++)
+            {
+                double dx = meshX[i] - exactX[i];
+                double dy = meshY[i] - exactY[i];
+                errors[i] = Math.sqrt((dx * dx + dy * dy) / (exactX[i] * exactX[i] + exactY[i] * exactY[i]));
+            }
+            Arrays.sort(errors);
+            System.out.printf("%s, %d bodies: median relative error %.4f%n", shortRangeCorrection ? "P3M" : "PM", smallCount, errors[smallCount / 2]);
+        }
+        System.out.printf("direct, %d bodies: %.1f ms%n", smallCount, directTime / 1e6);
+
+        // scaling, the short-range correction is quadratic in the number of the bodies per bin, so it is measured only on the smallest disk
+        for (boolean shortRangeCorrection : new boolean[]{false, true})
+        {
+            ParticleMeshSolver solver = new ParticleMeshSolver(gridSize, shortRangeCorrection);
+            for (int count = 10000; count <= (shortRangeCorrection ? 10000 : maxCount); count *= 10)
+            {
+                double[][] bodies = createDisk(count, 2);
+                double[] ax = new double[count];
+                double[] ay = new double[count];
+
+                // warm up, also computes the kernel
+                solver.computeAccelerations(bodies[0], bodies[1], bodies[2], count, ax, ay);
+                int repetitions = 5;
+                long start = System.nanoTime();
+                for (int i = 0; i < repetitions; i++)
+                {
+                    solver.computeAccelerations(bodies[0], bodies[1], bodies[2], count, ax, ay);
+                }
+                double time = (System.nanoTime() - start) / 1e6 / repetitions;
+                double directEstimate = directTime / 1e6 * ((double) count / smallCount) * ((double) count / smallCount);
+                System.out.printf("%s, grid %d, %d bodies: %.1f ms (direct estimate %.0f ms)%n", shortRangeCorrection ? "P3M" : "PM", gridSize, count, time, directEstimate);
+            }
+        }
+    }
+
+    /**
+     * Creates an exponential disk of equal-mass bodies.
+     * @return arrays of x, y and mass
+     */
+    private static double[][] createDisk(int count, long seed)
+    {
+        Random random = new Random(seed);
+        double[] x = new double[count];
+        double[] y = new double[count];
+        double[] mass = new double[count];
+        double scaleLength = 10000;
+        for (int i = 0; i < count; i++)
+        {
+            double radius = -scaleLength * Math.log(1 - random.nextDouble() * 0.999);
+            double angle = random.nextDouble() * 2 * Math.PI;
+            x[i] = radius * Math.cos(angle);
+            y[i] = radius * Math.sin(angle);
+            mass[i] = 1e8 / count;
+        }
+        return new double[][]{x, y, mass};
+    }
+}
@@ -0,0 +1,65 @@
+package com.github.mimo31.gravitysimulator;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks the ParticleMeshSolver on the degenerate distributions and against the direct sum on a pair of distant bodies.
+ */
+public class ParticleMeshSolverTest
+{
+    @Test
+    public void singleBody_hasNoAcceleration()
+    {
+        for (boolean correction : new boolean[]{false, true})
+        {
+            double[] ax = {5};
+            double[] ay = {5};
+            new ParticleMeshSolver(64, correction).computeAccelerations(new double[]{100}, new double[]{-100}, new double[]{1000}, 1, ax, ay);
+            assertEquals(0, ax[0], 0);
+            assertEquals(0, ay[0], 0);
+        }
+    }
+
+    @Test
+    public void coincidentBodies_haveFiniteAccelerations()
+    {
+        for (boolean correction : new boolean[]{false, true})
+        {
+            double[] x = {3, 3, 3};
+            double[] y = {7, 7, 7};
+            double[] mass = {10, 20, 30};
+            double[] ax = new double[3];
+            double[] ay = new double[3];
+            new ParticleMeshSolver(64, correction).computeAccelerations(x, y, mass, 3, ax, ay);
+            for (int i = 0; i < 3; i++)
+            {
+                assertFalse(Double.isNaN(ax[i]) || Double.isInfinite(ax[i]));
+                assertFalse(Double.isNaN(ay[i]) || Double.isInfinite(ay[i]));
+                assertEquals(0, ax[i], 1);
+                assertEquals(0, ay[i], 1);
+            }
+        }
+    }
+
+    @Test
+    public void distantPair_matchesDirectSum()
+    {
+        double[] x = {0, 1000};
+        double[] y = {0, 0};
+        double[] mass = {1000, 1};
+        double[] directX = new double[2];
+        double[] directY = new double[2];
+        new DirectForceSolver().computeAccelerations(x, y, mass, 2, directX, directY);
+        for (boolean correction : new boolean[]{false, true})
+        {
+            double[] ax = new double[2];
+            double[] ay = new double[2];
+            new ParticleMeshSolver(64, correction).computeAccelerations(x, y, mass, 2, ax, ay);
+            assertEquals(directX[1], ax[1], Math.abs(directX[1]) * 0.05);
+            assertEquals(directX[0], ax[0], Math.abs(directX[0]) * 0.05);
+            assertEquals(0, ay[1], Math.abs(directX[1]) * 0.05);
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package com.github.mimo31.gravitysimulator;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Feeds the governor synthetic tick times and checks the levels it chooses.
+ */
+public class QualityGovernorTest
+{
+    private static final long TARGET = 10000000;
+
+    @Test
+    public void slowTicks_lowerTheQualityAfterTheCooldown()
+    {
+        QualityGovernor governor = createGovernor();
+        report(governor, 2 * TARGET, 29);
+        assertEquals(0, governor.getLevel());
+        report(governor, 2 * TARGET, 1);
+        assertEquals(1, governor.getLevel());
+        assertEquals(48, governor.getSubsteps());
+
+        // the cooldown starts again after every change
+        report(governor, 2 * TARGET, 29);
+        assertEquals(1, governor.getLevel());
+        report(governor, 2 * TARGET, 1);
+        assertEquals(2, governor.getLevel());
+    }
+
+    @Test
+    public void fastTicks_raiseTheQuality()
+    {
+        QualityGovernor governor = createGovernor();
+        report(governor, 2 * TARGET, 60);
+        assertEquals(2, governor.getLevel());
+        report(governor, TARGET / 10, 30);
+        assertEquals(1, governor.getLevel());
+        report(governor, TARGET / 10, 30);
+        assertEquals(0, governor.getLevel());
+        report(governor, TARGET / 10, 90);
+        assertEquals(0, governor.getLevel());
+    }
+
+    @Test
+    public void ticksJustUnderTheTarget_keepTheLevel()
+    {
+        QualityGovernor governor = createGovernor();
+        report(governor, 2 * TARGET, 30);
+        assertEquals(1, governor.getLevel());
+
+        // the better level would take 64 / 48 of this, which is over 80 % of the target, so the governor doesn't oscillate
+        report(governor, TARGET * 7 / 10, 300);
+        assertEquals(1, governor.getLevel());
+        report(governor, TARGET / 2, 30);
+        assertEquals(0, governor.getLevel());
+    }
+
+    @Test
+    public void accuracyFloors_limitTheLevels()
+    {
+        QualityGovernor governor = createGovernor();
+        report(governor, 2 * TARGET, 30 * 5);
+        assertEquals(5, governor.getLevel());
+
+        // lowers the level right away if it's worse than the floors
+        governor.setAccuracyFloors(32, 1);
+        assertEquals(2, governor.getLevel());
+        report(governor, 2 * TARGET, 30 * 5);
+        assertEquals(2, governor.getLevel());
+        assertEquals(32, governor.getSubsteps());
+        assertEquals(1, governor.getCollisionInterval());
+
+        governor.setAccuracyFloors(1, Integer.MAX_VALUE);
+        report(governor, 2 * TARGET, 30 * 10);
+        assertEquals(governor.getNumberOfLevels() - 1, governor.getLevel());
+        assertEquals(8, governor.getSubsteps());
+
+        governor.setAccuracyFloors(Integer.MAX_VALUE, 1);
+        assertEquals(0, governor.getLevel());
+    }
+
+    private static QualityGovernor createGovernor()
+    {
+        QualityGovernor governor = new QualityGovernor();
+        governor.setTargetTickTime(TARGET);
+        return governor;
+    }
+
+    private static void report(QualityGovernor governor, long tickTime, int ticks)
+    {
+        for (int i = 0; i < ticks; i++)
+        {
+            governor.reportTickTime(tickTime);
+        }
+    }
+}
@@ -0,0 +1,121 @@
+package com.github.mimo31.gravitysimulator;
+
+import org.junit.Test;
+
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks the import and export of the scenes.
+ */
+public class SceneFormatTest
+{
+    @Test
+    public void exportedScene_isImportedExactly() throws Exception
+    {
+        GravitySpace space = new GravitySpace();
+        Random random = new Random(11);
+        for (int i = 0; i < 5000; i++)
+        {
+            GravitationalObject object = new GravitationalObject(new Vector2d((random.nextDouble() - 0.5) * Math.pow(10, random.nextInt(30) - 10), random.nextGaussian() * 1e4), 1 + random.nextInt(50), 1 + random.nextInt(1000));
+            object.velocity = new Vector2d(random.nextGaussian(), random.nextGaussian() * 1e-7);
+            space.addObject(object);
+        }
+        for (SceneFormat.Format format : SceneFormat.Format.values())
+        {
+            StringWriter writer = new StringWriter();
+            SceneFormat.write(writer, format, space);
+            GravitySpace imported = new GravitySpace();
+            assertEquals(space.getNumberOfObjects(), SceneFormat.read(new StringReader(writer.toString()), format, imported));
+            for (int i = 0; i < space.getNumberOfObjects(); i++)
+            {
+                GravitationalObject object = space.getObject(i);
+                GravitationalObject importedObject = imported.getObject(i);
+                assertEquals(object.position.x, importedObject.position.x, 0);
+                assertEquals(object.position.y, importedObject.position.y, 0);
+                assertEquals(object.velocity.x, importedObject.velocity.x, 0);
+                assertEquals(object.velocity.y, importedObject.velocity.y, 0);
+                assertEquals(object.radius, importedObject.radius);
+                assertEquals(object.density, importedObject.density);
+            }
+        }
+    }
+
+    @Test
+    public void zeroDensityAndEscapers_surviveTheRoundTrip() throws Exception
+    {
+        GravitySpace space = new GravitySpace();
+        space.addObject(new GravitationalObject(new Vector2d(0, 0), 50, 1000));
+        space.addObject(new GravitationalObject(new Vector2d(200, 0), 10, 0));
+        GravitationalObject frozen = new GravitationalObject(new Vector2d(-5000, 0), 2, 10);
+        frozen.frozen = true;
+        space.addObject(frozen);
+        GravitationalObject tracer = new GravitationalObject(new Vector2d(0, 5000), 2, 10);
+        tracer.tracer = true;
+        space.addObject(tracer);
+        for (SceneFormat.Format format : SceneFormat.Format.values())
+        {
+            StringWriter writer = new StringWriter();
+            SceneFormat.write(writer, format, space);
+            GravitySpace imported = new GravitySpace();
+            assertEquals(4, SceneFormat.read(new StringReader(writer.toString()), format, imported));
+            for (int i = 0; i < 4; i++)
+            {
+                GravitationalObject object = space.getObject(i);
+                GravitationalObject importedObject = imported.getObject(i);
+                assertEquals(object.density, importedObject.density);
+                assertEquals(object.frozen, importedObject.frozen);
+                assertEquals(object.tracer, importedObject.tracer);
+                assertEquals(object.getGravitatingMass(), importedObject.getGravitatingMass(), 0);
+            }
+        }
+    }
+
+    @Test
+    public void columnsAndKeys_mayBeInAnyOrder() throws Exception
+    {
+        String csv = "name, density, radius, y, x\r\n# a comment\r\nsun, 1000, 50, 1.5e3, -2\r\n\r\n\"planet\", 10, 3, 0.25, 400\r\n";
+        GravitySpace space = new GravitySpace();
+        assertEquals(2, SceneFormat.read(new StringReader(csv), SceneFormat.Format.CSV, space));
+        assertEquals(-2, space.getObject(0).position.x, 0);
+        assertEquals(1500, space.getObject(0).position.y, 0);
+        assertEquals(50, space.getObject(0).radius);
+        assertEquals(0, space.getObject(1).velocity.x, 0);
+
+        String json = "{\"density\": 7, \"tags\": [\"a\", {\"b\": 1}], \"radius\": 2, \"x\": 1, \"y\": -0.5, \"vy\": 3}\n";
+        space = new GravitySpace();
+        assertEquals(1, SceneFormat.read(new StringReader(json), SceneFormat.Format.JSON_LINES, space));
+        assertEquals(-0.5, space.getObject(0).position.y, 0);
+        assertEquals(3, space.getObject(0).velocity.y, 0);
+        assertEquals(7, space.getObject(0).density);
+    }
+
+    @Test
+    public void errors_reportTheirLines() throws Exception
+    {
+        assertErrorLine("x,y,radius,density\n1,2,3,4\n1,2,x,4\n", SceneFormat.Format.CSV, 3);
+        assertErrorLine("1,2,0,0,3,4\n\n1,2,0,0,3\n", SceneFormat.Format.CSV, 3);
+        assertErrorLine("x,y,radius\n1,2,3\n", SceneFormat.Format.CSV, 1);
+        assertErrorLine("1,2,0,0,3.5,4\n", SceneFormat.Format.CSV, 1);
+        assertErrorLine("1,2,0,0,3,-1\n", SceneFormat.Format.CSV, 1);
+        assertErrorLine("x,y,radius,density,frozen\n1,2,3,4,0\n1,2,3,4,2\n", SceneFormat.Format.CSV, 3);
+        assertErrorLine("{\"x\":1,\"y\":2,\"radius\":3,\"density\":4}\n{\"x\":1,\"y\":2,\"radius\":3}\n", SceneFormat.Format.JSON_LINES, 2);
+        assertErrorLine("{\"x\":1,\"y\":2,\"radius\":3,\"density\":4}\n\n{\"x\":1 \"y\":2}\n", SceneFormat.Format.JSON_LINES, 3);
+    }
+
+    private static void assertErrorLine(String text, SceneFormat.Format format, int line) throws Exception
+    {
+        try
+        {
+            SceneFormat.read(new StringReader(text), format, new GravitySpace());
+            fail("No error in " + text);
+        }
+        catch (SceneFormatException e)
+        {
+            assertEquals(e.getMessage(), line, e.getLineNumber());
+        }
+    }
+}
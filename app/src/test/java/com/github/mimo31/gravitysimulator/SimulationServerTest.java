@@ -0,0 +1,101 @@
+package com.github.mimo31.gravitysimulator;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks the frame encoding and the edits and backpressure of the SimulationServer.
+ */
+public class SimulationServerTest
+{
+    @Test
+    public void deltaFrames_reproduceTheState() throws Exception
+    {
+        GravitySpace space = createSpace(50);
+        StateFrame first = StateFrame.capture(space);
+        space.update(1 / (double) 64, false);
+        space.removeObject(space.getObject(3).id);
+        space.removeObject(space.getObject(20).id);
+        space.addObject(new GravitationalObject(new Vector2d(-500, -500), 7, 300));
+        StateFrame second = StateFrame.capture(space);
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        FrameCodec.write(out, null, first);
+        int keyFrameSize = bytes.size();
+        FrameCodec.writeDeltaFrame(out, first, second);
+        FrameCodec.writeDeltaFrame(out, second, second);
+        assertTrue(bytes.size() - keyFrameSize < keyFrameSize);
+
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+        StateFrame decoded = FrameCodec.read(in, null);
+        assertFramesEqual(first, decoded);
+        decoded = FrameCodec.read(in, decoded);
+        assertFramesEqual(second, decoded);
+        decoded = FrameCodec.read(in, decoded);
+        assertFramesEqual(second, decoded);
+    }
+
+    @Test
+    public void stalledViewer_doesNotStallOtherViewers() throws Exception
+    {
+        GravitySpace space = createSpace(2000);
+        long removedId = space.getObject(0).id;
+        try (SimulationServer server = new SimulationServer(space, 1 / (double) 64, 1, 0))
+        {
+            server.start();
+
+            // this viewer never reads, so its socket buffers fill up
+            SimulationClient stalled = new SimulationClient("127.0.0.1", server.getPort());
+            SimulationClient viewer = new SimulationClient("127.0.0.1", server.getPort());
+            StateFrame frame = viewer.readFrame();
+            assertNotEquals(-1, frame.indexOf(removedId));
+
+            viewer.removeObject(removedId);
+            long step = frame.step;
+            for (int i = 0; i < 100; i++)
+            {
+                frame = viewer.readFrame();
+                assertTrue(frame.step > step);
+                step = frame.step;
+            }
+            assertEquals(-1, frame.indexOf(removedId));
+            stalled.close();
+            viewer.close();
+        }
+    }
+
+    private static void assertFramesEqual(StateFrame expected, StateFrame actual)
+    {
+        assertEquals(expected.step, actual.step);
+        assertEquals(expected.count, actual.count);
+        for (int i = 0; i < expected.count; i++)
+        {
+            assertEquals(expected.ids[i], actual.ids[i]);
+            assertEquals(expected.x[i], actual.x[i], 0);
+            assertEquals(expected.y[i], actual.y[i], 0);
+            assertEquals(expected.radius[i], actual.radius[i], 0);
+            assertEquals(expected.color[i], actual.color[i]);
+        }
+    }
+
+    private static GravitySpace createSpace(int count)
+    {
+        GravitySpace space = new GravitySpace();
+        Random random = new Random(7);
+        for (int i = 0; i < count; i++)
+        {
+            GravitationalObject object = new GravitationalObject(new Vector2d(random.nextDouble() * 20000, random.nextDouble() * 20000), 2 + random.nextInt(5), 1 + random.nextInt(1000));
+            object.velocity = new Vector2d(random.nextGaussian(), random.nextGaussian());
+            space.addObject(object);
+        }
+        return space;
+    }
+}
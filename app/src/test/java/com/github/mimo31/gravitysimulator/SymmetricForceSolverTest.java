@@ -0,0 +1,51 @@
+package com.github.mimo31.gravitysimulator;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks that the SymmetricForceSolver agrees with the DirectForceSolver and doesn't depend on the number of the threads.
+ */
+public class SymmetricForceSolverTest
+{
+    @Test
+    public void accelerations_matchDirectSum()
+    {
+        // 7 tiles, so the tournament has a dummy tile, and a few massless bodies
+        int count = 7 * SymmetricForceSolver.TILE_SIZE - 5;
+        Random random = new Random(9);
+        double[] x = new double[count];
+        double[] y = new double[count];
+        double[] mass = new double[count];
+        for (int i = 0; i < count; i++)
+        {
+            x[i] = random.nextDouble() * 10000;
+            y[i] = random.nextDouble() * 10000;
+            mass[i] = i % 50 == 0 ? 0 : random.nextDouble() * 1000;
+        }
+
+        double[] directX = new double[count];
+        double[] directY = new double[count];
+        new DirectForceSolver().computeAccelerations(x, y, mass, count, directX, directY);
+        double[] singleX = new double[count];
+        double[] singleY = new double[count];
+        new SymmetricForceSolver().computeAccelerations(x, y, mass, count, singleX, singleY);
+        StepExecutor executor = new StepExecutor(4);
+        double[] parallelX = new double[count];
+        double[] parallelY = new double[count];
+        new SymmetricForceSolver(executor).computeAccelerations(x, y, mass, count, parallelX, parallelY);
+        executor.shutdown();
+
+        for (int i = 0; i < count; i++)
+        {
+            double magnitude = Math.hypot(directX[i], directY[i]);
+            assertEquals(directX[i], singleX[i], magnitude * 1e-12);
+            assertEquals(directY[i], singleY[i], magnitude * 1e-12);
+            assertEquals(singleX[i], parallelX[i], 0);
+            assertEquals(singleY[i], parallelY[i], 0);
+        }
+    }
+}
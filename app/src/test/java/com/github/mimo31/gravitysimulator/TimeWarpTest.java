@@ -0,0 +1,108 @@
+package com.github.mimo31.gravitysimulator;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks that the warped ticks match the normal ones and that a worker which can't keep up is detected.
+ */
+public class TimeWarpTest
+{
+    @Test
+    public void warpedTicks_matchTheNormalTicks() throws InterruptedException
+    {
+        GravitySpace warped = createBinary();
+        // the binary is fast, so the governor keeps the full accuracy, it can't change the level before COOLDOWN_TICKS anyway
+        QualityGovernor governor = new QualityGovernor();
+        TimeWarp timeWarp = new TimeWarp(warped, 10, governor);
+        timeWarp.start();
+        int finished = 0;
+        try
+        {
+            finished += timeWarp.tick(true);
+            finished += timeWarp.tick(true);
+            timeWarp.awaitIdle();
+        }
+        finally
+        {
+            timeWarp.stop();
+        }
+        // the ticks finished before the second call are returned by it
+        finished += timeWarp.tick(true);
+        assertEquals(20, finished);
+        assertEquals(0, governor.getLevel());
+
+        GravitySpace normal = createBinary();
+        for (int tick = 0; tick < 20; tick++)
+        {
+            for (int i = 0; i < 64; i++)
+            {
+                normal.update(1 / 64.0, true, true);
+            }
+            normal.updateViewVelocity();
+        }
+        assertEquals(normal.computeStateHash(), warped.computeStateHash());
+        assertEquals(normal.getViewPosition().x, warped.getViewPosition().x, 0);
+        assertEquals(normal.getViewPosition().y, warped.getViewPosition().y, 0);
+    }
+
+    @Test
+    public void slowWarpedTicks_lowerTheQuality() throws InterruptedException
+    {
+        QualityGovernor governor = new QualityGovernor();
+        // no tick fits into 1 ns
+        governor.setTargetTickTime(1);
+        TimeWarp timeWarp = new TimeWarp(createBinary(), 10, governor);
+        timeWarp.start();
+        try
+        {
+            for (int i = 0; i < 4; i++)
+            {
+                timeWarp.tick(false);
+            }
+            timeWarp.awaitIdle();
+        }
+        finally
+        {
+            timeWarp.stop();
+        }
+        assertEquals(1, governor.getLevel());
+    }
+
+    @Test
+    public void isBehind_whenTheTicksArentRun()
+    {
+        TimeWarp timeWarp = new TimeWarp(createBinary(), 100, new QualityGovernor());
+        for (int i = 0; i < 5; i++)
+        {
+            timeWarp.tick(false);
+        }
+        assertFalse(timeWarp.isBehind());
+        timeWarp.tick(false);
+        assertTrue(timeWarp.isBehind());
+        timeWarp.cancelPendingTicks();
+        assertFalse(timeWarp.isBehind());
+    }
+
+    @Test
+    public void factors_areCycled()
+    {
+        assertEquals(10, TimeWarp.getNextFactor(1));
+        assertEquals(100, TimeWarp.getNextFactor(10));
+        assertEquals(1, TimeWarp.getNextFactor(100));
+        assertEquals(10, TimeWarp.getLowerFactor(100));
+        assertEquals(1, TimeWarp.getLowerFactor(10));
+        assertEquals(1, TimeWarp.getLowerFactor(1));
+    }
+
+    private static GravitySpace createBinary()
+    {
+        GravitySpace space = new GravitySpace();
+        space.addObject(new GravitationalObject(new Vector2d(0, 0), 20, 10));
+        space.addObject(new GravitationalObject(new Vector2d(200, 0), 5, 10));
+        space.setVelocity(space.getObject(1), new Vector2d(0, 1));
+        space.updateViewVelocity();
+        return space;
+    }
+}
@@ -0,0 +1,70 @@
+package com.github.mimo31.gravitysimulator;
+
+import java.util.Random;
+
+/**
+ * Headless benchmark of a tick of 50 planets with many tracers.
+ * <p>
+ * Measures a tick at the most and the least accurate substeps of the QualityGovernor, with the tracers moved in every substep
+ * and once per tick as the GravityView moves them.
+ * Run the main method from the IDE or with the unit test classpath. Arguments: [number of tracers] [number of threads]
+ */
+public class TracerFieldBenchmark
+{
+    public static void main(String[] args)
+    {
+        int tracers = args.length > 0 ? Integer.parseInt(args[0]) : 200000;
+        int threads = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+        StepExecutor executor = new StepExecutor(threads);
+        for (int substeps : new int[]{8, 64})
+        {
+            for (double tracerStepTime : new double[]{0, 1})
+            {
+                GravitySpace space = createScene(tracers, executor);
+                space.setTracerStepTime(tracerStepTime);
+
+                // the first ticks warm up the JIT
+                int ticks = 10;
+                long start = 0;
+                for (int tick = -3; tick < ticks; tick++)
+                {
+                    if (tick == 0)
+                    {
+                        start = System.nanoTime();
+                    }
+                    for (int i = 0; i < substeps; i++)
+                    {
+                        space.update(1 / (double) substeps, false, true);
+                    }
+                }
+                double tickTime = (System.nanoTime() - start) / 1e6 / ticks;
+                System.out.println(substeps + " substeps, tracers moved " + (tracerStepTime == 0 ? "in every substep" : "once per tick")
+                        + ": " + tickTime + " ms per tick");
+            }
+        }
+        executor.shutdown();
+    }
+
+    /**
+     * @return a star with 50 planets and a ring of tracers around it
+     */
+    private static GravitySpace createScene(int tracers, StepExecutor executor)
+    {
+        GravitySpace space = new GravitySpace();
+        space.setExecutor(executor);
+        GravitationalObject star = new GravitationalObject(new Vector2d(0, 0), 100, 1000);
+        space.addObject(star);
+        Random random = new Random(3);
+        for (int i = 0; i < 50; i++)
+        {
+            double distance = 2000 + 200 * i;
+            double angle = random.nextDouble() * 2 * Math.PI;
+            GravitationalObject planet = new GravitationalObject(new Vector2d(distance * Math.cos(angle), distance * Math.sin(angle)), 5, 100);
+            double speed = Math.sqrt(star.getMass() / distance);
+            planet.velocity = new Vector2d(-speed * Math.sin(angle), speed * Math.cos(angle));
+            space.addObject(planet);
+        }
+        space.getTracers().addRing(star, 300, 12000, tracers);
+        return space;
+    }
+}
@@ -0,0 +1,64 @@
+package com.github.mimo31.gravitysimulator;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks that the tracers move like massless objects and are absorbed by the objects if the collisions are enabled.
+ */
+public class TracerFieldTest
+{
+    @Test
+    public void tracer_movesLikeDemotedObject()
+    {
+        GravitySpace space = new GravitySpace();
+        space.setExecutor(new StepExecutor(3));
+        space.addObject(new GravitationalObject(new Vector2d(0, 0), 40, 1000));
+        GravitationalObject moon = new GravitationalObject(new Vector2d(3000, 0), 10, 500);
+        moon.velocity = new Vector2d(0, 2);
+        space.addObject(moon);
+        GravitationalObject demoted = new GravitationalObject(new Vector2d(-1500, 200), 1, 1);
+        demoted.velocity = new Vector2d(0.5, -3);
+        demoted.tracer = true;
+        space.addObject(demoted);
+        for (int i = 0; i < 3000; i++)
+        {
+            space.getTracers().add(-1500, 200, 0.5, -3);
+        }
+
+        for (int i = 0; i < 500; i++)
+        {
+            space.update(0.25, false);
+        }
+        assertEquals(3000, space.getTracers().size());
+        for (int i = 0; i < space.getTracers().size(); i++)
+        {
+            assertEquals(demoted.position.x, space.getTracers().getX(i), 0);
+            assertEquals(demoted.position.y, space.getTracers().getY(i), 0);
+        }
+    }
+
+    @Test
+    public void ring_staysOnItsOrbitsAndFallingTracersAreAbsorbed()
+    {
+        GravitySpace space = new GravitySpace();
+        GravitationalObject star = new GravitationalObject(new Vector2d(100, 100), 20, 1000);
+        space.addObject(star);
+        TracerField tracers = space.getTracers();
+        tracers.addRing(star, 400, 800, 100);
+        tracers.add(300, 100, 0, 0);
+        tracers.setCollisionsEnabled(true);
+        for (int i = 0; i < 2000; i++)
+        {
+            space.update(0.1, false);
+        }
+        assertEquals(100, tracers.size());
+        for (int i = 0; i < tracers.size(); i++)
+        {
+            double distance = Math.hypot(tracers.getX(i) - 100, tracers.getY(i) - 100);
+            double expected = 400 + 400 * (i + 0.5) / 100;
+            assertEquals(expected, distance, expected * 0.02);
+        }
+    }
+}
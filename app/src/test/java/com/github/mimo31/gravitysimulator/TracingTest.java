@@ -0,0 +1,66 @@
+package com.github.mimo31.gravitysimulator;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks the sections of a step and their labels.
+ */
+public class TracingTest
+{
+    @Test
+    public void step_emitsBalancedSections()
+    {
+        final List<String> events = new ArrayList<>();
+        Tracing.setBackend(new Tracing.Backend()
+        {
+            @Override
+            public void beginSection(Tracing.Section section, int bodies, int substeps)
+            {
+                events.add("+" + section.getLabel(bodies, substeps));
+            }
+
+            @Override
+            public void endSection(Tracing.Section section)
+            {
+                events.add("-" + section.name);
+            }
+        });
+        try
+        {
+            GravitySpace space = new GravitySpace();
+            space.addObject(new GravitationalObject(new Vector2d(0, 0), 10, 10));
+            space.addObject(new GravitationalObject(new Vector2d(100, 0), 10, 10));
+            space.update(1, false);
+        }
+        finally
+        {
+            Tracing.setBackend(null);
+        }
+        assertEquals("+GravitySpace.update bodies=2", events.get(0));
+        assertEquals("-GravitySpace.update", events.get(events.size() - 1));
+        assertTrue(events.contains("+forces bodies=2"));
+        assertTrue(events.contains("+collisions bodies=2"));
+        int depth = 0;
+        for (String event : events)
+        {
+            depth += event.startsWith("+") ? 1 : -1;
+            assertTrue(depth >= 0);
+        }
+        assertEquals(0, depth);
+    }
+
+    @Test
+    public void label_isReusedWhileTheNumbersDontChange()
+    {
+        String label = Tracing.VIEW_UPDATE.getLabel(100, 4);
+        assertEquals("GravityView.update bodies=100 substeps=4", label);
+        assertSame(label, Tracing.VIEW_UPDATE.getLabel(100, 4));
+        assertEquals("GravityView.update bodies=101 substeps=4", Tracing.VIEW_UPDATE.getLabel(101, 4));
+        assertEquals("GravityView.update", Tracing.VIEW_UPDATE.getLabel(-1, -1));
+    }
+}
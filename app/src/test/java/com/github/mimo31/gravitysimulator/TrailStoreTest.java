@@ -0,0 +1,56 @@
+package com.github.mimo31.gravitysimulator;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks the decimation and the memory budget of the TrailStore.
+ */
+public class TrailStoreTest
+{
+    @Test
+    public void straightMotion_keepsTwoPoints() throws Exception
+    {
+        TrailStore store = new TrailStore(TrailStore.DEFAULT_BUDGET);
+        for (int i = 0; i < 1000; i++)
+        {
+            store.record(0, 3 * i, 100 - 2 * i);
+        }
+        assertEquals(2, store.getSize(0));
+    }
+
+    @Test
+    public void circularMotion_isDecimated() throws Exception
+    {
+        TrailStore store = new TrailStore(TrailStore.DEFAULT_BUDGET);
+        int steps = 360;
+        for (int i = 0; i < steps; i++)
+        {
+            double angle = Math.toRadians(i);
+            store.record(0, 1000 * Math.cos(angle), 1000 * Math.sin(angle));
+        }
+        assertTrue(store.getSize(0) < steps / 2);
+        assertTrue(store.getSize(0) > steps / 16);
+    }
+
+    @Test
+    public void budget_isNeverExceeded() throws Exception
+    {
+        int budget = 2000;
+        TrailStore store = new TrailStore(budget);
+        for (int step = 0; step < 2000; step++)
+        {
+            for (int slot = 0; slot < 40; slot++)
+            {
+                // zigzags are never decimated
+                store.record(slot, step, (step + slot) % 2);
+            }
+            assertTrue(store.getAllocatedPoints() <= budget);
+        }
+        store.remove(3);
+        store.move(39, 3);
+        assertEquals(0, store.getSize(39));
+        assertTrue(store.getSize(3) > 0);
+    }
+}
@@ -0,0 +1,93 @@
+package com.github.mimo31.gravitysimulator;
+
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks the predicted paths and that a newer request replaces the older one.
+ */
+public class TrajectoryPredictorTest
+{
+    @Test
+    public void circularOrbit_staysOnTheCircle()
+    {
+        GravitySpace space = createStar();
+        GravitationalObject star = space.getObject(0);
+        double distance = 1000;
+        GravitationalObject planet = new GravitationalObject(new Vector2d(distance, 0), 5, 1);
+        planet.velocity = new Vector2d(0, Math.sqrt(star.getGravitatingMass() / distance));
+
+        TrajectoryPredictor.Trajectory trajectory = new TrajectoryPredictor(null).predictNow(space, planet);
+        assertFalse(trajectory.collides);
+        assertEquals(TrajectoryPredictor.STEPS / TrajectoryPredictor.STEPS_PER_SEGMENT, trajectory.segmentCount);
+        for (int i = 0; i < 2 * trajectory.segmentCount; i++)
+        {
+            double pointDistance = Math.hypot(trajectory.segments[2 * i], trajectory.segments[2 * i + 1]);
+            assertEquals(distance, pointDistance, distance * 0.02);
+        }
+    }
+
+    @Test
+    public void fallingObject_endsByACollision()
+    {
+        GravitySpace space = createStar();
+        GravitationalObject falling = new GravitationalObject(new Vector2d(1000, 0), 5, 1);
+
+        TrajectoryPredictor.Trajectory trajectory = new TrajectoryPredictor(null).predictNow(space, falling);
+        assertTrue(trajectory.collides);
+        assertTrue(trajectory.segmentCount < TrajectoryPredictor.STEPS / TrajectoryPredictor.STEPS_PER_SEGMENT);
+        float endX = trajectory.segments[4 * trajectory.segmentCount - 2];
+        assertTrue(endX < 100 + 5 + 10);
+    }
+
+    @Test
+    public void latestRequest_isTheOnlyOneReturned() throws InterruptedException
+    {
+        final CountDownLatch predicted = new CountDownLatch(1);
+        TrajectoryPredictor predictor = new TrajectoryPredictor(new TrajectoryPredictor.Listener()
+        {
+            @Override
+            public void onTrajectoryPredicted()
+            {
+                predicted.countDown();
+            }
+        });
+        try
+        {
+            GravitySpace space = createStar();
+            GravitationalObject object = new GravitationalObject(new Vector2d(1000, 0), 5, 1);
+            predictor.predict(space, object);
+            object.position = new Vector2d(-1000, 0);
+            predictor.predict(space, object);
+            assertTrue(predicted.await(10, TimeUnit.SECONDS));
+
+            // the first request may have been finished before it was cancelled, but it's never returned
+            TrajectoryPredictor.Trajectory trajectory = predictor.getTrajectory();
+            for (int i = 0; i < 1000 && trajectory == null; i++)
+            {
+                Thread.sleep(10);
+                trajectory = predictor.getTrajectory();
+            }
+            assertNotNull(trajectory);
+            assertEquals(-1000, trajectory.segments[0], 0);
+
+            predictor.cancel();
+            assertNull(predictor.getTrajectory());
+        }
+        finally
+        {
+            predictor.shutdown();
+        }
+    }
+
+    private static GravitySpace createStar()
+    {
+        GravitySpace space = new GravitySpace();
+        space.addObject(new GravitationalObject(new Vector2d(0, 0), 100, 100));
+        return space;
+    }
+}